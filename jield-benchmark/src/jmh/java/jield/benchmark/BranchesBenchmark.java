@@ -0,0 +1,75 @@
+package jield.benchmark;
+
+import jield.examples.Branches;
+import jield.runtime.LongGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+public class BranchesBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        @Param({"10000"})
+        int prefix;
+
+        @Param({"16"})
+        int branchCount;
+
+        @Param({"8"})
+        int branchLength;
+
+        LongGenerator branchingPoint;
+
+        @Setup
+        public void setup() {
+            branchingPoint = LongGenerator.from(Branches.steps(Long.MAX_VALUE / 4));
+
+            for (int i = 0; i < prefix; ++i) {
+                branchingPoint.nextLong();
+            }
+        }
+    }
+
+    @Benchmark
+    public long rerun(BenchmarkState state) {
+        long sum = 0;
+
+        for (int branch = 0; branch < state.branchCount; ++branch) {
+            final LongGenerator generator = LongGenerator.from(Branches.steps(Long.MAX_VALUE / 4));
+
+            for (int i = 0; i < state.prefix; ++i) {
+                generator.nextLong();
+            }
+
+            sum += take(generator, state.branchLength);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long fork(BenchmarkState state) {
+        long sum = 0;
+
+        for (int branch = 0; branch < state.branchCount; ++branch) {
+            sum += take(state.branchingPoint.fork(), state.branchLength);
+        }
+
+        return sum;
+    }
+
+    private static long take(LongGenerator generator, int count) {
+        long sum = 0;
+
+        for (int i = 0; i < count; ++i) {
+            sum += generator.nextLong();
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,45 @@
+package jield.benchmark;
+
+import jield.examples.Collatz;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+public class CollatzBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        Collatz collatz = new Collatz();
+
+        @Param({"1000", "100000"})
+        int limit;
+    }
+
+    @Benchmark
+    public int jield(BenchmarkState state) {
+        return state.collatz
+                .stepsJield(1, state.limit)
+                .max()
+                .getAsInt();
+    }
+
+    @Benchmark
+    public int jieldParallel(BenchmarkState state) {
+        return state.collatz
+                .stepsJieldParallel(1, state.limit)
+                .max()
+                .getAsInt();
+    }
+
+    @Benchmark
+    public int intStream(BenchmarkState state) {
+        return state.collatz
+                .stepsIntStream(1, state.limit)
+                .max()
+                .getAsInt();
+    }
+}
@@ -0,0 +1,95 @@
+package jield.benchmark;
+
+import jield.examples.Deltas;
+import jield.runtime.IntGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+public class DeltasBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        Deltas deltas = new Deltas();
+
+        @Param({"1000", "100000"})
+        int size;
+
+        int[] values;
+
+        byte[] bytes;
+
+        int[] buffer = new int[256];
+
+        @Setup
+        public void setup() {
+            values = new Random(42).ints(size, 0, 100).toArray();
+
+            bytes = new byte[size];
+
+            for (int i = 0; i < size; ++i) {
+                bytes[i] = (byte) values[i];
+            }
+        }
+    }
+
+    @Benchmark
+    public int jield(BenchmarkState state) {
+        return state.deltas
+                .deltasJield(state.values)
+                .sum();
+    }
+
+    @Benchmark
+    public int jieldIterator(BenchmarkState state) {
+        final IntGenerator generator = IntGenerator.from(state.deltas.deltasJield(state.values));
+
+        int sum = 0;
+
+        while (generator.hasNext()) {
+            sum += generator.nextInt();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int jieldBatch(BenchmarkState state) {
+        final IntGenerator generator = IntGenerator.from(state.deltas.deltasJield(state.values));
+
+        final int[] buffer = state.buffer;
+
+        int sum = 0;
+
+        int count;
+
+        do {
+            count = generator.nextBatch(buffer, 0, buffer.length);
+
+            for (int i = 0; i < count; ++i) {
+                sum += buffer[i];
+            }
+        } while (count == buffer.length);
+
+        return sum;
+    }
+
+    @Benchmark
+    public int jieldBytes(BenchmarkState state) {
+        return state.deltas
+                .byteDeltasJield(state.bytes)
+                .sum();
+    }
+
+    @Benchmark
+    public int intStream(BenchmarkState state) {
+        return state.deltas
+                .deltasIntStream(state.values)
+                .sum();
+    }
+}
@@ -28,6 +28,14 @@ public class FibonacciBenchmark {
                 .forEach(bh::consume);
     }
 
+    @Benchmark
+    public void jieldInt(BenchmarkState state, Blackhole bh) {
+        state.fibonacci
+                .fibJieldInt()
+                .limit(state.limit)
+                .forEach(bh::consume);
+    }
+
     @Benchmark
     public void streamGenerate(BenchmarkState state, Blackhole bh) {
         state.fibonacci
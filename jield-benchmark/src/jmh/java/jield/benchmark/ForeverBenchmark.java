@@ -5,6 +5,7 @@ import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @Warmup(iterations = 10)
 @Measurement(iterations = 10)
@@ -30,6 +31,14 @@ public class ForeverBenchmark {
                 .forEach(bh::consume);
     }
 
+    @Benchmark
+    public void jieldPooled(BenchmarkState state, Blackhole bh) {
+        try (Stream<String> stream = state.forever.foreverJieldPooled(state.value)) {
+            stream.limit(state.limit)
+                    .forEach(bh::consume);
+        }
+    }
+
     @Benchmark
     public void streamGenerate(BenchmarkState state, Blackhole bh) {
         state.forever
@@ -0,0 +1,33 @@
+package jield.benchmark;
+
+import jield.examples.Offsets;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(5)
+public class OffsetsBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        @Param({"10000", "10000000"})
+        long offset;
+
+        @Param({"20"})
+        int size;
+    }
+
+    @Benchmark
+    public String streamSkip(BenchmarkState state) {
+        return Offsets.results(Long.MAX_VALUE).skip(state.offset).limit(state.size).collect(Collectors.joining(", "));
+    }
+
+    @Benchmark
+    public String generatorSkip(BenchmarkState state) {
+        return Offsets.page(state.offset, state.size);
+    }
+}
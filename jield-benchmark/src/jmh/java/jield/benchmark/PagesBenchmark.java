@@ -0,0 +1,56 @@
+package jield.benchmark;
+
+import jield.examples.Pages;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+public class PagesBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        Pages pages = new Pages();
+
+        List<int[]> list;
+
+        @Param({"100"})
+        int pageCount;
+
+        @Param({"1024"})
+        int pageSize;
+
+        @Setup
+        public void setup() {
+            final Random random = new Random(42);
+
+            list = new ArrayList<>(pageCount);
+
+            for (int i = 0; i < pageCount; ++i) {
+                final int[] page = new int[pageSize];
+
+                for (int j = 0; j < pageSize; ++j) {
+                    page[j] = random.nextInt(100);
+                }
+
+                list.add(page);
+            }
+        }
+    }
+
+    @Benchmark
+    public long jield(BenchmarkState state) {
+        return state.pages.valuesJield(state.list).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long jieldBlock(BenchmarkState state) {
+        return state.pages.valuesJieldBlock(state.list).asLongStream().sum();
+    }
+}
@@ -0,0 +1,65 @@
+package jield.benchmark;
+
+import jield.examples.Records;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+public class RecordsBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        Records records = new Records();
+
+        @Param({"10000"})
+        int size;
+
+        /*
+         * The work done by the consumer for every record, in Blackhole tokens.
+         */
+        @Param({"0", "100"})
+        int work;
+
+        List<String> lines;
+
+        @Setup
+        public void setup() {
+            final Random random = new Random(42);
+
+            lines = new ArrayList<>(size);
+
+            for (int i = 0; i < size; ++i) {
+                lines.add(random.nextInt(100000) + "," + random.nextInt(100000) + "," + random.nextInt(100000));
+            }
+        }
+    }
+
+    @Benchmark
+    public long jield(BenchmarkState state) {
+        return consume(state.records.totalsJield(state.lines), state.work);
+    }
+
+    @Benchmark
+    public long jieldPrefetch(BenchmarkState state) {
+        return consume(state.records.totalsJieldPrefetch(state.lines), state.work);
+    }
+
+    private static long consume(LongStream totals, int work) {
+        return totals
+                .map(total -> {
+                    Blackhole.consumeCPU(work);
+
+                    return total;
+                })
+                .sum();
+    }
+}
@@ -39,6 +39,20 @@ public class RepBenchmark {
                 .forEach(bh::consume);
     }
 
+    @Benchmark
+    public void jieldSwitch(BenchmarkState state, Blackhole bh) {
+        state.rep
+                .repJieldSwitch(state.lst, state.times, state.each)
+                .forEach(bh::consume);
+    }
+
+    @Benchmark
+    public void jieldPooled(BenchmarkState state, Blackhole bh) {
+        state.rep
+                .repJieldPooled(state.lst, state.times, state.each)
+                .forEach(bh::consume);
+    }
+
     @Benchmark
     public void streamGenerate(BenchmarkState state, Blackhole bh) {
         state.rep
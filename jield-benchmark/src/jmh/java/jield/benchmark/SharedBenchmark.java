@@ -0,0 +1,124 @@
+package jield.benchmark;
+
+import jield.examples.Rep;
+import jield.runtime.SharedGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+public class SharedBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        Rep rep = new Rep();
+
+        List<String> lst;
+
+        /*
+         * The number of worker threads draining the generator.
+         */
+        @Param({"1", "2", "4", "8", "16", "32", "64"})
+        int threads;
+
+        /*
+         * The work done by a worker for every value, in Blackhole tokens.
+         */
+        @Param({"0", "50"})
+        int work;
+
+        ExecutorService executor;
+
+        Future<?>[] futures;
+
+        @Setup
+        public void setup() {
+            lst = Arrays.asList("First", "Second", "Third");
+
+            executor = Executors.newFixedThreadPool(threads);
+
+            futures = new Future<?>[threads];
+        }
+
+        @TearDown
+        public void tearDown() {
+            executor.shutdownNow();
+        }
+
+        void run(Runnable worker) throws Exception {
+            for (int i = 0; i < threads; ++i) {
+                futures[i] = executor.submit(worker);
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    @Benchmark
+    public long shared(BenchmarkState state) throws Exception {
+        final SharedGenerator<String> generator =
+            SharedGenerator.of(state.rep.repJieldSwitch(state.lst, 1000, 32));
+
+        final LongAdder length = new LongAdder();
+
+        state.run(() -> {
+            final SharedGenerator<String>.Worker worker = generator.worker();
+
+            long sum = 0;
+
+            while (worker.hasNext()) {
+                Blackhole.consumeCPU(state.work);
+
+                sum += worker.next().length();
+            }
+
+            length.add(sum);
+        });
+
+        return length.sum();
+    }
+
+    @Benchmark
+    public long synchronizedNext(BenchmarkState state) throws Exception {
+        final Iterator<String> iterator = state.rep.repJieldSwitch(state.lst, 1000, 32).iterator();
+
+        final LongAdder length = new LongAdder();
+
+        state.run(() -> {
+            long sum = 0;
+
+            while (true) {
+                final String value;
+
+                synchronized (iterator) {
+                    if (!iterator.hasNext()) {
+                        break;
+                    }
+
+                    value = iterator.next();
+                }
+
+                Blackhole.consumeCPU(state.work);
+
+                sum += value.length();
+            }
+
+            length.add(sum);
+        });
+
+        return length.sum();
+    }
+}
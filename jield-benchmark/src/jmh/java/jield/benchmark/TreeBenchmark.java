@@ -0,0 +1,44 @@
+package jield.benchmark;
+
+import jield.examples.Tree;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+public class TreeBenchmark {
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        Tree tree;
+
+        @Param({"BALANCED", "LEANING"})
+        String shape;
+
+        @Param({"1000"})
+        int size;
+
+        @Setup
+        public void setup() {
+            tree = "BALANCED".equals(shape) ? Tree.balanced(1, size) : Tree.leaning(size);
+        }
+    }
+
+    @Benchmark
+    public void jield(BenchmarkState state, Blackhole bh) {
+        state.tree
+                .inorderJield()
+                .forEach(bh::consume);
+    }
+
+    @Benchmark
+    public void jieldDelegating(BenchmarkState state, Blackhole bh) {
+        state.tree
+                .inorderJieldDelegating()
+                .forEach(bh::consume);
+    }
+}
@@ -8,10 +8,93 @@ import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
 /**
- * Indicates that a method should be transformed into a generator method.
+ * Indicates that a method should be transformed into a generator method. The attributes are read before the code is
+ * attributed, so they must be literals, operators on them, or the constants of the classes enclosing the method.
+ * Constants of other classes cannot be used.
  */
 @Target(METHOD)
 @Retention(RUNTIME)
 @Documented
 public @interface Generator {
+    /**
+     * Selects how the states of the generator are turned into code.
+     * @return the backend used to emit the generator
+     */
+    Backend backend() default Backend.TRAMPOLINE;
+
+    /**
+     * Makes the generator splittable, so that the returned stream is processed in parallel. The body of the method
+     * must be a single, possibly labeled, loop: either an enhanced for loop over an array or a {@code Collection}, or
+     * a counted {@code for (int i = a; i < b; i++)} loop. Every split runs its own copy of the generator over a part of
+     * the loop. The loop source and bounds are evaluated once, the loop must not be left by {@code break}, and the
+     * counter of a counted loop must not be modified by the body. Closing the returned stream closes every split, so
+     * that splits suspended in a {@code try} statement release its resources. Parallel generators always use the
+     * {@link Backend#SWITCH} backend.
+     * @return whether the generator can be split
+     */
+    boolean parallel() default false;
+
+    /**
+     * Reuses the instances of the generator. A call of the method takes a recycled instance from a pool of the current
+     * thread instead of creating a new one, and the instance goes back to the pool as soon as the generator is
+     * exhausted or the returned stream is closed. Worth it for generators created at a high rate and consumed right
+     * away, where the setup dominates the cost of producing the values. The returned stream must not be used after it
+     * has been closed, and its iterator or spliterator report no more values once the instance is recycled. The
+     * instances of a generator declared by an instance method are only reused for the same enclosing instance.
+     * Parallel generators cannot be pooled.
+     * @return whether the instances of the generator are pooled
+     */
+    boolean pooled() default false;
+
+    /**
+     * Runs the generator on a background thread ahead of its consumer, producing at most the specified number of
+     * values in advance. Worth it for generators whose values are expensive to produce, for example by parsing or I/O,
+     * since producing and consuming the values then overlap on separate cores. The producer is started when the first
+     * value is requested and stopped when the generator is exhausted or the returned stream is closed. Exceptions
+     * thrown by the generator are rethrown to the consumer. Zero, the default, disables prefetching. Parallel
+     * generators cannot prefetch.
+     * @return the maximum number of values produced ahead of the consumer, at most {@code 1 << 30}, or zero
+     */
+    int prefetch() default 0;
+
+    /**
+     * Makes the state of the generator savable, so that a partially consumed generator can be continued later, even in
+     * another process, through the {@code checkpoint()} and {@code restore(byte[])} methods of the generator behind
+     * the returned stream. The parameters, the variables and the last produced value are saved, references through
+     * Java serialization, thus they must be serializable when a checkpoint is taken. Enhanced for loops over arrays and
+     * random access lists can be saved in the middle, loops over other sources cannot. Checkpointable generators
+     * always use the {@link Backend#SWITCH} backend, and cannot be parallel, pooled or prefetching or use
+     * {@code yieldAll}.
+     * @return whether checkpoints of the generator can be taken
+     */
+    boolean checkpointable() default false;
+
+    /**
+     * Makes the generator copyable through the {@code fork()} method of the generator behind the returned stream. A
+     * fork continues from the same point as the original, independently of it, without running the generator code
+     * again. The parameters and variables are copied shallowly, except for the objects implementing
+     * {@link jield.runtime.Forkable}, which are forked along, so mutable state can opt in to being copied. Enhanced
+     * for loops over arrays, lists and forkable generators can be forked in the middle, loops over other iterators
+     * and streams cannot. Forkable generators always use the {@link Backend#SWITCH} backend, and cannot be parallel,
+     * pooled or prefetching or use {@code yieldAll}.
+     * @return whether the generator can be forked
+     */
+    boolean forkable() default false;
+
+    /**
+     * The code generation strategies available for generator methods.
+     */
+    enum Backend {
+        /**
+         * Every state becomes a separate method. States chain through {@code Bounce} objects evaluated by a
+         * trampoline. Not available for generators returning primitive streams, those always use {@link #SWITCH}.
+         */
+        TRAMPOLINE,
+
+        /**
+         * The generator becomes a single {@code step()} method holding a {@code switch} over an {@code int} state
+         * field. Transitions are plain assignments followed by a jump to the top of the loop.
+         */
+        SWITCH
+    }
 }
@@ -4,14 +4,20 @@ import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCClassDecl;
 import com.sun.tools.javac.util.ListBuffer;
+import jield.annotation.Generator.Backend;
 
 import javax.lang.model.element.Modifier;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.Optional;
+import java.util.Set;
 
 import static com.sun.tools.javac.tree.JCTree.*;
 import static java.util.stream.Collectors.toList;
+import static javax.tools.Diagnostic.Kind.ERROR;
 
 /**
  * Class responsible for discovering generator methods in a class declaration and initiating their transformation
@@ -22,6 +28,18 @@ final class ClassTransformer {
 
     private final ProcessingContext ctx;
 
+    /**
+     * The statically imported constructs of {@code jield.runtime.Generators} that are not shadowed by the methods of
+     * this class or its enclosing classes, see {@link GeneratorsCalls#qualifyCalls}.
+     */
+    private final Set<String> importedConstructs;
+
+    /**
+     * The initializers of the constants of this class and its enclosing classes, by their simple names and by their
+     * names qualified with the simple name of their class, see {@link GeneratorOptions}.
+     */
+    private final Map<String, JCExpression> constants;
+
     /**
      * {@code true} if the currently transformed class declaration is an interface.
      */
@@ -32,13 +50,36 @@ final class ClassTransformer {
      */
     private int generatorClassIndex;
 
-    ClassTransformer(JCClassDecl classDeclaration, ProcessingContext ctx) {
+    ClassTransformer(JCClassDecl classDeclaration, ProcessingContext ctx, Set<String> importedConstructs,
+                     Map<String, JCExpression> constants) {
         this.classDeclaration = Objects.requireNonNull(classDeclaration);
 
         this.ctx = Objects.requireNonNull(ctx);
 
+        this.importedConstructs = new HashSet<>(importedConstructs);
+
+        for (JCTree tree : classDeclaration.defs) {
+            if (tree instanceof JCMethodDecl) {
+                this.importedConstructs.remove(((JCMethodDecl) tree).getName().toString());
+            }
+        }
+
         this.isInterface = Kind.INTERFACE.equals(classDeclaration.getKind());
 
+        this.constants = new HashMap<>(constants);
+
+        for (JCTree tree : classDeclaration.defs) {
+            if (tree instanceof JCVariableDecl && isConstant((JCVariableDecl) tree)) {
+                final JCVariableDecl constant = (JCVariableDecl) tree;
+
+                final String name = constant.getName().toString();
+
+                this.constants.put(name, constant.getInitializer());
+
+                this.constants.put(classDeclaration.getSimpleName() + "." + name, constant.getInitializer());
+            }
+        }
+
         this.generatorClassIndex = 0;
     }
 
@@ -51,7 +92,8 @@ final class ClassTransformer {
     void performTransformation() {
         for (JCTree tree : classDeclaration.defs) {
             if (tree instanceof JCClassDecl) {
-                final ClassTransformer classTransformer = new ClassTransformer((JCClassDecl) tree, ctx);
+                final ClassTransformer classTransformer =
+                    new ClassTransformer((JCClassDecl) tree, ctx, importedConstructs, constants);
 
                 classTransformer.performTransformation();
             }
@@ -63,14 +105,128 @@ final class ClassTransformer {
                  * TODO: throw some exception to indicate that this method cannot be transformed
                  */
 
-                return;
+                continue;
+            }
+
+            GeneratorsCalls.qualifyCalls(method.getBody(), importedConstructs, ctx);
+
+            final GeneratorOptions options;
+
+            try {
+                options = GeneratorOptions.from(findGeneratorAnnotation(method), constants);
+            } catch (IllegalArgumentException e) {
+                ctx.messager.printMessage(ERROR, e.getMessage());
+
+                continue;
+            }
+
+            if (isReturnPrimitiveStream(method)
+                    && options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE) {
+                ctx.messager.printMessage(ERROR,
+                    "Generators returning primitive streams cannot use the TRAMPOLINE backend: " + method.getName());
+
+                continue;
+            }
+
+            if (isReturnAsyncGenerator(method) && (options.isParallel() || options.isPooled()
+                    || options.getPrefetch() > 0
+                    || options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE)) {
+                ctx.messager.printMessage(ERROR,
+                    "Async generators cannot be parallel, pooled, prefetching or use the TRAMPOLINE backend: "
+                        + method.getName());
+
+                continue;
+            }
+
+            if (isReturnCoroutine(method) && (options.isParallel() || options.isPooled()
+                    || options.getPrefetch() > 0
+                    || options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE)) {
+                ctx.messager.printMessage(ERROR,
+                    "Coroutines cannot be parallel, pooled, prefetching or use the TRAMPOLINE backend: "
+                        + method.getName());
+
+                continue;
+            }
+
+            if (GeneratorsCalls.containsYieldAll(method.getBody())
+                    && (isReturnPrimitiveStream(method) || isReturnAsyncGenerator(method) || isReturnCoroutine(method)
+                        || options.isParallel()
+                        || options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE)) {
+                ctx.messager.printMessage(ERROR,
+                    "Generators using yieldAll must return Stream and cannot be parallel or use the TRAMPOLINE "
+                        + "backend: " + method.getName());
+
+                continue;
+            }
+
+            if (GeneratorsCalls.containsYieldBlock(method.getBody())
+                    && options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE) {
+                ctx.messager.printMessage(ERROR,
+                    "Generators using yieldBlock cannot use the TRAMPOLINE backend: " + method.getName());
+
+                continue;
+            }
+
+            if (options.isCheckpointable() && (isReturnAsyncGenerator(method) || isReturnCoroutine(method)
+                    || options.isParallel() || options.isPooled() || options.getPrefetch() > 0
+                    || GeneratorsCalls.containsYieldAll(method.getBody())
+                    || options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE)) {
+                ctx.messager.printMessage(ERROR,
+                    "Checkpointable generators must return a stream and cannot be parallel, pooled, prefetching, use "
+                        + "yieldAll or use the TRAMPOLINE backend: " + method.getName());
+
+                continue;
+            }
+
+            if (options.isForkable() && (isReturnAsyncGenerator(method) || isReturnCoroutine(method)
+                    || options.isParallel() || options.isPooled() || options.getPrefetch() > 0
+                    || GeneratorsCalls.containsYieldAll(method.getBody())
+                    || options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE)) {
+                ctx.messager.printMessage(ERROR,
+                    "Forkable generators must return a stream and cannot be parallel, pooled, prefetching, use "
+                        + "yieldAll or use the TRAMPOLINE backend: " + method.getName());
+
+                continue;
+            }
+
+            if (options.isParallel() && options.isBackendSpecified() && options.getBackend() == Backend.TRAMPOLINE) {
+                ctx.messager.printMessage(ERROR,
+                    "Parallel generators cannot use the TRAMPOLINE backend: " + method.getName());
+
+                continue;
+            }
+
+            if (options.isParallel() && options.isPooled()) {
+                ctx.messager.printMessage(ERROR,
+                    "Parallel generators cannot be pooled: " + method.getName());
+
+                continue;
+            }
+
+            if (options.isParallel() && options.getPrefetch() > 0) {
+                ctx.messager.printMessage(ERROR,
+                    "Parallel generators cannot prefetch: " + method.getName());
+
+                continue;
+            }
+
+            Optional<ParallelLoop> parallelLoop = Optional.empty();
+
+            if (options.isParallel()) {
+                try {
+                    parallelLoop = Optional.of(ParallelLoop.of(method));
+                } catch (IllegalArgumentException e) {
+                    ctx.messager.printMessage(ERROR, e.getMessage());
+
+                    continue;
+                }
             }
 
             /*
              * Create a new nested class and add it to the definition list of the current class declaration.
              */
             final GeneratorTransformer transformer =
-                    new GeneratorTransformer(classDeclaration, method, ctx, generatorClassIndex);
+                    new GeneratorTransformer(classDeclaration, method, ctx, options, parallelLoop, generatorClassIndex);
 
             classDeclaration.defs = classDeclaration.defs.append(transformer.transform());
 
@@ -101,8 +257,10 @@ final class ClassTransformer {
      * Decides whether the specified generator method can be actually transformed.
      *
      * A method marked with the {@link jield.annotation.Generator} annotation must not be <b>abstract</b> and
-     * must have return type of {@link java.util.stream.Stream}. If the method is declared in an interface, then
-     * it must be a <b>default</b> method.
+     * must have return type of {@link java.util.stream.Stream}, {@link java.util.stream.IntStream},
+     * {@link java.util.stream.LongStream}, {@link java.util.stream.DoubleStream},
+     * {@link jield.runtime.AsyncGenerator} or {@link jield.runtime.Coroutine}. If the method is declared in an
+     * interface, then it must be a <b>default</b> method.
      * @param method the method to be checked
      * @return whether the method satisfies the requirements of the transformation
      */
@@ -116,6 +274,19 @@ final class ClassTransformer {
         return eligible;
     }
 
+    /**
+     * Checks if the field is a constant, that is a <b>static final</b> field with an initializer. Fields of interfaces
+     * are implicitly <b>static final</b>.
+     * @param field the field to be checked
+     * @return {@code true} if the field is a constant, {@code false} otherwise
+     */
+    private boolean isConstant(JCVariableDecl field) {
+        final Set<Modifier> flags = field.getModifiers().getFlags();
+
+        return field.getInitializer() != null
+            && (isInterface || flags.contains(Modifier.STATIC) && flags.contains(Modifier.FINAL));
+    }
+
     /**
      * Checks if the method is an <b>abstract</b> method.
      * @param method the method to be checked
@@ -135,16 +306,37 @@ final class ClassTransformer {
     }
 
     /**
-     * Checks if the method's return type is {@link java.util.stream.Stream} and it has a type parameter.
+     * Checks if the method's return type is {@link java.util.stream.Stream} and it has a type parameter, or it is
+     * one of the primitive streams.
      * @param method the method to be checked
      * @return whether the method's return type is correct
      */
     private boolean isReturnStream(JCMethodDecl method) {
+        final Optional<StreamShape> shape = returnShape(method);
 
+        return shape.isPresent()
+            && method.getReturnType().type.getTypeArguments().length() == shape.get().typeParameterCount();
+    }
 
-        final boolean isStream = Stream.class.getName().equals(method.getReturnType().type.tsym.toString());
+    /**
+     * Checks if the method's return type is one of the primitive streams.
+     * @param method the method to be checked
+     * @return {@code true} if the method returns a primitive stream, {@code false} otherwise
+     */
+    private boolean isReturnPrimitiveStream(JCMethodDecl method) {
+        return returnShape(method).map(StreamShape::isPrimitive).orElse(false);
+    }
 
-        return isStream && ((Type.ClassType) method.getReturnType().type).typarams_field.length() == 1;
+    private boolean isReturnAsyncGenerator(JCMethodDecl method) {
+        return returnShape(method).map(StreamShape::isAsync).orElse(false);
+    }
+
+    private boolean isReturnCoroutine(JCMethodDecl method) {
+        return returnShape(method).map(StreamShape::isCoroutine).orElse(false);
+    }
+
+    private Optional<StreamShape> returnShape(JCMethodDecl method) {
+        return StreamShape.of(method.getReturnType().type.tsym.toString());
     }
 
     /**
@@ -172,6 +364,19 @@ final class ClassTransformer {
                 .anyMatch(this::isGeneratorAnnotation);
     }
 
+    /**
+     * Returns the {@link jield.annotation.Generator} annotation of a generator method.
+     * @param method the method to be inspected
+     * @return the annotation
+     */
+    private JCAnnotation findGeneratorAnnotation(JCMethodDecl method) {
+        return method.getModifiers().getAnnotations()
+                .stream()
+                .filter(this::isGeneratorAnnotation)
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+    }
+
     /**
      * Checks whether the specified annotation is an instance of {@link jield.annotation.Generator}.
      * @param annotation the annotation to be inspected
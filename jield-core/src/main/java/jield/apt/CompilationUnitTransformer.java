@@ -7,6 +7,7 @@ import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
 import com.sun.tools.javac.tree.JCTree.JCIdent;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -54,7 +55,8 @@ final class CompilationUnitTransformer {
      * @param classDeclaration the class declaration to be inspected and transformed
      */
     private void transformClassDeclaration(JCClassDecl classDeclaration) {
-        final ClassTransformer classTransformer = new ClassTransformer(classDeclaration, ctx);
+        final ClassTransformer classTransformer = new ClassTransformer(classDeclaration, ctx,
+            GeneratorsCalls.staticallyImported(compilationUnit), Collections.emptyMap());
 
         classTransformer.performTransformation();
     }
@@ -1,6 +1,7 @@
 package jield.apt;
 
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
@@ -8,6 +9,11 @@ import static java.util.Collections.emptyMap;
 final class Continuation {
     static final String NO_LABEL = null;
 
+    /**
+     * The region of the code outside of any {@code try} statement lowered into the states.
+     */
+    static final int NO_REGION = 0;
+
     private final Map<String, Integer> breakMap;
 
     private final Map<String, Integer> continueMap;
@@ -18,12 +24,14 @@ final class Continuation {
 
     private final int nextCont;
 
+    private final int region;
+
     static Continuation empty() {
-        return new Continuation(emptyMap(), emptyMap(), emptyMap(), emptyList(), -1);
+        return new Continuation(emptyMap(), emptyMap(), emptyMap(), emptyList(), -1, NO_REGION);
     }
 
     private Continuation(Map<String, Integer> breakMap, Map<String, Integer> continueMap,
-                         Map<String, String> renamingMap, List<String> labels, int nextCont) {
+                         Map<String, String> renamingMap, List<String> labels, int nextCont, int region) {
         this.breakMap = new HashMap<>(breakMap);
 
         this.continueMap = new HashMap<>(continueMap);
@@ -33,14 +41,16 @@ final class Continuation {
         this.labels = new ArrayList<>(labels);
 
         this.nextCont = nextCont;
+
+        this.region = region;
     }
 
     Continuation nextCont(int cont) {
-        return new Continuation(breakMap, continueMap, renamingMap, labels, cont);
+        return new Continuation(breakMap, continueMap, renamingMap, labels, cont, region);
     }
 
     Continuation breakCont(String label, int cont) {
-        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, cont);
+        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, cont, region);
 
         c.breakMap.put(label, cont);
 
@@ -48,7 +58,7 @@ final class Continuation {
     }
 
     Continuation continueCont(String label, int cont) {
-        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, cont);
+        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, cont, region);
 
         c.continueMap.put(label, cont);
 
@@ -56,7 +66,7 @@ final class Continuation {
     }
 
     Continuation rename(String from, String to) {
-        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, nextCont);
+        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, nextCont, region);
 
         c.renamingMap.put(from, to);
 
@@ -64,7 +74,7 @@ final class Continuation {
     }
 
     Continuation label(String l) {
-        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, nextCont);
+        final Continuation c = new Continuation(breakMap, continueMap, renamingMap, labels, nextCont, region);
 
         c.labels.add(l);
 
@@ -72,7 +82,36 @@ final class Continuation {
     }
 
     Continuation clearLabels() {
-        return new Continuation(breakMap, continueMap, renamingMap, emptyList(), nextCont);
+        return new Continuation(breakMap, continueMap, renamingMap, emptyList(), nextCont, region);
+    }
+
+    /**
+     * Enters the body of a {@code try} statement. Every jump leaving the body, including its normal completion, is
+     * redirected to the state returned for its original target, which runs the cleanup of the statement before
+     * continuing at the target.
+     * @param region the region of the body
+     * @param exit returns the state leaving the body towards the specified target
+     * @return the continuation of the body
+     */
+    Continuation enter(int region, IntUnaryOperator exit) {
+        final Continuation c =
+            new Continuation(emptyMap(), emptyMap(), renamingMap, labels, exit.applyAsInt(nextCont), region);
+
+        breakMap.forEach((label, cont) -> c.breakMap.put(label, exit.applyAsInt(cont)));
+
+        continueMap.forEach((label, cont) -> c.continueMap.put(label, exit.applyAsInt(cont)));
+
+        return c;
+    }
+
+    /**
+     * Redirects every jump leaving a statement, including its normal completion, to the state returned for its original
+     * target, staying in the current region.
+     * @param exit returns the state leaving the statement towards the specified target
+     * @return the continuation of the statement
+     */
+    Continuation redirect(IntUnaryOperator exit) {
+        return enter(region, exit);
     }
 
     int getNextCont() {
@@ -87,10 +126,28 @@ final class Continuation {
         return continueMap.get(label);
     }
 
+    /**
+     * Checks whether a break with the specified label, {@code null} for unlabelled breaks, has a target.
+     */
+    boolean hasBreakCont(String label) {
+        return breakMap.containsKey(label);
+    }
+
+    /**
+     * Checks whether a continue with the specified label, {@code null} for unlabelled continues, has a target.
+     */
+    boolean hasContinueCont(String label) {
+        return continueMap.containsKey(label);
+    }
+
     List<String> getLabels() {
         return labels;
     }
 
+    int getRegion() {
+        return region;
+    }
+
     String nameOf(String variable) {
         return renamingMap.getOrDefault(variable, variable);
     }
@@ -0,0 +1,363 @@
+package jield.apt;
+
+import com.sun.tools.javac.tree.JCTree.JCAnnotation;
+import com.sun.tools.javac.tree.JCTree.JCAssign;
+import com.sun.tools.javac.tree.JCTree.JCBinary;
+import com.sun.tools.javac.tree.JCTree.JCConditional;
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.JCTree.JCLiteral;
+import com.sun.tools.javac.tree.JCTree.JCParens;
+import com.sun.tools.javac.tree.JCTree.JCUnary;
+import com.sun.tools.javac.tree.JCTree.Tag;
+import jield.annotation.Generator.Backend;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The attributes of a {@link jield.annotation.Generator} annotation. Annotation processing happens before attribution,
+ * so the values are read from the syntax tree of the annotation instead of the annotation mirror.
+ *
+ * <p>
+ * The {@code boolean} and {@code int} attributes are evaluated as constant expressions of literals, operators and the
+ * constants of the classes enclosing the generator method, referenced by their simple name or qualified by the simple
+ * name of their class. Constants of other classes are not known before attribution, so they cannot be used.
+ * </p>
+ */
+final class GeneratorOptions {
+    private static final String BACKEND_ATTRIBUTE = "backend";
+
+    private static final String PARALLEL_ATTRIBUTE = "parallel";
+
+    private static final String POOLED_ATTRIBUTE = "pooled";
+
+    private static final String PREFETCH_ATTRIBUTE = "prefetch";
+
+    /*
+     * The largest capacity the runtime prefetcher accepts, since its ring buffer is sized to the next power of two.
+     */
+    private static final int MAX_PREFETCH = 1 << 30;
+
+    private static final String CHECKPOINTABLE_ATTRIBUTE = "checkpointable";
+
+    private static final String FORKABLE_ATTRIBUTE = "forkable";
+
+    private final Backend backend;
+
+    private final boolean backendSpecified;
+
+    private final boolean parallel;
+
+    private final boolean pooled;
+
+    private final int prefetch;
+
+    private final boolean checkpointable;
+
+    private final boolean forkable;
+
+    private GeneratorOptions(Backend backend, boolean backendSpecified, boolean parallel, boolean pooled,
+                             int prefetch, boolean checkpointable, boolean forkable) {
+        this.backend = Objects.requireNonNull(backend);
+
+        this.backendSpecified = backendSpecified;
+
+        this.parallel = parallel;
+
+        this.pooled = pooled;
+
+        this.prefetch = prefetch;
+
+        this.checkpointable = checkpointable;
+
+        this.forkable = forkable;
+    }
+
+    /**
+     * Reads the attributes of the specified annotation. Attributes not present get their default values.
+     * @param annotation the {@code Generator} annotation
+     * @param constants the initializers of the constants of the enclosing classes, by their simple and qualified names
+     * @return the attributes
+     * @throws IllegalArgumentException if an attribute is unknown or has an unsupported value
+     */
+    static GeneratorOptions from(JCAnnotation annotation, Map<String, JCExpression> constants) {
+        Backend backend = Backend.TRAMPOLINE;
+
+        boolean backendSpecified = false;
+
+        boolean parallel = false;
+
+        boolean pooled = false;
+
+        int prefetch = 0;
+
+        boolean checkpointable = false;
+
+        boolean forkable = false;
+
+        for (JCExpression arg : annotation.getArguments()) {
+            final JCAssign assign = (JCAssign) arg;
+
+            final String attribute = simpleName(assign.lhs);
+
+            if (BACKEND_ATTRIBUTE.equals(attribute)) {
+                backend = Backend.valueOf(simpleName(assign.rhs));
+
+                backendSpecified = true;
+            } else if (PARALLEL_ATTRIBUTE.equals(attribute)) {
+                parallel = booleanValue(assign.rhs, constants);
+            } else if (POOLED_ATTRIBUTE.equals(attribute)) {
+                pooled = booleanValue(assign.rhs, constants);
+            } else if (PREFETCH_ATTRIBUTE.equals(attribute)) {
+                prefetch = intValue(assign.rhs, constants);
+
+                if (prefetch < 0) {
+                    throw new IllegalArgumentException("The prefetch capacity must not be negative: " + prefetch);
+                }
+
+                if (prefetch > MAX_PREFETCH) {
+                    throw new IllegalArgumentException("The prefetch capacity must not exceed " + MAX_PREFETCH + ": "
+                            + prefetch);
+                }
+            } else if (CHECKPOINTABLE_ATTRIBUTE.equals(attribute)) {
+                checkpointable = booleanValue(assign.rhs, constants);
+            } else if (FORKABLE_ATTRIBUTE.equals(attribute)) {
+                forkable = booleanValue(assign.rhs, constants);
+            } else {
+                throw new IllegalArgumentException("Unknown generator attribute: " + attribute);
+            }
+        }
+
+        return new GeneratorOptions(backend, backendSpecified, parallel, pooled, prefetch, checkpointable, forkable);
+    }
+
+    /**
+     * Returns the last identifier of a possibly qualified name, for example {@code SWITCH} for
+     * {@code Generator.Backend.SWITCH}.
+     * @param expression the name
+     * @return the simple name
+     */
+    private static String simpleName(JCExpression expression) {
+        if (expression instanceof JCFieldAccess) {
+            return ((JCFieldAccess) expression).getIdentifier().toString();
+        } else if (expression instanceof JCIdent) {
+            return ((JCIdent) expression).getName().toString();
+        }
+
+        throw new IllegalArgumentException("Generator backends must be enum constants: " + expression);
+    }
+
+    private static boolean booleanValue(JCExpression expression, Map<String, JCExpression> constants) {
+        final Object value = evaluate(expression, constants, new HashSet<>());
+
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+
+        throw new IllegalArgumentException("Generator attribute must be a boolean constant: " + expression);
+    }
+
+    private static int intValue(JCExpression expression, Map<String, JCExpression> constants) {
+        final Object value = evaluate(expression, constants, new HashSet<>());
+
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+
+        throw new IllegalArgumentException("Generator attribute must be an int constant: " + expression);
+    }
+
+    /**
+     * Evaluates a constant expression of {@code boolean} and {@code int} values.
+     * @param expression the expression
+     * @param constants the initializers of the constants that can be referenced
+     * @param resolving the names of the constants being resolved, which must not be referenced again
+     * @return a {@code Boolean} or an {@code Integer}
+     * @throws IllegalArgumentException if the expression is not a supported constant expression
+     */
+    private static Object evaluate(JCExpression expression, Map<String, JCExpression> constants,
+                                   Set<String> resolving) {
+        if (expression instanceof JCLiteral) {
+            final Object value = ((JCLiteral) expression).getValue();
+
+            if (value instanceof Boolean || value instanceof Integer) {
+                return value;
+            }
+        } else if (expression instanceof JCParens) {
+            return evaluate(((JCParens) expression).getExpression(), constants, resolving);
+        } else if (expression instanceof JCIdent || expression instanceof JCFieldAccess) {
+            final String name = expression.toString();
+
+            final JCExpression initializer = constants.get(name);
+
+            if (initializer != null && resolving.add(name)) {
+                final Object value = evaluate(initializer, constants, resolving);
+
+                resolving.remove(name);
+
+                return value;
+            }
+        } else if (expression instanceof JCConditional) {
+            final JCConditional conditional = (JCConditional) expression;
+
+            final Object condition = evaluate(conditional.getCondition(), constants, resolving);
+
+            if (condition instanceof Boolean) {
+                final JCExpression chosen =
+                    (Boolean) condition ? conditional.getTrueExpression() : conditional.getFalseExpression();
+
+                return evaluate(chosen, constants, resolving);
+            }
+        } else if (expression instanceof JCUnary) {
+            final Object operand = evaluate(((JCUnary) expression).getExpression(), constants, resolving);
+
+            final Object value = applyUnary((JCUnary) expression, operand);
+
+            if (value != null) {
+                return value;
+            }
+        } else if (expression instanceof JCBinary) {
+            final JCBinary binary = (JCBinary) expression;
+
+            final Object value = applyBinary(binary, evaluate(binary.getLeftOperand(), constants, resolving),
+                evaluate(binary.getRightOperand(), constants, resolving));
+
+            if (value != null) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Generator attributes must be constant expressions of literals and the "
+            + "constants of the enclosing classes: " + expression);
+    }
+
+    private static Object applyUnary(JCUnary unary, Object operand) {
+        if (operand instanceof Boolean) {
+            return unary.getTag() == Tag.NOT ? !(Boolean) operand : null;
+        }
+
+        final int value = (Integer) operand;
+
+        switch (unary.getTag()) {
+            case POS:
+                return value;
+            case NEG:
+                return -value;
+            case COMPL:
+                return ~value;
+            default:
+                return null;
+        }
+    }
+
+    private static Object applyBinary(JCBinary binary, Object left, Object right) {
+        if (left instanceof Boolean && right instanceof Boolean) {
+            final boolean l = (Boolean) left;
+
+            final boolean r = (Boolean) right;
+
+            switch (binary.getTag()) {
+                case AND:
+                case BITAND:
+                    return l & r;
+                case OR:
+                case BITOR:
+                    return l | r;
+                case BITXOR:
+                case NE:
+                    return l ^ r;
+                case EQ:
+                    return l == r;
+                default:
+                    return null;
+            }
+        }
+
+        if (!(left instanceof Integer && right instanceof Integer)) {
+            return null;
+        }
+
+        final int l = (Integer) left;
+
+        final int r = (Integer) right;
+
+        switch (binary.getTag()) {
+            case PLUS:
+                return l + r;
+            case MINUS:
+                return l - r;
+            case MUL:
+                return l * r;
+            case DIV:
+                return r == 0 ? null : l / r;
+            case MOD:
+                return r == 0 ? null : l % r;
+            case SL:
+                return l << r;
+            case SR:
+                return l >> r;
+            case USR:
+                return l >>> r;
+            case BITAND:
+                return l & r;
+            case BITOR:
+                return l | r;
+            case BITXOR:
+                return l ^ r;
+            case EQ:
+                return l == r;
+            case NE:
+                return l != r;
+            case LT:
+                return l < r;
+            case GT:
+                return l > r;
+            case LE:
+                return l <= r;
+            case GE:
+                return l >= r;
+            default:
+                return null;
+        }
+    }
+
+    Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Checks whether the backend was set explicitly instead of being left at its default value.
+     * @return {@code true} if the annotation has a {@code backend} attribute
+     */
+    boolean isBackendSpecified() {
+        return backendSpecified;
+    }
+
+    boolean isParallel() {
+        return parallel;
+    }
+
+    boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Returns the number of values the generator may produce ahead of its consumer.
+     * @return the capacity of the prefetch buffer, zero if the generator does not prefetch
+     */
+    int getPrefetch() {
+        return prefetch;
+    }
+
+    boolean isCheckpointable() {
+        return checkpointable;
+    }
+
+    boolean isForkable() {
+        return forkable;
+    }
+}
@@ -5,17 +5,27 @@ import static javax.lang.model.element.Modifier.STATIC;
 import static jield.apt.Continuation.NO_LABEL;
 
 import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.tools.javac.code.BoundKind;
 import com.sun.tools.javac.code.Flags;
-import com.sun.tools.javac.code.Symbol;
-import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.TypeTag;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.*;
+import com.sun.tools.javac.tree.TreeCopier;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.tree.TreeTranslator;
 import com.sun.tools.javac.util.List;
 import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Name;
+import jield.annotation.Generator.Backend;
 
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.tools.Diagnostic;
 
 /*
  * Class that does the heavy-lifting of the transformation process. Takes a method and its enclosing class
@@ -24,202 +34,2194 @@ import java.util.*;
 final class GeneratorTransformer {
     private static final String CLASS_NAME_PREFIX = "$GeneratorImpl_";
 
-    private static final String CONTINUATION_PARAM = "$_contParam";
+    private static final String BOUNCE_FIELD = "$_bounce";
+
+    private static final String CONTINUATION_FIELD_SUFFIX = "k";
+
+    private static final String STATE_FIELD = "$_state";
+
+    private static final String CURRENT_FIELD = "$_current";
+
+    private static final String AWAITING_FIELD = "$_awaiting";
+
+    private static final String RECEIVING_FIELD = "$_receiving";
+
+    private static final String INPUT_FIELD = "$_input";
+
+    private static final String SENT_PARAMETER = "$_sent";
+
+    private static final String OUT_PARAMETER = "$_out";
+
+    private static final String IN_PARAMETER = "$_in";
+
+    private static final String DELEGATE_FIELD = "$_delegate";
+
+    private static final String BLOCK_FIELD = "$_block";
+
+    private static final String BLOCK_INDEX_FIELD = "$_blockIndex";
+
+    private static final String VIEW_VARIABLE = "$_view";
+
+    private static final String SIZE_VARIABLE = "$_size";
+
+    private static final String ELEMENT_VARIABLE = "$_element";
+
+    private static final String LOOP_LABEL = "$_loop";
+
+    private static final String SINK_PARAMETER = "$_sink";
+
+    private static final String BUFFER_PARAMETER = "$_buffer";
+
+    private static final String OFFSET_PARAMETER = "$_offset";
+
+    private static final String MAX_PARAMETER = "$_max";
+
+    private static final String COUNT_VARIABLE = "$_count";
+
+    private static final String BOUND_FIELD = "$_bound";
+
+    private static final String SOURCE_FIELD = "$_source";
+
+    private static final String ORIGIN_FIELD = "$_origin";
+
+    private static final String FENCE_FIELD = "$_fence";
+
+    private static final String INDEX_VARIABLE = "$_index";
+
+    private static final String BIND_METHOD = "$_bind";
+
+    private static final String SLICE_ORIGIN_PARAMETER = "$_sliceOrigin";
+
+    private static final String SLICE_FENCE_PARAMETER = "$_sliceFence";
+
+    private static final String GENERATOR_VARIABLE = "$generator";
+
+    private static final String FINALLY_FIELD = "$_finally";
+
+    private static final String THROWN_VARIABLE = "$_thrown";
+
+    private static final String SUPPRESSED_VARIABLE = "$_suppressed";
+
+    private static final String UNWIND_METHOD = "$_unwind";
+
+    private static final String CLEANUP_METHOD = "$_cleanup";
+
+    private static final long NO_MODIFIERS = 0L;
+
+    private final String methodNamePrefix;
+
+    private final JCClassDecl enclosingClass;
+
+    private final JCMethodDecl originalMethod;
+
+    private final ProcessingContext ctx;
+
+    private final GeneratorOptions options;
+
+    private final StreamShape shape;
+
+    /**
+     * The loop a parallel generator is split along, empty for sequential generators.
+     */
+    private final Optional<ParallelLoop> parallelLoop;
+
+    /**
+     * The backend actually used. Primitive generators are always emitted as state machines, because the {@code Bounce}
+     * register of the trampoline holds references. Parallel generators are state machines as well, so that they can
+     * be sliced. Async generators and coroutines suspend their state machines, and delegating generators hand them
+     * over. Generators yielding blocks are state machines too, so that push and batch mode can hand the blocks over in
+     * a single loop, and so are checkpointable and forkable generators, whose position is the state field.
+     * Generators yielding inside try statements run the cleanup of the statements from their dispatch loops.
+     */
+    private final Backend backend;
+
+    /**
+     * {@code true} if the generator delegates to other streams through {@code yieldAll}. The values of those streams
+     * are produced by the generator of the stream instead of this state machine, see
+     * {@link jield.runtime.DelegatingStateMachine}.
+     */
+    private final boolean delegating;
+
+    private final String className;
+
+    private final Map<Integer, java.util.List<JCStatement>> states;
+
+    /**
+     * The placeholder statements standing for transitions between states. Compared by identity, because the
+     * placeholders are {@code return} statements that must not be confused with other returns in the states (for
+     * example the ones located in lambdas).
+     */
+    private final Map<JCReturn, Transition> transitions;
+
+    private final Map<String, JCVariableDecl> fields;
+
+    /**
+     * The names of the variables kept as locals of their state, see {@link #confinedVariables}.
+     */
+    private final Set<String> locals;
+
+    /**
+     * The cleanup code of the try statements lowered into the states, by the region of their body, see
+     * {@link #transformTry}.
+     */
+    private final Map<Integer, JCStatement> cleanups;
+
+    /**
+     * The cursor fields of the enhanced for loops, released when the generator is closed, see
+     * {@link #transformEnhancedForLoop}.
+     */
+    private final java.util.List<String> cursors;
+
+    private final java.util.List<JCTree> classDefs;
+
+    private final JCExpression generatedType;
+
+    /**
+     * The version of the generator method written into checkpoints, derived from its source.
+     */
+    private final long version;
+
+    private final boolean isStaticContext;
+
+    private String selfName;
+
+    private int maxState;
+
+    private int endState;
+
+    GeneratorTransformer(JCClassDecl enclosingClass, JCMethodDecl originalMethod, ProcessingContext ctx,
+                         GeneratorOptions options, Optional<ParallelLoop> parallelLoop, int index) {
+        this.enclosingClass = enclosingClass;
+
+        this.originalMethod = originalMethod;
+
+        this.ctx = ctx;
+
+        this.options = options;
+
+        this.parallelLoop = parallelLoop;
+
+        this.methodNamePrefix = generateMethodNamePrefix();
+
+        this.className = generateClassName(index);
+
+        this.version = fingerprint(originalMethod.toString());
+
+        this.states = new HashMap<>();
+
+        this.transitions = new IdentityHashMap<>();
+
+        this.fields = new HashMap<>();
+
+        this.locals = new HashSet<>();
+
+        this.cleanups = new LinkedHashMap<>();
+
+        this.cursors = new ArrayList<>();
+
+        this.classDefs = new ArrayList<>();
+
+        this.isStaticContext =
+                originalMethod.getModifiers().getFlags().contains(STATIC) || INTERFACE.equals(enclosingClass.getKind());
+
+        this.maxState = -1;
+
+        this.delegating = GeneratorsCalls.containsYieldAll(originalMethod.getBody());
+
+        /*
+         * Here we can safely assume that the return type is a supported stream and a Stream has exactly
+         * one type parameter because of previous checks.
+         */
+        this.shape = StreamShape.of(originalMethod.getReturnType().type.tsym.toString()).get();
+
+        if (shape.isPrimitive()) {
+            this.generatedType = ctx.treeMaker.TypeIdent(shape.getPrimitiveTag());
+
+            this.backend = Backend.SWITCH;
+        } else {
+            this.generatedType =
+                copy(((JCTypeApply) originalMethod.getReturnType()).arguments.get(shape.generatedTypeIndex()));
+
+            final boolean stateMachineOnly = parallelLoop.isPresent() || shape.isAsync() || shape.isCoroutine()
+                || delegating || options.isCheckpointable() || options.isForkable()
+                || GeneratorsCalls.containsYieldBlock(originalMethod.getBody())
+                || containsLoweredTry(originalMethod.getBody());
+
+            this.backend = stateMachineOnly ? Backend.SWITCH : options.getBackend();
+        }
+    }
+
+    private String generateMethodNamePrefix() {
+        Random rand = new Random();
+
+        return "$" + originalMethod.getName() + "_" + Integer.toString(rand.nextInt()) + "_";
+    }
+
+    private String generateClassName(int index) {
+        Random rand = new Random();
+
+        String name = CLASS_NAME_PREFIX + Integer.toString(index);
+
+        name += originalMethod.getName().toString();
+
+        name += Integer.toString(rand.nextInt());
+
+        return name;
+    }
+
+    /**
+     * Performs the transformation on the method passed to the constructor. Destructive in the sense that the original implementation if the
+     * method will not be preserved but rewritten to appropriate calls to the new nested generator class.
+     * @return a new class that contains the generator logic
+     */
+    JCClassDecl transform() {
+        final int startState = newState();
+
+        this.endState = newState();
+
+        if (!isStaticContext) {
+            generateSelfField();
+        }
+
+        generateParameterFields();
+
+        final JCBlock body = parallelLoop.map(this::lowerParallelLoop).orElse(originalMethod.getBody());
+
+        transformBlock(body, startState, Continuation.empty().nextCont(endState).rename("this", this.selfName));
+
+        finishEndState();
+
+        checkConstructPlacement();
+
+        new StateGraphOptimizer(ctx.treeMaker, states, transitions, startState, endState).optimize();
+
+        return createClassDeclaration();
+    }
+
+    /**
+     * Reports the constructs of {@code Generators} that were not transformed, because they are nested in other
+     * expressions or statements instead of being placed where the transformation expects them.
+     */
+    private void checkConstructPlacement() {
+        if (containsUntransformed(GeneratorsCalls::containsAwait)) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "await must be a statement of its own, the initializer of a local variable or the right-hand "
+                    + "side of an assignment: " + originalMethod.getName());
+        }
+
+        if (containsUntransformed(GeneratorsCalls::containsReceive)) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "receive must be a statement of its own, the initializer of a local variable or the right-hand "
+                    + "side of an assignment: " + originalMethod.getName());
+        }
+
+        if (containsUntransformed(GeneratorsCalls::containsYieldAll)) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "yieldAll must be the value of a return statement: " + originalMethod.getName());
+        }
+
+        if (containsUntransformed(GeneratorsCalls::containsYieldBlock)) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "yieldBlock must be the value of a return statement: " + originalMethod.getName());
+        }
+    }
+
+    private boolean containsUntransformed(Predicate<JCTree> finder) {
+        /*
+         * Yielded values are held by the transitions, not by their placeholders.
+         */
+        return states.values().stream()
+                .flatMap(java.util.List::stream)
+                .anyMatch(finder)
+            || transitions.values().stream()
+                .filter(t -> !t.isAwait() && !t.isDelegate() && !t.isBlock())
+                .anyMatch(t -> t.getValue().map(finder::test).orElse(false));
+    }
+
+    private void generateSelfField() {
+        Random rand = new Random();
+
+        this.selfName = "$" + enclosingClass.getSimpleName().toString() + Integer.toString(rand.nextInt());
+
+        JCVariableDecl decl =
+            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+                                 ctx.name(this.selfName), ctx.treeMaker.Ident(enclosingClass.name),
+                                 null);
+
+        fields.put(this.selfName, decl);
+    }
+
+    /**
+     * Fills the end state with a transition that stops the generator.
+     */
+    private void finishEndState() {
+        states.get(endState).add(transition(Transition.halt()));
+    }
+
+    /**
+     * Creates the field holding the {@code Bounce} register every state overwrites and returns:
+     * <pre>
+     * {@code
+     *     private final Bounce<T> $_bounce = new Bounce<>();
+     * }
+     * </pre>
+     * @return the field declaration
+     */
+    private JCVariableDecl createBounceField() {
+        final JCNewClass instantiation = ctx.treeMaker.NewClass(null,
+            List.nil(),
+            ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.BOUNCE), List.nil()),
+            List.nil(),
+            null);
+
+        return ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE | Flags.FINAL),
+            ctx.name(BOUNCE_FIELD),
+            ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.BOUNCE), List.of(generatedType)),
+            instantiation);
+    }
+
+    /**
+     * Creates the field caching the continuation of the specified state. Transitions refer to these fields instead of
+     * creating new lambdas, so that once the generator is instantiated, stepping it does not allocate.
+     * <pre>
+     * {@code
+     *     private final Thunk<Bounce<T>> $k3 = this::$3;
+     * }
+     * </pre>
+     * @param state the state the continuation should evaluate
+     * @return the field declaration
+     */
+    private JCVariableDecl createContinuationField(int state) {
+        final JCExpression stateRef =
+            ctx.treeMaker
+                .Reference(MemberReferenceTree.ReferenceMode.INVOKE, methodName(state), ctx.treeMaker.Ident(ctx.names._this), List.nil());
+
+        final JCExpression bounceType =
+            ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.BOUNCE), List.of(generatedType));
+
+        return ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE | Flags.FINAL),
+            continuationName(state),
+            ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.THUNK), List.of(bounceType)),
+            stateRef);
+    }
+
+    /**
+     * Creates a qualified reference to a class in the {@code jield.runtime} package.
+     * @param identifier the simple name of the class
+     * @return the qualified reference
+     */
+    private JCFieldAccess runtimeAccess(String identifier) {
+        final JCIdent jieldPackage =
+                ctx.treeMaker.Ident(ctx.names.fromString(Identifiers.JIELD));
+
+        final JCFieldAccess runtimeAccess =
+                ctx.treeMaker.Select(jieldPackage, ctx.names.fromString(Identifiers.RUNTIME));
+
+        return ctx.treeMaker.Select(runtimeAccess, ctx.names.fromString(identifier));
+    }
+
+    /**
+     * Creates a new class declaration holding the state methods and fields for parameters and local variables.
+     * @return the generated class declaration
+     */
+    private JCClassDecl createClassDeclaration() {
+        long flags = Flags.PRIVATE | Flags.FINAL;
+
+        /*
+         * If the original method was static then the generated class must be a nested static class too. The same
+         * applied if the transformed method was located in an interface. In that case we have a default method which
+         * is implicitly static.
+         */
+        if (isStaticContext) {
+            flags |= Flags.STATIC;
+        }
+
+        final JCModifiers mods = ctx.treeMaker.Modifiers(flags);
+
+        final ListBuffer<JCTree> defs = new ListBuffer<>();
+
+        defs.addAll(fields.values());
+
+        List<JCExpression> implementing;
+
+        if (backend == Backend.SWITCH) {
+            createSwitchMembers(defs);
+
+            final JCExpression stateMachine;
+
+            if (shape.isPrimitive()) {
+                stateMachine = ctx.treeMaker.Select(runtimeAccess(Identifiers.STATE_MACHINE),
+                    ctx.name(shape.getStateMachineClass()));
+            } else if (shape.isAsync()) {
+                stateMachine =
+                    ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.ASYNC_STATE_MACHINE), List.of(generatedType));
+            } else if (shape.isCoroutine()) {
+                stateMachine = ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.COROUTINE_STATE_MACHINE),
+                    List.of(inputType(), generatedType));
+            } else if (delegating) {
+                stateMachine = ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.DELEGATING_STATE_MACHINE),
+                    List.of(generatedType));
+            } else {
+                stateMachine =
+                    ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.STATE_MACHINE), List.of(generatedType));
+            }
+
+            if (parallelLoop.isPresent()) {
+                implementing = List.of(stateMachine,
+                    ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.SPLITTABLE), List.of(generatorClassType())));
+            } else {
+                implementing = List.of(stateMachine);
+            }
+
+            if (!cleanups.isEmpty() || !cursors.isEmpty()) {
+                implementing = implementing.append(runtimeAccess(Identifiers.GUARDED));
+            }
+        } else {
+            createTrampolineMembers(defs);
+
+            /*
+             * The trampoline closes the instance, see createStreamMethod.
+             */
+            implementing = cursors.isEmpty() ? List.nil() : List.of(ctx.treeMaker.Select(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.LANG)),
+                ctx.name(Identifiers.AUTO_CLOSEABLE)));
+        }
+
+        if (options.isPooled()) {
+            defs.add(createRecycleMethod());
+
+            implementing = implementing.append(runtimeAccess(Identifiers.RECYCLABLE));
+        }
+
+        if (options.isCheckpointable()) {
+            defs.add(createSaveMethod());
+
+            defs.add(createRestoreMethod());
+
+            implementing = implementing.append(runtimeAccess(Identifiers.CHECKPOINTABLE));
+        }
+
+        if (options.isForkable()) {
+            defs.add(createForkMethod());
+
+            implementing = implementing.append(
+                ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.FORKABLE), List.of(generatorClassType())));
+        }
+
+        defs.addAll(classDefs);
+
+        rewriteOriginalMethod();
+
+        return ctx.treeMaker.ClassDef(mods, ctx.name(className),
+            copy(originalMethod.getTypeParameters()), null, implementing, defs.toList());
+    }
+
+    /**
+     * Creates the members of a generator class that chains its states through {@code Bounce} objects. Every state
+     * becomes a separate method and every transition overwrites the {@code Bounce} register with the cached
+     * continuation of its target:
+     * <pre>
+     * {@code
+     *     return $_bounce.next($k3, value);
+     * }
+     * </pre>
+     * @param defs the list the members should be added to
+     */
+    private void createTrampolineMembers(ListBuffer<JCTree> defs) {
+        for (Map.Entry<JCReturn, Transition> entry : transitions.entrySet()) {
+            entry.getKey().expr = lowerTrampolineTransition(entry.getValue());
+        }
+
+        defs.add(createBounceField());
+
+        for (Integer state : states.keySet()) {
+            defs.add(createContinuationField(state));
+        }
+
+        defs.add(createStreamMethod(ctx.treeMaker.Select(runtimeAccess(Identifiers.BASE_GENERATOR),
+            ctx.name(Identifiers.STARTING_AT_METHOD)), ctx.treeMaker.Ident(continuationName(0)),
+            Identifiers.STREAM_METHOD));
+
+        if (!cursors.isEmpty()) {
+            createCleanupMembers(defs);
+        }
+
+        for (Map.Entry<Integer, java.util.List<JCStatement>> state : states.entrySet()) {
+            defs.add(stateIntoMethod(state.getKey(), state.getValue()));
+        }
+    }
+
+    private JCExpression lowerTrampolineTransition(Transition transition) {
+        final JCExpression register = ctx.treeMaker.Ident(ctx.name(BOUNCE_FIELD));
+
+        if (transition.isHalt()) {
+            final JCExpression selectHalt = ctx.treeMaker.Select(register, ctx.name(Identifiers.HALT_METHOD));
+
+            return ctx.treeMaker.App(selectHalt.setType(Type.noType), List.nil());
+        }
+
+        final JCExpression continuation = ctx.treeMaker.Ident(continuationName(transition.getTarget()));
+
+        final List<JCExpression> bounceParams = transition.getValue()
+            .map(value -> List.of(continuation, value))
+            .orElse(List.of(continuation));
+
+        final JCFieldAccess nextAccess = ctx.treeMaker.Select(register, ctx.name(Identifiers.NEXT_METHOD));
+
+        return ctx.treeMaker.App(nextAccess.setType(Type.noType), bounceParams);
+    }
+
+    /**
+     * Creates the members of a generator class that implements {@code StateMachine}. The states become the cases of a
+     * single {@code step()} method and transitions become assignments to the state field:
+     * <pre>
+     * {@code
+     *     public boolean step() {
+     *         $_loop:
+     *         while (true) {
+     *             switch ($_state) {
+     *                 case 0: {
+     *                     // jump
+     *                     $_state = 3;
+     *                     continue $_loop;
+     *                 }
+     *                 case 3: {
+     *                     // yield
+     *                     $_current = value;
+     *                     $_state = 4;
+     *                     return true;
+     *                 }
+     *                 case 1: {
+     *                     // halt
+     *                     $_state = 1;
+     *                     return false;
+     *                 }
+     *             }
+     *         }
+     *     }
+     * }
+     * </pre>
+     * Besides {@code step()}, {@code push}, {@code fill} and {@code skip} methods are generated from copies of the
+     * states, see {@link #createPushMethod()}, {@link #createFillMethod()} and {@link #createSkipMethod()}.
+     * @param defs the list the members should be added to
+     */
+    private void createSwitchMembers(ListBuffer<JCTree> defs) {
+        /*
+         * The push, fill and skip methods must be created first, since the copying relies on the placeholders that
+         * are replaced by the lowering below. Async state machines and coroutines can suspend, thus they have none.
+         * Delegating state machines are only stepped, because the values of the streams delegated to are not produced
+         * by them.
+         */
+        final boolean stepOnly = shape.isAsync() || shape.isCoroutine() || delegating;
+
+        final Optional<JCMethodDecl> push = stepOnly ? Optional.empty() : Optional.of(createPushMethod());
+
+        final Optional<JCMethodDecl> fill = stepOnly ? Optional.empty() : Optional.of(createFillMethod());
+
+        final Optional<JCMethodDecl> skip = stepOnly ? Optional.empty() : Optional.of(createSkipMethod());
+
+        final TreeTranslator lowering = new TreeTranslator() {
+            @Override
+            public void visitReturn(JCReturn tree) {
+                final Transition transition = transitions.get(tree);
+
+                if (transition == null) {
+                    super.visitReturn(tree);
+                } else {
+                    result = lowerSwitchTransition(transition);
+                }
+            }
+        };
+
+        final ListBuffer<JCCase> cases = new ListBuffer<>();
+
+        for (Map.Entry<Integer, java.util.List<JCStatement>> state : states.entrySet()) {
+            final ListBuffer<JCStatement> body = new ListBuffer<>();
+
+            for (JCStatement statement : state.getValue()) {
+                body.add(lowering.translate(statement));
+            }
+
+            cases.add(ctx.treeMaker.Case(ctx.treeMaker.Literal(state.getKey()),
+                List.of(ctx.treeMaker.Block(NO_MODIFIERS, body.toList()))));
+        }
+
+        defs.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(STATE_FIELD), ctx.treeMaker.TypeIdent(TypeTag.INT), null));
+
+        defs.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(CURRENT_FIELD), generatedType, null));
+
+        if (parallelLoop.isPresent()) {
+            createSplittableMembers(defs, parallelLoop.get());
+
+            defs.add(createStreamMethod(ctx.treeMaker.Select(runtimeAccess(shape.getGeneratorClass()),
+                ctx.name(Identifiers.SPLITTABLE_METHOD)), ctx.treeMaker.Ident(ctx.names._this),
+                Identifiers.PARALLEL_STREAM_METHOD));
+        } else {
+            defs.add(createStreamMethod(ctx.treeMaker.Select(runtimeAccess(shape.getGeneratorClass()),
+                ctx.name(Identifiers.OF_METHOD)), ctx.treeMaker.Ident(ctx.names._this), Identifiers.STREAM_METHOD));
+        }
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.STEP_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.BOOLEAN),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(dispatchLoop(cases.toList()))),
+            null));
+
+        push.ifPresent(defs::add);
+
+        fill.ifPresent(defs::add);
+
+        skip.ifPresent(defs::add);
+
+        if (shape.isAsync()) {
+            createAwaitingMembers(defs);
+        }
+
+        if (shape.isCoroutine()) {
+            createReceivingMembers(defs);
+        }
+
+        if (delegating) {
+            createDelegateMembers(defs);
+        }
+
+        if (!cleanups.isEmpty() || !cursors.isEmpty()) {
+            createCleanupMembers(defs);
+        }
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(shape.getCurrentMethod()),
+            generatedType,
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(CURRENT_FIELD))))),
+            null));
+    }
+
+    /**
+     * Creates the field holding the stage an async generator is suspended on, and its accessor:
+     * <pre>
+     * {@code
+     *     private CompletionStage<?> $_awaiting;
+     *
+     *     public CompletionStage<?> awaiting() {
+     *         return $_awaiting;
+     *     }
+     * }
+     * </pre>
+     * The field is set by await transitions and cleared when the generator resumes, see {@link #transformAwait}.
+     * @param defs the list the members should be added to
+     */
+    private void createAwaitingMembers(ListBuffer<JCTree> defs) {
+        defs.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(AWAITING_FIELD), completionStageType(), null));
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.AWAITING_METHOD),
+            completionStageType(),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(AWAITING_FIELD))))),
+            null));
+    }
+
+    /**
+     * Creates the fields of a coroutine holding whether it waits for a value and the value sent to it, and their
+     * accessors:
+     * <pre>
+     * {@code
+     *     private boolean $_receiving;
+     *
+     *     private I $_input;
+     *
+     *     public boolean receiving() {
+     *         return $_receiving;
+     *     }
+     *
+     *     public void send(I $_sent) {
+     *         $_input = $_sent;
+     *     }
+     * }
+     * </pre>
+     * The flag is set by receive transitions, and both fields are cleared when the coroutine resumes, see
+     * {@link #transformReceive}.
+     * @param defs the list the members should be added to
+     */
+    private void createReceivingMembers(ListBuffer<JCTree> defs) {
+        defs.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(RECEIVING_FIELD), ctx.treeMaker.TypeIdent(TypeTag.BOOLEAN), null));
+
+        defs.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(INPUT_FIELD), inputType(), null));
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.RECEIVING_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.BOOLEAN),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(RECEIVING_FIELD))))),
+            null));
+
+        final JCVariableDecl sent = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(SENT_PARAMETER), inputType(), null);
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.SEND_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.VOID),
+            List.nil(),
+            List.of(sent),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS,
+                List.of(assignField(INPUT_FIELD, ctx.treeMaker.Ident(ctx.name(SENT_PARAMETER))))),
+            null));
+    }
+
+    /**
+     * Returns the type of the values received by a coroutine, the first type argument of {@code Coroutine<I, O>}.
+     * @return a copy of the type tree
+     */
+    private JCExpression inputType() {
+        return copy(((JCTypeApply) originalMethod.getReturnType()).arguments.get(0));
+    }
+
+    /**
+     * Creates the field holding the stream a delegating generator delegates to, and its accessor:
+     * <pre>
+     * {@code
+     *     private Stream<? extends T> $_delegate;
+     *
+     *     public Stream<? extends T> delegate() {
+     *         return $_delegate;
+     *     }
+     * }
+     * </pre>
+     * The field is set by delegate transitions and cleared when the generator resumes, see
+     * {@link #transformDelegation}.
+     * @param defs the list the members should be added to
+     */
+    private void createDelegateMembers(ListBuffer<JCTree> defs) {
+        defs.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(DELEGATE_FIELD), delegateStreamType(), null));
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.DELEGATE_METHOD),
+            delegateStreamType(),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(DELEGATE_FIELD))))),
+            null));
+    }
+
+    /**
+     * Creates the type {@code java.util.stream.Stream<? extends T>}, where {@code T} is the generated type.
+     * @return the type tree
+     */
+    private JCExpression delegateStreamType() {
+        final JCExpression streamPackage = ctx.treeMaker.Select(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.UTIL)),
+            ctx.name(Identifiers.STREAM_PACKAGE));
+
+        return ctx.treeMaker.TypeApply(ctx.treeMaker.Select(streamPackage, ctx.name(Identifiers.STREAM)),
+            List.of(ctx.treeMaker.Wildcard(ctx.treeMaker.TypeBoundKind(BoundKind.EXTENDS), copy(generatedType))));
+    }
+
+    /**
+     * Creates the type {@code java.util.concurrent.CompletionStage<?>}.
+     * @return the type tree
+     */
+    private JCExpression completionStageType() {
+        final JCExpression concurrentPackage = ctx.treeMaker.Select(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.UTIL)),
+            ctx.name(Identifiers.CONCURRENT));
+
+        return ctx.treeMaker.TypeApply(ctx.treeMaker.Select(concurrentPackage, ctx.name(Identifiers.COMPLETION_STAGE)),
+            List.of(ctx.treeMaker.Wildcard(ctx.treeMaker.TypeBoundKind(BoundKind.UNBOUND), null)));
+    }
+
+    /**
+     * Creates the loop dispatching on the state field:
+     * <pre>
+     * {@code
+     *     $_loop:
+     *     while (true) {
+     *         switch ($_state) {
+     *             // cases
+     *         }
+     *     }
+     * }
+     * </pre>
+     * @param cases the cases of the switch, one for each state
+     * @return the labeled loop
+     */
+    private JCStatement dispatchLoop(List<JCCase> cases) {
+        final JCStatement loop = ctx.treeMaker.Labelled(ctx.name(LOOP_LABEL),
+            ctx.treeMaker.WhileLoop(ctx.treeMaker.Literal(Boolean.TRUE),
+                ctx.treeMaker.Block(NO_MODIFIERS,
+                    List.of(ctx.treeMaker.Switch(ctx.treeMaker.Ident(ctx.name(STATE_FIELD)), cases)))));
+
+        return cleanups.isEmpty() ? loop : guardDispatchLoop(loop);
+    }
+
+    /**
+     * Runs the cleanup of the try statements the generator is in when an exception is thrown by the generator code,
+     * and ends the generator:
+     * <pre>
+     * {@code
+     *     try {
+     *         $_loop:
+     *         while (true) {
+     *             ...
+     *         }
+     *     } catch (java.lang.Throwable $_thrown) {
+     *         throw CPSUtil.rethrow($_cleanup($_thrown));
+     *     }
+     * }
+     * </pre>
+     * @param loop the dispatch loop
+     * @return the guarded loop
+     */
+    private JCStatement guardDispatchLoop(JCStatement loop) {
+        final JCVariableDecl thrown = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
+            ctx.name(THROWN_VARIABLE), throwableType(), null);
+
+        final JCFieldAccess selectCleanup =
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.names._this), ctx.name(CLEANUP_METHOD));
+
+        final JCExpression cleanup = ctx.treeMaker.App(selectCleanup.setType(Type.noType),
+            List.of(ctx.treeMaker.Ident(ctx.name(THROWN_VARIABLE))));
+
+        final JCCatch handler = ctx.treeMaker.Catch(thrown,
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(ctx.treeMaker.Throw(rethrow(cleanup)))));
+
+        return ctx.treeMaker.Try(ctx.treeMaker.Block(NO_MODIFIERS, List.of(loop)), List.of(handler), null);
+    }
+
+    /**
+     * Creates the members running the cleanup of the try statements a generator is suspended in, see
+     * {@link #transformTry}, and releasing the cursors of its enhanced for loops, see
+     * {@link #transformEnhancedForLoop}. {@code $_unwind()} runs the cleanup of the innermost region and leaves it, and
+     * {@code $_cleanup} releases the cursors, the innermost loop first, runs the cleanup of all regions and ends the
+     * generator, combining the exceptions they throw with the one being thrown by the generator code, if there is
+     * one. The cursors are released first, since loop sources are usually opened inside the try statements they
+     * depend on. Trampolines have no state to end:
+     * <pre>
+     * {@code
+     *     private void $_unwind() {
+     *         if ($_finally == 1) {
+     *             $_finally = 0;
+     *             // finally block
+     *         } else if ($_finally == 2) {
+     *             $_finally = 1;
+     *             CPSUtil.close(reader);
+     *         }
+     *     }
+     *
+     *     private java.lang.Throwable $_cleanup(java.lang.Throwable $_thrown) {
+     *         $_state = 1;
+     *
+     *         try {
+     *             CPSUtil.release(cursor);
+     *         } catch (java.lang.Throwable $_suppressed) {
+     *             $_thrown = CPSUtil.suppressed($_thrown, $_suppressed);
+     *         }
+     *
+     *         while ($_finally != 0) {
+     *             try {
+     *                 this.$_unwind();
+     *             } catch (java.lang.Throwable $_suppressed) {
+     *                 $_thrown = CPSUtil.suppressed($_thrown, $_suppressed);
+     *             }
+     *         }
+     *
+     *         return $_thrown;
+     *     }
+     *
+     *     public void close() {
+     *         final java.lang.Throwable $_thrown = this.$_cleanup(null);
+     *
+     *         if ($_thrown != null) {
+     *             throw CPSUtil.rethrow($_thrown);
+     *         }
+     *     }
+     * }
+     * </pre>
+     * @param defs the list the members should be added to
+     */
+    private void createCleanupMembers(ListBuffer<JCTree> defs) {
+        final ListBuffer<JCStatement> cleanup = new ListBuffer<>();
+
+        if (backend == Backend.SWITCH) {
+            cleanup.add(assignField(STATE_FIELD, ctx.treeMaker.Literal(endState)));
+        }
+
+        for (int i = cursors.size() - 1; i >= 0; --i) {
+            cleanup.add(suppressing(releaseCursor(ctx.name(cursors.get(i)))));
+        }
+
+        if (!cleanups.isEmpty()) {
+            JCStatement unwind = null;
+
+            for (Map.Entry<Integer, JCStatement> region : new TreeMap<>(cleanups).descendingMap().entrySet()) {
+                final JCExpression inRegion = ctx.treeMaker.Binary(Tag.EQ,
+                    ctx.treeMaker.Ident(ctx.name(FINALLY_FIELD)), ctx.treeMaker.Literal(region.getKey()));
+
+                unwind = ctx.treeMaker.If(inRegion, copy(region.getValue()), unwind);
+            }
+
+            defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+                ctx.name(UNWIND_METHOD),
+                ctx.treeMaker.TypeIdent(TypeTag.VOID),
+                List.nil(),
+                List.nil(),
+                List.nil(),
+                ctx.treeMaker.Block(NO_MODIFIERS, List.of(unwind)),
+                null));
+
+            final JCFieldAccess selectUnwind =
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.names._this), ctx.name(UNWIND_METHOD));
+
+            cleanup.add(ctx.treeMaker.WhileLoop(
+                ctx.treeMaker.Binary(Tag.NE, ctx.treeMaker.Ident(ctx.name(FINALLY_FIELD)),
+                    ctx.treeMaker.Literal(Continuation.NO_REGION)),
+                ctx.treeMaker.Block(NO_MODIFIERS, List.of(suppressing(ctx.treeMaker.Exec(
+                    ctx.treeMaker.App(selectUnwind.setType(Type.noType), List.nil())))))));
+        }
+
+        cleanup.add(ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(THROWN_VARIABLE))));
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(CLEANUP_METHOD),
+            throwableType(),
+            List.nil(),
+            List.of(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER), ctx.name(THROWN_VARIABLE),
+                throwableType(), null)),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, cleanup.toList()),
+            null));
+
+        final JCFieldAccess selectCleanup =
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.names._this), ctx.name(CLEANUP_METHOD));
+
+        final JCStatement thrown = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.FINAL),
+            ctx.name(THROWN_VARIABLE), throwableType(),
+            ctx.treeMaker.App(selectCleanup.setType(Type.noType), List.of(ctx.treeMaker.Literal(TypeTag.BOT, null))));
+
+        final JCStatement rethrow = ctx.treeMaker.If(
+            ctx.treeMaker.Binary(Tag.NE, ctx.treeMaker.Ident(ctx.name(THROWN_VARIABLE)),
+                ctx.treeMaker.Literal(TypeTag.BOT, null)),
+            ctx.treeMaker.Throw(rethrow(ctx.treeMaker.Ident(ctx.name(THROWN_VARIABLE)))),
+            null);
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.CLOSE_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.VOID),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(thrown, rethrow)),
+            null));
+    }
+
+    /**
+     * Wraps a statement of the cleanup into a try statement adding the exception it throws to the one being thrown.
+     * @param statement the statement
+     * @return the wrapped statement
+     */
+    private JCStatement suppressing(JCStatement statement) {
+        final JCFieldAccess selectSuppressed =
+            ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.SUPPRESSED_METHOD));
+
+        final JCExpression suppressed = ctx.treeMaker.App(selectSuppressed.setType(Type.noType),
+            List.of(ctx.treeMaker.Ident(ctx.name(THROWN_VARIABLE)), ctx.treeMaker.Ident(ctx.name(SUPPRESSED_VARIABLE))));
+
+        final JCCatch handler = ctx.treeMaker.Catch(
+            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS), ctx.name(SUPPRESSED_VARIABLE),
+                throwableType(), null),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(assignField(THROWN_VARIABLE, suppressed))));
+
+        return ctx.treeMaker.Try(ctx.treeMaker.Block(NO_MODIFIERS, List.of(statement)), List.of(handler), null);
+    }
+
+    /**
+     * Creates the statement releasing the cursor of an enhanced for loop, which closes the loop source if it is a
+     * stream.
+     * @param cursor the name of the cursor field
+     * @return the statement
+     */
+    private JCStatement releaseCursor(Name cursor) {
+        final JCFieldAccess selectRelease =
+            ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.RELEASE_METHOD));
+
+        return ctx.treeMaker.Exec(
+            ctx.treeMaker.App(selectRelease.setType(Type.noType), List.of(ctx.treeMaker.Ident(cursor))));
+    }
+
+    private JCExpression rethrow(JCExpression thrown) {
+        final JCFieldAccess selectRethrow =
+            ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.RETHROW_METHOD));
+
+        return ctx.treeMaker.App(selectRethrow.setType(Type.noType), List.of(thrown));
+    }
+
+    private JCExpression throwableType() {
+        return ctx.treeMaker.Select(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.LANG)),
+            ctx.name(Identifiers.THROWABLE));
+    }
+
+    /**
+     * Creates the push mode entry point of a generator class that implements {@code StateMachine}. It runs the states
+     * to completion and hands the values over to the sink right at the yield sites, so the generator never suspends:
+     * <pre>
+     * {@code
+     *     public void push(Consumer<? super T> $_sink) {
+     *         $_loop:
+     *         while (true) {
+     *             switch ($_state) {
+     *                 case 3: {
+     *                     // yield
+     *                     $_sink.accept(value);
+     *                     $_state = 4;
+     *                     continue $_loop;
+     *                 }
+     *                 case 1: {
+     *                     // halt
+     *                     $_state = 1;
+     *                     return;
+     *                 }
+     *             }
+     *         }
+     *     }
+     * }
+     * </pre>
+     * Primitive generators override the corresponding specialization instead, for example {@code pushInt(IntConsumer)}.
+     * The states are copied, because the same statements are lowered differently in {@code step()}.
+     * @return the method declaration
+     */
+    private JCMethodDecl createPushMethod() {
+        final List<JCCase> cases = copyStates(this::lowerPushTransition);
+
+        final JCExpression consumer = ctx.treeMaker.Select(
+            ctx.treeMaker.Select(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.UTIL)),
+                ctx.name(Identifiers.FUNCTION)),
+            ctx.name(shape.getConsumerClass()));
+
+        final JCExpression sinkType = shape.isPrimitive()
+            ? consumer
+            : ctx.treeMaker.TypeApply(consumer,
+                List.of(ctx.treeMaker.Wildcard(ctx.treeMaker.TypeBoundKind(BoundKind.SUPER), generatedType)));
+
+        final JCVariableDecl sink = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(SINK_PARAMETER), sinkType, null);
+
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(shape.getPushMethod()),
+            ctx.treeMaker.TypeIdent(TypeTag.VOID),
+            List.nil(),
+            List.of(sink),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(dispatchLoop(cases))),
+            null);
+    }
+
+    /**
+     * Copies the states into the cases of a dispatch loop, lowering the transitions with the specified function.
+     * @param lowering lowers a transition, copying the trees it uses through the passed copier
+     * @return the cases, one for each state
+     */
+    private List<JCCase> copyStates(BiFunction<Transition, TreeCopier<Void>, JCStatement> lowering) {
+        final TreeCopier<Void> copier = new TreeCopier<Void>(ctx.treeMaker) {
+            @Override
+            public JCTree visitReturn(ReturnTree node, Void p) {
+                final Transition transition = transitions.get(node);
+
+                if (transition == null) {
+                    return super.visitReturn(node, p);
+                }
+
+                return lowering.apply(transition, this);
+            }
+        };
+
+        final ListBuffer<JCCase> cases = new ListBuffer<>();
+
+        for (Map.Entry<Integer, java.util.List<JCStatement>> state : states.entrySet()) {
+            final ListBuffer<JCStatement> body = new ListBuffer<>();
+
+            for (JCStatement statement : state.getValue()) {
+                body.add(copier.copy(statement));
+            }
+
+            cases.add(ctx.treeMaker.Case(ctx.treeMaker.Literal(state.getKey()),
+                List.of(ctx.treeMaker.Block(NO_MODIFIERS, body.toList()))));
+        }
+
+        return cases.toList();
+    }
+
+    /**
+     * Creates the batch mode entry point of a generator class that implements {@code StateMachine}. It stores the
+     * values into the buffer at the yield sites and only suspends once the requested number of values is stored:
+     * <pre>
+     * {@code
+     *     public int fill(Object[] $_buffer, int $_offset, int $_max) {
+     *         int $_count = 0;
+     *
+     *         if ($_max <= 0) {
+     *             return 0;
+     *         }
+     *
+     *         $_loop:
+     *         while (true) {
+     *             switch ($_state) {
+     *                 case 3: {
+     *                     // yield
+     *                     $_buffer[$_offset + $_count++] = value;
+     *                     $_state = 4;
+     *
+     *                     if ($_count == $_max) {
+     *                         return $_count;
+     *                     }
+     *
+     *                     continue $_loop;
+     *                 }
+     *                 case 1: {
+     *                     // halt
+     *                     $_state = 1;
+     *                     return $_count;
+     *                 }
+     *             }
+     *         }
+     *     }
+     * }
+     * </pre>
+     * The buffer is an {@code Object[]}, the erasure of the parameter of {@code StateMachine.fill}, so that generic
+     * callers can pass arrays created as {@code Object[]}. Primitive generators take the corresponding primitive array.
+     * @return the method declaration
+     */
+    private JCMethodDecl createFillMethod() {
+        final List<JCCase> cases = copyStates(this::lowerFillTransition);
+
+        final JCExpression elementType = shape.isPrimitive() ? copy(generatedType) : ctx.treeMaker.Select(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.LANG)),
+            ctx.name(Identifiers.OBJECT));
+
+        final JCVariableDecl buffer = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(BUFFER_PARAMETER), ctx.treeMaker.TypeArray(elementType), null);
+
+        final JCVariableDecl offset = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(OFFSET_PARAMETER), ctx.treeMaker.TypeIdent(TypeTag.INT), null);
+
+        final JCVariableDecl max = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(MAX_PARAMETER), ctx.treeMaker.TypeIdent(TypeTag.INT), null);
+
+        final JCStatement count = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
+            ctx.name(COUNT_VARIABLE), ctx.treeMaker.TypeIdent(TypeTag.INT), ctx.treeMaker.Literal(0));
+
+        final JCStatement empty = ctx.treeMaker.If(
+            ctx.treeMaker.Binary(Tag.LE, ctx.treeMaker.Ident(ctx.name(MAX_PARAMETER)), ctx.treeMaker.Literal(0)),
+            ctx.treeMaker.Return(ctx.treeMaker.Literal(0)),
+            null);
+
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.FILL_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.INT),
+            List.nil(),
+            List.of(buffer, offset, max),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(count, empty, dispatchLoop(cases))),
+            null);
+    }
+
+    private JCStatement lowerFillTransition(Transition transition, TreeCopier<Void> copier) {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        final JCExpression count = ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE));
+
+        if (transition.isBlock()) {
+            final JCExpression room = ctx.treeMaker.Binary(Tag.MINUS,
+                ctx.treeMaker.Ident(ctx.name(MAX_PARAMETER)), ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE)));
+
+            final JCExpression index = ctx.treeMaker.Binary(Tag.PLUS, ctx.treeMaker.Ident(ctx.name(OFFSET_PARAMETER)),
+                ctx.treeMaker.Unary(Tag.POSTINC, ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE))));
+
+            final JCExpression slot = ctx.treeMaker.Indexed(ctx.treeMaker.Ident(ctx.name(BUFFER_PARAMETER)), index);
+
+            stats.addAll(drainBlock(copier.copy(transition.getValue().get()), Optional.of(room),
+                element -> ctx.treeMaker.Exec(ctx.treeMaker.Assign(slot, element)), transition.getTarget()));
+
+            stats.add(ctx.treeMaker.If(
+                ctx.treeMaker.Binary(Tag.EQ, count, ctx.treeMaker.Ident(ctx.name(MAX_PARAMETER))),
+                ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE))),
+                null));
+
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
+
+            return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
+        }
+
+        transition.getValue().ifPresent(value -> {
+            final JCExpression index = ctx.treeMaker.Binary(Tag.PLUS, ctx.treeMaker.Ident(ctx.name(OFFSET_PARAMETER)),
+                ctx.treeMaker.Unary(Tag.POSTINC, ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE))));
+
+            final JCExpression slot = ctx.treeMaker.Indexed(ctx.treeMaker.Ident(ctx.name(BUFFER_PARAMETER)), index);
+
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(slot, copier.copy(value))));
+        });
+
+        final int target = transition.isHalt() ? endState : transition.getTarget();
+
+        stats.add(ctx.treeMaker.Exec(
+            ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(STATE_FIELD)), ctx.treeMaker.Literal(target))));
+
+        if (transition.isHalt()) {
+            stats.add(ctx.treeMaker.Return(count));
+        } else {
+            if (transition.getValue().isPresent()) {
+                stats.add(ctx.treeMaker.If(
+                    ctx.treeMaker.Binary(Tag.EQ, count, ctx.treeMaker.Ident(ctx.name(MAX_PARAMETER))),
+                    ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE))),
+                    null));
+            }
+
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
+        }
+
+        return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
+    }
+
+    /**
+     * Creates the skipping entry point of a generator class that implements {@code StateMachine}. It runs the states
+     * like {@code fill}, but only counts the values at the yield sites, evaluating the yielded expression only if it
+     * may have side effects, see {@link SideEffectFreeVisitor}. Blocks are skipped by moving the index of the view:
+     * <pre>
+     * {@code
+     *     public long skip(long $_max) {
+     *         long $_count = 0;
+     *
+     *         if ($_max <= 0) {
+     *             return 0;
+     *         }
+     *
+     *         $_loop:
+     *         while (true) {
+     *             switch ($_state) {
+     *                 case 3: {
+     *                     // yield of a side-effect free expression
+     *                     $_state = 4;
+     *                     ++$_count;
+     *
+     *                     if ($_count == $_max) {
+     *                         return $_count;
+     *                     }
+     *
+     *                     continue $_loop;
+     *                 }
+     *                 case 5: {
+     *                     // yield of any other expression
+     *                     $_current = value;
+     *                     $_state = 6;
+     *                     ...
+     *                 }
+     *                 case 1: {
+     *                     // halt
+     *                     $_state = 1;
+     *                     return $_count;
+     *                 }
+     *             }
+     *         }
+     *     }
+     * }
+     * </pre>
+     * @return the method declaration
+     */
+    private JCMethodDecl createSkipMethod() {
+        final List<JCCase> cases = copyStates(this::lowerSkipTransition);
+
+        final JCVariableDecl max = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(MAX_PARAMETER), ctx.treeMaker.TypeIdent(TypeTag.LONG), null);
+
+        final JCStatement count = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
+            ctx.name(COUNT_VARIABLE), ctx.treeMaker.TypeIdent(TypeTag.LONG), ctx.treeMaker.Literal(0L));
+
+        final JCStatement empty = ctx.treeMaker.If(
+            ctx.treeMaker.Binary(Tag.LE, ctx.treeMaker.Ident(ctx.name(MAX_PARAMETER)), ctx.treeMaker.Literal(0L)),
+            ctx.treeMaker.Return(ctx.treeMaker.Literal(0L)),
+            null);
+
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.SKIP_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.LONG),
+            List.nil(),
+            List.of(max),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(count, empty, dispatchLoop(cases))),
+            null);
+    }
+
+    private JCStatement lowerSkipTransition(Transition transition, TreeCopier<Void> copier) {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        final JCStatement full = ctx.treeMaker.If(
+            ctx.treeMaker.Binary(Tag.EQ, ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE)),
+                ctx.treeMaker.Ident(ctx.name(MAX_PARAMETER))),
+            ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE))),
+            null);
+
+        if (transition.isBlock()) {
+            final JCFieldAccess selectSize =
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(VIEW_VARIABLE)), ctx.name(Identifiers.SIZE_METHOD));
+
+            final JCFieldAccess selectMin = ctx.treeMaker.Select(ctx.treeMaker.Select(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.LANG)),
+                ctx.name(Identifiers.MATH)), ctx.name(Identifiers.MIN_METHOD));
+
+            final JCExpression room = ctx.treeMaker.Binary(Tag.MINUS,
+                ctx.treeMaker.Ident(ctx.name(MAX_PARAMETER)), ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE)));
+
+            /*
+             * The size of the view is widened to long by Math.min, and the result fits into an int again.
+             */
+            final JCExpression size = ctx.treeMaker.TypeCast(ctx.treeMaker.TypeIdent(TypeTag.INT),
+                ctx.treeMaker.App(selectMin.setType(Type.noType),
+                    List.of(ctx.treeMaker.App(selectSize.setType(Type.noType), List.nil()), room)));
+
+            stats.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.FINAL), ctx.name(VIEW_VARIABLE),
+                blockViewType(), copier.copy(transition.getValue().get())));
+
+            stats.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.FINAL), ctx.name(SIZE_VARIABLE),
+                ctx.treeMaker.TypeIdent(TypeTag.INT), size));
+
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assignop(Tag.PLUS_ASG,
+                ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE)), ctx.treeMaker.Ident(ctx.name(SIZE_VARIABLE)))));
+
+            stats.add(assignField(BLOCK_FIELD, ctx.treeMaker.Ident(ctx.name(VIEW_VARIABLE))));
+
+            stats.add(assignField(BLOCK_INDEX_FIELD, ctx.treeMaker.Ident(ctx.name(SIZE_VARIABLE))));
+
+            stats.add(assignField(STATE_FIELD, ctx.treeMaker.Literal(transition.getTarget())));
+
+            stats.add(full);
+
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
+
+            return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
+        }
+
+        transition.getValue()
+            .filter(value -> !SideEffectFreeVisitor.isSideEffectFree(value))
+            .ifPresent(value -> stats.add(assignField(CURRENT_FIELD, copier.copy(value))));
+
+        final int target = transition.isHalt() ? endState : transition.getTarget();
+
+        stats.add(assignField(STATE_FIELD, ctx.treeMaker.Literal(target)));
+
+        if (transition.isHalt()) {
+            stats.add(ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE))));
+        } else {
+            if (transition.getValue().isPresent()) {
+                stats.add(ctx.treeMaker.Exec(
+                    ctx.treeMaker.Unary(Tag.PREINC, ctx.treeMaker.Ident(ctx.name(COUNT_VARIABLE)))));
+
+                stats.add(full);
+            }
+
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
+        }
+
+        return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
+    }
+
+    private JCStatement lowerPushTransition(Transition transition, TreeCopier<Void> copier) {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        if (transition.isBlock()) {
+            final JCFieldAccess accept =
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(SINK_PARAMETER)), ctx.name(Identifiers.ACCEPT_METHOD));
+
+            stats.addAll(drainBlock(copier.copy(transition.getValue().get()), Optional.empty(),
+                element -> ctx.treeMaker.Exec(ctx.treeMaker.App(accept.setType(Type.noType), List.of(element))),
+                transition.getTarget()));
+
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
+
+            return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
+        }
+
+        transition.getValue().ifPresent(value -> {
+            final JCFieldAccess accept =
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(SINK_PARAMETER)), ctx.name(Identifiers.ACCEPT_METHOD));
+
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.App(accept.setType(Type.noType), List.of(copier.copy(value)))));
+        });
+
+        final int target = transition.isHalt() ? endState : transition.getTarget();
+
+        stats.add(ctx.treeMaker.Exec(
+            ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(STATE_FIELD)), ctx.treeMaker.Literal(target))));
+
+        if (transition.isHalt()) {
+            stats.add(ctx.treeMaker.Return(null));
+        } else {
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
+        }
+
+        return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
+    }
+
+    /**
+     * Replaces the loop of a parallel generator with a counted loop over the range of the generator instance, so that
+     * every slice of the generator runs the same code over a different part of the loop:
+     * <pre>
+     * {@code
+     *     $_bind();
+     *     label:
+     *     for (long $_index = $_origin; $_index < $_fence; $_index++) {
+     *         T x = $_source.get((int) $_index); // enhanced for loops
+     *         int i = (int) $_index;             // counted loops
+     *         // original body
+     *     }
+     * }
+     * </pre>
+     * The fields holding the range are added to the generator class as well.
+     * @param loop the loop of the generator
+     * @return the block replacing the body of the generator method
+     */
+    private JCBlock lowerParallelLoop(ParallelLoop loop) {
+        addField(BOUND_FIELD, ctx.treeMaker.TypeIdent(TypeTag.BOOLEAN));
+
+        addField(ORIGIN_FIELD, ctx.treeMaker.TypeIdent(TypeTag.LONG));
+
+        addField(FENCE_FIELD, ctx.treeMaker.TypeIdent(TypeTag.LONG));
+
+        final JCVariableDecl variable = loop.getVariable();
+
+        final JCExpression index = ctx.treeMaker.Ident(ctx.name(INDEX_VARIABLE));
+
+        final JCExpression value;
+
+        if (loop.isEnhanced()) {
+            addField(SOURCE_FIELD, viewType(Identifiers.INDEXED, variable));
+
+            value = elementAccess(ctx.treeMaker.Ident(ctx.name(SOURCE_FIELD)),
+                ctx.treeMaker.TypeCast(ctx.treeMaker.TypeIdent(TypeTag.INT), index), variable);
+        } else {
+            value = ctx.treeMaker.TypeCast(variable.vartype, index);
+        }
+
+        final JCVariableDecl element =
+            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS), variable.getName(), variable.vartype, value);
+
+        final JCForLoop forLoop = ctx.treeMaker.ForLoop(
+            List.of(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS), ctx.name(INDEX_VARIABLE),
+                ctx.treeMaker.TypeIdent(TypeTag.LONG), ctx.treeMaker.Ident(ctx.name(ORIGIN_FIELD)))),
+            ctx.treeMaker.Binary(Tag.LT, ctx.treeMaker.Ident(ctx.name(INDEX_VARIABLE)),
+                ctx.treeMaker.Ident(ctx.name(FENCE_FIELD))),
+            List.of(ctx.treeMaker.Exec(ctx.treeMaker.Unary(Tag.POSTINC, ctx.treeMaker.Ident(ctx.name(INDEX_VARIABLE))))),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(element, loop.getBody())));
+
+        final JCStatement statement = loop.getLabel()
+            .<JCStatement>map(label -> ctx.treeMaker.Labelled(label, forLoop))
+            .orElse(forLoop);
+
+        return ctx.treeMaker.Block(NO_MODIFIERS, List.of(callBind(), statement));
+    }
+
+    /**
+     * Creates the members implementing {@code Splittable}. The range of the generator is computed by {@code $_bind()}
+     * when it is first needed, either by the splitting or by the first step:
+     * <pre>
+     * {@code
+     *     private void $_bind() {
+     *         if (!$_bound) {
+     *             $_source = CPSUtil.indexed(source); // enhanced for loops
+     *             $_fence = $_source.size();
+     *             $_origin = a;                       // counted loops
+     *             $_fence = b;
+     *             $_bound = true;
+     *         }
+     *     }
+     *
+     *     public $GeneratorImpl slice(long $_sliceOrigin, long $_sliceFence) {
+     *         $_bind();
+     *         $GeneratorImpl $generator = new $GeneratorImpl();
+     *         // copy the parameters and the source
+     *         $generator.$_origin = $_sliceOrigin;
+     *         $generator.$_fence = $_sliceFence;
+     *         $generator.$_bound = true;
+     *         return $generator;
+     *     }
+     * }
+     * </pre>
+     * Besides these, {@code origin()} and {@code fence()} bind the range and return the respective field.
+     * @param defs the list the members should be added to
+     * @param loop the loop of the generator
+     */
+    private void createSplittableMembers(ListBuffer<JCTree> defs, ParallelLoop loop) {
+        final Continuation outside = Continuation.empty().rename("this", this.selfName);
+
+        final ListBuffer<JCStatement> binding = new ListBuffer<>();
+
+        if (loop.isEnhanced()) {
+            final JCExpression source = loop.getSource().get();
+
+            RenamingVisitor.visit(source, outside, ctx.names);
+
+            final JCFieldAccess factory = ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL),
+                ctx.name(Identifiers.INDEXED_METHOD + elementSuffix(loop.getVariable())));
+
+            binding.add(assignField(SOURCE_FIELD, ctx.treeMaker.App(factory.setType(Type.noType), List.of(source))));
+
+            final JCFieldAccess size =
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(SOURCE_FIELD)), ctx.name(Identifiers.SIZE_METHOD));
+
+            binding.add(assignField(FENCE_FIELD, ctx.treeMaker.App(size.setType(Type.noType), List.nil())));
+        } else {
+            final JCExpression origin = loop.getOrigin().get();
+
+            final JCExpression bound = loop.getFence().get();
+
+            RenamingVisitor.visit(origin, outside, ctx.names);
+
+            RenamingVisitor.visit(bound, outside, ctx.names);
+
+            final JCExpression fence = loop.isInclusiveFence()
+                ? ctx.treeMaker.Binary(Tag.PLUS, ctx.treeMaker.TypeCast(ctx.treeMaker.TypeIdent(TypeTag.LONG), bound),
+                    ctx.treeMaker.Literal(1L))
+                : bound;
+
+            binding.add(assignField(ORIGIN_FIELD, origin));
+
+            binding.add(assignField(FENCE_FIELD, fence));
+        }
+
+        binding.add(assignField(BOUND_FIELD, ctx.treeMaker.Literal(Boolean.TRUE)));
+
+        final JCStatement bindIfUnbound = ctx.treeMaker.If(
+            ctx.treeMaker.Unary(Tag.NOT, ctx.treeMaker.Ident(ctx.name(BOUND_FIELD))),
+            ctx.treeMaker.Block(NO_MODIFIERS, binding.toList()),
+            null);
+
+        defs.add(ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
+            ctx.name(BIND_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.VOID),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(bindIfUnbound)),
+            null));
+
+        defs.add(createRangeMethod(Identifiers.ORIGIN_METHOD, ORIGIN_FIELD));
+
+        defs.add(createRangeMethod(Identifiers.FENCE_METHOD, FENCE_FIELD));
+
+        defs.add(createSliceMethod(loop));
+    }
+
+    private JCMethodDecl createRangeMethod(String method, String field) {
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(method),
+            ctx.treeMaker.TypeIdent(TypeTag.LONG),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS,
+                List.of(callBind(), ctx.treeMaker.Return(ctx.treeMaker.Ident(ctx.name(field))))),
+            null);
+    }
+
+    private JCMethodDecl createSliceMethod(ParallelLoop loop) {
+        final Name generatorName = ctx.name(GENERATOR_VARIABLE);
+
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        stats.add(callBind());
+
+        stats.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.FINAL),
+            generatorName,
+            generatorClassType(),
+            ctx.treeMaker.NewClass(null, List.nil(), generatorClassType(), List.nil(), null)));
+
+        final java.util.List<String> copied = new ArrayList<>();
+
+        if (!isStaticContext) {
+            copied.add(this.selfName);
+        }
+
+        for (JCVariableDecl param : originalMethod.getParameters()) {
+            copied.add(param.getName().toString());
+        }
+
+        if (loop.isEnhanced()) {
+            copied.add(SOURCE_FIELD);
+        }
+
+        for (String field : copied) {
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(generatorName), ctx.name(field)),
+                ctx.treeMaker.Ident(ctx.name(field)))));
+        }
+
+        stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(generatorName), ctx.name(ORIGIN_FIELD)),
+            ctx.treeMaker.Ident(ctx.name(SLICE_ORIGIN_PARAMETER)))));
+
+        stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(generatorName), ctx.name(FENCE_FIELD)),
+            ctx.treeMaker.Ident(ctx.name(SLICE_FENCE_PARAMETER)))));
+
+        stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(generatorName), ctx.name(BOUND_FIELD)),
+            ctx.treeMaker.Literal(Boolean.TRUE))));
+
+        stats.add(ctx.treeMaker.Return(ctx.treeMaker.Ident(generatorName)));
+
+        final List<JCVariableDecl> params = List.of(
+            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER), ctx.name(SLICE_ORIGIN_PARAMETER),
+                ctx.treeMaker.TypeIdent(TypeTag.LONG), null),
+            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER), ctx.name(SLICE_FENCE_PARAMETER),
+                ctx.treeMaker.TypeIdent(TypeTag.LONG), null));
+
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.SLICE_METHOD),
+            generatorClassType(),
+            List.nil(),
+            params,
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, stats.toList()),
+            null);
+    }
+
+    private JCStatement callBind() {
+        final JCExpression bind = ctx.treeMaker.Ident(ctx.name(BIND_METHOD));
+
+        return ctx.treeMaker.Exec(ctx.treeMaker.App(bind.setType(Type.noType), List.nil()));
+    }
+
+    private JCStatement assignField(String field, JCExpression value) {
+        return ctx.treeMaker.Exec(ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(field)), value));
+    }
+
+    private void addField(String name, JCExpression type) {
+        fields.put(name, ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE), ctx.name(name), type, null));
+    }
+
+    /**
+     * Creates the method writing the state of a checkpointable generator: the version of the generator method, the
+     * state field, the last produced value, and the parameters and variables in the order of their names. The
+     * enclosing instance is left out, a restored generator keeps its own.
+     * <pre>
+     * {@code
+     *     public void save(java.io.ObjectOutput $_out) throws java.io.IOException {
+     *         $_out.writeLong(-2128831035410387418L);
+     *         $_out.writeInt($_state);
+     *         $_out.writeObject($_current);
+     *         $_out.writeInt(i);
+     *         $_out.writeObject(list);
+     *     }
+     * }
+     * </pre>
+     * @return the method declaration
+     */
+    private JCMethodDecl createSaveMethod() {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        final JCFieldAccess writeVersion = ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(OUT_PARAMETER)),
+            ctx.name(Identifiers.WRITE_METHOD_PREFIX + dataMethodSuffix(ctx.treeMaker.TypeIdent(TypeTag.LONG))));
+
+        stats.add(ctx.treeMaker.Exec(
+            ctx.treeMaker.App(writeVersion.setType(Type.noType), List.of(ctx.treeMaker.Literal(version)))));
+
+        for (JCVariableDecl variable : stateVariables()) {
+            final JCFieldAccess write = ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(OUT_PARAMETER)),
+                ctx.name(Identifiers.WRITE_METHOD_PREFIX + dataMethodSuffix(variable.vartype)));
+
+            stats.add(ctx.treeMaker.Exec(
+                ctx.treeMaker.App(write.setType(Type.noType), List.of(ctx.treeMaker.Ident(variable.getName())))));
+        }
+
+        final JCVariableDecl out = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(OUT_PARAMETER), javaIoType(Identifiers.OBJECT_OUTPUT), null);
+
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.SAVE_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.VOID),
+            List.nil(),
+            List.of(out),
+            List.of(javaIoType(Identifiers.IO_EXCEPTION)),
+            ctx.treeMaker.Block(NO_MODIFIERS, stats.toList()),
+            null);
+    }
+
+    /**
+     * Creates the method reading the state written by {@link #createSaveMethod()}, in the same order. References are
+     * read through {@code CPSUtil.restored}, which infers the type of the field:
+     * <pre>
+     * {@code
+     *     public void restore(java.io.ObjectInput $_in) throws java.io.IOException, java.lang.ClassNotFoundException {
+     *         CPSUtil.checkVersion($_in, -2128831035410387418L);
+     *         $_state = $_in.readInt();
+     *         $_current = CPSUtil.restored($_in);
+     *         i = $_in.readInt();
+     *         list = CPSUtil.restored($_in);
+     *     }
+     * }
+     * </pre>
+     * @return the method declaration
+     */
+    private JCMethodDecl createRestoreMethod() {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        final JCFieldAccess checkVersion =
+            ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.CHECK_VERSION_METHOD));
+
+        stats.add(ctx.treeMaker.Exec(ctx.treeMaker.App(checkVersion.setType(Type.noType),
+            List.of(ctx.treeMaker.Ident(ctx.name(IN_PARAMETER)), ctx.treeMaker.Literal(version)))));
+
+        for (JCVariableDecl variable : stateVariables()) {
+            final JCFieldAccess read;
+
+            final List<JCExpression> args;
+
+            if (variable.vartype instanceof JCPrimitiveTypeTree) {
+                read = ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(IN_PARAMETER)),
+                    ctx.name(Identifiers.READ_METHOD_PREFIX + dataMethodSuffix(variable.vartype)));
+
+                args = List.nil();
+            } else {
+                read = ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.RESTORED_METHOD));
+
+                args = List.of(ctx.treeMaker.Ident(ctx.name(IN_PARAMETER)));
+            }
+
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(ctx.treeMaker.Ident(variable.getName()),
+                ctx.treeMaker.App(read.setType(Type.noType), args))));
+        }
+
+        final JCVariableDecl in = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PARAMETER),
+            ctx.name(IN_PARAMETER), javaIoType(Identifiers.OBJECT_INPUT), null);
+
+        final JCExpression classNotFound = ctx.treeMaker.Select(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.LANG)),
+            ctx.name(Identifiers.CLASS_NOT_FOUND_EXCEPTION));
+
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.RESTORE_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.VOID),
+            List.nil(),
+            List.of(in),
+            List.of(javaIoType(Identifiers.IO_EXCEPTION), classNotFound),
+            ctx.treeMaker.Block(NO_MODIFIERS, stats.toList()),
+            null);
+    }
+
+    /**
+     * Creates the method copying the state machine of a forkable generator into a new instance, the same way as the
+     * slices of parallel generators are created. The state field, the last produced value, primitive variables and
+     * the enclosing instance are copied as they are, the rest through {@code CPSUtil.forked}, which forks the
+     * {@code Forkable} objects, for example the cursors of enhanced for loops:
+     * <pre>
+     * {@code
+     *     public $GeneratorImpl_0search123 fork() {
+     *         final $GeneratorImpl_0search123 $generator = new $GeneratorImpl_0search123();
+     *         $generator.$_state = $_state;
+     *         $generator.$_current = $_current;
+     *         $generator.cursor = CPSUtil.forked(cursor);
+     *         $generator.depth = depth;
+     *         $generator.$Outer42 = $Outer42;
+     *         return $generator;
+     *     }
+     * }
+     * </pre>
+     * @return the method declaration
+     */
+    private JCMethodDecl createForkMethod() {
+        final Name generatorName = ctx.name(GENERATOR_VARIABLE);
+
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        if (!cleanups.isEmpty()) {
+            /*
+             * Both forks would run the cleanup of the try statements, closing the same resources.
+             */
+            final JCExpression unsupported = ctx.treeMaker.Select(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.LANG)),
+                ctx.name(Identifiers.UNSUPPORTED_OPERATION_EXCEPTION));
+
+            stats.add(ctx.treeMaker.If(
+                ctx.treeMaker.Binary(Tag.NE, ctx.treeMaker.Ident(ctx.name(FINALLY_FIELD)),
+                    ctx.treeMaker.Literal(Continuation.NO_REGION)),
+                ctx.treeMaker.Throw(ctx.treeMaker.NewClass(null, List.nil(), unsupported,
+                    List.of(ctx.treeMaker.Literal("The generator is suspended in a try statement")), null)),
+                null));
+        }
 
-    private static final String GENERATOR_VARIABLE = "$generator";
+        stats.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.FINAL),
+            generatorName,
+            generatorClassType(),
+            ctx.treeMaker.NewClass(null, List.nil(), generatorClassType(), List.nil(), null)));
 
-    private static final long NO_MODIFIERS = 0L;
+        for (JCVariableDecl variable : stateVariables()) {
+            JCExpression value = ctx.treeMaker.Ident(variable.getName());
 
-    private final String methodNamePrefix;
+            if (!(variable.vartype instanceof JCPrimitiveTypeTree) && fields.containsKey(variable.getName().toString())) {
+                final JCFieldAccess forked =
+                    ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.FORKED_METHOD));
 
-    private final JCClassDecl enclosingClass;
+                value = ctx.treeMaker.App(forked.setType(Type.noType), List.of(value));
+            }
 
-    private final JCMethodDecl originalMethod;
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(generatorName), variable.getName()), value)));
+        }
 
-    private final ProcessingContext ctx;
+        if (!isStaticContext) {
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(generatorName), ctx.name(this.selfName)),
+                ctx.treeMaker.Ident(ctx.name(this.selfName)))));
+        }
 
-    private final String className;
+        stats.add(ctx.treeMaker.Return(ctx.treeMaker.Ident(generatorName)));
 
-    private final Map<Integer, java.util.List<JCStatement>> states;
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.FORK_METHOD),
+            generatorClassType(),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, stats.toList()),
+            null);
+    }
 
-    private final Map<String, JCVariableDecl> fields;
+    /**
+     * Returns the variables making up the state of the generator, saved into checkpoints and copied into forks: the
+     * state field and the last produced value, followed by the fields holding the parameters and variables of the
+     * generator method, ordered by name so that the order does not depend on the order the fields were created in. The
+     * enclosing instance is not part of the state.
+     * @return declarations of the variables, only their names and types are meaningful
+     */
+    private java.util.List<JCVariableDecl> stateVariables() {
+        final java.util.List<JCVariableDecl> variables = new ArrayList<>();
 
-    private final java.util.List<JCTree> classDefs;
+        variables.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS), ctx.name(STATE_FIELD),
+            ctx.treeMaker.TypeIdent(TypeTag.INT), null));
 
-    private final JCExpression generatedType;
+        variables.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS), ctx.name(CURRENT_FIELD),
+            copy(generatedType), null));
 
-    private final boolean isStaticContext;
+        new TreeMap<>(fields).forEach((name, field) -> {
+            if (!name.equals(selfName)) {
+                variables.add(field);
+            }
+        });
 
-    private String selfName;
+        return variables;
+    }
 
-    private int maxState;
+    /**
+     * Returns the suffix of the {@code DataOutput} and {@code DataInput} methods writing and reading a variable of the
+     * specified type, for example {@code Int} for {@code writeInt} and {@code readInt}.
+     * @param type the type of the variable
+     * @return the name of the primitive type capitalized, or {@code Object} for references
+     */
+    private static String dataMethodSuffix(JCExpression type) {
+        if (!(type instanceof JCPrimitiveTypeTree)) {
+            return Identifiers.OBJECT_SUFFIX;
+        }
 
-    private int endState;
+        final String tag = ((JCPrimitiveTypeTree) type).typetag.name();
 
-    GeneratorTransformer(JCClassDecl enclosingClass, JCMethodDecl originalMethod, ProcessingContext ctx, int index) {
-        this.enclosingClass = enclosingClass;
+        return tag.charAt(0) + tag.substring(1).toLowerCase(Locale.ROOT);
+    }
 
-        this.originalMethod = originalMethod;
+    private JCExpression javaIoType(String name) {
+        return ctx.treeMaker.Select(
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.IO)),
+            ctx.name(name));
+    }
 
-        this.ctx = ctx;
+    /**
+     * Computes the 64-bit FNV-1a hash of the specified source, used as the version of the generator method.
+     * @param source the source of the generator method
+     * @return the hash
+     */
+    private static long fingerprint(String source) {
+        long hash = 0xcbf29ce484222325L;
 
-        this.methodNamePrefix = generateMethodNamePrefix();
+        for (int i = 0; i < source.length(); ++i) {
+            hash ^= source.charAt(i);
 
-        this.className = generateClassName(index);
+            hash *= 0x100000001b3L;
+        }
 
-        this.states = new HashMap<>();
+        return hash;
+    }
 
-        this.fields = new HashMap<>();
+    /**
+     * Returns the type of the generator class, parameterized with the type parameters of the original method.
+     * @return the type of the generator class
+     */
+    private JCExpression generatorClassType() {
+        final JCIdent clazz = ctx.treeMaker.Ident(ctx.name(className));
 
-        this.classDefs = new ArrayList<>();
+        if (originalMethod.getTypeParameters().isEmpty()) {
+            return clazz;
+        }
 
-        this.isStaticContext =
-                originalMethod.getModifiers().getFlags().contains(STATIC) || INTERFACE.equals(enclosingClass.getKind());
+        final ListBuffer<JCExpression> typeParams = new ListBuffer<>();
 
-        this.maxState = -1;
+        for (JCTypeParameter param : originalMethod.getTypeParameters()) {
+            typeParams.add(ctx.treeMaker.Ident(param.getName()));
+        }
 
-        /*
-         * Here we can safely assume that the return type has at least one (actually it has exactly
-         * one) type parameter because of previous checks.
-         */
-        this.generatedType = ((JCTypeApply) originalMethod.getReturnType()).arguments.get(0);
+        return ctx.treeMaker.TypeApply(clazz, typeParams.toList());
     }
 
-    private String generateMethodNamePrefix() {
-        Random rand = new Random();
+    /**
+     * Returns the type of the cursor or random access view matching the variable of an enhanced for loop, for example
+     * {@code Cursor.OfInt} for {@code int}, {@code short}, {@code char} and {@code byte} variables and
+     * {@code Cursor<? extends String>} for {@code String} variables.
+     * @param base {@code Cursor} or {@code Indexed}
+     * @param variable the loop variable
+     * @return the type of the view
+     */
+    private JCExpression viewType(String base, JCVariableDecl variable) {
+        final String specialization = specialization(variable);
 
-        return "$" + originalMethod.getName() + "_" + Integer.toString(rand.nextInt()) + "_";
+        if (!specialization.isEmpty()) {
+            return ctx.treeMaker.Select(runtimeAccess(base), ctx.name("Of" + specialization));
+        }
+
+        final JCExpression elementType;
+
+        if (variable.getType() instanceof JCPrimitiveTypeTree) {
+            elementType = ctx.treeMaker.Ident(ctx.name(primitiveToObject(variable.getType().toString())));
+        } else {
+            elementType = copy(variable.vartype);
+        }
+
+        return ctx.treeMaker.TypeApply(runtimeAccess(base),
+            List.of(ctx.treeMaker.Wildcard(ctx.treeMaker.TypeBoundKind(BoundKind.EXTENDS), elementType)));
     }
 
-    private String generateClassName(int index) {
-        Random rand = new Random();
+    /**
+     * Reads an element from a cursor or random access view, narrowing it to the type of the loop variable if the
+     * view widens it.
+     * @param view the view
+     * @param index the index of the element
+     * @param variable the loop variable
+     * @return the element
+     */
+    private JCExpression elementAccess(JCExpression view, JCExpression index, JCVariableDecl variable) {
+        final String specialization = specialization(variable);
 
-        String name = CLASS_NAME_PREFIX + Integer.toString(index);
+        final JCFieldAccess get = ctx.treeMaker.Select(view, ctx.name(Identifiers.GET_METHOD + specialization));
 
-        name += originalMethod.getName().toString();
+        final JCExpression element = ctx.treeMaker.App(get.setType(Type.noType), List.of(index));
 
-        name += Integer.toString(rand.nextInt());
+        if (specialization.isEmpty() || specialization.equals(elementSuffix(variable))) {
+            return element;
+        }
 
-        return name;
+        return ctx.treeMaker.TypeCast(ctx.treeMaker.TypeIdent(((JCPrimitiveTypeTree) variable.vartype).typetag),
+            element);
     }
 
     /**
-     * Performs the transformation on the method passed to the constructor. Destructive in the sense that the original implementation if the
-     * method will not be preserved but rewritten to appropriate calls to the new nested generator class.
-     * @return a new class that contains the generator logic
+     * Returns the suffix of the {@code cursor} and {@code indexed} factory methods of the specified loop variable.
+     * @param variable the loop variable
+     * @return the capitalized name of the primitive type, or an empty string for reference variables
      */
-    JCClassDecl transform() {
-        final int startState = newState();
+    private String elementSuffix(JCVariableDecl variable) {
+        if (!(variable.vartype instanceof JCPrimitiveTypeTree)) {
+            return "";
+        }
 
-        this.endState = newState();
+        final String primitive = variable.vartype.toString();
 
-        if (!isStaticContext) {
-            generateSelfField();
+        return Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1);
+    }
+
+    /**
+     * Returns the specialization of the views read by the specified loop variable.
+     * @param variable the loop variable
+     * @return {@code Int}, {@code Long}, {@code Double} or an empty string if the elements are boxed
+     */
+    private String specialization(JCVariableDecl variable) {
+        if (!(variable.vartype instanceof JCPrimitiveTypeTree)) {
+            return "";
         }
 
-        generateParameterFields();
+        switch (((JCPrimitiveTypeTree) variable.vartype).typetag) {
+            case INT:
+            case SHORT:
+            case CHAR:
+            case BYTE:
+                return "Int";
+            case LONG: return "Long";
+            case FLOAT:
+            case DOUBLE:
+                return "Double";
+            default: return "";
+        }
+    }
+
+    private JCStatement lowerSwitchTransition(Transition transition) {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
 
-        transformBlock(originalMethod.getBody(), startState,
-                Continuation.empty().nextCont(endState).rename("this", this.selfName));
+        if (transition.isBlock()) {
+            stats.add(assignField(BLOCK_FIELD, transition.getValue().get()));
 
-        finishEndState();
+            stats.add(assignField(BLOCK_INDEX_FIELD, ctx.treeMaker.Literal(0)));
 
-        return createClassDeclaration();
-    }
+            stats.add(assignField(STATE_FIELD, ctx.treeMaker.Literal(transition.getTarget())));
 
-    private void generateSelfField() {
-        Random rand = new Random();
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
 
-        this.selfName = "$" + enclosingClass.getSimpleName().toString() + Integer.toString(rand.nextInt());
+            return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
+        }
 
-        JCVariableDecl decl =
-            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
-                                 ctx.name(this.selfName), ctx.treeMaker.Ident(enclosingClass.name),
-                                 null);
+        final String register;
 
-        fields.put(this.selfName, decl);
+        if (transition.isAwait()) {
+            register = AWAITING_FIELD;
+        } else if (transition.isReceive()) {
+            register = RECEIVING_FIELD;
+        } else if (transition.isDelegate()) {
+            register = DELEGATE_FIELD;
+        } else {
+            register = CURRENT_FIELD;
+        }
+
+        transition.getValue().ifPresent(value ->
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(register)), value))));
+
+        final int target = transition.isHalt() ? endState : transition.getTarget();
+
+        stats.add(ctx.treeMaker.Exec(
+            ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(STATE_FIELD)), ctx.treeMaker.Literal(target))));
+
+        if (transition.isHalt()) {
+            stats.add(ctx.treeMaker.Return(ctx.treeMaker.Literal(Boolean.FALSE)));
+        } else if (transition.getValue().isPresent()) {
+            stats.add(ctx.treeMaker.Return(ctx.treeMaker.Literal(Boolean.TRUE)));
+        } else {
+            stats.add(ctx.treeMaker.Continue(ctx.name(LOOP_LABEL)));
+        }
+
+        return ctx.treeMaker.Block(NO_MODIFIERS, stats.toList());
     }
 
     /**
-     * Fills the end state with code. Generates the following code:
+     * Creates the statements taking the instance of a pooled generator from the pool of the current thread, or
+     * creating a new one if there is none:
      * <pre>
      * {@code
-     *     return cont(() -> k.apply(GeneratorState.empty()));
+     *     Cls<T> $generator = GeneratorPool.acquire(Cls.class);
+     *
+     *     if ($generator == null || $generator.$self != this) {
+     *         $generator = new Cls<T>();
+     *     }
      * }
      * </pre>
+     * The instance of a non-static generator class also refers to its enclosing instance implicitly, so an instance
+     * created for another enclosing instance is dropped instead of being reused.
+     * @param clazz the parameterized type of the generator class, {@code null} if the class is not generic
+     * @param instantiation the expression creating a new instance
+     * @return the statements declaring and initializing the generator variable
      */
-    private void finishEndState() {
-        final JCIdent jieldPackage =
-                ctx.treeMaker.Ident(ctx.names.fromString(Identifiers.JIELD));
-
-        final JCFieldAccess runtimeAccess =
-                ctx.treeMaker.Select(jieldPackage, ctx.names.fromString(Identifiers.RUNTIME));
-
-        final JCFieldAccess genStateAccess =
-                ctx.treeMaker.Select(runtimeAccess, ctx.names.fromString(Identifiers.GENERATOR_STATE));
-
-        final JCExpression selectEmpty =
-            ctx.treeMaker.Select(genStateAccess, ctx.name(Identifiers.EMPTY_METHOD));
-
-        final JCMethodInvocation invokeEmpty =
-            ctx.treeMaker.Apply(List.nil(), selectEmpty.setType(Type.noType), List.nil());
+    private List<JCStatement> acquirePooledInstance(JCExpression clazz, JCNewClass instantiation) {
+        final Name generatorName = ctx.name(GENERATOR_VARIABLE);
 
-        final JCExpression selectApply =
-            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(CONTINUATION_PARAM)), ctx.name(Identifiers.APPLY_METHOD));
+        final JCFieldAccess acquire =
+            ctx.treeMaker.Select(runtimeAccess(Identifiers.GENERATOR_POOL), ctx.name(Identifiers.ACQUIRE_METHOD));
 
-        final JCMethodInvocation invokeApply =
-            ctx.treeMaker.App(selectApply.setType(Type.noType), List.of(invokeEmpty));
+        final JCExpression classLiteral =
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(className)), ctx.names._class);
 
-        final JCLambda lambda = ctx.treeMaker.Lambda(List.nil(), invokeApply);
+        final JCStatement declaration = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
+            generatorName,
+            clazz != null ? clazz : ctx.treeMaker.Ident(ctx.name(className)),
+            ctx.treeMaker.App(acquire.setType(Type.noType), List.of(classLiteral)));
 
-        final JCFieldAccess bounceAccess =
-                ctx.treeMaker.Select(runtimeAccess, ctx.names.fromString(Identifiers.BOUNCE));
+        JCExpression unusable = ctx.treeMaker.Binary(Tag.EQ, ctx.treeMaker.Ident(generatorName),
+            ctx.treeMaker.Literal(TypeTag.BOT, null));
 
-        final JCFieldAccess contAccess =
-                ctx.treeMaker.Select(bounceAccess, ctx.names.fromString(Identifiers.CONT_METHOD));
+        if (!isStaticContext) {
+            final JCExpression otherSelf = ctx.treeMaker.Binary(Tag.NE,
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(generatorName), ctx.name(this.selfName)),
+                ctx.treeMaker.Ident(ctx.names._this));
 
-        final JCMethodInvocation invokeCont =
-            ctx.treeMaker.App(contAccess.setType(Type.noType), List.of(lambda));
+            unusable = ctx.treeMaker.Binary(Tag.OR, unusable, otherSelf);
+        }
 
-        final JCReturn ret = ctx.treeMaker.Return(invokeCont);
+        final JCStatement create =
+            ctx.treeMaker.Exec(ctx.treeMaker.Assign(ctx.treeMaker.Ident(generatorName), instantiation));
 
-        states.get(endState).add(ret);
+        return List.of(declaration,
+            ctx.treeMaker.If(unusable, ctx.treeMaker.Block(NO_MODIFIERS, List.of(create)), null));
     }
 
     /**
-     * Creates a new class declaration holding the state methods and fields for parameters and local variables.
-     * @return the generated class declaration
+     * Creates the method resetting the instance of a pooled generator and returning it to the pool. Reference fields
+     * are cleared, so that the pooled instance does not keep the last arguments and locals reachable. The reference
+     * to the enclosing instance is kept, it is compared when the instance is acquired. A state machine is put back
+     * into its start state, trampolined states need no reset, since every use starts a new trampoline.
+     * <pre>
+     * {@code
+     *     public void recycle() {
+     *         xs = null;
+     *         $_state = 0;
+     *         GeneratorPool.release(this);
+     *     }
+     * }
+     * </pre>
+     * @return the method declaration
      */
-    private JCClassDecl createClassDeclaration() {
-        long flags = Flags.PRIVATE | Flags.FINAL;
+    private JCMethodDecl createRecycleMethod() {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
 
-        /*
-         * If the original method was static then the generated class must be a nested static class too. The same
-         * applied if the transformed method was located in an interface. In that case we have a default method which
-         * is implicitly static.
-         */
-        if (isStaticContext) {
-            flags |= Flags.STATIC;
+        for (JCVariableDecl field : fields.values()) {
+            if (!(field.vartype instanceof JCPrimitiveTypeTree) && !field.getName().toString().equals(selfName)) {
+                stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(ctx.treeMaker.Ident(field.getName()),
+                    ctx.treeMaker.Literal(TypeTag.BOT, null))));
+            }
         }
 
-        final JCModifiers mods = ctx.treeMaker.Modifiers(flags);
-
-        final ListBuffer<JCTree> defs = new ListBuffer<>();
-
-        defs.addAll(fields.values());
-
-        defs.addAll(classDefs);
-
-        defs.add(createStreamMethod());
+        if (backend == Backend.SWITCH) {
+            if (!shape.isPrimitive()) {
+                stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(CURRENT_FIELD)),
+                    ctx.treeMaker.Literal(TypeTag.BOT, null))));
+            }
 
-        for (Map.Entry<Integer, java.util.List<JCStatement>> state : states.entrySet()) {
-            defs.add(stateIntoMethod(state.getKey(), state.getValue()));
+            stats.add(ctx.treeMaker.Exec(ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(STATE_FIELD)),
+                ctx.treeMaker.Literal(0))));
         }
 
-        rewriteOriginalMethod();
+        final JCFieldAccess release =
+            ctx.treeMaker.Select(runtimeAccess(Identifiers.GENERATOR_POOL), ctx.name(Identifiers.RELEASE_METHOD));
 
-        return ctx.treeMaker.ClassDef(mods, ctx.name(className),
-            originalMethod.getTypeParameters(), null, List.nil(), defs.toList());
+        stats.add(ctx.treeMaker.Exec(
+            ctx.treeMaker.App(release.setType(Type.noType), List.of(ctx.treeMaker.Ident(ctx.names._this)))));
+
+        return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
+            ctx.name(Identifiers.RECYCLE_METHOD),
+            ctx.treeMaker.TypeIdent(TypeTag.VOID),
+            List.nil(),
+            List.nil(),
+            List.nil(),
+            ctx.treeMaker.Block(NO_MODIFIERS, stats.toList()),
+            null);
     }
 
     /**
@@ -257,13 +2259,17 @@ final class GeneratorTransformer {
 
         final ListBuffer<JCStatement> stats = new ListBuffer<>();
 
-        final JCStatement generatorAssign =
-            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
-                    generatorName,
-                    typeParams.length() > 0 ? clazz : ctx.treeMaker.Ident(ctx.name(className)),
-                    instantiation);
+        if (options.isPooled()) {
+            stats.addAll(acquirePooledInstance(typeParams.length() > 0 ? clazz : null, instantiation));
+        } else {
+            final JCStatement generatorAssign =
+                ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
+                        generatorName,
+                        typeParams.length() > 0 ? clazz : ctx.treeMaker.Ident(ctx.name(className)),
+                        instantiation);
 
-        stats.add(generatorAssign);
+            stats.add(generatorAssign);
+        }
 
         if (!isStaticContext) {
             final JCFieldAccess selfFieldAccess =
@@ -302,48 +2308,15 @@ final class GeneratorTransformer {
      * @return a new method declaration consisting of the state's statements
      */
     private JCMethodDecl stateIntoMethod(int index, java.util.List<JCStatement> statements) {
-        final JCIdent jieldPackage =
-                ctx.treeMaker.Ident(ctx.names.fromString(Identifiers.JIELD));
-
-        final JCFieldAccess runtimeAccess =
-                ctx.treeMaker.Select(jieldPackage, ctx.names.fromString(Identifiers.RUNTIME));
-
-        final JCFieldAccess bounceAccess =
-                ctx.treeMaker.Select(runtimeAccess, ctx.names.fromString(Identifiers.BOUNCE));
-
         final JCExpression returnType =
-            ctx.treeMaker.TypeApply(bounceAccess, List.of(generatedType));
-
-        /*
-         * Black magic and witchcraft ahead:
-         *
-         * Create type symbol and class type so that we can trick javac into thinking
-         * that this is properly typed code.
-         *
-         * There are some suspicious nulls, but they cause no harm.
-         */
-        final Symbol.PackageSymbol jieldPkgSymbol =
-                new Symbol.PackageSymbol(ctx.names.fromString(Identifiers.JIELD), null);
-
-        final Symbol.PackageSymbol runtimePkgSymbol =
-                new Symbol.PackageSymbol(ctx.names.fromString(Identifiers.RUNTIME), jieldPkgSymbol);
-
-        final Symbol.TypeSymbol generatorStateSymbol =
-            new ClassSymbol(NO_MODIFIERS, ctx.name(Identifiers.GENERATOR_STATE), runtimePkgSymbol);
-
-        final Type.ClassType generatorStateType =
-            new Type.ClassType(Type.noType, List.of(generatedType.type), generatorStateSymbol);
-
-        final JCVariableDecl contParam =
-            ctx.treeMaker.VarDef(new Symbol.VarSymbol(Flags.PARAMETER,
-                ctx.name(CONTINUATION_PARAM), generatorStateType, null), null);
+            ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.BOUNCE), List.of(generatedType));
 
         return ctx.treeMaker.MethodDef(
             ctx.treeMaker.Modifiers(Flags.PRIVATE),
             methodName(index),
             returnType,
             List.nil(),
-            List.of(contParam),
+            List.nil(),
             List.nil(),
             ctx.treeMaker.Block(NO_MODIFIERS, List.from(statements)),
             null);
@@ -355,41 +2328,62 @@ final class GeneratorTransformer {
      * <p> The generated implementation looks somehow like this:
      * <pre>
      * {@code
-     *   return BaseGenerator.startingAt(this::<>$0).stream();
+     *   return BaseGenerator.startingAt($k0).stream();
      * }
      * </pre>
      * </p>
+     *
+     * <p>
+     * Prefetching generators wrap the generator, as in {@code BaseGenerator.startingAt($k0).prefetching(16).stream()}.
+     * </p>
+     * @param factory the {@code BaseGenerator} factory method to be invoked
+     * @param start the argument of the factory method
+     * @param streamMethod the method of the generator that creates the stream
      * @return the method declaration of the stream method
      */
-    private JCMethodDecl createStreamMethod() {
-        final JCExpression startStateRef =
-            ctx.treeMaker
-                .Reference(MemberReferenceTree.ReferenceMode.INVOKE, methodName(0), ctx.treeMaker.Ident(ctx.names._this), List.nil());
+    private JCMethodDecl createStreamMethod(JCExpression factory, JCExpression start, String streamMethod) {
+        /*
+         * Pooled generators pass themselves as the instance to recycle. Trampolines over loop cursors pass themselves
+         * as the instance to close as well, state machines close themselves.
+         */
+        final JCExpression recyclable = options.isPooled()
+            ? ctx.treeMaker.Ident(ctx.names._this)
+            : ctx.treeMaker.Literal(TypeTag.BOT, null);
 
-        final JCIdent jieldPackage =
-                ctx.treeMaker.Ident(ctx.names.fromString(Identifiers.JIELD));
+        final List<JCExpression> args;
 
-        final JCFieldAccess runtimeAccess =
-                ctx.treeMaker.Select(jieldPackage, ctx.names.fromString(Identifiers.RUNTIME));
+        if (backend == Backend.TRAMPOLINE && !cursors.isEmpty()) {
+            args = List.of(start, ctx.treeMaker.Ident(ctx.names._this), recyclable);
+        } else {
+            args = options.isPooled() ? List.of(start, recyclable) : List.of(start);
+        }
+
+        JCExpression generator = ctx.treeMaker.App(factory.setType(Type.noType), args);
 
-        final JCFieldAccess baseGenAccess =
-                ctx.treeMaker.Select(runtimeAccess, ctx.names.fromString(Identifiers.BASE_GENERATOR));
+        if (options.getPrefetch() > 0) {
+            final JCExpression selectPrefetching =
+                ctx.treeMaker.Select(generator, ctx.name(Identifiers.PREFETCHING_METHOD));
 
-        final JCExpression selectStartingAt =
-            ctx.treeMaker.Select(baseGenAccess, ctx.name(Identifiers.STARTING_AT_METHOD));
+            generator = ctx.treeMaker.App(selectPrefetching.setType(Type.noType),
+                List.of(ctx.treeMaker.Literal(options.getPrefetch())));
+        }
 
-        final JCExpression selectStream =
-            ctx.treeMaker.Select(ctx.treeMaker.App(selectStartingAt.setType(Type.noType), List.of(startStateRef)),
-                ctx.name(Identifiers.STREAM_METHOD));
+        final JCReturn ret;
 
-        final JCMethodInvocation invokeStream =
-            ctx.treeMaker.App(selectStream.setType(originalMethod.getReturnType().type));
+        if (shape.isAsync() || shape.isCoroutine()) {
+            /*
+             * The async generator or the coroutine itself is returned.
+             */
+            ret = ctx.treeMaker.Return(generator);
+        } else {
+            final JCExpression selectStream = ctx.treeMaker.Select(generator, ctx.name(streamMethod));
 
-        final JCReturn ret = ctx.treeMaker.Return(invokeStream);
+            ret = ctx.treeMaker.Return(ctx.treeMaker.App(selectStream.setType(originalMethod.getReturnType().type)));
+        }
 
         return ctx.treeMaker.MethodDef(ctx.treeMaker.Modifiers(Flags.PRIVATE),
             ctx.name(Identifiers.STREAM_METHOD),
-            originalMethod.restype,
+            copy(originalMethod.restype),
             List.nil(),
             List.nil(),
             List.nil(),
@@ -403,7 +2397,7 @@ final class GeneratorTransformer {
         for (JCVariableDecl declaration : originalMethod.getParameters()) {
             JCVariableDecl decl = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.PUBLIC),
                 declaration.getName(),
-                declaration.vartype,
+                copy(declaration.vartype),
                 null);
 
             fields.put(decl.getName().toString(), decl);
@@ -439,15 +2433,158 @@ final class GeneratorTransformer {
             transformLabeledStatement((JCLabeledStatement) statement, current, cont);
         } else if (statement instanceof JCEnhancedForLoop) {
             transformEnhancedForLoop((JCEnhancedForLoop) statement, current, cont);
+        } else if (statement instanceof JCTry) {
+            transformTry((JCTry) statement, current, cont);
         } else if (statement instanceof JCClassDecl) {
             RenamingVisitor.visit(statement, cont, ctx.names);
 
             classDefs.add(statement);
+        } else if (isSuspensionStatement(statement)) {
+            final JCExpression expression = ((JCExpressionStatement) statement).getExpression();
+
+            if (expression instanceof JCAssign) {
+                transformSuspension(Optional.of(((JCAssign) expression).lhs), ((JCAssign) expression).rhs, current,
+                    cont);
+            } else {
+                transformSuspension(Optional.empty(), expression, current, cont);
+            }
         } else {
             transformNoop(statement, current, cont);
         }
     }
 
+    /**
+     * Checks whether the statement is an {@code await} or {@code receive} call on its own or assigned to a variable.
+     */
+    private static boolean isSuspensionStatement(JCStatement statement) {
+        if (!(statement instanceof JCExpressionStatement)) {
+            return false;
+        }
+
+        final JCExpression expression = ((JCExpressionStatement) statement).getExpression();
+
+        if (expression instanceof JCAssign) {
+            return isSuspension(((JCAssign) expression).rhs);
+        }
+
+        return isSuspension(expression);
+    }
+
+    /**
+     * Checks whether the expression is a call suspending the generator until its result is available: an
+     * {@code await} or a {@code receive} call.
+     */
+    private static boolean isSuspension(JCExpression expression) {
+        return GeneratorsCalls.stageOf(expression).isPresent() || GeneratorsCalls.isReceive(expression);
+    }
+
+    private void transformSuspension(Optional<JCExpression> target, JCExpression call, int current,
+                                     Continuation cont) {
+        final Optional<JCExpression> stage = GeneratorsCalls.stageOf(call);
+
+        if (stage.isPresent()) {
+            transformAwait(target, stage.get(), current, cont);
+        } else {
+            transformReceive(target, current, cont);
+        }
+    }
+
+    /**
+     * Suspends an async generator on a stage. The current state ends with an await transition, and a new state resumes
+     * the generator by reading the result of the stage and clearing the awaited stage:
+     * <pre>
+     * {@code
+     *     // current state
+     *     $_awaiting = stage;
+     *     $_state = 7;
+     *     return true;
+     *
+     *     // resuming state 7
+     *     x = CPSUtil.awaited($_awaiting);
+     *     $_awaiting = null;
+     * }
+     * </pre>
+     * @param target the variable the result is assigned to, empty if the result is discarded
+     * @param stage the expression of the awaited stage
+     * @param current the state the {@code await} is located in
+     * @param cont the continuation following the {@code await}
+     */
+    private void transformAwait(Optional<JCExpression> target, JCExpression stage, int current, Continuation cont) {
+        if (!shape.isAsync()) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "await can only be used in generators returning AsyncGenerator: " + originalMethod.getName());
+
+            return;
+        }
+
+        RenamingVisitor.visit(stage, cont, ctx.names);
+
+        target.ifPresent(t -> RenamingVisitor.visit(t, cont, ctx.names));
+
+        final int resumeState = newState();
+
+        states.get(current).add(transition(Transition.await(resumeState, stage)));
+
+        final JCFieldAccess selectAwaited =
+            ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.AWAITED_METHOD));
+
+        final JCExpression awaited = ctx.treeMaker.App(selectAwaited.setType(Type.noType),
+            List.of(ctx.treeMaker.Ident(ctx.name(AWAITING_FIELD))));
+
+        states.get(resumeState).add(ctx.treeMaker.Exec(target
+            .<JCExpression>map(t -> ctx.treeMaker.Assign(t, awaited))
+            .orElse(awaited)));
+
+        states.get(resumeState).add(ctx.treeMaker.Exec(
+            ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(AWAITING_FIELD)), ctx.treeMaker.Literal(TypeTag.BOT, null))));
+
+        states.get(resumeState).add(yield(cont.getNextCont(), Optional.empty()));
+    }
+
+    /**
+     * Suspends a coroutine until a value is sent to it. The current state ends with a receive transition, and a new
+     * state resumes the coroutine by reading the sent value and clearing the fields:
+     * <pre>
+     * {@code
+     *     // current state
+     *     $_receiving = true;
+     *     $_state = 7;
+     *     return true;
+     *
+     *     // resuming state 7
+     *     x = $_input;
+     *     $_receiving = false;
+     *     $_input = null;
+     * }
+     * </pre>
+     * @param target the variable the value is assigned to, empty if the value is discarded
+     * @param current the state the {@code receive} is located in
+     * @param cont the continuation following the {@code receive}
+     */
+    private void transformReceive(Optional<JCExpression> target, int current, Continuation cont) {
+        if (!shape.isCoroutine()) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "receive can only be used in generators returning Coroutine: " + originalMethod.getName());
+
+            return;
+        }
+
+        target.ifPresent(t -> RenamingVisitor.visit(t, cont, ctx.names));
+
+        final int resumeState = newState();
+
+        states.get(current).add(transition(Transition.receive(resumeState, ctx.treeMaker.Literal(Boolean.TRUE))));
+
+        target.ifPresent(t -> states.get(resumeState).add(
+            ctx.treeMaker.Exec(ctx.treeMaker.Assign(t, ctx.treeMaker.Ident(ctx.name(INPUT_FIELD))))));
+
+        states.get(resumeState).add(assignField(RECEIVING_FIELD, ctx.treeMaker.Literal(Boolean.FALSE)));
+
+        states.get(resumeState).add(assignField(INPUT_FIELD, ctx.treeMaker.Literal(TypeTag.BOT, null)));
+
+        states.get(resumeState).add(yield(cont.getNextCont(), Optional.empty()));
+    }
+
     private void transformSwitch(JCSwitch statement, int current, Continuation cont) {
         Continuation c = cont;
 
@@ -571,53 +2708,31 @@ final class GeneratorTransformer {
 
         final java.util.List<JCStatement> initStatements = states.get(initState);
 
-        final JCIdent javaPackage =
-                ctx.treeMaker.Ident(ctx.names.fromString(Identifiers.JAVA));
-
-        final JCFieldAccess utilAccess =
-                ctx.treeMaker.Select(javaPackage, ctx.names.fromString(Identifiers.UTIL));
-
-        final JCFieldAccess iteratorAccess =
-                ctx.treeMaker.Select(utilAccess, ctx.names.fromString(Identifiers.ITERATOR));
-
-        final JCExpression iteratorType;
-
-        if (loop.var.getType() instanceof JCPrimitiveTypeTree) {
-            iteratorType =
-                    ctx.treeMaker.Ident(ctx.name(primitiveToObject(loop.var.getType().toString())));
-        } else {
-            iteratorType = (JCExpression) loop.var.getType();
-        }
-
-        final JCTypeApply parameterizedIterator =
-                ctx.treeMaker.TypeApply(iteratorAccess, List.of(iteratorType));
-
-        final JCIdent jieldPackage =
-                ctx.treeMaker.Ident(ctx.names.fromString(Identifiers.JIELD));
-
-        final JCFieldAccess runtimeAccess =
-                ctx.treeMaker.Select(jieldPackage, ctx.names.fromString(Identifiers.RUNTIME));
-
-        final JCFieldAccess cpsUtilAccess =
-                ctx.treeMaker.Select(runtimeAccess, ctx.names.fromString(Identifiers.CPS_UTIL));
-
-        final JCFieldAccess iteratorMethodAccess =
-                ctx.treeMaker.Select(cpsUtilAccess, ctx.names.fromString(Identifiers.ITERATOR_METHOD));
+        /*
+         * The source is read through a cursor chosen by the type of the loop variable, and the index of the next
+         * element is kept in a field, so arrays and random access lists are accessed directly without boxing.
+         */
+        final JCFieldAccess cursorFactory = ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL),
+                ctx.name(Identifiers.CURSOR_METHOD + elementSuffix(loop.getVariable())));
 
-        final JCMethodInvocation iteratorInvocation =
-                ctx.treeMaker.App(iteratorMethodAccess.setType(Type.noType),
-                        List.of(loop.getExpression()));
+        final JCVariableDecl cursorDecl =
+            ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
+                    ctx.name("cursor"),
+                    viewType(Identifiers.CURSOR, loop.getVariable()),
+                    ctx.treeMaker.App(cursorFactory.setType(Type.noType), List.of(loop.getExpression())));
 
-        final JCVariableDecl iteratorDecl =
+        final JCVariableDecl indexDecl =
             ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
-                    ctx.name("iterator"),
-                    parameterizedIterator,
-                    iteratorInvocation);
+                    ctx.name("index"),
+                    ctx.treeMaker.TypeIdent(TypeTag.INT),
+                    ctx.treeMaker.Literal(0));
 
-        c = addVariableAsField(iteratorDecl, c);
+        for (JCVariableDecl decl : List.of(cursorDecl, indexDecl)) {
+            c = addVariableAsField(decl, c);
 
-        convertVariableDeclarationToAssignment(iteratorDecl, c)
-                .ifPresent(initStatements::add);
+            convertVariableDeclarationToAssignment(decl, c)
+                    .ifPresent(initStatements::add);
+        }
 
         c = addVariableAsField(loop.getVariable(), c);
 
@@ -635,17 +2750,17 @@ final class GeneratorTransformer {
 
         final int bodyState = newState();
 
-        final JCIdent iteratorId =
-                ctx.treeMaker.Ident(ctx.name(c.nameOf("iterator")));
+        final Name cursorName = ctx.name(c.nameOf("cursor"));
+
+        final Name indexName = ctx.name(c.nameOf("index"));
 
-        final JCFieldAccess nextMethodAccess =
-                ctx.treeMaker.Select(iteratorId, ctx.name(Identifiers.NEXT_METHOD));
+        cursors.add(cursorName.toString());
 
-        final JCMethodInvocation nextMethodInvocation =
-                ctx.treeMaker.App(nextMethodAccess.setType(Type.noType));
+        final JCExpression element = elementAccess(ctx.treeMaker.Ident(cursorName),
+                ctx.treeMaker.Unary(Tag.POSTINC, ctx.treeMaker.Ident(indexName)), loop.getVariable());
 
         final JCAssign assignNext =
-                ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(c.nameOf(loop.var.name.toString()))), nextMethodInvocation);
+                ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(c.nameOf(loop.var.name.toString()))), element);
 
         ifBody.add(ctx.treeMaker.Exec(assignNext));
 
@@ -653,10 +2768,11 @@ final class GeneratorTransformer {
 
         final JCBlock ifBlock = ctx.treeMaker.Block(NO_MODIFIERS, ifBody.toList());
 
-        final JCFieldAccess hasNextAccess =
-                ctx.treeMaker.Select(iteratorId, ctx.name(Identifiers.HAS_NEXT_METHOD));
+        final JCFieldAccess hasAccess =
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(cursorName), ctx.name(Identifiers.HAS_METHOD));
 
-        final JCExpression cond = ctx.treeMaker.App(hasNextAccess.setType(Type.noType));
+        final JCExpression cond =
+                ctx.treeMaker.App(hasAccess.setType(Type.noType), List.of(ctx.treeMaker.Ident(indexName)));
 
         final JCIf conditional = ctx.treeMaker.If(cond, ifBlock, null);
 
@@ -664,8 +2780,26 @@ final class GeneratorTransformer {
 
         condStatements.add(yield(c.getNextCont(), Optional.empty()));
 
-        c = c.nextCont(conditionState)
-                .breakCont(NO_LABEL, cont.getNextCont())
+        /*
+         * Jumps leaving the body release the cursor on the way, which closes the source if it is a stream. A cursor
+         * over a stream closes it by itself once exhausted, so the normal end of the loop goes straight on.
+         */
+        final JCStatement release = releaseCursor(cursorName);
+
+        final Map<Integer, Integer> exits = new HashMap<>();
+
+        c = c.redirect(target -> exits.computeIfAbsent(target, t -> {
+            final int exit = newState();
+
+            states.get(exit).add(copy(release));
+
+            states.get(exit).add(yield(t, Optional.empty()));
+
+            return exit;
+        }));
+
+        c = c.breakCont(NO_LABEL, c.getNextCont())
+                .nextCont(conditionState)
                 .continueCont(NO_LABEL, conditionState);
 
         for (String label : c.getLabels()) {
@@ -682,11 +2816,16 @@ final class GeneratorTransformer {
     }
 
     private void transformContinue(JCContinue statement, int current, Continuation cont) {
-        if (statement.getLabel() != null) {
-            states.get(current).add(yield(cont.getContinueCont(statement.label.toString()), Optional.empty()));
-        } else {
-            states.get(current).add(yield(cont.getContinueCont(null), Optional.empty()));
+        final String label = statement.getLabel() == null ? NO_LABEL : statement.getLabel().toString();
+
+        if (!cont.hasContinueCont(label)) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "continue outside of loop: " + statement + " in " + originalMethod.getName());
+
+            return;
         }
+
+        states.get(current).add(yield(cont.getContinueCont(label), Optional.empty()));
     }
 
     private void transformLabeledStatement(JCLabeledStatement statement, int current, Continuation cont) {
@@ -696,11 +2835,16 @@ final class GeneratorTransformer {
     }
 
     private void transformBreak(JCBreak statement, int current, Continuation cont) {
-        if (statement.getLabel() != null) {
-            states.get(current).add(yield(cont.getBreakCont(statement.label.toString()), Optional.empty()));
-        } else {
-            states.get(current).add(yield(cont.getBreakCont(null), Optional.empty()));
+        final String label = statement.getLabel() == null ? NO_LABEL : statement.getLabel().toString();
+
+        if (!cont.hasBreakCont(label)) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "break outside switch or loop: " + statement + " in " + originalMethod.getName());
+
+            return;
         }
+
+        states.get(current).add(yield(cont.getBreakCont(label), Optional.empty()));
     }
 
     /*
@@ -957,6 +3101,8 @@ final class GeneratorTransformer {
     private void transformBlock(JCBlock block, int current, Continuation cont) {
         Continuation c = cont;
 
+        final Set<JCVariableDecl> confined = confinedVariables(block.getStatements());
+
         /*
          * Create an empty continuation state for child statements.
          */
@@ -969,7 +3115,20 @@ final class GeneratorTransformer {
         int childCurrent = current;
 
         for (JCStatement statement : block.getStatements()) {
-            if (statement instanceof JCVariableDecl) {
+            if (statement instanceof JCVariableDecl && isSuspension(((JCVariableDecl) statement).getInitializer())) {
+                final JCVariableDecl decl = (JCVariableDecl) statement;
+
+                c = addVariableAsField(decl, c);
+
+                final JCExpression target = ctx.treeMaker.Ident(decl.getName());
+
+                transformSuspension(Optional.of(target), decl.getInitializer(), childCurrent,
+                    c.nextCont(childContinuation).label(NO_LABEL));
+            } else if (confined.contains(statement)) {
+                c = keepVariableLocal((JCVariableDecl) statement, c);
+
+                transformNoop(statement, childCurrent, c);
+            } else if (statement instanceof JCVariableDecl) {
                 c = addVariableAsField((JCVariableDecl) statement, c);
 
                 final int cc = childCurrent;
@@ -1009,43 +3168,399 @@ final class GeneratorTransformer {
         states.get(childContinuation).add(yield(c.getNextCont(), Optional.empty()));
     }
 
+    /**
+     * Lowers a try statement whose body suspends the generator. The body becomes a region of the states, entered by
+     * storing the number of the region in {@code $_finally}. Every jump leaving the body goes through a new state
+     * leaving the region, which restores the enclosing region and runs the cleanup: the finally block, or closing the
+     * resource for try-with-resources statements, which are lowered into a region for each resource nested in the
+     * region of the finally block:
+     * <pre>
+     * {@code
+     *     // current state
+     *     $_finally = 1;
+     *     reader = open();
+     *     $_finally = 2;
+     *     // body, continuing at state 8
+     *
+     *     // leaving state 8
+     *     {
+     *         $_finally = 1;
+     *         CPSUtil.close(reader);
+     *     }
+     *     // continuing at state 9
+     *
+     *     // leaving state 9
+     *     {
+     *         $_finally = 0;
+     *         // finally block
+     *     }
+     * }
+     * </pre>
+     * The state machine runs the cleanup of the regions it is in if it is closed, or if the generator code throws an
+     * exception, see {@link #createCleanupMembers}. Catch clauses would have to catch the exceptions of every state of
+     * the body, and finally blocks cannot suspend a state machine that is being closed, so both are rejected.
+     * @param statement the try statement
+     * @param current the state the try statement is located in
+     * @param cont the continuation following the try statement
+     */
+    private void transformTry(JCTry statement, int current, Continuation cont) {
+        if (!statement.getCatches().isEmpty()) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "try statements with catch clauses cannot yield: " + originalMethod.getName());
+
+            transformNoop(statement, current, cont);
+
+            return;
+        }
+
+        if (statement.getFinallyBlock() != null
+            && ModifiesControlFlowVisitor.modifiesControlFlow(statement.getFinallyBlock())) {
+            ctx.messager.printMessage(Diagnostic.Kind.ERROR,
+                "finally blocks cannot yield or jump out of the block: " + originalMethod.getName());
+
+            transformNoop(statement, current, cont);
+
+            return;
+        }
+
+        Continuation c = cont;
+
+        if (statement.getFinallyBlock() != null) {
+            RenamingVisitor.visit(statement.getFinallyBlock(), c, ctx.names);
+
+            c = enterRegion(statement.getFinallyBlock(), current, c);
+        }
+
+        for (JCTree resource : statement.getResources()) {
+            final JCVariableDecl declaration = (JCVariableDecl) resource;
+
+            c = addVariableAsField(declaration, c);
+
+            convertVariableDeclarationToAssignment(declaration, c).ifPresent(states.get(current)::add);
+
+            RenamingVisitor.visit(declaration, c, ctx.names);
+
+            final JCFieldAccess selectClose =
+                ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL), ctx.name(Identifiers.CLOSE_METHOD));
+
+            final JCStatement close = ctx.treeMaker.Exec(ctx.treeMaker.App(selectClose.setType(Type.noType),
+                List.of(ctx.treeMaker.Ident(ctx.name(c.nameOf(declaration.getName().toString()))))));
+
+            c = enterRegion(close, current, c);
+        }
+
+        transformStatement(statement.getBlock(), current, c);
+    }
+
+    /**
+     * Enters a new region at the end of the current state, nested in the region of the specified continuation.
+     * @param cleanup the statement run when the region is left
+     * @param current the state entering the region
+     * @param cont the continuation of the enclosing region
+     * @return the continuation of the new region, whose jumps leave it
+     */
+    private Continuation enterRegion(JCStatement cleanup, int current, Continuation cont) {
+        addField(FINALLY_FIELD, ctx.treeMaker.TypeIdent(TypeTag.INT));
+
+        final int region = cleanups.size() + 1;
+
+        final JCStatement leave = ctx.treeMaker.Block(NO_MODIFIERS, List.of(
+            assignField(FINALLY_FIELD, ctx.treeMaker.Literal(cont.getRegion())),
+            cleanup));
+
+        cleanups.put(region, leave);
+
+        states.get(current).add(assignField(FINALLY_FIELD, ctx.treeMaker.Literal(region)));
+
+        final Map<Integer, Integer> exits = new HashMap<>();
+
+        return cont.enter(region, target -> exits.computeIfAbsent(target, t -> {
+            final int exit = newState();
+
+            states.get(exit).add(copy(leave));
+
+            states.get(exit).add(yield(t, Optional.empty()));
+
+            return exit;
+        }));
+    }
+
+    /**
+     * Checks whether the specified tree contains a try statement that has to be lowered into the states, because it
+     * suspends the generator or jumps out of it. Lambdas and classes are not entered.
+     * @param tree the tree to be inspected
+     * @return {@code true} if there is such a try statement in the tree
+     */
+    private static boolean containsLoweredTry(JCTree tree) {
+        final boolean[] found = {false};
+
+        tree.accept(new TreeScanner() {
+            @Override
+            public void visitTry(JCTry tree) {
+                found[0] |= ModifiesControlFlowVisitor.modifiesControlFlow(tree);
+
+                super.visitTry(tree);
+            }
+
+            @Override
+            public void visitLambda(JCLambda tree) {
+            }
+
+            @Override
+            public void visitClassDef(JCClassDecl tree) {
+            }
+        });
+
+        return found[0];
+    }
+
     private void transformYield(JCReturn ret, int current, Continuation cont) {
+        final Optional<JCExpression> delegate = GeneratorsCalls.delegateOf(ret.getExpression());
+
+        if (delegate.isPresent()) {
+            transformDelegation(delegate.get(), current, cont);
+
+            return;
+        }
+
+        final Optional<JCExpression> block = GeneratorsCalls.blockOf(ret.getExpression());
+
+        if (block.isPresent()) {
+            transformBlockYield(block.get(), current, cont);
+
+            return;
+        }
+
         RenamingVisitor.visit(ret, cont, ctx.names);
 
         states.get(current).add(yield(cont.getNextCont(), Optional.of(ret.getExpression())));
     }
 
-    /*
-     * Yield generates a return statement with a new {@code Bounce} instance to the next method.
-     * Optionally an expression can be passed which will be the return type of the generator after
-     * evaluated.
+    /**
+     * Delegates to a stream. The current state ends with a delegate transition, and a new state resumes the generator
+     * once the stream is exhausted by clearing the stream:
+     * <pre>
+     * {@code
+     *     // current state
+     *     $_delegate = java.util.Objects.requireNonNull(stream);
+     *     $_state = 7;
+     *     return true;
+     *
+     *     // resuming state 7
+     *     $_delegate = null;
+     * }
+     * </pre>
+     * A {@code null} stream is rejected right away, since a cleared {@code $_delegate} tells that the step produced a
+     * value.
+     * @param stream the expression of the stream delegated to
+     * @param current the state the {@code yieldAll} is located in
+     * @param cont the continuation following the {@code yieldAll}
      */
-    private JCStatement yield(int next, Optional<JCExpression> returnExpr) {
-        final JCMethodInvocation contInvocation =
-            ctx.treeMaker.App(ctx.treeMaker.Ident(methodName(next)).setType(Type.noType),
-                List.of(ctx.treeMaker.Ident(ctx.name(CONTINUATION_PARAM))));
+    private void transformDelegation(JCExpression stream, int current, Continuation cont) {
+        RenamingVisitor.visit(stream, cont, ctx.names);
 
-        final JCLambda lambda = ctx.treeMaker.Lambda(List.nil(), contInvocation);
+        final int resumeState = newState();
 
-        final List<JCExpression> bounceParams = returnExpr.isPresent() ? List.of(lambda, returnExpr.get()) : List.of(lambda);
+        final JCFieldAccess selectRequireNonNull = ctx.treeMaker.Select(
+            ctx.treeMaker.Select(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.UTIL)),
+                ctx.name(Identifiers.OBJECTS)),
+            ctx.name(Identifiers.REQUIRE_NON_NULL_METHOD));
 
-        final JCIdent jieldPackage =
-                ctx.treeMaker.Ident(ctx.names.fromString(Identifiers.JIELD));
+        final JCExpression checkedStream = ctx.treeMaker.App(selectRequireNonNull.setType(Type.noType), List.of(stream));
 
-        final JCFieldAccess runtimeAccess =
-                ctx.treeMaker.Select(jieldPackage, ctx.names.fromString(Identifiers.RUNTIME));
+        states.get(current).add(transition(Transition.delegate(resumeState, checkedStream)));
+
+        states.get(resumeState).add(ctx.treeMaker.Exec(
+            ctx.treeMaker.Assign(ctx.treeMaker.Ident(ctx.name(DELEGATE_FIELD)), ctx.treeMaker.Literal(TypeTag.BOT, null))));
+
+        states.get(resumeState).add(yield(cont.getNextCont(), Optional.empty()));
+    }
+
+    /**
+     * Yields a block of values in a single suspension. The current state ends with a block transition, which stores a
+     * random access view of the block and continues at a new state draining it. In {@code step()} the drain state
+     * produces the values one at a time, while push and batch mode copy them in a single loop at the block transition,
+     * see {@link #drainBlock}:
+     * <pre>
+     * {@code
+     *     // current state
+     *     $_block = CPSUtil.indexed(values);
+     *     $_blockIndex = 0;
+     *     $_state = 7;
+     *     continue $_loop;
+     *
+     *     // draining state 7
+     *     if ($_blockIndex < $_block.size()) {
+     *         $_current = $_block.get($_blockIndex++);
+     *         $_state = 7;
+     *         return true;
+     *     }
+     *
+     *     $_block = null;
+     * }
+     * </pre>
+     * Primitive generators use the specialized views, for example {@code CPSUtil.indexedInt} and {@code getInt}.
+     * @param values the expression of the array or collection
+     * @param current the state the {@code yieldBlock} is located in
+     * @param cont the continuation following the {@code yieldBlock}
+     */
+    private void transformBlockYield(JCExpression values, int current, Continuation cont) {
+        RenamingVisitor.visit(values, cont, ctx.names);
+
+        addField(BLOCK_FIELD, blockViewType());
+
+        addField(BLOCK_INDEX_FIELD, ctx.treeMaker.TypeIdent(TypeTag.INT));
+
+        final int drainState = newState();
+
+        final JCFieldAccess selectIndexed = ctx.treeMaker.Select(runtimeAccess(Identifiers.CPS_UTIL),
+            ctx.name(Identifiers.INDEXED_METHOD + blockSpecialization()));
+
+        states.get(current).add(transition(
+            Transition.block(drainState, ctx.treeMaker.App(selectIndexed.setType(Type.noType), List.of(values)))));
+
+        final JCExpression block = ctx.treeMaker.Ident(ctx.name(BLOCK_FIELD));
+
+        final JCFieldAccess selectSize = ctx.treeMaker.Select(block, ctx.name(Identifiers.SIZE_METHOD));
+
+        final JCExpression hasNext = ctx.treeMaker.Binary(Tag.LT, ctx.treeMaker.Ident(ctx.name(BLOCK_INDEX_FIELD)),
+            ctx.treeMaker.App(selectSize.setType(Type.noType), List.nil()));
+
+        final JCExpression next = blockElement(ctx.treeMaker.Ident(ctx.name(BLOCK_FIELD)),
+            ctx.treeMaker.Unary(Tag.POSTINC, ctx.treeMaker.Ident(ctx.name(BLOCK_INDEX_FIELD))));
+
+        states.get(drainState).add(ctx.treeMaker.If(hasNext,
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(yield(drainState, Optional.of(next)))), null));
+
+        states.get(drainState).add(assignField(BLOCK_FIELD, ctx.treeMaker.Literal(TypeTag.BOT, null)));
+
+        states.get(drainState).add(yield(cont.getNextCont(), Optional.empty()));
+    }
+
+    /**
+     * Creates the statements handing the values of a block over in a single loop, used by the block transitions of
+     * push and batch mode. The view is read through locals, and the block is left exhausted for the drain state, or
+     * partially consumed if the batch is full:
+     * <pre>
+     * {@code
+     *     final Indexed<? extends T> $_view = CPSUtil.indexed(values);
+     *     final int $_size = java.lang.Math.min($_view.size(), $_max - $_count); // or $_view.size()
+     *
+     *     for (int $_element = 0; $_element < $_size; $_element++) {
+     *         // consume $_view.get($_element)
+     *     }
+     *
+     *     $_block = $_view;
+     *     $_blockIndex = $_size;
+     *     $_state = 7;
+     * }
+     * </pre>
+     * @param view the expression creating the view of the block
+     * @param limit the maximum number of values to hand over, empty if the whole block is handed over
+     * @param consumer creates the statement consuming an element
+     * @param drainState the state draining the rest of the block
+     * @return the statements
+     */
+    private List<JCStatement> drainBlock(JCExpression view, Optional<JCExpression> limit,
+                                         Function<JCExpression, JCStatement> consumer,
+                                         int drainState) {
+        final ListBuffer<JCStatement> stats = new ListBuffer<>();
+
+        stats.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.FINAL), ctx.name(VIEW_VARIABLE),
+            blockViewType(), view));
+
+        final JCFieldAccess selectSize =
+            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(VIEW_VARIABLE)), ctx.name(Identifiers.SIZE_METHOD));
+
+        JCExpression size = ctx.treeMaker.App(selectSize.setType(Type.noType), List.nil());
+
+        if (limit.isPresent()) {
+            final JCFieldAccess selectMin = ctx.treeMaker.Select(ctx.treeMaker.Select(
+                ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JAVA)), ctx.name(Identifiers.LANG)),
+                ctx.name(Identifiers.MATH)), ctx.name(Identifiers.MIN_METHOD));
+
+            size = ctx.treeMaker.App(selectMin.setType(Type.noType), List.of(size, limit.get()));
+        }
+
+        stats.add(ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(Flags.FINAL), ctx.name(SIZE_VARIABLE),
+            ctx.treeMaker.TypeIdent(TypeTag.INT), size));
+
+        final JCVariableDecl element = ctx.treeMaker.VarDef(ctx.treeMaker.Modifiers(NO_MODIFIERS),
+            ctx.name(ELEMENT_VARIABLE), ctx.treeMaker.TypeIdent(TypeTag.INT), ctx.treeMaker.Literal(0));
+
+        final JCExpression condition = ctx.treeMaker.Binary(Tag.LT, ctx.treeMaker.Ident(ctx.name(ELEMENT_VARIABLE)),
+            ctx.treeMaker.Ident(ctx.name(SIZE_VARIABLE)));
+
+        final JCExpressionStatement step =
+            ctx.treeMaker.Exec(ctx.treeMaker.Unary(Tag.POSTINC, ctx.treeMaker.Ident(ctx.name(ELEMENT_VARIABLE))));
+
+        final JCExpression value =
+            blockElement(ctx.treeMaker.Ident(ctx.name(VIEW_VARIABLE)), ctx.treeMaker.Ident(ctx.name(ELEMENT_VARIABLE)));
+
+        stats.add(ctx.treeMaker.ForLoop(List.of(element), condition, List.of(step),
+            ctx.treeMaker.Block(NO_MODIFIERS, List.of(consumer.apply(value)))));
+
+        stats.add(assignField(BLOCK_FIELD, ctx.treeMaker.Ident(ctx.name(VIEW_VARIABLE))));
+
+        stats.add(assignField(BLOCK_INDEX_FIELD, ctx.treeMaker.Ident(ctx.name(SIZE_VARIABLE))));
+
+        stats.add(assignField(STATE_FIELD, ctx.treeMaker.Literal(drainState)));
+
+        return stats.toList();
+    }
+
+    /**
+     * Returns the type of the random access views of blocks: {@code Indexed<? extends T>}, or the specialization of
+     * the primitive type, for example {@code Indexed.OfInt}.
+     * @return the type tree
+     */
+    private JCExpression blockViewType() {
+        if (shape.isPrimitive()) {
+            return ctx.treeMaker.Select(runtimeAccess(Identifiers.INDEXED), ctx.name(shape.getStateMachineClass()));
+        }
+
+        return ctx.treeMaker.TypeApply(runtimeAccess(Identifiers.INDEXED),
+            List.of(ctx.treeMaker.Wildcard(ctx.treeMaker.TypeBoundKind(BoundKind.EXTENDS), copy(generatedType))));
+    }
+
+    private JCExpression blockElement(JCExpression view, JCExpression index) {
+        final JCFieldAccess get = ctx.treeMaker.Select(view, ctx.name(Identifiers.GET_METHOD + blockSpecialization()));
+
+        return ctx.treeMaker.App(get.setType(Type.noType), List.of(index));
+    }
+
+    /**
+     * Returns the suffix of the {@code indexed} factory and the {@code get} method of the views of blocks.
+     * @return {@code Int}, {@code Long}, {@code Double} or an empty string for reference generators
+     */
+    private String blockSpecialization() {
+        /*
+         * The state machine specializations are named after the primitive type, for example OfInt.
+         */
+        return shape.isPrimitive() ? shape.getStateMachineClass().substring(2) : "";
+    }
 
-        final JCFieldAccess bounceAccess =
-                ctx.treeMaker.Select(runtimeAccess, ctx.names.fromString(Identifiers.BOUNCE));
+    /*
+     * Yield generates a transition to the next state. Optionally an expression can be passed which will be the
+     * return type of the generator after evaluated.
+     */
+    private JCStatement yield(int next, Optional<JCExpression> returnExpr) {
+        return transition(new Transition(next, returnExpr));
+    }
 
-        final JCFieldAccess contAccess =
-                ctx.treeMaker.Select(bounceAccess, ctx.names.fromString(Identifiers.CONT_METHOD));
+    /**
+     * Creates the placeholder statement of the specified transition. The placeholder is lowered by the selected
+     * backend when the class declaration is created.
+     * @param transition the transition
+     * @return the placeholder statement
+     */
+    private JCStatement transition(Transition transition) {
+        final JCReturn placeholder = ctx.treeMaker.Return(null);
 
-        final JCMethodInvocation bounceInvocation =
-            ctx.treeMaker.App(contAccess.setType(Type.noType),
-                bounceParams);
+        transitions.put(placeholder, transition);
 
-        return ctx.treeMaker.Return(bounceInvocation);
+        return placeholder;
     }
 
     /**
@@ -1069,6 +3584,16 @@ final class GeneratorTransformer {
         return ctx.name(methodNamePrefix + Integer.toString(state));
     }
 
+    /**
+     * Returns the {@code Name} instance corresponding to the field that caches the continuation of the state with the
+     * passed index.
+     * @param state the state
+     * @return the {@code Name} of the field
+     */
+    private Name continuationName(int state) {
+        return ctx.name(methodNamePrefix + CONTINUATION_FIELD_SUFFIX + Integer.toString(state));
+    }
+
     /**
      * Checks whether the state has any statements.
      * @param state the state to be checked
@@ -1095,6 +3620,107 @@ final class GeneratorTransformer {
         return (last instanceof JCBreak) || (last instanceof JCReturn);
     }
 
+    /**
+     * Finds the variables declared by the statements of a block that are not live across a suspension, so they can
+     * stay locals of the state they are declared in instead of becoming fields. A variable is confined to its state
+     * if none of the statements from its declaration to its last use splits the state: statements that suspend the
+     * generator or jump, and local classes, which are moved out of the states. A yield can be the last use, since the
+     * yielded value is evaluated before the state is left:
+     * <pre>
+     * {@code
+     *     while (true) {
+     *         int temp = a;   // confined, declared in the state of the loop body
+     *         a = b;
+     *         b = a + temp;
+     *
+     *         return temp;
+     *     }
+     * }
+     * </pre>
+     * Uses are recognized by name, so a variable is kept as a field if its name is used anywhere later in the block.
+     * @param statements the statements of the block
+     * @return the declarations of the confined variables
+     */
+    private static Set<JCVariableDecl> confinedVariables(List<JCStatement> statements) {
+        final Set<JCVariableDecl> confined = new HashSet<>();
+
+        final JCStatement[] block = statements.toArray(new JCStatement[0]);
+
+        for (int i = 0; i < block.length; ++i) {
+            if (!(block[i] instanceof JCVariableDecl) || splitsState(block[i])) {
+                continue;
+            }
+
+            final String name = ((JCVariableDecl) block[i]).getName().toString();
+
+            int lastUse = i;
+
+            for (int j = i + 1; j < block.length; ++j) {
+                if (references(block[j], name)) {
+                    lastUse = j;
+                }
+            }
+
+            boolean live = false;
+
+            for (int j = i + 1; j <= lastUse && !live; ++j) {
+                live = splitsState(block[j]) && !(j == lastUse && block[j] instanceof JCReturn);
+            }
+
+            if (!live) {
+                confined.add((JCVariableDecl) block[i]);
+            }
+        }
+
+        return confined;
+    }
+
+    /**
+     * Checks whether the statement leaves the state it starts in when it is transformed by {@link #transformBlock}.
+     */
+    private static boolean splitsState(JCStatement statement) {
+        if (statement instanceof JCVariableDecl) {
+            return isSuspension(((JCVariableDecl) statement).getInitializer())
+                || ModifiesControlFlowVisitor.modifiesControlFlow(statement);
+        }
+
+        return statement instanceof JCClassDecl || statement instanceof JCBreak || statement instanceof JCContinue
+            || ModifiesControlFlowVisitor.modifiesControlFlow(statement);
+    }
+
+    private static boolean references(JCTree tree, String name) {
+        final boolean[] found = {false};
+
+        tree.accept(new TreeScanner() {
+            @Override
+            public void visitIdent(JCIdent tree) {
+                found[0] |= tree.getName().contentEquals(name);
+            }
+        });
+
+        return found[0];
+    }
+
+    /**
+     * Keeps a variable confined to its state as a local of the state. States are merged and inlined into each other
+     * by the {@link StateGraphOptimizer}, so the variable gets a name that no other local or field of the generator
+     * has.
+     * @param declaration the declaration, renamed in place
+     * @param cont the continuation of the declaration
+     * @return the continuation renaming the variable
+     */
+    private Continuation keepVariableLocal(JCVariableDecl declaration, Continuation cont) {
+        final String original = declaration.getName().toString();
+
+        final String name = generateUnusedIdentifier(original);
+
+        locals.add(name);
+
+        declaration.name = ctx.name(name);
+
+        return cont.rename(original, name);
+    }
+
     /*
      * Creates a field corresponding to the passed local variable declaration.
      */
@@ -1129,10 +3755,26 @@ final class GeneratorTransformer {
         return Optional.of(ctx.treeMaker.Exec(ctx.treeMaker.Assign(nameExpression, declaration.getInitializer())));
     }
 
+    /**
+     * Copies a tree of the signature of the original method. The signature is already entered when the generator class
+     * is created, so sharing its trees would make the generator class refer to the type variables of the method
+     * instead of its own ones. A static generator class cannot even refer to those.
+     * @param tree the tree to be copied
+     * @param <T> the type of the tree
+     * @return the copy
+     */
+    private <T extends JCTree> T copy(T tree) {
+        return new TreeCopier<Void>(ctx.treeMaker).copy(tree);
+    }
+
+    private <T extends JCTree> List<T> copy(List<T> trees) {
+        return new TreeCopier<Void>(ctx.treeMaker).copy(trees);
+    }
+
     private String generateUnusedIdentifier(String base) {
         String result = base;
 
-        while (fields.containsKey(result)) {
+        while (fields.containsKey(result) || locals.contains(result)) {
             result += "$";
         }
 
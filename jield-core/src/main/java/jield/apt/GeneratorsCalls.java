@@ -0,0 +1,250 @@
+package jield.apt;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.JCTree.JCImport;
+import com.sun.tools.javac.tree.JCTree.JCMethodInvocation;
+import com.sun.tools.javac.tree.TreeScanner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Recognizes the calls of the constructs of {@code jield.runtime.Generators} in generator bodies. Annotation processing
+ * happens before attribution, so the calls are recognized by their shape: an invocation of a method with the name of
+ * the construct and its number of arguments, qualified by {@code Generators} or {@code jield.runtime.Generators}.
+ *
+ * <p>
+ * Unqualified calls resolve to {@code Generators} only if the construct is statically imported and not shadowed by a
+ * method of an enclosing class, otherwise they call a method of the user. Such calls are qualified by
+ * {@link #qualifyCalls} before a generator method is transformed, so that a generator can call its own methods named
+ * like the constructs. Methods inherited by the enclosing classes are not known before attribution, so they cannot be
+ * told apart from statically imported constructs.
+ * </p>
+ */
+final class GeneratorsCalls {
+    private static final List<String> CONSTRUCTS = Arrays.asList(Identifiers.AWAIT_METHOD,
+        Identifiers.YIELD_ALL_METHOD, Identifiers.YIELD_BLOCK_METHOD, Identifiers.RECEIVE_METHOD);
+
+    private static final String QUALIFIED_GENERATORS =
+        Identifiers.JIELD + "." + Identifiers.RUNTIME + "." + Identifiers.GENERATORS;
+
+    private GeneratorsCalls() {
+        /*
+         * Cannot be instantiated.
+         */
+    }
+
+    /**
+     * Returns the awaited stage if the specified expression is an {@code await} call.
+     * @param expression the expression to be inspected, might be {@code null}
+     * @return the argument of the call, or an empty {@code Optional} if the expression is not an {@code await} call
+     */
+    static Optional<JCExpression> stageOf(JCExpression expression) {
+        return argumentOf(expression, Identifiers.AWAIT_METHOD);
+    }
+
+    /**
+     * Returns the stream delegated to if the specified expression is a {@code yieldAll} call.
+     * @param expression the expression to be inspected, might be {@code null}
+     * @return the argument of the call, or an empty {@code Optional} if the expression is not a {@code yieldAll} call
+     */
+    static Optional<JCExpression> delegateOf(JCExpression expression) {
+        return argumentOf(expression, Identifiers.YIELD_ALL_METHOD);
+    }
+
+    /**
+     * Returns the block of values if the specified expression is a {@code yieldBlock} call.
+     * @param expression the expression to be inspected, might be {@code null}
+     * @return the argument of the call, or an empty {@code Optional} if the expression is not a {@code yieldBlock}
+     * call
+     */
+    static Optional<JCExpression> blockOf(JCExpression expression) {
+        return argumentOf(expression, Identifiers.YIELD_BLOCK_METHOD);
+    }
+
+    /**
+     * Checks whether the specified expression is a {@code receive} call.
+     * @param expression the expression to be inspected, might be {@code null}
+     * @return {@code true} if the expression is a {@code receive} call
+     */
+    static boolean isReceive(JCExpression expression) {
+        return isCall(expression, Identifiers.RECEIVE_METHOD, 0);
+    }
+
+    /**
+     * Checks whether the specified tree contains an {@code await} call. Lambdas and classes are not entered.
+     * @param tree the tree to be inspected
+     * @return {@code true} if there is an {@code await} call in the tree
+     */
+    static boolean containsAwait(JCTree tree) {
+        return contains(tree, Identifiers.AWAIT_METHOD, 1);
+    }
+
+    /**
+     * Checks whether the specified tree contains a {@code yieldAll} call. Lambdas and classes are not entered.
+     * @param tree the tree to be inspected
+     * @return {@code true} if there is a {@code yieldAll} call in the tree
+     */
+    static boolean containsYieldAll(JCTree tree) {
+        return contains(tree, Identifiers.YIELD_ALL_METHOD, 1);
+    }
+
+    /**
+     * Checks whether the specified tree contains a {@code yieldBlock} call. Lambdas and classes are not entered.
+     * @param tree the tree to be inspected
+     * @return {@code true} if there is a {@code yieldBlock} call in the tree
+     */
+    static boolean containsYieldBlock(JCTree tree) {
+        return contains(tree, Identifiers.YIELD_BLOCK_METHOD, 1);
+    }
+
+    /**
+     * Checks whether the specified tree contains a {@code receive} call. Lambdas and classes are not entered.
+     * @param tree the tree to be inspected
+     * @return {@code true} if there is a {@code receive} call in the tree
+     */
+    static boolean containsReceive(JCTree tree) {
+        return contains(tree, Identifiers.RECEIVE_METHOD, 0);
+    }
+
+    /**
+     * Returns the constructs brought into scope by the static imports of a compilation unit.
+     * @param unit the compilation unit
+     * @return the names of the statically imported constructs
+     */
+    static Set<String> staticallyImported(JCCompilationUnit unit) {
+        final Set<String> imported = new HashSet<>();
+
+        for (JCImport declaration : unit.getImports()) {
+            if (!declaration.isStatic()) {
+                continue;
+            }
+
+            final String name = declaration.getQualifiedIdentifier().toString();
+
+            for (String construct : CONSTRUCTS) {
+                if (name.equals(QUALIFIED_GENERATORS + ".*") || name.equals(QUALIFIED_GENERATORS + "." + construct)) {
+                    imported.add(construct);
+                }
+            }
+        }
+
+        return imported;
+    }
+
+    /**
+     * Qualifies the unqualified calls of the specified constructs in a generator body by
+     * {@code jield.runtime.Generators}. Lambdas and classes are not entered.
+     * @param body the body of the generator method
+     * @param constructs the constructs that unqualified calls resolve to
+     * @param ctx the context used to create the qualifiers
+     */
+    static void qualifyCalls(JCTree body, Set<String> constructs, ProcessingContext ctx) {
+        if (constructs.isEmpty()) {
+            return;
+        }
+
+        body.accept(new TreeScanner() {
+            @Override
+            public void visitApply(JCMethodInvocation tree) {
+                if (tree.getMethodSelect() instanceof JCIdent) {
+                    final String name = ((JCIdent) tree.getMethodSelect()).getName().toString();
+
+                    if (constructs.contains(name)) {
+                        final JCFieldAccess generators = ctx.treeMaker.Select(
+                            ctx.treeMaker.Select(ctx.treeMaker.Ident(ctx.name(Identifiers.JIELD)),
+                                ctx.name(Identifiers.RUNTIME)),
+                            ctx.name(Identifiers.GENERATORS));
+
+                        tree.meth = ctx.treeMaker.Select(generators, ctx.name(name));
+                    }
+                }
+
+                super.visitApply(tree);
+            }
+
+            @Override
+            public void visitLambda(JCTree.JCLambda tree) {
+            }
+
+            @Override
+            public void visitClassDef(JCTree.JCClassDecl tree) {
+            }
+        });
+    }
+
+    private static Optional<JCExpression> argumentOf(JCExpression expression, String method) {
+        if (!isCall(expression, method, 1)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(((JCMethodInvocation) expression).getArguments().head);
+    }
+
+    private static boolean isCall(JCExpression expression, String method, int argumentCount) {
+        if (!(expression instanceof JCMethodInvocation)) {
+            return false;
+        }
+
+        final JCMethodInvocation invocation = (JCMethodInvocation) expression;
+
+        return invocation.getArguments().size() == argumentCount && isCallOf(invocation.getMethodSelect(), method);
+    }
+
+    private static boolean isCallOf(JCExpression select, String method) {
+        if (!(select instanceof JCFieldAccess)) {
+            return false;
+        }
+
+        final JCFieldAccess access = (JCFieldAccess) select;
+
+        final String qualifier = access.getExpression().toString();
+
+        return method.equals(access.getIdentifier().toString())
+            && (Identifiers.GENERATORS.equals(qualifier) || QUALIFIED_GENERATORS.equals(qualifier));
+    }
+
+    private static boolean contains(JCTree tree, String method, int argumentCount) {
+        final Finder finder = new Finder(method, argumentCount);
+
+        tree.accept(finder);
+
+        return finder.found;
+    }
+
+    private static final class Finder extends TreeScanner {
+        private final String method;
+
+        private final int argumentCount;
+
+        private boolean found;
+
+        private Finder(String method, int argumentCount) {
+            this.method = method;
+
+            this.argumentCount = argumentCount;
+        }
+
+        @Override
+        public void visitApply(JCMethodInvocation tree) {
+            found |= isCall(tree, method, argumentCount);
+
+            super.visitApply(tree);
+        }
+
+        @Override
+        public void visitLambda(JCTree.JCLambda tree) {
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree) {
+        }
+    }
+}
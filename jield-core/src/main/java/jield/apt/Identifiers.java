@@ -5,6 +5,16 @@ final class Identifiers {
 
     static final String UTIL = "util";
 
+    static final String FUNCTION = "function";
+
+    static final String CONSUMER = "Consumer";
+
+    static final String INT_CONSUMER = "IntConsumer";
+
+    static final String LONG_CONSUMER = "LongConsumer";
+
+    static final String DOUBLE_CONSUMER = "DoubleConsumer";
+
     static final String JIELD = "jield";
 
     static final String RUNTIME = "runtime";
@@ -13,17 +23,91 @@ final class Identifiers {
 
     static final String GENERATOR_STATE = "GeneratorState";
 
+    static final String THUNK = "Thunk";
+
+    static final String SPLITTABLE = "Splittable";
+
+    static final String INDEXED = "Indexed";
+
+    static final String STATE_MACHINE = "StateMachine";
+
+    static final String RECYCLABLE = "Recyclable";
+
+    static final String GENERATOR_POOL = "GeneratorPool";
+
+    static final String OF_INT = "OfInt";
+
+    static final String OF_LONG = "OfLong";
+
+    static final String OF_DOUBLE = "OfDouble";
+
+    static final String INT_GENERATOR = "IntGenerator";
+
+    static final String LONG_GENERATOR = "LongGenerator";
+
+    static final String DOUBLE_GENERATOR = "DoubleGenerator";
+
     static final String BASE_GENERATOR = "BaseGenerator";
 
     static final String CPS_UTIL = "CPSUtil";
 
-    static final String ITERATOR = "Iterator";
+    static final String GENERATORS = "Generators";
+
+    static final String ASYNC_GENERATOR = "AsyncGenerator";
+
+    static final String ASYNC_STATE_MACHINE = "AsyncStateMachine";
+
+    static final String CONCURRENT = "concurrent";
+
+    static final String COMPLETION_STAGE = "CompletionStage";
 
-    static final String ITERATOR_METHOD = "iterator";
+    static final String DELEGATING_STATE_MACHINE = "DelegatingStateMachine";
+
+    static final String STREAM_PACKAGE = "stream";
+
+    static final String STREAM = "Stream";
+
+    static final String OBJECTS = "Objects";
+
+    static final String COROUTINE = "Coroutine";
+
+    static final String COROUTINE_STATE_MACHINE = "CoroutineStateMachine";
+
+    static final String CHECKPOINTABLE = "Checkpointable";
+
+    static final String FORKABLE = "Forkable";
+
+    static final String GUARDED = "Guarded";
+
+    static final String IO = "io";
+
+    static final String OBJECT_OUTPUT = "ObjectOutput";
+
+    static final String OBJECT_INPUT = "ObjectInput";
+
+    static final String IO_EXCEPTION = "IOException";
+
+    static final String CLASS_NOT_FOUND_EXCEPTION = "ClassNotFoundException";
+
+    static final String LANG = "lang";
+
+    static final String OBJECT = "Object";
+
+    static final String MATH = "Math";
+
+    static final String THROWABLE = "Throwable";
+
+    static final String UNSUPPORTED_OPERATION_EXCEPTION = "UnsupportedOperationException";
 
     static final String NEXT_METHOD = "next";
 
-    static final String HAS_NEXT_METHOD = "hasNext";
+    static final String CURSOR = "Cursor";
+
+    static final String CURSOR_METHOD = "cursor";
+
+    static final String HAS_METHOD = "has";
+
+    static final String GET_METHOD = "get";
 
     static final String GENERATOR_ANNOTATION = "Generator";
 
@@ -33,10 +117,95 @@ final class Identifiers {
 
     static final String CONT_METHOD = "cont";
 
+    static final String HALT_METHOD = "halt";
+
     static final String STREAM_METHOD = "stream";
 
     static final String STARTING_AT_METHOD = "startingAt";
 
+    static final String OF_METHOD = "of";
+
+    static final String PREFETCHING_METHOD = "prefetching";
+
+    static final String STEP_METHOD = "step";
+
+    static final String CURRENT_METHOD = "current";
+
+    static final String PUSH_METHOD = "push";
+
+    static final String ACCEPT_METHOD = "accept";
+
+    static final String FILL_METHOD = "fill";
+
+    static final String SKIP_METHOD = "skip";
+
+    static final String SPLITTABLE_METHOD = "splittable";
+
+    static final String PARALLEL_STREAM_METHOD = "parallelStream";
+
+    static final String ORIGIN_METHOD = "origin";
+
+    static final String FENCE_METHOD = "fence";
+
+    static final String SLICE_METHOD = "slice";
+
+    static final String SIZE_METHOD = "size";
+
+    static final String INDEXED_METHOD = "indexed";
+
+    static final String RECYCLE_METHOD = "recycle";
+
+    static final String ACQUIRE_METHOD = "acquire";
+
+    static final String RELEASE_METHOD = "release";
+
+    static final String AWAIT_METHOD = "await";
+
+    static final String AWAITED_METHOD = "awaited";
+
+    static final String AWAITING_METHOD = "awaiting";
+
+    static final String YIELD_ALL_METHOD = "yieldAll";
+
+    static final String DELEGATE_METHOD = "delegate";
+
+    static final String REQUIRE_NON_NULL_METHOD = "requireNonNull";
+
+    static final String YIELD_BLOCK_METHOD = "yieldBlock";
+
+    static final String MIN_METHOD = "min";
+
+    static final String RECEIVE_METHOD = "receive";
+
+    static final String RECEIVING_METHOD = "receiving";
+
+    static final String SEND_METHOD = "send";
+
+    static final String SAVE_METHOD = "save";
+
+    static final String RESTORE_METHOD = "restore";
+
+    static final String RESTORED_METHOD = "restored";
+
+    static final String CHECK_VERSION_METHOD = "checkVersion";
+
+    static final String FORK_METHOD = "fork";
+
+    static final String FORKED_METHOD = "forked";
+
+    static final String CLOSE_METHOD = "close";
+
+    static final String AUTO_CLOSEABLE = "AutoCloseable";
+
+    static final String SUPPRESSED_METHOD = "suppressed";
+
+    static final String RETHROW_METHOD = "rethrow";
+    static final String WRITE_METHOD_PREFIX = "write";
+
+    static final String READ_METHOD_PREFIX = "read";
+
+    static final String OBJECT_SUFFIX = "Object";
+
     private Identifiers() {
         /*
          * Cannot be instantiated.
@@ -3,9 +3,22 @@ package jield.apt;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.TreeScanner;
 
+/**
+ * Checks whether a statement transfers control out of itself: yields, suspends, or jumps to a statement enclosing it.
+ * Such statements are split into states, the others are copied into a state as they are. Unlabelled jumps only leave
+ * the statement if they are not nested in a loop or a switch within it, while labelled ones are always assumed to.
+ */
 public class ModifiesControlFlowVisitor extends TreeScanner {
     private boolean hasReturn;
 
+    /*
+     * The number of loops, and of loops and switches, within the statement enclosing the visited tree, which are the
+     * targets of unlabelled continue and break statements.
+     */
+    private int loopDepth;
+
+    private int breakableDepth;
+
     public static boolean modifiesControlFlow(JCTree tree) {
         final ModifiesControlFlowVisitor visitor = new ModifiesControlFlowVisitor();
 
@@ -25,15 +38,105 @@ public class ModifiesControlFlowVisitor extends TreeScanner {
 
     @Override
     public void visitBreak(JCTree.JCBreak jcBreak) {
-        if (jcBreak.label != null) {
+        if (jcBreak.label != null || breakableDepth == 0) {
             this.hasReturn = true;
         }
     }
 
+    /**
+     * Suspending on a stage in an async generator splits the state just like a yield.
+     */
+    @Override
+    public void visitApply(JCTree.JCMethodInvocation invocation) {
+        if (GeneratorsCalls.stageOf(invocation).isPresent() || GeneratorsCalls.isReceive(invocation)) {
+            this.hasReturn = true;
+        }
+
+        super.visitApply(invocation);
+    }
+
     @Override
     public void visitContinue(JCTree.JCContinue jcContinue) {
-        if (jcContinue.label != null) {
+        if (jcContinue.label != null || loopDepth == 0) {
             this.hasReturn = true;
         }
     }
+
+    @Override
+    public void visitForLoop(JCTree.JCForLoop loop) {
+        enterLoop();
+
+        super.visitForLoop(loop);
+
+        exitLoop();
+    }
+
+    @Override
+    public void visitForeachLoop(JCTree.JCEnhancedForLoop loop) {
+        enterLoop();
+
+        super.visitForeachLoop(loop);
+
+        exitLoop();
+    }
+
+    @Override
+    public void visitWhileLoop(JCTree.JCWhileLoop loop) {
+        enterLoop();
+
+        super.visitWhileLoop(loop);
+
+        exitLoop();
+    }
+
+    @Override
+    public void visitDoLoop(JCTree.JCDoWhileLoop loop) {
+        enterLoop();
+
+        super.visitDoLoop(loop);
+
+        exitLoop();
+    }
+
+    @Override
+    public void visitSwitch(JCTree.JCSwitch jcSwitch) {
+        ++breakableDepth;
+
+        super.visitSwitch(jcSwitch);
+
+        --breakableDepth;
+    }
+
+    /**
+     * The jumps in lambdas and classes cannot leave them, they are checked by the compiler.
+     */
+    @Override
+    public void visitLambda(JCTree.JCLambda lambda) {
+        enterLoop();
+
+        super.visitLambda(lambda);
+
+        exitLoop();
+    }
+
+    @Override
+    public void visitClassDef(JCTree.JCClassDecl classDecl) {
+        enterLoop();
+
+        super.visitClassDef(classDecl);
+
+        exitLoop();
+    }
+
+    private void enterLoop() {
+        ++loopDepth;
+
+        ++breakableDepth;
+    }
+
+    private void exitLoop() {
+        --loopDepth;
+
+        --breakableDepth;
+    }
 }
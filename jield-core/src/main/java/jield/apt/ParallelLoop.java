@@ -0,0 +1,352 @@
+package jield.apt;
+
+import com.sun.tools.javac.code.TypeTag;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.*;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Name;
+
+import java.util.Optional;
+
+/**
+ * The loop a parallel generator is split along. The body of a parallel generator method must consist of this single,
+ * possibly labeled loop, which is either
+ * <ul>
+ *     <li>an enhanced for loop, whose source is an array or a {@code Collection}, or</li>
+ *     <li>a counted for loop of the form {@code for (int i = a; i < b; i++)}, where {@code <=}, {@code ++i} and
+ *     {@code i += 1} are accepted as well and the counter can also be a {@code long}.</li>
+ * </ul>
+ * Both kinds iterate over an index range which can be split into independent sub-ranges. For that to be valid, the
+ * body must not leave the loop through {@code break}, and the counter of a counted loop must not be assigned in the
+ * body.
+ */
+final class ParallelLoop {
+    private final Optional<Name> label;
+
+    private final JCVariableDecl variable;
+
+    private final JCStatement body;
+
+    /**
+     * The source of an enhanced for loop.
+     */
+    private final Optional<JCExpression> source;
+
+    /**
+     * The initial value of the counter of a counted loop.
+     */
+    private final Optional<JCExpression> origin;
+
+    /**
+     * The exclusive upper bound of the counter of a counted loop.
+     */
+    private final Optional<JCExpression> fence;
+
+    private final boolean inclusiveFence;
+
+    private ParallelLoop(Optional<Name> label, JCVariableDecl variable, JCStatement body, Optional<JCExpression> source,
+                         Optional<JCExpression> origin, Optional<JCExpression> fence, boolean inclusiveFence) {
+        this.label = label;
+
+        this.variable = variable;
+
+        this.body = body;
+
+        this.source = source;
+
+        this.origin = origin;
+
+        this.fence = fence;
+
+        this.inclusiveFence = inclusiveFence;
+    }
+
+    /**
+     * Finds the loop of the specified parallel generator method.
+     * @param method the generator method
+     * @return the loop
+     * @throws IllegalArgumentException if the method does not have the required form
+     */
+    static ParallelLoop of(JCMethodDecl method) {
+        final String name = method.getName().toString();
+
+        if (method.getBody().getStatements().size() != 1) {
+            throw invalid(name, "the body must consist of a single loop");
+        }
+
+        JCStatement statement = method.getBody().getStatements().head;
+
+        Optional<Name> label = Optional.empty();
+
+        if (statement instanceof JCLabeledStatement) {
+            label = Optional.of(((JCLabeledStatement) statement).getLabel());
+
+            statement = ((JCLabeledStatement) statement).getStatement();
+        }
+
+        final ParallelLoop loop;
+
+        if (statement instanceof JCEnhancedForLoop) {
+            final JCEnhancedForLoop forEach = (JCEnhancedForLoop) statement;
+
+            loop = new ParallelLoop(label, forEach.getVariable(), forEach.getStatement(),
+                Optional.of(forEach.getExpression()), Optional.empty(), Optional.empty(), false);
+        } else if (statement instanceof JCForLoop) {
+            loop = counted(name, label, (JCForLoop) statement);
+        } else {
+            throw invalid(name, "the body must consist of a single for loop");
+        }
+
+        if (LeavesLoopVisitor.leavesLoop(loop.body, label)) {
+            throw invalid(name, "the loop must not be left through break");
+        }
+
+        return loop;
+    }
+
+    private static ParallelLoop counted(String name, Optional<Name> label, JCForLoop loop) {
+        if (loop.getInitializer().size() != 1 || !(loop.getInitializer().head instanceof JCVariableDecl)) {
+            throw invalid(name, "the loop must declare a single counter");
+        }
+
+        final JCVariableDecl counter = (JCVariableDecl) loop.getInitializer().head;
+
+        final Name counterName = counter.getName();
+
+        if (!isIntegral(counter) || counter.getInitializer() == null) {
+            throw invalid(name, "the counter must be an initialized int or long");
+        }
+
+        if (!(loop.getCondition() instanceof JCBinary)) {
+            throw invalid(name, "the condition must compare the counter with < or <=");
+        }
+
+        final JCBinary condition = (JCBinary) loop.getCondition();
+
+        if (!(condition.getTag() == Tag.LT || condition.getTag() == Tag.LE) || !isIdent(condition.lhs, counterName)) {
+            throw invalid(name, "the condition must compare the counter with < or <=");
+        }
+
+        if (loop.getUpdate().size() != 1 || !isIncrement(loop.getUpdate().head.getExpression(), counterName)) {
+            throw invalid(name, "the counter must be incremented by one");
+        }
+
+        if (AssignsVisitor.assigns(loop.getStatement(), counterName)) {
+            throw invalid(name, "the counter must not be modified by the loop body");
+        }
+
+        return new ParallelLoop(label, counter, loop.getStatement(), Optional.empty(),
+            Optional.of(counter.getInitializer()), Optional.of(condition.rhs), condition.getTag() == Tag.LE);
+    }
+
+    private static boolean isIntegral(JCVariableDecl variable) {
+        if (!(variable.vartype instanceof JCPrimitiveTypeTree)) {
+            return false;
+        }
+
+        final TypeTag tag = ((JCPrimitiveTypeTree) variable.vartype).typetag;
+
+        return tag == TypeTag.INT || tag == TypeTag.LONG;
+    }
+
+    private static boolean isIncrement(JCExpression expression, Name counter) {
+        if (expression instanceof JCUnary) {
+            final JCUnary unary = (JCUnary) expression;
+
+            return (unary.getTag() == Tag.POSTINC || unary.getTag() == Tag.PREINC) && isIdent(unary.arg, counter);
+        }
+
+        if (expression instanceof JCAssignOp) {
+            final JCAssignOp assignOp = (JCAssignOp) expression;
+
+            return assignOp.getTag() == Tag.PLUS_ASG
+                && isIdent(assignOp.lhs, counter)
+                && assignOp.rhs instanceof JCLiteral
+                && Integer.valueOf(1).equals(((JCLiteral) assignOp.rhs).getValue());
+        }
+
+        return false;
+    }
+
+    private static boolean isIdent(JCExpression expression, Name name) {
+        return expression instanceof JCIdent && ((JCIdent) expression).getName().equals(name);
+    }
+
+    private static IllegalArgumentException invalid(String method, String reason) {
+        return new IllegalArgumentException("Parallel generator " + method + " cannot be split, " + reason);
+    }
+
+    Optional<Name> getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the loop variable: the element variable of an enhanced for loop or the counter of a counted loop.
+     * @return the declaration of the loop variable
+     */
+    JCVariableDecl getVariable() {
+        return variable;
+    }
+
+    JCStatement getBody() {
+        return body;
+    }
+
+    boolean isEnhanced() {
+        return source.isPresent();
+    }
+
+    Optional<JCExpression> getSource() {
+        return source;
+    }
+
+    Optional<JCExpression> getOrigin() {
+        return origin;
+    }
+
+    Optional<JCExpression> getFence() {
+        return fence;
+    }
+
+    /**
+     * Checks whether the condition of the counted loop is {@code <=}, in which case the fence is one greater than the
+     * bound in the condition.
+     * @return {@code true} if the bound is inclusive
+     */
+    boolean isInclusiveFence() {
+        return inclusiveFence;
+    }
+
+    /**
+     * Looks for {@code break} statements leaving the loop, either unlabeled ones outside of nested loops and switches
+     * or ones referring to the label of the loop. Lambdas and classes are not entered.
+     */
+    private static final class LeavesLoopVisitor extends TreeScanner {
+        private final Optional<Name> label;
+
+        private int depth;
+
+        private boolean leaves;
+
+        static boolean leavesLoop(JCTree tree, Optional<Name> label) {
+            final LeavesLoopVisitor visitor = new LeavesLoopVisitor(label);
+
+            tree.accept(visitor);
+
+            return visitor.leaves;
+        }
+
+        private LeavesLoopVisitor(Optional<Name> label) {
+            this.label = label;
+
+            this.depth = 0;
+
+            this.leaves = false;
+        }
+
+        @Override
+        public void visitBreak(JCBreak tree) {
+            if (tree.label == null ? depth == 0 : label.map(tree.label::equals).orElse(false)) {
+                this.leaves = true;
+            }
+        }
+
+        @Override
+        public void visitForLoop(JCForLoop tree) {
+            nested(tree);
+        }
+
+        @Override
+        public void visitForeachLoop(JCEnhancedForLoop tree) {
+            nested(tree);
+        }
+
+        @Override
+        public void visitWhileLoop(JCWhileLoop tree) {
+            nested(tree);
+        }
+
+        @Override
+        public void visitDoLoop(JCDoWhileLoop tree) {
+            nested(tree);
+        }
+
+        @Override
+        public void visitSwitch(JCSwitch tree) {
+            nested(tree);
+        }
+
+        @Override
+        public void visitLambda(JCLambda tree) {
+        }
+
+        @Override
+        public void visitClassDef(JCClassDecl tree) {
+        }
+
+        private void nested(JCTree tree) {
+            ++depth;
+
+            if (tree instanceof JCForLoop) {
+                super.visitForLoop((JCForLoop) tree);
+            } else if (tree instanceof JCEnhancedForLoop) {
+                super.visitForeachLoop((JCEnhancedForLoop) tree);
+            } else if (tree instanceof JCWhileLoop) {
+                super.visitWhileLoop((JCWhileLoop) tree);
+            } else if (tree instanceof JCDoWhileLoop) {
+                super.visitDoLoop((JCDoWhileLoop) tree);
+            } else {
+                super.visitSwitch((JCSwitch) tree);
+            }
+
+            --depth;
+        }
+    }
+
+    /**
+     * Looks for assignments, compound assignments, increments and decrements of a variable.
+     */
+    private static final class AssignsVisitor extends TreeScanner {
+        private final Name name;
+
+        private boolean assigns;
+
+        static boolean assigns(JCTree tree, Name name) {
+            final AssignsVisitor visitor = new AssignsVisitor(name);
+
+            tree.accept(visitor);
+
+            return visitor.assigns;
+        }
+
+        private AssignsVisitor(Name name) {
+            this.name = name;
+
+            this.assigns = false;
+        }
+
+        @Override
+        public void visitAssign(JCAssign tree) {
+            assigns |= isIdent(tree.lhs, name);
+
+            super.visitAssign(tree);
+        }
+
+        @Override
+        public void visitAssignop(JCAssignOp tree) {
+            assigns |= isIdent(tree.lhs, name);
+
+            super.visitAssignop(tree);
+        }
+
+        @Override
+        public void visitUnary(JCUnary tree) {
+            final boolean increments = tree.getTag() == Tag.PREINC || tree.getTag() == Tag.POSTINC
+                || tree.getTag() == Tag.PREDEC || tree.getTag() == Tag.POSTDEC;
+
+            assigns |= increments && isIdent(tree.arg, name);
+
+            super.visitUnary(tree);
+        }
+    }
+}
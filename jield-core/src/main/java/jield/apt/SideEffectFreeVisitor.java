@@ -0,0 +1,119 @@
+package jield.apt;
+
+import com.sun.tools.javac.tree.JCTree;
+
+/**
+ * Decides whether an expression can be left out without changing the behaviour of the generator, used to skip the
+ * yielded expressions of skipped values. Only reads of variables and {@code this}, literals and operators on such
+ * expressions are side-effect free, anything that may call into other code, allocate or throw is not.
+ *
+ * <p>
+ * Since the trees are not attributed yet, operators are assumed to be applied to values that cannot throw: unboxing
+ * is assumed to see no {@code null}, and the {@code toString()} methods called by string concatenation are assumed to
+ * have no side effects. Division and remainder may throw on integers, so they are never left out.
+ * </p>
+ */
+final class SideEffectFreeVisitor extends JCTree.Visitor {
+    private boolean free;
+
+    static boolean isSideEffectFree(JCTree.JCExpression expression) {
+        final SideEffectFreeVisitor visitor = new SideEffectFreeVisitor();
+
+        expression.accept(visitor);
+
+        return visitor.free;
+    }
+
+    private SideEffectFreeVisitor() {
+        this.free = true;
+    }
+
+    private void scan(JCTree tree) {
+        if (free) {
+            tree.accept(this);
+        }
+    }
+
+    @Override
+    public void visitTree(JCTree tree) {
+        this.free = false;
+    }
+
+    @Override
+    public void visitLiteral(JCTree.JCLiteral literal) {
+    }
+
+    @Override
+    public void visitIdent(JCTree.JCIdent ident) {
+    }
+
+    /**
+     * Only the fields of {@code this} are read for sure, any other qualifier may be {@code null} or initialize a class.
+     */
+    @Override
+    public void visitSelect(JCTree.JCFieldAccess select) {
+        if (!(select.selected instanceof JCTree.JCIdent)
+            || !((JCTree.JCIdent) select.selected).name.contentEquals("this")) {
+            this.free = false;
+        }
+    }
+
+    @Override
+    public void visitParens(JCTree.JCParens parens) {
+        scan(parens.expr);
+    }
+
+    @Override
+    public void visitConditional(JCTree.JCConditional conditional) {
+        scan(conditional.cond);
+
+        scan(conditional.truepart);
+
+        scan(conditional.falsepart);
+    }
+
+    @Override
+    public void visitUnary(JCTree.JCUnary unary) {
+        switch (unary.getTag()) {
+            case POS:
+            case NEG:
+            case NOT:
+            case COMPL:
+                scan(unary.arg);
+                break;
+            default:
+                this.free = false;
+        }
+    }
+
+    @Override
+    public void visitBinary(JCTree.JCBinary binary) {
+        switch (binary.getTag()) {
+            case DIV:
+            case MOD:
+                this.free = false;
+                break;
+            default:
+                scan(binary.lhs);
+
+                scan(binary.rhs);
+        }
+    }
+
+    /**
+     * Primitive conversions cannot throw, unlike reference casts.
+     */
+    @Override
+    public void visitTypeCast(JCTree.JCTypeCast cast) {
+        if (cast.clazz instanceof JCTree.JCPrimitiveTypeTree) {
+            scan(cast.expr);
+        } else {
+            this.free = false;
+        }
+    }
+
+    @Override
+    public void visitTypeTest(JCTree.JCInstanceOf test) {
+        scan(test.expr);
+    }
+}
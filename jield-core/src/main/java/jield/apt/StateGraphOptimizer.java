@@ -0,0 +1,340 @@
+package jield.apt;
+
+import com.sun.tools.javac.tree.JCTree.JCReturn;
+import com.sun.tools.javac.tree.JCTree.JCStatement;
+import com.sun.tools.javac.tree.JCTree.JCSwitch;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.tree.TreeTranslator;
+
+import java.util.*;
+
+/**
+ * Simplifies the state graph built by the {@link GeneratorTransformer} before it is lowered into code. The
+ * transformation creates lots of trivial states (loop initializers, dispatchers, block continuations) that only jump
+ * to another state. Each of them costs a bounce at runtime, so the following passes are applied until none of them
+ * changes the graph:
+ * <ul>
+ *     <li><b>jump threading:</b> transitions targeting a state that only jumps further are redirected to the final
+ *     target,</li>
+ *     <li><b>forward-only state elimination:</b> states that became unreferenced because of threading are dropped,</li>
+ *     <li><b>straight-line merging:</b> a value-less jump is replaced by the statements of its target if it is the only
+ *     reference to the target. Jumps located inside a {@code switch} are left alone, because a {@code break} in the
+ *     inlined statements would refer to the {@code switch},</li>
+ *     <li><b>unreachable state removal:</b> states not reachable from the start state are dropped.</li>
+ * </ul>
+ * The start and the end state are never removed, because backends refer to them directly.
+ */
+final class StateGraphOptimizer {
+    private final TreeMaker treeMaker;
+
+    private final Map<Integer, List<JCStatement>> states;
+
+    private final Map<JCReturn, Transition> transitions;
+
+    private final int startState;
+
+    private final int endState;
+
+    StateGraphOptimizer(TreeMaker treeMaker, Map<Integer, List<JCStatement>> states,
+                        Map<JCReturn, Transition> transitions, int startState, int endState) {
+        this.treeMaker = Objects.requireNonNull(treeMaker);
+
+        this.states = Objects.requireNonNull(states);
+
+        this.transitions = Objects.requireNonNull(transitions);
+
+        this.startState = startState;
+
+        this.endState = endState;
+    }
+
+    /**
+     * Optimizes the state graph in place.
+     */
+    void optimize() {
+        boolean changed;
+
+        do {
+            removeUnreachableStates();
+
+            changed = threadJumps();
+
+            removeUnreachableStates();
+
+            changed |= mergeStraightLineStates();
+        } while (changed);
+    }
+
+    /**
+     * Redirects every transition whose target only jumps further. Value-less transitions targeting a state that only
+     * halts become halts themselves.
+     * @return whether any transition has been redirected
+     */
+    private boolean threadJumps() {
+        boolean changed = false;
+
+        for (Map.Entry<JCReturn, Transition> entry : transitions.entrySet()) {
+            final Transition transition = entry.getValue();
+
+            if (transition.isHalt()) {
+                continue;
+            }
+
+            final int target = resolveTarget(transition.getTarget());
+
+            if (target == Transition.HALT) {
+                if (!transition.getValue().isPresent()) {
+                    entry.setValue(Transition.halt());
+
+                    changed = true;
+                }
+            } else if (target != transition.getTarget()) {
+                entry.setValue(transition.retarget(target));
+
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Follows the chain of forward-only states starting at the specified state.
+     * @param state the state to start at
+     * @return the first state of the chain that does something, or {@code Transition.HALT} if the chain ends in a
+     * state that only halts
+     */
+    private int resolveTarget(int state) {
+        final Set<Integer> visited = new HashSet<>();
+
+        int current = state;
+
+        while (visited.add(current)) {
+            final Transition forward = forwardOf(current);
+
+            if (forward == null) {
+                return current;
+            }
+
+            if (forward.isHalt()) {
+                return current == endState ? Transition.HALT : current;
+            }
+
+            current = forward.getTarget();
+        }
+
+        /*
+         * A cycle of forward-only states, for example an empty infinite loop. Nothing to thread.
+         */
+        return state;
+    }
+
+    /**
+     * Returns the transition of a forward-only state, that is a state consisting of a single value-less transition.
+     * @param state the state to be inspected
+     * @return the transition, or {@code null} if the state is not forward-only
+     */
+    private Transition forwardOf(int state) {
+        final List<JCStatement> statements = states.get(state);
+
+        if (statements == null || statements.size() != 1) {
+            return null;
+        }
+
+        final Transition transition = transitions.get(statements.get(0));
+
+        if (transition == null || transition.getValue().isPresent()) {
+            return null;
+        }
+
+        return transition;
+    }
+
+    /**
+     * Replaces value-less jumps with the statements of their target if the jump is the only reference to the target.
+     * Jumps at the end of a state are spliced, nested jumps are replaced by a block.
+     * @return whether any state has been merged
+     */
+    private boolean mergeStraightLineStates() {
+        final Map<Integer, Integer> references = countReferences();
+
+        final boolean[] changed = { false };
+
+        final TreeTranslator inliner = new TreeTranslator() {
+            @Override
+            public void visitReturn(JCReturn tree) {
+                final List<JCStatement> inlined = takeMergeable(tree, references);
+
+                if (inlined == null) {
+                    super.visitReturn(tree);
+                } else {
+                    result = translate(treeMaker.Block(0L, com.sun.tools.javac.util.List.from(inlined)));
+
+                    changed[0] = true;
+                }
+            }
+
+            @Override
+            public void visitSwitch(JCSwitch tree) {
+                result = tree;
+            }
+        };
+
+        for (Integer state : new ArrayList<>(states.keySet())) {
+            final List<JCStatement> statements = states.get(state);
+
+            /*
+             * Already merged into another state in this round.
+             */
+            if (statements == null) {
+                continue;
+            }
+
+            final List<JCStatement> merged = new ArrayList<>();
+
+            final Deque<JCStatement> pending = new ArrayDeque<>(statements);
+
+            while (!pending.isEmpty()) {
+                final JCStatement statement = pending.poll();
+
+                final List<JCStatement> spliced = pending.isEmpty() ? takeMergeable(statement, references) : null;
+
+                if (spliced != null) {
+                    pending.addAll(spliced);
+
+                    changed[0] = true;
+                } else {
+                    merged.add(inliner.translate(statement));
+                }
+            }
+
+            statements.clear();
+
+            statements.addAll(merged);
+        }
+
+        return changed[0];
+    }
+
+    /**
+     * Removes the target of the specified statement from the graph if the statement is a value-less jump and the only
+     * reference to its target.
+     * @param statement the statement to be inspected
+     * @param references the number of references keyed by state
+     * @return the statements of the removed target, or {@code null} if the target cannot be merged
+     */
+    private List<JCStatement> takeMergeable(JCStatement statement, Map<Integer, Integer> references) {
+        final Transition transition = transitions.get(statement);
+
+        if (transition == null || transition.isHalt() || transition.getValue().isPresent()) {
+            return null;
+        }
+
+        final int target = transition.getTarget();
+
+        if (target == startState || target == endState || references.getOrDefault(target, 0) != 1
+                || !states.containsKey(target) || containsPlaceholder(states.get(target), statement)) {
+            return null;
+        }
+
+        transitions.remove(statement);
+
+        references.remove(target);
+
+        return states.remove(target);
+    }
+
+    private boolean containsPlaceholder(List<JCStatement> statements, JCStatement placeholder) {
+        return placeholdersOf(statements).contains(placeholder);
+    }
+
+    /**
+     * Drops the states that are not reachable from the start and the end state, together with their transitions.
+     */
+    private void removeUnreachableStates() {
+        final Set<Integer> reachable = new HashSet<>();
+
+        final Deque<Integer> pending = new ArrayDeque<>(Arrays.asList(startState, endState));
+
+        while (!pending.isEmpty()) {
+            final int state = pending.pop();
+
+            if (!reachable.add(state)) {
+                continue;
+            }
+
+            for (Transition transition : transitionsOf(state)) {
+                if (!transition.isHalt()) {
+                    pending.push(transition.getTarget());
+                }
+            }
+        }
+
+        final Iterator<Map.Entry<Integer, List<JCStatement>>> it = states.entrySet().iterator();
+
+        while (it.hasNext()) {
+            final Map.Entry<Integer, List<JCStatement>> state = it.next();
+
+            if (!reachable.contains(state.getKey())) {
+                for (JCReturn placeholder : placeholdersOf(state.getValue())) {
+                    transitions.remove(placeholder);
+                }
+
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Counts how many transitions target each state.
+     * @return the number of references keyed by state
+     */
+    private Map<Integer, Integer> countReferences() {
+        final Map<Integer, Integer> references = new HashMap<>();
+
+        for (Transition transition : transitions.values()) {
+            if (!transition.isHalt()) {
+                references.merge(transition.getTarget(), 1, Integer::sum);
+            }
+        }
+
+        return references;
+    }
+
+    private List<Transition> transitionsOf(int state) {
+        final List<Transition> result = new ArrayList<>();
+
+        for (JCReturn placeholder : placeholdersOf(states.get(state))) {
+            result.add(transitions.get(placeholder));
+        }
+
+        return result;
+    }
+
+    /**
+     * Collects the transition placeholders located anywhere in the specified statements.
+     * @param statements the statements to be scanned
+     * @return the placeholders
+     */
+    private List<JCReturn> placeholdersOf(List<JCStatement> statements) {
+        final List<JCReturn> placeholders = new ArrayList<>();
+
+        final TreeScanner scanner = new TreeScanner() {
+            @Override
+            public void visitReturn(JCReturn tree) {
+                if (transitions.containsKey(tree)) {
+                    placeholders.add(tree);
+                }
+
+                super.visitReturn(tree);
+            }
+        };
+
+        for (JCStatement statement : statements) {
+            scanner.scan(statement);
+        }
+
+        return placeholders;
+    }
+}
@@ -0,0 +1,173 @@
+package jield.apt;
+
+import com.sun.tools.javac.code.TypeTag;
+import jield.runtime.AsyncGenerator;
+import jield.runtime.Coroutine;
+
+import java.util.Optional;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * The kinds of streams a generator method can return. Determines the runtime classes the generated code is built on
+ * and whether the generated values are references or primitives. Besides the streams, a generator method can return
+ * an {@link AsyncGenerator}, whose values are requested asynchronously, or a {@link Coroutine}, which receives values
+ * from its caller.
+ */
+enum StreamShape {
+    REFERENCE(Stream.class, null, Identifiers.BASE_GENERATOR, null, Identifiers.CURRENT_METHOD,
+        Identifiers.CONSUMER, Identifiers.PUSH_METHOD),
+
+    INT_VALUE(IntStream.class, TypeTag.INT, Identifiers.INT_GENERATOR, Identifiers.OF_INT, "currentInt",
+        Identifiers.INT_CONSUMER, "pushInt"),
+
+    LONG_VALUE(LongStream.class, TypeTag.LONG, Identifiers.LONG_GENERATOR, Identifiers.OF_LONG, "currentLong",
+        Identifiers.LONG_CONSUMER, "pushLong"),
+
+    DOUBLE_VALUE(DoubleStream.class, TypeTag.DOUBLE, Identifiers.DOUBLE_GENERATOR, Identifiers.OF_DOUBLE,
+        "currentDouble", Identifiers.DOUBLE_CONSUMER, "pushDouble"),
+
+    ASYNC(AsyncGenerator.class, null, Identifiers.ASYNC_GENERATOR, null, Identifiers.CURRENT_METHOD, null, null),
+
+    COROUTINE(Coroutine.class, null, Identifiers.COROUTINE, null, Identifiers.CURRENT_METHOD, null, null);
+
+    private final Class<?> streamClass;
+
+    private final TypeTag primitiveTag;
+
+    private final String generatorClass;
+
+    private final String stateMachineClass;
+
+    private final String currentMethod;
+
+    private final String consumerClass;
+
+    private final String pushMethod;
+
+    StreamShape(Class<?> streamClass, TypeTag primitiveTag, String generatorClass, String stateMachineClass,
+                String currentMethod, String consumerClass, String pushMethod) {
+        this.streamClass = streamClass;
+
+        this.primitiveTag = primitiveTag;
+
+        this.generatorClass = generatorClass;
+
+        this.stateMachineClass = stateMachineClass;
+
+        this.currentMethod = currentMethod;
+
+        this.consumerClass = consumerClass;
+
+        this.pushMethod = pushMethod;
+    }
+
+    /**
+     * Finds the shape corresponding to the specified stream type.
+     * @param qualifiedName the fully qualified name of the return type of a generator method
+     * @return the shape, or an empty {@code Optional} if the type is not a supported stream
+     */
+    static Optional<StreamShape> of(String qualifiedName) {
+        for (StreamShape shape : values()) {
+            if (shape.streamClass.getName().equals(qualifiedName)) {
+                return Optional.of(shape);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    boolean isPrimitive() {
+        return primitiveTag != null;
+    }
+
+    /**
+     * Checks whether the generator method returns an {@code AsyncGenerator}. The state machines of async generators
+     * can suspend on stages and do not support push and batch mode.
+     * @return {@code true} for async generators
+     */
+    boolean isAsync() {
+        return this == ASYNC;
+    }
+
+    /**
+     * Checks whether the generator method returns a {@code Coroutine}. The state machines of coroutines can suspend
+     * to receive a value and do not support push and batch mode.
+     * @return {@code true} for coroutines
+     */
+    boolean isCoroutine() {
+        return this == COROUTINE;
+    }
+
+    /**
+     * Returns the number of type parameters the stream type must have.
+     * @return {@code 1} for {@code Stream<T>}, {@code 0} for primitive streams, {@code 2} for
+     * {@code Coroutine<I, O>}
+     */
+    int typeParameterCount() {
+        if (isCoroutine()) {
+            return 2;
+        }
+
+        return isPrimitive() ? 0 : 1;
+    }
+
+    /**
+     * Returns the index of the type argument of the stream type that is the type of the generated values.
+     * @return {@code 1} for {@code Coroutine<I, O>}, {@code 0} otherwise
+     */
+    int generatedTypeIndex() {
+        return isCoroutine() ? 1 : 0;
+    }
+
+    /**
+     * Returns the type of the generated primitive values.
+     * @return the tag of the primitive type, {@code null} for reference streams
+     */
+    TypeTag getPrimitiveTag() {
+        return primitiveTag;
+    }
+
+    /**
+     * Returns the simple name of the runtime class producing the stream.
+     * @return the name of the generator class
+     */
+    String getGeneratorClass() {
+        return generatorClass;
+    }
+
+    /**
+     * Returns the simple name of the {@code StateMachine} specialization nested in {@code StateMachine}.
+     * @return the name of the nested interface, {@code null} for reference streams
+     */
+    String getStateMachineClass() {
+        return stateMachineClass;
+    }
+
+    /**
+     * Returns the name of the method that returns the last produced value of a state machine.
+     * @return the name of the method
+     */
+    String getCurrentMethod() {
+        return currentMethod;
+    }
+
+    /**
+     * Returns the simple name of the {@code java.util.function} interface values are pushed into in push mode.
+     * @return the name of the consumer interface
+     */
+    String getConsumerClass() {
+        return consumerClass;
+    }
+
+    /**
+     * Returns the name of the method of a state machine that runs it in push mode. The primitive specializations do
+     * not overload {@code push}, so that their consumers are not ambiguous with {@code Consumer}.
+     * @return the name of the method
+     */
+    String getPushMethod() {
+        return pushMethod;
+    }
+}
@@ -0,0 +1,157 @@
+package jield.apt;
+
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+
+import java.util.Optional;
+
+/**
+ * A transfer of control from one state to another, optionally producing a value of the generator. While the states
+ * are being built, transitions are represented by placeholder {@code return} statements that the selected backend
+ * lowers into actual code once the whole state graph is known.
+ */
+final class Transition {
+    /**
+     * Target of transitions that stop the generator.
+     */
+    static final int HALT = -1;
+
+    private final int target;
+
+    private final Optional<JCExpression> value;
+
+    private final Kind kind;
+
+    Transition(int target, Optional<JCExpression> value) {
+        this(target, value, Kind.YIELD);
+    }
+
+    private Transition(int target, Optional<JCExpression> value, Kind kind) {
+        this.target = target;
+
+        this.value = value;
+
+        this.kind = kind;
+    }
+
+    /**
+     * Creates a transition that stops the generator.
+     * @return a new transition
+     */
+    static Transition halt() {
+        return new Transition(HALT, Optional.empty());
+    }
+
+    /**
+     * Creates a transition that suspends an async generator on the specified stage and resumes at the specified state
+     * once the stage completes. The stage is kept as the value of the transition, so that the state graph treats it
+     * like a yield.
+     * @param target the state resuming the generator
+     * @param stage the expression of the awaited stage
+     * @return a new transition
+     */
+    static Transition await(int target, JCExpression stage) {
+        return new Transition(target, Optional.of(stage), Kind.AWAIT);
+    }
+
+    /**
+     * Creates a transition that suspends a coroutine to receive a value and resumes at the specified state once the
+     * value is sent. The flag marking the suspension is kept as the value of the transition, so that the state graph
+     * treats it like a yield.
+     * @param target the state resuming the coroutine
+     * @param flag the expression stored in the receiving flag of the coroutine
+     * @return a new transition
+     */
+    static Transition receive(int target, JCExpression flag) {
+        return new Transition(target, Optional.of(flag), Kind.RECEIVE);
+    }
+
+    /**
+     * Creates a transition that delegates to the specified stream and resumes at the specified state once the stream
+     * is exhausted. The stream is kept as the value of the transition, so that the state graph treats it like a yield.
+     * @param target the state resuming the generator
+     * @param stream the expression of the stream delegated to
+     * @return a new transition
+     */
+    static Transition delegate(int target, JCExpression stream) {
+        return new Transition(target, Optional.of(stream), Kind.DELEGATE);
+    }
+
+    /**
+     * Creates a transition that produces the values of the specified block and continues at the specified state, which
+     * drains whatever is left of the block one value at a time. Push and batch mode hand the values over in a single
+     * loop instead.
+     * @param target the state draining the block
+     * @param view the expression of the random access view of the block
+     * @return a new transition
+     */
+    static Transition block(int target, JCExpression view) {
+        return new Transition(target, Optional.of(view), Kind.BLOCK);
+    }
+
+    /**
+     * Creates a transition that produces the same value as this one, but continues at the specified state.
+     * @param target the new target state
+     * @return a new transition
+     */
+    Transition retarget(int target) {
+        return new Transition(target, value, kind);
+    }
+
+    boolean isAwait() {
+        return kind == Kind.AWAIT;
+    }
+
+    boolean isReceive() {
+        return kind == Kind.RECEIVE;
+    }
+
+    boolean isDelegate() {
+        return kind == Kind.DELEGATE;
+    }
+
+    boolean isBlock() {
+        return kind == Kind.BLOCK;
+    }
+
+    boolean isHalt() {
+        return target == HALT;
+    }
+
+    int getTarget() {
+        return target;
+    }
+
+    Optional<JCExpression> getValue() {
+        return value;
+    }
+
+    /**
+     * What the value of a transition is.
+     */
+    private enum Kind {
+        /**
+         * A value produced by the generator.
+         */
+        YIELD,
+
+        /**
+         * A stage an async generator suspends on.
+         */
+        AWAIT,
+
+        /**
+         * A stream whose values are produced before the generator resumes.
+         */
+        DELEGATE,
+
+        /**
+         * A suspension of a coroutine until it receives a value.
+         */
+        RECEIVE,
+
+        /**
+         * A block of values produced in a single suspension.
+         */
+        BLOCK
+    }
+}
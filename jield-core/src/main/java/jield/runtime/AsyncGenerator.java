@@ -0,0 +1,267 @@
+package jield.runtime;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Generator whose code can wait for {@link CompletionStage}s without blocking a thread. Returned by generator methods
+ * declared to return {@code AsyncGenerator<T>}, which may suspend on a stage through {@link Generators#await}.
+ *
+ * <p>
+ * The values are requested one at a time through {@link #next()}, or all at once through
+ * {@link #forEach(Consumer)}. The state machine is driven by the thread making the request until it suspends on an
+ * incomplete stage. It then resumes in the completion callback of that stage, on the thread completing it. Stages that
+ * are already complete are passed through without suspending. Thus thousands of generators can wait for their stages
+ * at the same time while none of them holds a thread.
+ * </p>
+ *
+ * <p>
+ * At most one request can be outstanding at a time: {@code next()} must not be called again before the stage returned
+ * by the previous call completes. Async generators cannot produce {@code null}, since the end of the values is
+ * signalled by an empty {@code Optional}.
+ * </p>
+ * @param <E> The return type of the generator.
+ */
+public final class AsyncGenerator<E> {
+    private final AsyncStateMachine<E> machine;
+
+    private final AtomicBoolean busy;
+
+    private final AtomicBoolean finished;
+
+    private volatile boolean closed;
+
+    private AsyncGenerator(AsyncStateMachine<E> machine) {
+        this.machine = machine;
+
+        this.busy = new AtomicBoolean();
+
+        this.finished = new AtomicBoolean();
+
+        this.closed = false;
+    }
+
+    /**
+     * Creates a new instance driven by the specified state machine.
+     * @param machine the state machine producing the generated values
+     * @param <E> The return type of the generator.
+     * @return a new generator instance
+     */
+    public static <E> AsyncGenerator<E> of(AsyncStateMachine<E> machine) {
+        return new AsyncGenerator<>(Objects.requireNonNull(machine));
+    }
+
+    /**
+     * Requests the next value. The generator runs until it produces the value, finishes or suspends. In the latter case
+     * the returned stage completes once the generator has resumed and produced the value.
+     * @return a stage completed with the next value, with an empty {@code Optional} if the generator has finished, or
+     * exceptionally if the generator code has thrown an exception
+     */
+    public CompletionStage<Optional<E>> next() {
+        final CompletableFuture<Optional<E>> result = new CompletableFuture<>();
+
+        if (!busy.compareAndSet(false, true)) {
+            result.completeExceptionally(new IllegalStateException("The previous value has not been produced yet"));
+
+            return result;
+        }
+
+        run(new Demand() {
+            @Override
+            boolean accept(E value) {
+                release();
+
+                result.complete(Optional.of(value));
+
+                return false;
+            }
+
+            @Override
+            void complete() {
+                release();
+
+                result.complete(Optional.empty());
+            }
+
+            @Override
+            void fail(Throwable e) {
+                release();
+
+                result.completeExceptionally(e);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Passes every remaining value to the specified action. The action is invoked on the thread driving the generator
+     * at that moment, which is the calling thread until the first suspension.
+     * @param action the action to be performed on the values
+     * @return a stage completed when the generator finishes, or exceptionally if the generator code or the action has
+     * thrown an exception
+     */
+    public CompletionStage<Void> forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        if (!busy.compareAndSet(false, true)) {
+            result.completeExceptionally(new IllegalStateException("The previous value has not been produced yet"));
+
+            return result;
+        }
+
+        run(new Demand() {
+            @Override
+            boolean accept(E value) {
+                action.accept(value);
+
+                return true;
+            }
+
+            @Override
+            void complete() {
+                release();
+
+                result.complete(null);
+            }
+
+            @Override
+            void fail(Throwable e) {
+                release();
+
+                result.completeExceptionally(e);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Stops the generator. If a request is outstanding, the generator stops when it resumes and the request completes
+     * as if the generator had finished. The state machine is only closed by the thread holding the generator, so a
+     * step running on another thread is never closed under.
+     */
+    public void close() {
+        this.closed = true;
+
+        finishIfClosed();
+    }
+
+    /*
+     * Releases the generator after serving a request. A close() that found the generator busy left closing it to the
+     * thread releasing it.
+     */
+    private void release() {
+        busy.set(false);
+
+        if (closed) {
+            finishIfClosed();
+        }
+    }
+
+    private void finishIfClosed() {
+        if (busy.compareAndSet(false, true)) {
+            try {
+                finish();
+            } finally {
+                busy.set(false);
+            }
+        }
+    }
+
+    /**
+     * Steps the state machine until the demand is satisfied or the machine suspends on an incomplete stage, in which
+     * case the loop continues in the completion callback of the stage. A callback that runs right away, because the
+     * stage is already complete, hands the loop back to the registering thread instead of resuming recursively, so
+     * that a long run of completed stages does not overflow the stack.
+     */
+    private void run(Demand demand) {
+        while (true) {
+            final E value;
+
+            try {
+                if (closed || finished.get() || !machine.step()) {
+                    finish();
+
+                    demand.complete();
+
+                    return;
+                }
+
+                final CompletionStage<?> stage = machine.awaiting();
+
+                if (stage != null) {
+                    if (!isDone(stage) && suspend(stage, demand)) {
+                        return;
+                    }
+
+                    continue;
+                }
+
+                value = machine.current();
+
+                if (value == null) {
+                    throw new NullPointerException("Async generators cannot produce null");
+                }
+
+                if (demand.accept(value)) {
+                    continue;
+                }
+            } catch (Throwable e) {
+                finish();
+
+                demand.fail(e);
+            }
+
+            return;
+        }
+    }
+
+    /*
+     * Registers the resumption on the stage. Whichever of the registering thread and the callback gets to the hand-off
+     * second continues the loop, so the callback only resumes if the stage completes after the registration.
+     */
+    private boolean suspend(CompletionStage<?> stage, Demand demand) {
+        final AtomicBoolean handOff = new AtomicBoolean();
+
+        stage.whenComplete((result, e) -> {
+            if (!handOff.compareAndSet(false, true)) {
+                run(demand);
+            }
+        });
+
+        return handOff.compareAndSet(false, true);
+    }
+
+    private static boolean isDone(CompletionStage<?> stage) {
+        return stage instanceof CompletableFuture && ((CompletableFuture<?>) stage).isDone();
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            machine.close();
+        }
+    }
+
+    /**
+     * The request being served by the state machine.
+     */
+    private abstract class Demand {
+        /**
+         * Receives the next value.
+         * @param value the value
+         * @return {@code true} if the generator should continue with the next value
+         */
+        abstract boolean accept(E value);
+
+        abstract void complete();
+
+        abstract void fail(Throwable e);
+    }
+}
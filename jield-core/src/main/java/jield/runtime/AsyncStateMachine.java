@@ -0,0 +1,36 @@
+package jield.runtime;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The state machine of an async generator. Besides producing values, a step can suspend the machine on a
+ * {@link CompletionStage}, in which case it must not be stepped again until the stage completes. The resumed step
+ * reads the result of the stage.
+ * @param <E> the return type of the generator
+ */
+public interface AsyncStateMachine<E> {
+    /**
+     * Resumes the state machine and runs it until it produces a value, suspends or finishes.
+     * @return {@code true} if a value was produced or the machine has suspended, {@code false} if the generator has
+     * finished
+     */
+    boolean step();
+
+    /**
+     * Returns the value produced by the last successful {@link #step()}.
+     * @return the last produced value
+     */
+    E current();
+
+    /**
+     * Returns the stage the state machine is suspended on.
+     * @return the stage awaited by the last {@link #step()}, {@code null} if the step produced a value
+     */
+    CompletionStage<?> awaiting();
+
+    /**
+     * Releases the resources held by the state machine. See {@link StateMachine#close()}.
+     */
+    default void close() {
+    }
+}
@@ -1,9 +1,15 @@
 package jield.runtime;
 
-import static jield.runtime.Bounce.cont;
-
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -12,16 +18,94 @@ import java.util.stream.StreamSupport;
  * generator states. This class must be utilized through composition instead of inheritance.
  *
  * <p>
- * Internally uses trampolining to enable CPS and prevent stack overflow.
+ * The states are driven through a {@link StateMachine}. States chained through {@link Bounce} objects are executed by
+ * a trampoline to enable CPS and prevent stack overflow.
+ * </p>
+ *
+ * <p>
+ * The state machine is stepped lazily. Creating the generator does not execute any generator code, and the machine is
+ * only stepped when a value is requested or {@link #hasNext()} has to be answered. Thus generator code never runs past
+ * the last value that was actually consumed.
+ * </p>
+ *
+ * <p>
+ * The generator is its own {@link Spliterator}: {@link #tryAdvance(Consumer)} steps the state machine once, which is
+ * what short-circuiting terminal operations use. {@link #forEachRemaining(Consumer)}, used by the rest of the terminal
+ * operations, runs the state machine in push mode, so values are passed downstream right where they are produced. The
+ * spliterator is {@link Spliterator#ORDERED} and {@link Spliterator#IMMUTABLE}. It is not
+ * {@link Spliterator#NONNULL}, because {@code null} is a valid generated value.
+ * </p>
+ *
+ * <p>
+ * Generators created through {@link #splittable(StateMachine)} can be split until their traversal starts, which
+ * makes them usable in parallel streams. Otherwise {@link #trySplit()} always returns {@code null}.
+ * </p>
+ *
+ * <p>
+ * Generators of pooled generator methods hold a {@link Recyclable} instance, which is recycled as soon as the
+ * generator is exhausted or its stream is closed. From then on the generator reports that it has no more values.
+ * </p>
+ *
+ * <p>
+ * {@link #prefetching(Executor, int)} moves the state machine onto a producer thread, so that slow generator code
+ * overlaps with the consumer instead of running only when a value is requested.
+ * </p>
+ *
+ * <p>
+ * {@link #skip(long)} passes over values without producing them, which is cheaper than skipping them on the stream.
+ * </p>
+ *
+ * <p>
+ * Generators yielding inside {@code try} statements run their {@code finally} blocks and close their resources when
+ * they are closed through {@link #close()} or their stream is closed, even if they have not finished.
+ * </p>
+ *
+ * <p>
+ * {@link #tee(int, int)} feeds several generators from a single run of the state machine, buffering the values between
+ * the slowest and the fastest of them.
  * </p>
  * @param <E> The return type of the generator.
  */
-public class BaseGenerator<E> implements Iterator<E>, Iterable<E> {
-    private static final Thunk END_STATE = null;
+public class BaseGenerator<E> implements Iterator<E>, Iterable<E>, Spliterator<E>, Forkable<BaseGenerator<E>>,
+    AutoCloseable {
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.IMMUTABLE;
+
+    private StateMachine<E> machine;
+
+    /*
+     * The same object as the state machine if it can be split, null otherwise. Set to null as soon as the traversal
+     * starts, since a running state machine cannot be sliced.
+     */
+    private Splittable<?> splittable;
+
+    /*
+     * Whether the state machine has been stepped ahead of the consumer by hasNext(). If so, hasNext holds the outcome
+     * of that step and the value is still available through the state machine.
+     */
+    private boolean stepped;
+
+    private boolean hasNext;
 
-    private E current;
+    /*
+     * The instance of a pooled generator, null if the generator is not pooled or the instance has been recycled.
+     */
+    private Recyclable recyclable;
+
+    /*
+     * Whether the state machine has been closed, which happens once, when the generator finishes.
+     */
+    private boolean closed;
+
+    /*
+     * The generators split off this one, and off them in turn, by a parallel stream of a guarded state machine, so
+     * that closing the stream also closes the splits left suspended in a try statement. Null otherwise.
+     */
+    private Queue<BaseGenerator<E>> splits;
 
-    private Thunk<Bounce<E>> continuation;
+    /*
+     * Whether a subscriber has subscribed to a publisher of the generator.
+     */
+    private boolean subscribed;
 
     /**
      * Creates a new instance that will start at the specified state.
@@ -30,20 +114,129 @@ public class BaseGenerator<E> implements Iterator<E>, Iterable<E> {
      * @return a new generator instance
      */
     public static <E> BaseGenerator<E> startingAt(GeneratorState<E> start) {
-        return new BaseGenerator<>(Objects.requireNonNull(start));
+        Objects.requireNonNull(start);
+
+        return startingAt(() -> start.apply(BaseGenerator::endCont));
+    }
+
+    /**
+     * Creates a new instance that will start at the specified continuation. States reached through this entry point
+     * are expected to overwrite and return a single {@link Bounce} register instead of allocating new ones, thus
+     * stepping the generator does not allocate.
+     * @param start the continuation that should be evaluated first when producing generated values
+     * @param <E> The return type of the generator.
+     * @return a new generator instance
+     */
+    public static <E> BaseGenerator<E> startingAt(Thunk<Bounce<E>> start) {
+        return new BaseGenerator<>(new Trampoline<>(Objects.requireNonNull(start)), null, null);
+    }
+
+    /**
+     * Creates a new instance of a pooled generator that will start at the specified continuation. The instance holding
+     * the states is recycled when the generator is exhausted or its stream is closed.
+     * @param start the continuation that should be evaluated first when producing generated values
+     * @param recyclable the pooled instance holding the states
+     * @param <E> The return type of the generator.
+     * @return a new generator instance
+     */
+    public static <E> BaseGenerator<E> startingAt(Thunk<Bounce<E>> start, Recyclable recyclable) {
+        return new BaseGenerator<>(new Trampoline<>(Objects.requireNonNull(start)), null,
+            Objects.requireNonNull(recyclable));
+    }
+
+    /**
+     * Creates a new instance that will start at the specified continuation and closes the instance holding the states
+     * when the generator is exhausted or its stream is closed, releasing the sources of the loops it is suspended in.
+     * @param start the continuation that should be evaluated first when producing generated values
+     * @param states the instance holding the states
+     * @param recyclable the pooled instance holding the states, {@code null} if the generator is not pooled
+     * @param <E> The return type of the generator.
+     * @return a new generator instance
+     */
+    public static <E> BaseGenerator<E> startingAt(Thunk<Bounce<E>> start, AutoCloseable states, Recyclable recyclable) {
+        final Trampoline<E> trampoline =
+            new Trampoline.Guarding<>(Objects.requireNonNull(start), Objects.requireNonNull(states));
+
+        return new BaseGenerator<>(trampoline, null, recyclable);
+    }
+
+    /**
+     * Returns the generator behind a stream returned by a generator method, giving access to its iterator and batch
+     * methods. Like {@link Stream#spliterator()}, this is a terminal operation, so the stream must not have intermediate
+     * operations and cannot be used afterwards.
+     * @param stream a stream returned by a generator method
+     * @param <E> The return type of the generator.
+     * @return the generator producing the values of the stream
+     * @throws IllegalArgumentException if the stream is not backed by a generator
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> BaseGenerator<E> from(Stream<E> stream) {
+        final Spliterator<?> spliterator = stream.spliterator();
+
+        if (!(spliterator instanceof BaseGenerator)) {
+            throw new IllegalArgumentException("The stream is not backed by a generator");
+        }
+
+        return (BaseGenerator<E>) spliterator;
+    }
+
+    /**
+     * Creates a new instance driven by the specified state machine.
+     * @param machine the state machine producing the generated values
+     * @param <E> The return type of the generator.
+     * @return a new generator instance
+     */
+    public static <E> BaseGenerator<E> of(StateMachine<E> machine) {
+        return new BaseGenerator<>(delegating(Objects.requireNonNull(machine)), null, null);
+    }
+
+    /**
+     * Creates a new instance driven by the state machine of a pooled generator. The instance is recycled when the
+     * generator is exhausted or its stream is closed.
+     * @param machine the state machine producing the generated values
+     * @param recyclable the pooled instance, usually the state machine itself
+     * @param <E> The return type of the generator.
+     * @return a new generator instance
+     */
+    public static <E> BaseGenerator<E> of(StateMachine<E> machine, Recyclable recyclable) {
+        return new BaseGenerator<>(delegating(Objects.requireNonNull(machine)), null,
+            Objects.requireNonNull(recyclable));
+    }
+
+    /*
+     * State machines delegating to other streams are driven through a delegation stack.
+     */
+    private static <E> StateMachine<E> delegating(StateMachine<E> machine) {
+        return machine instanceof DelegatingStateMachine
+            ? new Delegation<>((DelegatingStateMachine<E>) machine)
+            : machine;
     }
 
-    private BaseGenerator(GeneratorState<E> start) {
-        this.continuation = () -> start.apply(this::endCont);
+    /**
+     * Creates a new instance driven by the specified state machine, which can be split by slicing the range of the
+     * state machine in half.
+     * @param machine the state machine producing the generated values
+     * @param <E> The return type of the generator.
+     * @param <M> The type of the state machine.
+     * @return a new generator instance
+     */
+    public static <E, M extends StateMachine<E> & Splittable<M>> BaseGenerator<E> splittable(M machine) {
+        return new BaseGenerator<>(Objects.requireNonNull(machine), machine, null);
+    }
+
+    private BaseGenerator(StateMachine<E> machine, Splittable<?> splittable, Recyclable recyclable) {
+        this.machine = machine;
+
+        this.splittable = splittable;
+
+        this.recyclable = recyclable;
 
         /*
-         * Step the generator first. Actually we are one step forward than the backed stream to ensure the return value
-         * of hasNext().
-         *
-         * If there are no more backing methods, then the continuation is set to null and the hasNext() method will
-         * return false.
+         * Nothing is executed here. The first step is taken when a value is requested for the first time.
          */
-        this.current = stepGenerator();
+        this.stepped = false;
+
+        this.hasNext = false;
     }
 
     @Override
@@ -51,71 +244,591 @@ public class BaseGenerator<E> implements Iterator<E>, Iterable<E> {
         return this;
     }
 
+    /**
+     * Checks whether the generator has a next value. Steps the state machine if it has not been stepped since the last
+     * value was consumed, so the generator code runs up to the next value, but no further.
+     * @return {@code true} if there is a next value, {@code false} otherwise
+     */
     @Override
     public final boolean hasNext() {
-        return continuation != END_STATE;
+        if (!stepped) {
+            this.splittable = null;
+
+            this.hasNext = machine.step();
+
+            this.stepped = true;
+
+            if (!hasNext) {
+                finish();
+            }
+        }
+
+        return hasNext;
     }
 
     @Override
     public final E next() {
-        final E last = current;
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
 
-        current = stepGenerator();
+        this.stepped = false;
 
-        return last;
+        return machine.current();
+    }
+
+    @Override
+    public final Spliterator<E> spliterator() {
+        return this;
+    }
+
+    @Override
+    public final boolean tryAdvance(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+
+        if (!hasNext()) {
+            return false;
+        }
+
+        this.stepped = false;
+
+        action.accept(machine.current());
+
+        return true;
     }
 
     /**
-     * Returns a stream backed by the generator methods.
-     * @return a stream of generated values
+     * Passes every remaining value to the specified action. Implements both {@link Iterator#forEachRemaining} and
+     * {@link Spliterator#forEachRemaining}. The state machine is run in push mode, without going through
+     * {@link #hasNext()} and {@link #next()} for every value. A value already stepped to by {@link #hasNext()} is
+     * passed to the action first.
+     * @param action the action to be performed on the values
      */
-    public final Stream<E> stream() {
-        return StreamSupport.stream(this.spliterator(), false);
+    @Override
+    public final void forEachRemaining(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+
+        this.splittable = null;
+
+        if (stepped) {
+            if (!hasNext) {
+                return;
+            }
+
+            this.stepped = false;
+
+            action.accept(machine.current());
+        }
+
+        machine.push(action);
+
+        finish();
     }
 
-    private Bounce<E> endCont(GeneratorState<E> k) {
-        return cont(null);
+    /**
+     * Stores the next values in the specified range of the buffer. The state machine runs in a single call until the
+     * range is full or the generator ends, which amortizes the per-value overhead of {@link #next()} for consumers
+     * processing the values in blocks. A value already stepped to by {@link #hasNext()} is stored first.
+     * @param buffer the array to store the values in
+     * @param offset the index of the first value in the buffer
+     * @param max the maximum number of values to store
+     * @return the number of values stored, less than {@code max} only if the generator is exhausted
+     * @throws IndexOutOfBoundsException if the range does not fit into the buffer
+     */
+    public final int nextBatch(E[] buffer, int offset, int max) {
+        checkBatchRange(buffer.length, offset, max);
+
+        if (max == 0) {
+            return 0;
+        }
+
+        this.splittable = null;
+
+        int count = 0;
+
+        if (stepped) {
+            if (!hasNext) {
+                return 0;
+            }
+
+            this.stepped = false;
+
+            buffer[offset] = machine.current();
+
+            count = 1;
+        }
+
+        count += machine.fill(buffer, offset + count, max - count);
+
+        if (count < max) {
+            finish();
+        }
+
+        return count;
     }
 
     /**
-     * A trampoline that prevents stack overflow. Takes a starting method and then continues execution until
-     * either a value is returned or there is no continuation.
-     * @param start the next method the trampoline should execute
-     * @return a {@code Bounce} object containing the produced value (if any) and the continuation where the execution
-     * should proceed next time
+     * Skips the next values without producing them, for paging into the values of a generator. The state machine runs
+     * in a single call past the skipped values, which are neither stored nor boxed, and the yielded expressions of
+     * generated state machines are not even evaluated if they are free of side effects. Streams cannot make use of
+     * this, {@code stream().skip(n)} steps through every skipped value, so the generator should be skipped before its
+     * stream is created. A value already stepped to by {@link #hasNext()} is skipped first.
+     * @param n the number of values to skip
+     * @return the number of values skipped, less than {@code n} only if the generator is exhausted
+     * @throws IllegalArgumentException if {@code n} is negative
      */
-    private Bounce<E> trampoline(Thunk<Bounce<E>> start) {
-        Bounce<E> next = cont(start);
+    public final long skip(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("The number of values to skip must not be negative: " + n);
+        }
+
+        if (n == 0) {
+            return 0;
+        }
 
-        while (next.getContinuation().isPresent()) {
-            if (next.getValue().isPresent()) {
-                return next;
+        this.splittable = null;
+
+        long count = 0;
+
+        if (stepped) {
+            if (!hasNext) {
+                return 0;
             }
 
-            next = next.getContinuation().get().evaluate();
+            this.stepped = false;
+
+            count = 1;
         }
 
-        /*
-         * No need to create a new one each time, better be cached.
-         */
-        return cont(null);
+        count += machine.skip(n - count);
+
+        if (count < n) {
+            finish();
+        }
+
+        return count;
+    }
+
+    static void checkBatchRange(int length, int offset, int max) {
+        if (offset < 0 || max < 0 || offset > length - max) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", max " + max + ", length " + length);
+        }
     }
 
     /**
-     * Steps the generator and returns the next generated value. If there is no next value, {@code null} is returned
-     * but the current continuation is set to {@code END_STATE}, thus the iterator and the stream backed by this class
-     * is going to be stopped.
-     * @return the next generated value
+     * Splits the range of a splittable state machine in half. The returned generator covers the first half, this one
+     * continues with the second half, so the encounter order is kept.
+     * @return a generator covering the first half of the range, or {@code null} if the generator cannot be split
      */
+    @Override
     @SuppressWarnings("unchecked")
-    private E stepGenerator() {
-        Bounce<E> pauseState = trampoline(continuation);
+    public final Spliterator<E> trySplit() {
+        final Splittable<?> s = splittable;
+
+        if (s == null) {
+            return null;
+        }
+
+        final long origin = s.origin();
+
+        final long fence = s.fence();
+
+        if (fence - origin < 2) {
+            return null;
+        }
+
+        final long middle = origin + (fence - origin) / 2;
 
         /*
-         * Assigning the END_STATE is unchecked, but perfectly safe because it is null and conforms all types.
+         * The casts are safe, because splittable() only accepts state machines that slice into state machines.
          */
-        this.continuation = pauseState.getContinuation().orElse(END_STATE);
+        final Splittable<?> prefix = s.slice(origin, middle);
+
+        final Splittable<?> suffix = s.slice(middle, fence);
+
+        this.machine = (StateMachine<E>) suffix;
+
+        this.splittable = suffix;
+
+        final BaseGenerator<E> split = new BaseGenerator<>((StateMachine<E>) prefix, prefix, null);
+
+        final Queue<BaseGenerator<E>> q = splits;
+
+        if (q != null) {
+            split.splits = q;
+
+            q.add(split);
+        }
+
+        return split;
+    }
+
+    /**
+     * Estimates the number of remaining values. For splittable generators this is the number of loop iterations left,
+     * otherwise the number of remaining values is unknown.
+     * @return the estimate, {@code Long.MAX_VALUE} if unknown
+     */
+    @Override
+    public final long estimateSize() {
+        final Splittable<?> s = splittable;
+
+        return s == null ? Long.MAX_VALUE : Math.max(0L, s.fence() - s.origin());
+    }
+
+    @Override
+    public final int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * Stops the generator, running the {@code finally} blocks and closing the resources of the {@code try} statements
+     * it is suspended in. From then on the generator reports that it has no more values. Closing the stream of the
+     * generator does the same.
+     */
+    @Override
+    public final void close() {
+        finish();
+    }
+
+    /**
+     * Marks the generator as exhausted, closes the state machine and recycles the instance of a pooled generator.
+     * Called when the state machine halts, when the stream is closed and when a subscription is cancelled, the state
+     * machine is closed only the first time.
+     */
+    final void finish() {
+        this.stepped = true;
+
+        this.hasNext = false;
+
+        if (closed) {
+            return;
+        }
+
+        this.closed = true;
+
+        try {
+            machine.close();
+        } finally {
+            final Recyclable r = recyclable;
+
+            if (r != null) {
+                this.recyclable = null;
+
+                r.recycle();
+            }
+        }
+    }
+
+    /**
+     * Saves the state of the generator, so that it can be continued later, possibly in another process, by
+     * {@link #restore(byte[])}. Only available for generator methods annotated with {@code checkpointable = true}.
+     * The checkpoint can be taken between any two values, a value stepped to by {@link #hasNext()} is saved as well.
+     * The generator can be used further afterwards.
+     * @return the checkpoint
+     * @throws UnsupportedOperationException if the generator is not checkpointable
+     * @throws java.io.UncheckedIOException if the state cannot be saved, for example because a variable of the
+     * generator holds an object that is not serializable
+     */
+    public final byte[] checkpoint() {
+        final int position;
+
+        if (closed) {
+            position = Checkpoints.FINISHED;
+        } else if (stepped) {
+            position = hasNext ? Checkpoints.PENDING : Checkpoints.FINISHED;
+        } else {
+            position = Checkpoints.SUSPENDED;
+        }
+
+        return Checkpoints.save(machine, position);
+    }
+
+    /**
+     * Continues this generator from a checkpoint taken by {@link #checkpoint()}. The generator must have been returned
+     * by a call of the same generator method, and must not have finished. Its state is replaced by the saved one,
+     * including the arguments of the call, while the enclosing instance of the call is kept.
+     * @param checkpoint the checkpoint
+     * @return this generator
+     * @throws UnsupportedOperationException if the generator is not checkpointable
+     * @throws IllegalStateException if the generator has finished
+     * @throws IllegalArgumentException if the checkpoint cannot be read, or was taken from another generator method
+     * or another version of it
+     */
+    public final BaseGenerator<E> restore(byte[] checkpoint) {
+        if (closed) {
+            throw new IllegalStateException("The generator has finished");
+        }
+
+        final int position = Checkpoints.restore(machine, checkpoint);
+
+        this.splittable = null;
+
+        this.stepped = position == Checkpoints.PENDING;
+
+        this.hasNext = stepped;
+
+        if (position == Checkpoints.FINISHED) {
+            finish();
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns an independent copy of this generator, continuing from the same point. Only available for generator
+     * methods annotated with {@code forkable = true}. The copy does not run the generator code again, its variables
+     * are copied from this generator, shallowly unless they hold {@link Forkable} objects. A value stepped to by
+     * {@link #hasNext()} is pending in both generators.
+     * @return the fork
+     * @throws UnsupportedOperationException if the generator is not forkable, or it is suspended in a loop over an
+     * iterator or a stream that cannot be forked
+     */
+    @Override
+    public final BaseGenerator<E> fork() {
+        if (!(machine instanceof Forkable)) {
+            throw new UnsupportedOperationException("The generator is not forkable");
+        }
+
+        final BaseGenerator<E> fork = new BaseGenerator<>(closed ? machine : CPSUtil.forked(machine), null, null);
+
+        fork.stepped = stepped;
+
+        fork.hasNext = hasNext;
+
+        fork.closed = closed;
+
+        return fork;
+    }
+
+    /**
+     * Returns a generator producing the remaining values of this one on a background thread, ahead of its consumer.
+     * See {@link #prefetching(Executor, int)}.
+     * @param capacity the maximum number of values produced ahead of the consumer
+     * @return the prefetching generator
+     */
+    public final BaseGenerator<E> prefetching(int capacity) {
+        return prefetching(Prefetcher.DEFAULT_EXECUTOR, capacity);
+    }
+
+    /**
+     * Returns a generator producing the remaining values of this one on a producer thread of the specified executor,
+     * ahead of its consumer. At most {@code capacity} values are produced in advance, they are handed over through a
+     * lock-free ring buffer. The producer is started when the first value is requested and stopped when the returned
+     * generator is exhausted, closed through its stream or garbage collected. An exception thrown by the generator
+     * code is rethrown to the consumer after the values produced before it. This generator must not be used
+     * afterwards.
+     * @param executor the executor running the producer
+     * @param capacity the maximum number of values produced ahead of the consumer
+     * @return the prefetching generator
+     * @throws IllegalArgumentException if the capacity is not positive or exceeds {@code 1 << 30}
+     * @throws IllegalStateException if the generator has been stepped ahead of its consumer or has finished
+     */
+    public final BaseGenerator<E> prefetching(Executor executor, int capacity) {
+        if (stepped) {
+            throw new IllegalStateException("The generator has already been stepped");
+        }
+
+        final Prefetcher.OfReference<E> prefetcher = new Prefetcher.OfReference<>(machine, executor, capacity, recyclable);
+
+        this.splittable = null;
+
+        this.recyclable = null;
+
+        this.closed = true;
+
+        this.stepped = true;
+
+        this.hasNext = false;
+
+        final BaseGenerator<E> generator = new BaseGenerator<>(prefetcher, null, null);
+
+        prefetcher.attach(generator);
+
+        return generator;
+    }
+
+    /**
+     * Returns the specified number of generators producing the values of this one. See {@link #tee(int, int)}.
+     * @param count the number of generators
+     * @return the generators
+     */
+    public final List<BaseGenerator<E>> tee(int count) {
+        return tee(count, Tee.DEFAULT_HEAP_BUDGET);
+    }
+
+    /**
+     * Returns the specified number of generators producing the values of this one, each of them every value, from a
+     * single run of the generator code. The returned generators can be consumed at different paces, even by different
+     * threads. The generator that gets ahead of the others steps this one, and the values are buffered until the
+     * slowest generator has produced them as well. At most {@code heapBudget} values are kept on the heap, older ones
+     * are spilled into a memory-mapped temporary file through Java serialization, so they must be serializable if the
+     * generators drift further apart. A generator that is closed through its stream no longer holds the values back.
+     * This generator must not be used afterwards.
+     * @param count the number of generators
+     * @param heapBudget the maximum number of values buffered on the heap
+     * @return the generators
+     * @throws IllegalArgumentException if the number of generators or the heap budget is not positive
+     * @throws IllegalStateException if the generator has been stepped ahead of its consumer or has finished
+     * @throws java.io.UncheckedIOException if spilling a value fails, for example because it is not serializable
+     */
+    public final List<BaseGenerator<E>> tee(int count, int heapBudget) {
+        if (stepped) {
+            throw new IllegalStateException("The generator has already been stepped");
+        }
+
+        final Tee<E> tee = new Tee<>(machine, recyclable, count, heapBudget);
+
+        this.splittable = null;
+
+        this.recyclable = null;
+
+        this.closed = true;
+
+        this.stepped = true;
+
+        this.hasNext = false;
+
+        final List<BaseGenerator<E>> generators = new ArrayList<>(count);
+
+        for (StateMachine<E> branch : tee.branches()) {
+            generators.add(new BaseGenerator<>(branch, null, null));
+        }
+
+        return generators;
+    }
+
+    /**
+     * Hands the state machine over to a delegating generator, which steps it directly instead of going through this
+     * generator. The state machine of a generator that delegates itself is flattened into the stack of the receiving
+     * generator. Closing the machine and recycling the instance of a pooled generator are left to the receiving
+     * generator, this one is marked as exhausted and must not be used afterwards.
+     * @param stream the stream of this generator, closed once the state machine is exhausted
+     * @return the frame of the delegation stack
+     * @throws IllegalStateException if the generator has been stepped ahead of its consumer or has finished
+     */
+    final Delegation.Frame<E> handOver(Stream<?> stream) {
+        if (stepped) {
+            throw new IllegalStateException("The generator has already been stepped");
+        }
+
+        final StateMachine<E> handedOver = machine instanceof Delegation ? ((Delegation<E>) machine).root() : machine;
+
+        final Delegation.Frame<E> frame = new Delegation.Frame<>(handedOver, recyclable, stream);
+
+        this.splittable = null;
+
+        this.recyclable = null;
+
+        this.closed = true;
+
+        this.stepped = true;
+
+        this.hasNext = false;
+
+        return frame;
+    }
+
+    /**
+     * Returns a publisher of the values of the generator. See {@link #publisher(Executor)}.
+     * @return a publisher emitting on the thread requesting the values
+     */
+    public final Publisher<E> publisher() {
+        return subscriber -> subscribe(subscriber, null);
+    }
+
+    /**
+     * Returns a publisher of the values of the generator. The demand of the subscriber drives the generator directly:
+     * each requested value is produced by stepping the state machine once, right before it is emitted, so there is no
+     * buffer between the generator and the subscriber. Cancelling the subscription stops the generator before its next
+     * step. An exception thrown by the generator code is passed to {@link Subscriber#onError(Throwable)}.
+     *
+     * <p>
+     * The generator can be subscribed to once. Later subscribers receive an {@link IllegalStateException} through
+     * {@code onError}. This generator must not be used by other means after subscribing.
+     * </p>
+     * @param executor the executor the values are emitted on, {@code null} to emit them on the thread calling
+     *                 {@link Subscription#request(long)}
+     * @return the publisher
+     */
+    public final Publisher<E> publisher(Executor executor) {
+        return subscriber -> subscribe(subscriber, executor);
+    }
+
+    private void subscribe(Subscriber<? super E> subscriber, Executor executor) {
+        Objects.requireNonNull(subscriber);
+
+        if (subscribed) {
+            subscriber.onSubscribe(GeneratorSubscription.REJECTED);
+
+            subscriber.onError(new IllegalStateException("The generator has already been subscribed to"));
+
+            return;
+        }
+
+        this.subscribed = true;
+
+        subscriber.onSubscribe(new GeneratorSubscription<>(this, subscriber, executor));
+    }
+
+    /**
+     * Returns a stream backed by the generator methods.
+     * @return a stream of generated values
+     */
+    public final Stream<E> stream() {
+        final Stream<E> stream = StreamSupport.stream(this, false);
+
+        final boolean releasesResources =
+            recyclable != null || machine instanceof Prefetcher || machine instanceof Delegation
+                || machine instanceof Tee.Branch || machine instanceof Guarded;
+
+        return releasesResources ? stream.onClose(this::finish) : stream;
+    }
+
+    /**
+     * Returns a parallel stream backed by the generator methods. Only generators created through
+     * {@link #splittable(StateMachine)} are actually split. Closing the stream closes the generators split off this
+     * one as well.
+     * @return a parallel stream of generated values
+     */
+    public final Stream<E> parallelStream() {
+        final Stream<E> stream = StreamSupport.stream(this, true);
+
+        if (machine instanceof Guarded) {
+            this.splits = new ConcurrentLinkedQueue<>();
+
+            return stream.onClose(this::finishSplits);
+        }
+
+        return stream;
+    }
+
+    /**
+     * Finishes this generator and the generators split off it by a parallel stream. Every split is finished even if
+     * finishing another one throws, the first exception is rethrown with the later ones suppressed.
+     */
+    private void finishSplits() {
+        Throwable thrown = null;
+
+        try {
+            finish();
+        } catch (RuntimeException | Error e) {
+            thrown = e;
+        }
+
+        for (BaseGenerator<E> split : splits) {
+            try {
+                split.finish();
+            } catch (RuntimeException | Error e) {
+                thrown = CPSUtil.suppressed(thrown, e);
+            }
+        }
+
+        if (thrown != null) {
+            throw CPSUtil.rethrow(thrown);
+        }
+    }
 
-        return pauseState.getValue().orElse(null);
+    private static <E> Bounce<E> endCont(GeneratorState<E> k) {
+        return Bounce.cont(null);
     }
-}
\ No newline at end of file
+}
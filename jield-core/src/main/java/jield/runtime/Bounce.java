@@ -1,24 +1,31 @@
 package jield.runtime;
 
-import java.util.Optional;
-
 /**
  * Class that encapsulates a return value and a continuation for the purpose of trampolining. Instances of this object
  * must be returned from generator states to enable trampolining. The continuation is going to be the next method the
  * trampoline executes and the value is going to be the return value of the generator. If no continuation is returned
  * then the generator stops.
+ *
+ * <p>
+ * Instances are mutable registers: a generator owns a single {@code Bounce} and every state overwrites it through
+ * {@link #next(Thunk)}, {@link #next(Thunk, Object)} or {@link #halt()} before returning it. This way stepping the
+ * generator does not allocate anything. The static {@code cont} factories create fresh instances and are kept for
+ * states that are not able to hold on to a register.
+ * </p>
  * @param <T> The return type of the enclosing generator.
  */
 public final class Bounce<T> {
     /*
-     * The continuation the trampoline should execute next.
+     * The continuation the trampoline should execute next. {@code null} if the generator has finished.
      */
-    private final Optional<Thunk<Bounce<T>>> continuation;
+    private Thunk<Bounce<T>> continuation;
 
     /*
-     * Must use Optional<T> because {@code null} can be a desirable generated value sometimes.
+     * Must use a separate flag because {@code null} can be a desirable generated value sometimes.
      */
-    private final Optional<T> value;
+    private boolean hasValue;
+
+    private T value;
 
     /**
      * Creates a new instance with the specified continuation and value. Note that {@code null} can be
@@ -26,33 +33,93 @@ public final class Bounce<T> {
      * @param continuation the continuation where the execution should continue
      * @param value the next return value of the generator
      * @param <T> The return type of the enclosing generator.
-     * @return
+     * @return a new instance
      */
     public static <T> Bounce<T> cont(Thunk<Bounce<T>> continuation, T value) {
-        return new Bounce<>(continuation, value);
+        return new Bounce<T>().next(continuation, value);
     }
 
     /**
      * Creates a new instance with the specified continuation and no return value
      * @param continuation the continuation where the execution should continue
      * @param <T> The return type of the enclosing generator.
-     * @return
+     * @return a new instance
      */
     public static <T> Bounce<T> cont(Thunk<Bounce<T>> continuation) {
-        return new Bounce<>(continuation, null);
+        return new Bounce<T>().next(continuation);
     }
 
-    private Bounce(Thunk<Bounce<T>> continuation, T value) {
-        this.continuation = Optional.ofNullable(continuation);
+    /**
+     * Creates a new register that has neither a continuation nor a value.
+     */
+    public Bounce() {
+        this.continuation = null;
+
+        this.hasValue = false;
 
-        this.value = Optional.ofNullable(value);
+        this.value = null;
     }
 
-    public Optional<Thunk<Bounce<T>>> getContinuation() {
+    /**
+     * Overwrites this register with the specified continuation and value.
+     * @param continuation the continuation where the execution should continue
+     * @param value the next return value of the generator, might be {@code null}
+     * @return this instance
+     */
+    public Bounce<T> next(Thunk<Bounce<T>> continuation, T value) {
+        this.continuation = continuation;
+
+        this.hasValue = true;
+
+        this.value = value;
+
+        return this;
+    }
+
+    /**
+     * Overwrites this register with the specified continuation and no return value.
+     * @param continuation the continuation where the execution should continue
+     * @return this instance
+     */
+    public Bounce<T> next(Thunk<Bounce<T>> continuation) {
+        this.continuation = continuation;
+
+        this.hasValue = false;
+
+        this.value = null;
+
+        return this;
+    }
+
+    /**
+     * Overwrites this register so that the trampoline stops.
+     * @return this instance
+     */
+    public Bounce<T> halt() {
+        return next(null);
+    }
+
+    /**
+     * Returns the continuation the trampoline should execute next.
+     * @return the continuation or {@code null} if the generator has finished
+     */
+    public Thunk<Bounce<T>> getContinuation() {
         return continuation;
     }
 
-    public Optional<T> getValue() {
+    /**
+     * Checks whether a value was produced by the state that returned this instance.
+     * @return {@code true} if a value is present, {@code false} otherwise
+     */
+    public boolean hasValue() {
+        return hasValue;
+    }
+
+    /**
+     * Returns the produced value. Only meaningful if {@link #hasValue()} returns {@code true}.
+     * @return the produced value
+     */
+    public T getValue() {
         return value;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,18 @@
 package jield.runtime;
 
-import java.lang.reflect.Array;
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.UncheckedIOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
@@ -11,6 +20,34 @@ import java.util.stream.Stream;
 
 /**
  * Utility class providing helper method for the CPS transformation.
+ *
+ * <p>
+ * Enhanced for loops obtain their element source from the {@code cursor} methods, parallel generators from the
+ * {@code indexed} methods. The generated code picks the method family by the declared type of the loop variable,
+ * for example {@code cursorInt} for {@code int} and {@code cursor} for reference variables, and overload resolution
+ * picks the implementation matching the source. Variables of type {@code short}, {@code char} and {@code byte} read
+ * widened {@code int} elements, {@code float} variables widened {@code double} elements.
+ * </p>
+ *
+ * <p>
+ * Besides arrays and {@code Iterable}s, enhanced for loops in generators accept iterators, spliterators, streams and
+ * generators as their source. These are consumed one element at a time, as the loop advances.
+ * </p>
+ *
+ * <p>
+ * Async generators read the results of the stages they await through {@link #awaited(CompletionStage)}.
+ * </p>
+ *
+ * <p>
+ * Checkpointable generators restore their variables through {@link #restored(ObjectInput)} and
+ * {@link #checkVersion(ObjectInput, long)}, forkable generators copy them through {@link #forked(Object)}.
+ * </p>
+ *
+ * <p>
+ * Generators yielding inside {@code try} statements close their resources through {@link #close(AutoCloseable)}, and
+ * collect the exceptions thrown by their cleanup code through {@link #suppressed(Throwable, Throwable)} to rethrow
+ * them through {@link #rethrow(Throwable)}.
+ * </p>
  */
 public final class CPSUtil {
     private CPSUtil() {
@@ -19,67 +56,585 @@ public final class CPSUtil {
      */
     }
 
-    public static Iterator<Byte> iterator(byte[] array) {
-        return new ArrayIterator<>(array);
+    public static <T> Cursor<T> cursor(T[] array) {
+        return new Cursors.ObjectArray<>(array);
     }
 
-    public static Iterator<Short> iterator(short[] array) {
-        return new ArrayIterator<>(array);
+    /**
+     * Creates a cursor over the specified iterable. Lists implementing {@link java.util.RandomAccess} are read by
+     * index, other iterables through their iterator.
+     * @param iterable the iterable
+     * @param <T> the type of the elements
+     * @return the cursor
+     */
+    public static <T> Cursor<T> cursor(Iterable<? extends T> iterable) {
+        return Cursors.of(iterable);
+    }
+
+    public static <T> Cursor<T> cursor(Iterator<? extends T> iterator) {
+        return new Cursors.IteratorCursor<>(iterator);
+    }
+
+    public static <T> Cursor<T> cursor(Spliterator<? extends T> spliterator) {
+        return Cursors.of(spliterator);
+    }
+
+    /**
+     * Creates a cursor over the specified stream. The elements are taken from the spliterator of the stream one at a
+     * time, so the stream is consumed lazily. Streams produced by generators are stepped directly. The loop owns the
+     * stream: it is closed once exhausted, and when the generator leaves the loop early or is closed, see
+     * {@link #release(Object)}.
+     * @param stream the stream
+     * @param <T> the type of the elements
+     * @return the cursor
+     */
+    public static <T> Cursor<T> cursor(Stream<? extends T> stream) {
+        return Cursors.of(stream);
+    }
+
+    public static <T> Cursor<T> cursor(BaseGenerator<? extends T> generator) {
+        return new Cursors.IteratorCursor<>(generator);
+    }
+
+    public static Cursor<Integer> cursor(int[] array) {
+        return new Cursors.IntArray(array);
+    }
+
+    public static Cursor<Long> cursor(long[] array) {
+        return new Cursors.LongArray(array);
+    }
+
+    public static Cursor<Double> cursor(double[] array) {
+        return new Cursors.DoubleArray(array);
+    }
+
+    public static Cursor<Short> cursor(short[] array) {
+        return new Cursors.ShortArray(array);
+    }
+
+    public static Cursor<Character> cursor(char[] array) {
+        return new Cursors.CharArray(array);
+    }
+
+    public static Cursor<Byte> cursor(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    public static Cursor<Float> cursor(float[] array) {
+        return new Cursors.FloatArray(array);
+    }
+
+    public static Cursor<Boolean> cursor(boolean[] array) {
+        return new Cursors.BooleanArray(array);
+    }
+
+    public static Cursor.OfInt cursorInt(int[] array) {
+        return new Cursors.IntArray(array);
+    }
+
+    public static Cursor.OfInt cursorInt(short[] array) {
+        return new Cursors.ShortArray(array);
+    }
+
+    public static Cursor.OfInt cursorInt(char[] array) {
+        return new Cursors.CharArray(array);
+    }
+
+    public static Cursor.OfInt cursorInt(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    public static Cursor.OfInt cursorInt(Iterable<? extends Integer> iterable) {
+        return new Cursors.IntUnboxing<>(Cursors.of(iterable), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorInt(PrimitiveIterator.OfInt iterator) {
+        return new Cursors.IntIteratorCursor(iterator);
+    }
+
+    public static Cursor.OfInt cursorInt(Spliterator.OfInt spliterator) {
+        return Cursors.ofInt(spliterator);
+    }
+
+    public static Cursor.OfInt cursorInt(IntStream stream) {
+        return Cursors.ofInt(stream);
+    }
+
+    public static Cursor.OfInt cursorInt(IntGenerator generator) {
+        return new Cursors.IntIteratorCursor(generator);
+    }
+
+    public static Cursor.OfInt cursorInt(Iterator<? extends Integer> iterator) {
+        return new Cursors.IntUnboxing<>(new Cursors.IteratorCursor<>(iterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorInt(Spliterator<? extends Integer> spliterator) {
+        return new Cursors.IntUnboxing<>(Cursors.of(spliterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorInt(Stream<? extends Integer> stream) {
+        return new Cursors.IntUnboxing<>(Cursors.of(stream), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfLong cursorLong(long[] array) {
+        return new Cursors.LongArray(array);
+    }
+
+    public static Cursor.OfLong cursorLong(int[] array) {
+        return new Cursors.IntArray(array);
+    }
+
+    public static Cursor.OfLong cursorLong(Iterable<? extends Long> iterable) {
+        return new Cursors.LongUnboxing<>(Cursors.of(iterable), Cursors.Unbox.NUMBER);
     }
 
-    public static Iterator<Integer> iterator(int[] array) {
-        return IntStream.of(array).iterator();
+    public static Cursor.OfLong cursorLong(PrimitiveIterator.OfLong iterator) {
+        return new Cursors.LongIteratorCursor(iterator);
     }
 
-    public static Iterator<Long> iterator(long[] array) {
-        return LongStream.of(array).iterator();
+    public static Cursor.OfLong cursorLong(Spliterator.OfLong spliterator) {
+        return Cursors.ofLong(spliterator);
     }
 
-    public static Iterator<Float> iterator(float[] array) {
-        return new ArrayIterator<>(array);
+    public static Cursor.OfLong cursorLong(LongStream stream) {
+        return Cursors.ofLong(stream);
     }
 
-    public static Iterator<Double> iterator(double[] array) {
-        return DoubleStream.of(array).iterator();
+    public static Cursor.OfLong cursorLong(LongGenerator generator) {
+        return new Cursors.LongIteratorCursor(generator);
     }
 
-    public static Iterator<Character> iterator(char[] array) {
-        return new ArrayIterator<>(array);
+    public static Cursor.OfLong cursorLong(Iterator<? extends Long> iterator) {
+        return new Cursors.LongUnboxing<>(new Cursors.IteratorCursor<>(iterator), Cursors.Unbox.NUMBER);
     }
 
-    public static Iterator<Boolean> iterator(boolean[] array) {
-        return new ArrayIterator<>(array);
+    public static Cursor.OfLong cursorLong(Spliterator<? extends Long> spliterator) {
+        return new Cursors.LongUnboxing<>(Cursors.of(spliterator), Cursors.Unbox.NUMBER);
     }
 
-    public static <T> Iterator<T> iterator(T[] array) {
-        return Arrays.asList(array).iterator();
+    public static Cursor.OfLong cursorLong(Stream<? extends Long> stream) {
+        return new Cursors.LongUnboxing<>(Cursors.of(stream), Cursors.Unbox.NUMBER);
     }
 
-    public static <T> Iterator<T> iterator(Iterable<T> collection) {
-        return collection.iterator();
+    public static Cursor.OfDouble cursorDouble(double[] array) {
+        return new Cursors.DoubleArray(array);
     }
 
-    private static class ArrayIterator<T> implements Iterator<T> {
-        private final Object array;
+    public static Cursor.OfDouble cursorDouble(float[] array) {
+        return new Cursors.FloatArray(array);
+    }
+
+    public static Cursor.OfDouble cursorDouble(Iterable<? extends Double> iterable) {
+        return new Cursors.DoubleUnboxing<>(Cursors.of(iterable), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfDouble cursorDouble(PrimitiveIterator.OfDouble iterator) {
+        return new Cursors.DoubleIteratorCursor(iterator);
+    }
+
+    public static Cursor.OfDouble cursorDouble(Spliterator.OfDouble spliterator) {
+        return Cursors.ofDouble(spliterator);
+    }
+
+    public static Cursor.OfDouble cursorDouble(DoubleStream stream) {
+        return Cursors.ofDouble(stream);
+    }
+
+    public static Cursor.OfDouble cursorDouble(DoubleGenerator generator) {
+        return new Cursors.DoubleIteratorCursor(generator);
+    }
+
+    public static Cursor.OfDouble cursorDouble(Iterator<? extends Double> iterator) {
+        return new Cursors.DoubleUnboxing<>(new Cursors.IteratorCursor<>(iterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfDouble cursorDouble(Spliterator<? extends Double> spliterator) {
+        return new Cursors.DoubleUnboxing<>(Cursors.of(spliterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfDouble cursorDouble(Stream<? extends Double> stream) {
+        return new Cursors.DoubleUnboxing<>(Cursors.of(stream), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorShort(short[] array) {
+        return new Cursors.ShortArray(array);
+    }
+
+    public static Cursor.OfInt cursorShort(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    public static Cursor.OfInt cursorShort(Iterable<? extends Short> iterable) {
+        return new Cursors.IntUnboxing<>(Cursors.of(iterable), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorShort(Iterator<? extends Short> iterator) {
+        return new Cursors.IntUnboxing<>(new Cursors.IteratorCursor<>(iterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorShort(Spliterator<? extends Short> spliterator) {
+        return new Cursors.IntUnboxing<>(Cursors.of(spliterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorShort(Stream<? extends Short> stream) {
+        return new Cursors.IntUnboxing<>(Cursors.of(stream), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorChar(char[] array) {
+        return new Cursors.CharArray(array);
+    }
+
+    public static Cursor.OfInt cursorChar(Iterable<? extends Character> iterable) {
+        return new Cursors.IntUnboxing<>(Cursors.of(iterable), Cursors.Unbox.CHARACTER);
+    }
+
+    public static Cursor.OfInt cursorChar(Iterator<? extends Character> iterator) {
+        return new Cursors.IntUnboxing<>(new Cursors.IteratorCursor<>(iterator), Cursors.Unbox.CHARACTER);
+    }
+
+    public static Cursor.OfInt cursorChar(Spliterator<? extends Character> spliterator) {
+        return new Cursors.IntUnboxing<>(Cursors.of(spliterator), Cursors.Unbox.CHARACTER);
+    }
+
+    public static Cursor.OfInt cursorChar(Stream<? extends Character> stream) {
+        return new Cursors.IntUnboxing<>(Cursors.of(stream), Cursors.Unbox.CHARACTER);
+    }
+
+    public static Cursor.OfInt cursorByte(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    public static Cursor.OfInt cursorByte(Iterable<? extends Byte> iterable) {
+        return new Cursors.IntUnboxing<>(Cursors.of(iterable), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorByte(Iterator<? extends Byte> iterator) {
+        return new Cursors.IntUnboxing<>(new Cursors.IteratorCursor<>(iterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorByte(Spliterator<? extends Byte> spliterator) {
+        return new Cursors.IntUnboxing<>(Cursors.of(spliterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfInt cursorByte(Stream<? extends Byte> stream) {
+        return new Cursors.IntUnboxing<>(Cursors.of(stream), Cursors.Unbox.NUMBER);
+    }
 
-        private int index;
+    public static Cursor.OfDouble cursorFloat(float[] array) {
+        return new Cursors.FloatArray(array);
+    }
+
+    public static Cursor.OfDouble cursorFloat(Iterable<? extends Float> iterable) {
+        return new Cursors.DoubleUnboxing<>(Cursors.of(iterable), Cursors.Unbox.NUMBER);
+    }
 
-        private ArrayIterator(Object array) {
-            this.array = array;
+    public static Cursor.OfDouble cursorFloat(Iterator<? extends Float> iterator) {
+        return new Cursors.DoubleUnboxing<>(new Cursors.IteratorCursor<>(iterator), Cursors.Unbox.NUMBER);
+    }
 
-            this.index = 0;
+    public static Cursor.OfDouble cursorFloat(Spliterator<? extends Float> spliterator) {
+        return new Cursors.DoubleUnboxing<>(Cursors.of(spliterator), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor.OfDouble cursorFloat(Stream<? extends Float> stream) {
+        return new Cursors.DoubleUnboxing<>(Cursors.of(stream), Cursors.Unbox.NUMBER);
+    }
+
+    public static Cursor<Boolean> cursorBoolean(boolean[] array) {
+        return new Cursors.BooleanArray(array);
+    }
+
+    public static Cursor<Boolean> cursorBoolean(Iterable<? extends Boolean> iterable) {
+        return Cursors.of(iterable);
+    }
+
+    public static Cursor<Boolean> cursorBoolean(Iterator<? extends Boolean> iterator) {
+        return new Cursors.IteratorCursor<>(iterator);
+    }
+
+    public static Cursor<Boolean> cursorBoolean(Spliterator<? extends Boolean> spliterator) {
+        return Cursors.of(spliterator);
+    }
+
+    public static Cursor<Boolean> cursorBoolean(Stream<? extends Boolean> stream) {
+        return Cursors.of(stream);
+    }
+
+    public static <T> Indexed<T> indexed(T[] array) {
+        return new Cursors.ObjectArray<>(array);
+    }
+
+    /**
+     * Creates a random access view of the specified collection. Lists implementing {@link java.util.RandomAccess} are
+     * accessed directly, other collections are copied first.
+     * @param collection the collection
+     * @param <T> the type of the elements
+     * @return the random access view
+     */
+    public static <T> Indexed<T> indexed(Collection<? extends T> collection) {
+        return new Cursors.ListView<>(Cursors.isRandomAccess(collection)
+            ? (List<? extends T>) collection
+            : new ArrayList<>(collection));
+    }
+
+    public static Indexed<Integer> indexed(int[] array) {
+        return new Cursors.IntArray(array);
+    }
+
+    public static Indexed<Long> indexed(long[] array) {
+        return new Cursors.LongArray(array);
+    }
+
+    public static Indexed<Double> indexed(double[] array) {
+        return new Cursors.DoubleArray(array);
+    }
+
+    public static Indexed<Short> indexed(short[] array) {
+        return new Cursors.ShortArray(array);
+    }
+
+    public static Indexed<Character> indexed(char[] array) {
+        return new Cursors.CharArray(array);
+    }
+
+    public static Indexed<Byte> indexed(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    public static Indexed<Float> indexed(float[] array) {
+        return new Cursors.FloatArray(array);
+    }
+
+    public static Indexed<Boolean> indexed(boolean[] array) {
+        return new Cursors.BooleanArray(array);
+    }
+
+    public static Indexed.OfInt indexedInt(int[] array) {
+        return new Cursors.IntArray(array);
+    }
+
+    public static Indexed.OfInt indexedInt(short[] array) {
+        return new Cursors.ShortArray(array);
+    }
+
+    public static Indexed.OfInt indexedInt(char[] array) {
+        return new Cursors.CharArray(array);
+    }
+
+    public static Indexed.OfInt indexedInt(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    /**
+     * Creates an unboxed random access view of the specified collection. The elements are unboxed into an array once.
+     * @param collection the collection
+     * @return the random access view
+     */
+    public static Indexed.OfInt indexedInt(Collection<? extends Integer> collection) {
+        return new Cursors.IntArray(collection.stream().mapToInt(Cursors.Unbox.NUMBER).toArray());
+    }
+
+    public static Indexed.OfLong indexedLong(long[] array) {
+        return new Cursors.LongArray(array);
+    }
+
+    public static Indexed.OfLong indexedLong(int[] array) {
+        return new Cursors.IntArray(array);
+    }
+
+    public static Indexed.OfLong indexedLong(Collection<? extends Long> collection) {
+        return new Cursors.LongArray(collection.stream().mapToLong(Cursors.Unbox.NUMBER).toArray());
+    }
+
+    public static Indexed.OfDouble indexedDouble(double[] array) {
+        return new Cursors.DoubleArray(array);
+    }
+
+    public static Indexed.OfDouble indexedDouble(float[] array) {
+        return new Cursors.FloatArray(array);
+    }
+
+    public static Indexed.OfDouble indexedDouble(Collection<? extends Double> collection) {
+        return new Cursors.DoubleArray(collection.stream().mapToDouble(Cursors.Unbox.NUMBER).toArray());
+    }
+
+    public static Indexed.OfInt indexedShort(short[] array) {
+        return new Cursors.ShortArray(array);
+    }
+
+    public static Indexed.OfInt indexedShort(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    public static Indexed.OfInt indexedShort(Collection<? extends Short> collection) {
+        return new Cursors.IntArray(collection.stream().mapToInt(Cursors.Unbox.NUMBER).toArray());
+    }
+
+    public static Indexed.OfInt indexedChar(char[] array) {
+        return new Cursors.CharArray(array);
+    }
+
+    public static Indexed.OfInt indexedChar(Collection<? extends Character> collection) {
+        return new Cursors.IntArray(collection.stream().mapToInt(Cursors.Unbox.CHARACTER).toArray());
+    }
+
+    public static Indexed.OfInt indexedByte(byte[] array) {
+        return new Cursors.ByteArray(array);
+    }
+
+    public static Indexed.OfInt indexedByte(Collection<? extends Byte> collection) {
+        return new Cursors.IntArray(collection.stream().mapToInt(Cursors.Unbox.NUMBER).toArray());
+    }
+
+    public static Indexed.OfDouble indexedFloat(float[] array) {
+        return new Cursors.FloatArray(array);
+    }
+
+    public static Indexed.OfDouble indexedFloat(Collection<? extends Float> collection) {
+        return new Cursors.DoubleArray(collection.stream().mapToDouble(Cursors.Unbox.NUMBER).toArray());
+    }
+
+    public static Indexed<Boolean> indexedBoolean(boolean[] array) {
+        return new Cursors.BooleanArray(array);
+    }
+
+    public static Indexed<Boolean> indexedBoolean(Collection<? extends Boolean> collection) {
+        return indexed(collection);
+    }
+
+    /**
+     * Returns the result of a completed stage an async generator has been suspended on. The generated code calls this
+     * method where the generator resumes, so that an exceptional completion is thrown at the {@code await} site,
+     * unwrapped from the {@link CompletionException} when possible.
+     * @param stage the completed stage
+     * @param <T> the type of the result, inferred from the assigned variable
+     * @return the result of the stage
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T awaited(CompletionStage<?> stage) {
+        try {
+            return (T) stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw e;
         }
+    }
+
+    /**
+     * Reads a serialized variable of a checkpointable generator. The generated code calls this method instead of
+     * casting the result of {@link ObjectInput#readObject()}, so that the type of the variable is inferred.
+     * @param in the input the checkpoint is read from
+     * @param <T> the type of the variable, inferred from the assigned field
+     * @return the value of the variable
+     * @throws IOException if reading fails
+     * @throws ClassNotFoundException if the class of the value cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T restored(ObjectInput in) throws IOException, ClassNotFoundException {
+        return (T) in.readObject();
+    }
 
-        @Override
-        public boolean hasNext() {
-            return index < Array.getLength(array);
+    /**
+     * Checks that a checkpoint was saved by the same version of the generator method that restores it. The version is
+     * derived from the source of the generator method at compile time, so that a changed method does not restore its
+     * variables into the wrong states.
+     * @param in the input the checkpoint is read from
+     * @param version the version of the restoring generator method
+     * @throws InvalidObjectException if the versions differ
+     * @throws IOException if reading fails
+     */
+    public static void checkVersion(ObjectInput in, long version) throws IOException {
+        if (in.readLong() != version) {
+            throw new InvalidObjectException("The checkpoint was saved by another generator or another version of it");
         }
+    }
 
-        @Override
-        @SuppressWarnings("unchecked")
-        public T next() {
-            return (T) Array.get(array, index++);
+    /**
+     * Returns the value of a variable in a fork of a forkable generator. {@link Forkable} values are forked, the rest
+     * are shared between the forks.
+     * @param value the value of the variable in the original generator
+     * @param <T> the type of the variable
+     * @return the value of the variable in the fork
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T forked(T value) {
+        return value instanceof Forkable ? (T) ((Forkable<?>) value).fork() : value;
+    }
+
+    /**
+     * Releases the source of an enhanced for loop in a generator, which the generator leaves or is closed in. Cursors
+     * over streams close the stream, other cursors hold nothing to release.
+     * @param cursor the cursor of the loop, might be {@code null} if the loop has not been entered
+     */
+    public static void release(Object cursor) {
+        if (cursor instanceof AutoCloseable) {
+            close((AutoCloseable) cursor);
         }
     }
-}
 
+    /**
+     * Closes a resource of a {@code try} statement in a generator. Generator code cannot throw checked exceptions, so
+     * an {@code IOException} is wrapped into an {@link UncheckedIOException}, other checked exceptions into an
+     * {@link UndeclaredThrowableException}.
+     * @param resource the resource, might be {@code null}
+     */
+    public static void close(AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+
+        try {
+            resource.close();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * Combines the exceptions thrown while a generator runs the cleanup code of its {@code try} statements. The first
+     * exception is thrown in the end, the later ones are added to it as suppressed exceptions.
+     * @param thrown the first exception, {@code null} if there was none so far
+     * @param suppressed the exception thrown by the cleanup code
+     * @return the exception to be thrown in the end
+     */
+    public static Throwable suppressed(Throwable thrown, Throwable suppressed) {
+        if (thrown == null) {
+            return suppressed;
+        }
+
+        if (thrown != suppressed) {
+            thrown.addSuppressed(suppressed);
+        }
+
+        return thrown;
+    }
+
+    /**
+     * Rethrows an exception caught by a generator while it ran the cleanup code of its {@code try} statements. Checked
+     * exceptions are wrapped into an {@link UndeclaredThrowableException}, they cannot be thrown by generator code.
+     * @param thrown the exception
+     * @return never returns normally, declared so that the call can be thrown
+     */
+    public static RuntimeException rethrow(Throwable thrown) {
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        }
+
+        if (thrown instanceof Error) {
+            throw (Error) thrown;
+        }
+
+        throw new UndeclaredThrowableException(thrown);
+    }
+}
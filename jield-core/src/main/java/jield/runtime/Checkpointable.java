@@ -0,0 +1,32 @@
+package jield.runtime;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A state machine whose state can be saved and restored later, possibly in another process. Implemented by the state
+ * machines of generator methods annotated with {@code checkpointable = true}. The state consists of the current state
+ * index, the parameters and variables of the generator method and the last produced value. Primitives are written as
+ * they are, references through Java serialization, so they must be serializable. The enclosing instance of a generator
+ * declared by an instance method is not part of the state.
+ */
+public interface Checkpointable {
+    /**
+     * Writes the state of the state machine.
+     * @param out the output the state is written to
+     * @throws IOException if writing fails, for example because a variable holds an object that is not serializable
+     */
+    void save(ObjectOutput out) throws IOException;
+
+    /**
+     * Reads a state written by {@link #save(ObjectOutput)} into a state machine of the same generator method that has
+     * not been stepped yet.
+     * @param in the input the state is read from
+     * @throws InvalidObjectException if the state was written by a different version of the generator method
+     * @throws IOException if reading fails
+     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     */
+    void restore(ObjectInput in) throws IOException, ClassNotFoundException;
+}
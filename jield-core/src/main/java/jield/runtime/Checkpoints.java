@@ -0,0 +1,90 @@
+package jield.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Encodes the checkpoints of generators. A checkpoint holds where the generator is relative to its consumer, followed
+ * by the state of its {@link Checkpointable} state machine.
+ */
+final class Checkpoints {
+    /**
+     * The generator has not been stepped ahead of its consumer.
+     */
+    static final int SUSPENDED = 0;
+
+    /**
+     * The generator has been stepped ahead of its consumer by {@code hasNext()}, the produced value is still pending.
+     */
+    static final int PENDING = 1;
+
+    /**
+     * The generator has finished. The state of the state machine is not saved.
+     */
+    static final int FINISHED = 2;
+
+    private Checkpoints() {
+        /*
+         * Cannot be instantiated.
+         */
+    }
+
+    /**
+     * Saves the state of the specified state machine.
+     * @param machine the state machine of the generator
+     * @param position one of {@link #SUSPENDED}, {@link #PENDING} and {@link #FINISHED}
+     * @return the checkpoint
+     * @throws UnsupportedOperationException if the state machine is not checkpointable
+     * @throws UncheckedIOException if the state cannot be written
+     */
+    static byte[] save(Object machine, int position) {
+        if (!(machine instanceof Checkpointable)) {
+            throw new UnsupportedOperationException("The generator is not checkpointable");
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeByte(position);
+
+            if (position != FINISHED) {
+                ((Checkpointable) machine).save(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores the state of the specified state machine.
+     * @param machine the state machine of a generator that has not been stepped yet
+     * @param checkpoint the checkpoint
+     * @return where the generator was relative to its consumer, one of {@link #SUSPENDED}, {@link #PENDING} and
+     * {@link #FINISHED}
+     * @throws UnsupportedOperationException if the state machine is not checkpointable
+     * @throws IllegalArgumentException if the checkpoint cannot be read or was taken from another generator
+     */
+    static int restore(Object machine, byte[] checkpoint) {
+        if (!(machine instanceof Checkpointable)) {
+            throw new UnsupportedOperationException("The generator is not checkpointable");
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(checkpoint))) {
+            final int position = in.readByte();
+
+            if (position != FINISHED) {
+                ((Checkpointable) machine).restore(in);
+            }
+
+            return position;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("The checkpoint cannot be restored", e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package jield.runtime;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Generator that receives values from its caller while it runs. Returned by generator methods declared to return
+ * {@code Coroutine<I, O>}, which may suspend until the caller sends a value through {@link Generators#receive()}.
+ *
+ * <p>
+ * The produced values are requested through {@link #hasNext()} and {@link #next()}. The coroutine runs on the calling
+ * thread until it produces a value, finishes or needs a value. In the latter case {@code hasNext()} returns
+ * {@code false} and {@link #isReceiving()} returns {@code true}, until the value is supplied by {@link #send(Object)}.
+ * Thus a decoder can process its input chunk by chunk as it arrives, without buffering the input between the producer
+ * and the decoder and without a thread of its own:
+ * <pre>
+ * {@code
+ *     for (String chunk : chunks) {
+ *         decoder.send(chunk, System.out::println);
+ *     }
+ * }
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * Coroutines are not thread safe.
+ * </p>
+ * @param <I> the type of the values received by the coroutine
+ * @param <O> the type of the values produced by the coroutine
+ */
+public final class Coroutine<I, O> implements AutoCloseable {
+    private final CoroutineStateMachine<I, O> machine;
+
+    /*
+     * Whether a value has been produced but not yet consumed.
+     */
+    private boolean ready;
+
+    private boolean receiving;
+
+    private boolean finished;
+
+    private Coroutine(CoroutineStateMachine<I, O> machine) {
+        this.machine = machine;
+
+        this.ready = false;
+
+        this.receiving = false;
+
+        this.finished = false;
+    }
+
+    /**
+     * Creates a new instance driven by the specified state machine.
+     * @param machine the state machine of the coroutine
+     * @param <I> the type of the values received by the coroutine
+     * @param <O> the type of the values produced by the coroutine
+     * @return a new coroutine instance
+     */
+    public static <I, O> Coroutine<I, O> of(CoroutineStateMachine<I, O> machine) {
+        return new Coroutine<>(Objects.requireNonNull(machine));
+    }
+
+    /**
+     * Checks whether the coroutine produces another value without receiving one first. Runs the coroutine until it
+     * produces the value, finishes or needs a value.
+     * @return {@code true} if a value is available through {@link #next()}
+     */
+    public boolean hasNext() {
+        if (!ready && !receiving && !finished) {
+            advance();
+        }
+
+        return ready;
+    }
+
+    /**
+     * Returns the next value produced by the coroutine.
+     * @return the value
+     * @throws NoSuchElementException if the coroutine needs a value or has finished, see {@link #hasNext()}
+     */
+    public O next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.ready = false;
+
+        return machine.current();
+    }
+
+    /**
+     * Checks whether the coroutine waits for a value. Runs the coroutine until it produces a value, finishes or needs
+     * a value.
+     * @return {@code true} if the coroutine has suspended to receive a value
+     */
+    public boolean isReceiving() {
+        hasNext();
+
+        return receiving;
+    }
+
+    /**
+     * Checks whether the coroutine has finished. Runs the coroutine until it produces a value, finishes or needs a
+     * value.
+     * @return {@code true} if the coroutine has finished or has been closed
+     */
+    public boolean isFinished() {
+        hasNext();
+
+        return finished;
+    }
+
+    /**
+     * Supplies the value received by the coroutine. The coroutine continues when the next value is requested.
+     * @param input the value, might be {@code null}
+     * @throws IllegalStateException if the coroutine does not wait for a value, because it has produced values that
+     * have not been consumed yet or it has finished
+     */
+    public void send(I input) {
+        if (!isReceiving()) {
+            throw new IllegalStateException(finished
+                ? "The coroutine has finished"
+                : "The values produced before receiving have not been consumed");
+        }
+
+        machine.send(input);
+
+        this.receiving = false;
+    }
+
+    /**
+     * Supplies the value received by the coroutine, and passes the values produced until the coroutine needs the next
+     * value or finishes to the specified action.
+     * @param input the value, might be {@code null}
+     * @param action the action to be performed on the produced values
+     * @throws IllegalStateException if the coroutine does not wait for a value, see {@link #send(Object)}
+     */
+    public void send(I input, Consumer<? super O> action) {
+        Objects.requireNonNull(action);
+
+        send(input);
+
+        while (hasNext()) {
+            action.accept(next());
+        }
+    }
+
+    /**
+     * Stops the coroutine and releases the resources held by its state machine.
+     */
+    @Override
+    public void close() {
+        this.ready = false;
+
+        this.receiving = false;
+
+        finish();
+    }
+
+    private void advance() {
+        if (!machine.step()) {
+            finish();
+        } else if (machine.receiving()) {
+            this.receiving = true;
+        } else {
+            this.ready = true;
+        }
+    }
+
+    private void finish() {
+        if (!finished) {
+            this.finished = true;
+
+            machine.close();
+        }
+    }
+}
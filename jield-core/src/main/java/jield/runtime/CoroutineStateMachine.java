@@ -0,0 +1,41 @@
+package jield.runtime;
+
+/**
+ * The state machine of a coroutine. Besides producing values, a step can suspend the machine until its caller supplies
+ * a value, in which case it must not be stepped again before {@link #send(Object)} is called. The resumed step reads
+ * the supplied value.
+ * @param <I> the type of the values received by the coroutine
+ * @param <O> the type of the values produced by the coroutine
+ */
+public interface CoroutineStateMachine<I, O> {
+    /**
+     * Resumes the state machine and runs it until it produces a value, suspends or finishes.
+     * @return {@code true} if a value was produced or the machine has suspended, {@code false} if the coroutine has
+     * finished
+     */
+    boolean step();
+
+    /**
+     * Returns the value produced by the last successful {@link #step()}.
+     * @return the last produced value, might be {@code null}
+     */
+    O current();
+
+    /**
+     * Checks whether the last {@link #step()} has suspended the machine to receive a value.
+     * @return {@code true} if the machine waits for a value, {@code false} if the step produced a value
+     */
+    boolean receiving();
+
+    /**
+     * Supplies the value received by the suspended state machine. The value is read by the next {@link #step()}.
+     * @param input the value, might be {@code null}
+     */
+    void send(I input);
+
+    /**
+     * Releases the resources held by the state machine. See {@link StateMachine#close()}.
+     */
+    default void close() {
+    }
+}
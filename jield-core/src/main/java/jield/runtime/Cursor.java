@@ -0,0 +1,58 @@
+package jield.runtime;
+
+/**
+ * Element source of an enhanced for loop in a generator. The generated code keeps the index of the next element in an
+ * {@code int} field and reads the elements through this interface, so loops over arrays and random access lists access
+ * the elements directly and primitive elements are not boxed.
+ *
+ * <p>
+ * Indices are visited in increasing order starting at zero, and {@link #has(int)} is always asked before
+ * {@link #get(int)}. Cursors over sources that cannot be accessed by index rely on this and simply advance an iterator.
+ * Instances are created by the {@code cursor} methods of {@link CPSUtil}.
+ * </p>
+ * @param <T> the type of the elements
+ */
+public interface Cursor<T> {
+    /**
+     * Checks whether there is an element at the specified index.
+     * @param index the index of the next element
+     * @return {@code true} if the element exists, {@code false} if the loop should stop
+     */
+    boolean has(int index);
+
+    /**
+     * Returns the element at the specified index.
+     * @param index the index of the element
+     * @return the element
+     */
+    T get(int index);
+
+    /**
+     * A {@code Cursor} specialized for {@code int} elements. Also used for {@code short}, {@code char} and
+     * {@code byte} elements, which are widened.
+     */
+    interface OfInt {
+        boolean has(int index);
+
+        int getInt(int index);
+    }
+
+    /**
+     * A {@code Cursor} specialized for {@code long} elements.
+     */
+    interface OfLong {
+        boolean has(int index);
+
+        long getLong(int index);
+    }
+
+    /**
+     * A {@code Cursor} specialized for {@code double} elements. Also used for {@code float} elements, which are
+     * widened.
+     */
+    interface OfDouble {
+        boolean has(int index);
+
+        double getDouble(int index);
+    }
+}
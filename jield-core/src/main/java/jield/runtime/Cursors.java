@@ -0,0 +1,975 @@
+package jield.runtime;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.BaseStream;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * The {@link Cursor} and {@link Indexed} implementations behind the factory methods of {@link CPSUtil}. Arrays and
+ * random access lists are read by index, the primitive array views implement every specialization their elements can
+ * be widened to. Iterators, spliterators and streams are advanced one element at a time and never collected, and
+ * generators are stepped directly instead of going through their spliterator. The cursors of streams close the stream
+ * once it is exhausted, and when they are released by a generator leaving the loop or being closed. The array and
+ * list views, and the
+ * cursors unboxing them, are serializable, so that they can be saved into the checkpoints of generators suspended in
+ * loops over them. The array and list views are shared by the forks of generators, the cursors of iterators and
+ * spliterators are {@link Forkable}.
+ */
+final class Cursors {
+    private static final String NOT_FORKABLE =
+        "A loop over an iterator or a stream that is not a forkable generator cannot be forked";
+
+    private Cursors() {
+    /*
+     * Cannot be instantiated.
+     */
+    }
+
+    static <T> Cursor<T> of(Iterable<? extends T> iterable) {
+        if (iterable instanceof List && iterable instanceof RandomAccess) {
+            return new ListView<>((List<? extends T>) iterable);
+        }
+
+        return new IteratorCursor<>(iterable.iterator());
+    }
+
+    static <T> Cursor<T> of(Spliterator<? extends T> spliterator) {
+        if (spliterator instanceof BaseGenerator) {
+            return new IteratorCursor<>((BaseGenerator<? extends T>) spliterator);
+        }
+
+        return new SpliteratorCursor<>(spliterator);
+    }
+
+    static Cursor.OfInt ofInt(Spliterator.OfInt spliterator) {
+        if (spliterator instanceof IntGenerator) {
+            return new IntIteratorCursor((IntGenerator) spliterator);
+        }
+
+        return new IntSpliteratorCursor(spliterator);
+    }
+
+    static Cursor.OfLong ofLong(Spliterator.OfLong spliterator) {
+        if (spliterator instanceof LongGenerator) {
+            return new LongIteratorCursor((LongGenerator) spliterator);
+        }
+
+        return new LongSpliteratorCursor(spliterator);
+    }
+
+    static Cursor.OfDouble ofDouble(Spliterator.OfDouble spliterator) {
+        if (spliterator instanceof DoubleGenerator) {
+            return new DoubleIteratorCursor((DoubleGenerator) spliterator);
+        }
+
+        return new DoubleSpliteratorCursor(spliterator);
+    }
+
+    static <T> Cursor<T> of(Stream<? extends T> stream) {
+        return new StreamCursor<>(of(stream.spliterator()), stream);
+    }
+
+    static Cursor.OfInt ofInt(IntStream stream) {
+        return new IntStreamCursor(ofInt(stream.spliterator()), stream);
+    }
+
+    static Cursor.OfLong ofLong(LongStream stream) {
+        return new LongStreamCursor(ofLong(stream.spliterator()), stream);
+    }
+
+    static Cursor.OfDouble ofDouble(DoubleStream stream) {
+        return new DoubleStreamCursor(ofDouble(stream.spliterator()), stream);
+    }
+
+    static boolean isRandomAccess(Collection<?> collection) {
+        return collection instanceof List && collection instanceof RandomAccess;
+    }
+
+    /*
+     * Forks the iterator of a loop. Forkable generators are forked, exhausted iterators can be shared, the rest cannot
+     * be copied without consuming them.
+     */
+    private static <I extends Iterator<?>> I fork(I iterator) {
+        if (iterator instanceof Forkable || !iterator.hasNext()) {
+            return CPSUtil.forked(iterator);
+        }
+
+        throw new UnsupportedOperationException(NOT_FORKABLE);
+    }
+
+    static final class ObjectArray<T> implements Indexed<T>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final T[] array;
+
+        ObjectArray(T[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public T get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class ListView<T> implements Indexed<T>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends T> list;
+
+        ListView(List<? extends T> list) {
+            this.list = list;
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+
+        @Override
+        public T get(int index) {
+            return list.get(index);
+        }
+    }
+
+    /**
+     * Cursor over a source that cannot be accessed by index. Relies on the indices being visited in order and ignores
+     * them.
+     */
+    static final class IteratorCursor<T> implements Cursor<T>, Forkable<IteratorCursor<T>> {
+        private final Iterator<? extends T> iterator;
+
+        IteratorCursor(Iterator<? extends T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T get(int index) {
+            return iterator.next();
+        }
+
+        @Override
+        public IteratorCursor<T> fork() {
+            return new IteratorCursor<>(Cursors.fork(iterator));
+        }
+    }
+
+    static final class IntIteratorCursor implements Cursor.OfInt, Forkable<IntIteratorCursor> {
+        private final PrimitiveIterator.OfInt iterator;
+
+        IntIteratorCursor(PrimitiveIterator.OfInt iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public int getInt(int index) {
+            return iterator.nextInt();
+        }
+
+        @Override
+        public IntIteratorCursor fork() {
+            return new IntIteratorCursor(Cursors.fork(iterator));
+        }
+    }
+
+    static final class LongIteratorCursor implements Cursor.OfLong, Forkable<LongIteratorCursor> {
+        private final PrimitiveIterator.OfLong iterator;
+
+        LongIteratorCursor(PrimitiveIterator.OfLong iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public long getLong(int index) {
+            return iterator.nextLong();
+        }
+
+        @Override
+        public LongIteratorCursor fork() {
+            return new LongIteratorCursor(Cursors.fork(iterator));
+        }
+    }
+
+    static final class DoubleIteratorCursor implements Cursor.OfDouble, Forkable<DoubleIteratorCursor> {
+        private final PrimitiveIterator.OfDouble iterator;
+
+        DoubleIteratorCursor(PrimitiveIterator.OfDouble iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return iterator.nextDouble();
+        }
+
+        @Override
+        public DoubleIteratorCursor fork() {
+            return new DoubleIteratorCursor(Cursors.fork(iterator));
+        }
+    }
+
+    /**
+     * Cursor over a spliterator. {@link #has(int)} advances the spliterator and keeps the element until it is read by
+     * {@link #get(int)}.
+     */
+    static final class SpliteratorCursor<T> implements Cursor<T>, Consumer<T>, Forkable<SpliteratorCursor<T>> {
+        private final Spliterator<? extends T> spliterator;
+
+        private T element;
+
+        private boolean exhausted;
+
+        SpliteratorCursor(Spliterator<? extends T> spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (spliterator.tryAdvance(this)) {
+                return true;
+            }
+
+            this.exhausted = true;
+
+            return false;
+        }
+
+        @Override
+        public T get(int index) {
+            final T result = element;
+
+            this.element = null;
+
+            return result;
+        }
+
+        @Override
+        public void accept(T element) {
+            this.element = element;
+        }
+
+        @Override
+        public SpliteratorCursor<T> fork() {
+            if (!exhausted) {
+                throw new UnsupportedOperationException(NOT_FORKABLE);
+            }
+
+            return this;
+        }
+    }
+
+    static final class IntSpliteratorCursor implements Cursor.OfInt, IntConsumer, Forkable<IntSpliteratorCursor> {
+        private final Spliterator.OfInt spliterator;
+
+        private int element;
+
+        private boolean exhausted;
+
+        IntSpliteratorCursor(Spliterator.OfInt spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (spliterator.tryAdvance((IntConsumer) this)) {
+                return true;
+            }
+
+            this.exhausted = true;
+
+            return false;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return element;
+        }
+
+        @Override
+        public void accept(int element) {
+            this.element = element;
+        }
+
+        @Override
+        public IntSpliteratorCursor fork() {
+            if (!exhausted) {
+                throw new UnsupportedOperationException(NOT_FORKABLE);
+            }
+
+            return this;
+        }
+    }
+
+    static final class LongSpliteratorCursor implements Cursor.OfLong, LongConsumer, Forkable<LongSpliteratorCursor> {
+        private final Spliterator.OfLong spliterator;
+
+        private long element;
+
+        private boolean exhausted;
+
+        LongSpliteratorCursor(Spliterator.OfLong spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (spliterator.tryAdvance((LongConsumer) this)) {
+                return true;
+            }
+
+            this.exhausted = true;
+
+            return false;
+        }
+
+        @Override
+        public long getLong(int index) {
+            return element;
+        }
+
+        @Override
+        public void accept(long element) {
+            this.element = element;
+        }
+
+        @Override
+        public LongSpliteratorCursor fork() {
+            if (!exhausted) {
+                throw new UnsupportedOperationException(NOT_FORKABLE);
+            }
+
+            return this;
+        }
+    }
+
+    static final class DoubleSpliteratorCursor implements Cursor.OfDouble, DoubleConsumer, Forkable<DoubleSpliteratorCursor> {
+        private final Spliterator.OfDouble spliterator;
+
+        private double element;
+
+        private boolean exhausted;
+
+        DoubleSpliteratorCursor(Spliterator.OfDouble spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (spliterator.tryAdvance((DoubleConsumer) this)) {
+                return true;
+            }
+
+            this.exhausted = true;
+
+            return false;
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return element;
+        }
+
+        @Override
+        public void accept(double element) {
+            this.element = element;
+        }
+
+        @Override
+        public DoubleSpliteratorCursor fork() {
+            if (!exhausted) {
+                throw new UnsupportedOperationException(NOT_FORKABLE);
+            }
+
+            return this;
+        }
+    }
+
+    /**
+     * Cursor over a stream, which owns the stream like an enhanced for loop over it would: the stream is closed when
+     * the cursor finds it exhausted, or when the cursor is closed because the generator leaves the loop early or is
+     * closed itself. Its onClose handlers run, which releases files and the generators behind the stream. Forks read
+     * the fork of the underlying cursor, they do not close the stream, which remains owned by the original cursor.
+     */
+    static final class StreamCursor<T> implements Cursor<T>, AutoCloseable, Forkable<StreamCursor<T>> {
+        private final Cursor<? extends T> cursor;
+
+        private final BaseStream<?, ?> stream;
+
+        StreamCursor(Cursor<? extends T> cursor, BaseStream<?, ?> stream) {
+            this.cursor = cursor;
+
+            this.stream = stream;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (cursor.has(index)) {
+                return true;
+            }
+
+            close();
+
+            return false;
+        }
+
+        @Override
+        public T get(int index) {
+            return cursor.get(index);
+        }
+
+        @Override
+        public void close() {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        @Override
+        public StreamCursor<T> fork() {
+            return new StreamCursor<>(CPSUtil.forked(cursor), null);
+        }
+    }
+
+    static final class IntStreamCursor implements Cursor.OfInt, AutoCloseable, Forkable<IntStreamCursor> {
+        private final Cursor.OfInt cursor;
+
+        private final BaseStream<?, ?> stream;
+
+        IntStreamCursor(Cursor.OfInt cursor, BaseStream<?, ?> stream) {
+            this.cursor = cursor;
+
+            this.stream = stream;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (cursor.has(index)) {
+                return true;
+            }
+
+            close();
+
+            return false;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return cursor.getInt(index);
+        }
+
+        @Override
+        public void close() {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        @Override
+        public IntStreamCursor fork() {
+            return new IntStreamCursor(CPSUtil.forked(cursor), null);
+        }
+    }
+
+    static final class LongStreamCursor implements Cursor.OfLong, AutoCloseable, Forkable<LongStreamCursor> {
+        private final Cursor.OfLong cursor;
+
+        private final BaseStream<?, ?> stream;
+
+        LongStreamCursor(Cursor.OfLong cursor, BaseStream<?, ?> stream) {
+            this.cursor = cursor;
+
+            this.stream = stream;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (cursor.has(index)) {
+                return true;
+            }
+
+            close();
+
+            return false;
+        }
+
+        @Override
+        public long getLong(int index) {
+            return cursor.getLong(index);
+        }
+
+        @Override
+        public void close() {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        @Override
+        public LongStreamCursor fork() {
+            return new LongStreamCursor(CPSUtil.forked(cursor), null);
+        }
+    }
+
+    static final class DoubleStreamCursor implements Cursor.OfDouble, AutoCloseable, Forkable<DoubleStreamCursor> {
+        private final Cursor.OfDouble cursor;
+
+        private final BaseStream<?, ?> stream;
+
+        DoubleStreamCursor(Cursor.OfDouble cursor, BaseStream<?, ?> stream) {
+            this.cursor = cursor;
+
+            this.stream = stream;
+        }
+
+        @Override
+        public boolean has(int index) {
+            if (cursor.has(index)) {
+                return true;
+            }
+
+            close();
+
+            return false;
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return cursor.getDouble(index);
+        }
+
+        @Override
+        public void close() {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        @Override
+        public DoubleStreamCursor fork() {
+            return new DoubleStreamCursor(CPSUtil.forked(cursor), null);
+        }
+    }
+
+    static final class IntArray implements Indexed.OfInt, Indexed.OfLong, Indexed<Integer>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] array;
+
+        IntArray(int[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < array.length;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return array[index];
+        }
+
+        @Override
+        public long getLong(int index) {
+            return array[index];
+        }
+
+        @Override
+        public Integer get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class LongArray implements Indexed.OfLong, Indexed<Long>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] array;
+
+        LongArray(long[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < array.length;
+        }
+
+        @Override
+        public long getLong(int index) {
+            return array[index];
+        }
+
+        @Override
+        public Long get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class DoubleArray implements Indexed.OfDouble, Indexed<Double>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] array;
+
+        DoubleArray(double[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < array.length;
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return array[index];
+        }
+
+        @Override
+        public Double get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class ShortArray implements Indexed.OfInt, Indexed<Short>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final short[] array;
+
+        ShortArray(short[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < array.length;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return array[index];
+        }
+
+        @Override
+        public Short get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class CharArray implements Indexed.OfInt, Indexed<Character>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final char[] array;
+
+        CharArray(char[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < array.length;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return array[index];
+        }
+
+        @Override
+        public Character get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class ByteArray implements Indexed.OfInt, Indexed<Byte>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] array;
+
+        ByteArray(byte[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < array.length;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return array[index];
+        }
+
+        @Override
+        public Byte get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class FloatArray implements Indexed.OfDouble, Indexed<Float>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] array;
+
+        FloatArray(float[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < array.length;
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return array[index];
+        }
+
+        @Override
+        public Float get(int index) {
+            return array[index];
+        }
+    }
+
+    static final class BooleanArray implements Indexed<Boolean>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean[] array;
+
+        BooleanArray(boolean[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public Boolean get(int index) {
+            return array[index];
+        }
+    }
+
+    /**
+     * Unboxes the values of the wrapper types. The unboxing cursors hold one of the constants instead of method
+     * references, so that they are serializable whenever the cursor they unbox is.
+     */
+    enum Unbox implements ToIntFunction<Object>, ToLongFunction<Object>, ToDoubleFunction<Object> {
+        NUMBER {
+            @Override
+            public int applyAsInt(Object value) {
+                return ((Number) value).intValue();
+            }
+
+            @Override
+            public long applyAsLong(Object value) {
+                return ((Number) value).longValue();
+            }
+
+            @Override
+            public double applyAsDouble(Object value) {
+                return ((Number) value).doubleValue();
+            }
+        },
+
+        CHARACTER {
+            @Override
+            public int applyAsInt(Object value) {
+                return (Character) value;
+            }
+
+            @Override
+            public long applyAsLong(Object value) {
+                return (Character) value;
+            }
+
+            @Override
+            public double applyAsDouble(Object value) {
+                return (Character) value;
+            }
+        }
+    }
+
+    /**
+     * Unboxes the elements of a cursor over boxed values.
+     */
+    static final class IntUnboxing<E> implements Cursor.OfInt, AutoCloseable, Forkable<IntUnboxing<E>>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Cursor<? extends E> source;
+
+        private final Unbox unbox;
+
+        IntUnboxing(Cursor<? extends E> source, Unbox unbox) {
+            this.source = source;
+
+            this.unbox = unbox;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return source.has(index);
+        }
+
+        @Override
+        public int getInt(int index) {
+            return unbox.applyAsInt(source.get(index));
+        }
+
+        @Override
+        public void close() {
+            CPSUtil.release(source);
+        }
+
+        @Override
+        public IntUnboxing<E> fork() {
+            return new IntUnboxing<>(CPSUtil.forked(source), unbox);
+        }
+    }
+
+    static final class LongUnboxing<E>
+        implements Cursor.OfLong, AutoCloseable, Forkable<LongUnboxing<E>>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Cursor<? extends E> source;
+
+        private final Unbox unbox;
+
+        LongUnboxing(Cursor<? extends E> source, Unbox unbox) {
+            this.source = source;
+
+            this.unbox = unbox;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return source.has(index);
+        }
+
+        @Override
+        public long getLong(int index) {
+            return unbox.applyAsLong(source.get(index));
+        }
+
+        @Override
+        public void close() {
+            CPSUtil.release(source);
+        }
+
+        @Override
+        public LongUnboxing<E> fork() {
+            return new LongUnboxing<>(CPSUtil.forked(source), unbox);
+        }
+    }
+
+    static final class DoubleUnboxing<E>
+        implements Cursor.OfDouble, AutoCloseable, Forkable<DoubleUnboxing<E>>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Cursor<? extends E> source;
+
+        private final Unbox unbox;
+
+        DoubleUnboxing(Cursor<? extends E> source, Unbox unbox) {
+            this.source = source;
+
+            this.unbox = unbox;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return source.has(index);
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return unbox.applyAsDouble(source.get(index));
+        }
+
+        @Override
+        public void close() {
+            CPSUtil.release(source);
+        }
+
+        @Override
+        public DoubleUnboxing<E> fork() {
+            return new DoubleUnboxing<>(CPSUtil.forked(source), unbox);
+        }
+    }
+}
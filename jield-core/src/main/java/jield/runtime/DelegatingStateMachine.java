@@ -0,0 +1,17 @@
+package jield.runtime;
+
+import java.util.stream.Stream;
+
+/**
+ * The state machine of a generator delegating to other streams. Besides producing values, a step can hand over to a
+ * stream, whose values are produced before the machine is stepped again. Such machines are driven by a delegation
+ * stack, which steps the innermost stream directly.
+ * @param <E> the return type of the generator
+ */
+public interface DelegatingStateMachine<E> extends StateMachine<E> {
+    /**
+     * Returns the stream the state machine delegates to.
+     * @return the stream delegated to by the last {@link #step()}, {@code null} if the step produced a value
+     */
+    Stream<? extends E> delegate();
+}
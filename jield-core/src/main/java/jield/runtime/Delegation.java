@@ -0,0 +1,185 @@
+package jield.runtime;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Drives a {@link DelegatingStateMachine} through a stack of the state machines delegated to. The machine at the top
+ * of the stack produces the values and is stepped directly, the machines below it are only stepped again once it is
+ * exhausted. Streams returned by generator methods hand their state machines over, so nested delegations end up on the
+ * same stack instead of stepping each other. Thus a value costs a single step regardless of the depth of the
+ * delegation, and entering and leaving a stream is paid once per stream.
+ * @param <E> the return type of the generator
+ */
+final class Delegation<E> implements StateMachine<E> {
+    private final Deque<Frame<? extends E>> frames;
+
+    private final Frame<E> root;
+
+    private Frame<? extends E> top;
+
+    /*
+     * The machine that produced the value of the last successful step.
+     */
+    private StateMachine<? extends E> producer;
+
+    Delegation(DelegatingStateMachine<E> machine) {
+        this.frames = new ArrayDeque<>();
+
+        this.root = new Frame<>(machine, null, null);
+
+        this.top = root;
+
+        frames.push(root);
+    }
+
+    @Override
+    public boolean step() {
+        while (true) {
+            final Frame<? extends E> frame = top;
+
+            if (frame.machine.step()) {
+                if (frame.delegating) {
+                    final Stream<? extends E> delegate =
+                        ((DelegatingStateMachine<? extends E>) frame.machine).delegate();
+
+                    if (delegate != null) {
+                        enter(delegate);
+
+                        continue;
+                    }
+                }
+
+                this.producer = frame.machine;
+
+                return true;
+            }
+
+            if (frame == root) {
+                return false;
+            }
+
+            frames.pop();
+
+            this.top = frames.peek();
+
+            frame.close();
+        }
+    }
+
+    @Override
+    public E current() {
+        return producer.current();
+    }
+
+    /**
+     * Closes the state machines on the stack, the innermost first. The rest are closed even if closing one of them
+     * fails.
+     */
+    @Override
+    public void close() {
+        final Frame<? extends E> frame = frames.poll();
+
+        if (frame == null) {
+            return;
+        }
+
+        try {
+            frame.close();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Returns the delegating state machine driven by this one. Only meaningful before the first step, when the stack
+     * holds nothing else.
+     * @return the state machine at the bottom of the stack
+     */
+    StateMachine<E> root() {
+        return root.machine;
+    }
+
+    private void enter(Stream<? extends E> stream) {
+        final Spliterator<? extends E> spliterator = stream.spliterator();
+
+        final Frame<? extends E> frame = spliterator instanceof BaseGenerator
+            ? ((BaseGenerator<? extends E>) spliterator).handOver(stream)
+            : new Frame<>(new SpliteratorMachine<>(spliterator), null, stream);
+
+        frames.push(frame);
+
+        this.top = frame;
+    }
+
+    /**
+     * A state machine on the delegation stack, together with what has to be released once it is exhausted.
+     * @param <E> the return type of the state machine
+     */
+    static final class Frame<E> {
+        private final StateMachine<E> machine;
+
+        private final boolean delegating;
+
+        private final Recyclable recyclable;
+
+        private final Stream<?> stream;
+
+        Frame(StateMachine<E> machine, Recyclable recyclable, Stream<?> stream) {
+            this.machine = machine;
+
+            this.delegating = machine instanceof DelegatingStateMachine;
+
+            this.recyclable = recyclable;
+
+            this.stream = stream;
+        }
+
+        private void close() {
+            try {
+                machine.close();
+            } finally {
+                try {
+                    if (recyclable != null) {
+                        recyclable.recycle();
+                    }
+                } finally {
+                    if (stream != null) {
+                        stream.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps a stream that is not backed by a generator through its spliterator.
+     */
+    private static final class SpliteratorMachine<E> implements StateMachine<E>, Consumer<E> {
+        private final Spliterator<E> spliterator;
+
+        private E current;
+
+        private SpliteratorMachine(Spliterator<E> spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        public boolean step() {
+            return spliterator.tryAdvance(this);
+        }
+
+        @Override
+        public E current() {
+            return current;
+        }
+
+        @Override
+        public void accept(E value) {
+            this.current = value;
+        }
+    }
+}
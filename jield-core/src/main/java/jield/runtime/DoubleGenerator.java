@@ -0,0 +1,567 @@
+package jield.runtime;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generator class that can produce a {@link DoubleStream} of values consisting of the return values of a
+ * {@link StateMachine.OfDouble}. Values are never boxed on their way from the state machine to the stream. This class must
+ * be utilized through composition instead of inheritance.
+ *
+ * <p>
+ * The generator is its own {@link Spliterator.OfDouble}, see {@link BaseGenerator}. Primitive values cannot be
+ * {@code null}, so the spliterator is {@link Spliterator#NONNULL} in addition to {@link Spliterator#ORDERED} and
+ * {@link Spliterator#IMMUTABLE}.
+ * </p>
+ *
+ * <p>
+ * Generators created through {@link #splittable(StateMachine.OfDouble)} can be split until their traversal starts.
+ * </p>
+ */
+public class DoubleGenerator implements PrimitiveIterator.OfDouble, Spliterator.OfDouble, Forkable<DoubleGenerator>,
+    AutoCloseable {
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+
+    private StateMachine.OfDouble machine;
+
+    /*
+     * The same object as the state machine while it can be split. See BaseGenerator.
+     */
+    private Splittable<?> splittable;
+
+    /*
+     * Whether the state machine has been stepped ahead of the consumer. See BaseGenerator.
+     */
+    private boolean stepped;
+
+    private boolean hasNext;
+
+    /*
+     * The instance of a pooled generator, null if the generator is not pooled or the instance has been recycled.
+     */
+    private Recyclable recyclable;
+
+    /*
+     * Whether the state machine has been closed, which happens once, when the generator finishes.
+     */
+    private boolean closed;
+
+    /*
+     * The generators split off this one by a parallel stream of a guarded state machine. See BaseGenerator.
+     */
+    private Queue<DoubleGenerator> splits;
+
+    /**
+     * Returns the generator behind a stream returned by a generator method, giving access to its iterator and batch
+     * methods. Like {@link DoubleStream#spliterator()}, this is a terminal operation, so the stream must not have intermediate
+     * operations and cannot be used afterwards.
+     * @param stream a stream returned by a generator method
+     * @return the generator producing the values of the stream
+     * @throws IllegalArgumentException if the stream is not backed by a generator
+     */
+    public static DoubleGenerator from(DoubleStream stream) {
+        final Spliterator<?> spliterator = stream.spliterator();
+
+        if (!(spliterator instanceof DoubleGenerator)) {
+            throw new IllegalArgumentException("The stream is not backed by a generator");
+        }
+
+        return (DoubleGenerator) spliterator;
+    }
+
+    /**
+     * Creates a new instance driven by the specified state machine.
+     * @param machine the state machine producing the generated values
+     * @return a new generator instance
+     */
+    public static DoubleGenerator of(StateMachine.OfDouble machine) {
+        return new DoubleGenerator(Objects.requireNonNull(machine), null, null);
+    }
+
+    /**
+     * Creates a new instance driven by the state machine of a pooled generator. The instance is recycled when the
+     * generator is exhausted or its stream is closed.
+     * @param machine the state machine producing the generated values
+     * @param recyclable the pooled instance, usually the state machine itself
+     * @return a new generator instance
+     */
+    public static DoubleGenerator of(StateMachine.OfDouble machine, Recyclable recyclable) {
+        return new DoubleGenerator(Objects.requireNonNull(machine), null, Objects.requireNonNull(recyclable));
+    }
+
+    /**
+     * Creates a new instance driven by the specified state machine, which can be split by slicing the range of the
+     * state machine in half.
+     * @param machine the state machine producing the generated values
+     * @param <M> The type of the state machine.
+     * @return a new generator instance
+     */
+    public static <M extends StateMachine.OfDouble & Splittable<M>> DoubleGenerator splittable(M machine) {
+        return new DoubleGenerator(Objects.requireNonNull(machine), machine, null);
+    }
+
+    private DoubleGenerator(StateMachine.OfDouble machine, Splittable<?> splittable, Recyclable recyclable) {
+        this.machine = machine;
+
+        this.splittable = splittable;
+
+        this.recyclable = recyclable;
+
+        /*
+         * Nothing is executed until a value is requested. See BaseGenerator.
+         */
+        this.stepped = false;
+
+        this.hasNext = false;
+    }
+
+    /**
+     * Checks whether the generator has a next value. Steps the state machine if it has not been stepped since the last
+     * value was consumed.
+     * @return {@code true} if there is a next value, {@code false} otherwise
+     */
+    @Override
+    public final boolean hasNext() {
+        if (!stepped) {
+            this.splittable = null;
+
+            this.hasNext = machine.step();
+
+            this.stepped = true;
+
+            if (!hasNext) {
+                finish();
+            }
+        }
+
+        return hasNext;
+    }
+
+    @Override
+    public final double nextDouble() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.stepped = false;
+
+        return machine.currentDouble();
+    }
+
+    @Override
+    public final boolean tryAdvance(DoubleConsumer action) {
+        Objects.requireNonNull(action);
+
+        if (!hasNext()) {
+            return false;
+        }
+
+        this.stepped = false;
+
+        action.accept(machine.currentDouble());
+
+        return true;
+    }
+
+    /**
+     * Passes every remaining value to the specified action. Implements both {@link PrimitiveIterator.OfDouble} and
+     * {@link Spliterator.OfDouble}. The state machine is run in push mode.
+     * @param action the action to be performed on the values
+     */
+    @Override
+    public final void forEachRemaining(DoubleConsumer action) {
+        Objects.requireNonNull(action);
+
+        this.splittable = null;
+
+        if (stepped) {
+            if (!hasNext) {
+                return;
+            }
+
+            this.stepped = false;
+
+            action.accept(machine.currentDouble());
+        }
+
+        machine.pushDouble(action);
+
+        finish();
+    }
+
+    @Override
+    public final void forEachRemaining(Consumer<? super Double> action) {
+        if (action instanceof DoubleConsumer) {
+            forEachRemaining((DoubleConsumer) action);
+        } else {
+            forEachRemaining((DoubleConsumer) action::accept);
+        }
+    }
+
+    /**
+     * Stores the next values in the specified range of the buffer without boxing them. See
+     * {@link BaseGenerator#nextBatch(Object[], int, int)}.
+     * @param buffer the array to store the values in
+     * @param offset the index of the first value in the buffer
+     * @param max the maximum number of values to store
+     * @return the number of values stored, less than {@code max} only if the generator is exhausted
+     * @throws IndexOutOfBoundsException if the range does not fit into the buffer
+     */
+    public final int nextBatch(double[] buffer, int offset, int max) {
+        BaseGenerator.checkBatchRange(buffer.length, offset, max);
+
+        if (max == 0) {
+            return 0;
+        }
+
+        this.splittable = null;
+
+        int count = 0;
+
+        if (stepped) {
+            if (!hasNext) {
+                return 0;
+            }
+
+            this.stepped = false;
+
+            buffer[offset] = machine.currentDouble();
+
+            count = 1;
+        }
+
+        count += machine.fill(buffer, offset + count, max - count);
+
+        if (count < max) {
+            finish();
+        }
+
+        return count;
+    }
+
+    /**
+     * Skips the next values without producing them. See {@link BaseGenerator#skip(long)}.
+     * @param n the number of values to skip
+     * @return the number of values skipped, less than {@code n} only if the generator is exhausted
+     * @throws IllegalArgumentException if {@code n} is negative
+     */
+    public final long skip(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("The number of values to skip must not be negative: " + n);
+        }
+
+        if (n == 0) {
+            return 0;
+        }
+
+        this.splittable = null;
+
+        long count = 0;
+
+        if (stepped) {
+            if (!hasNext) {
+                return 0;
+            }
+
+            this.stepped = false;
+
+            count = 1;
+        }
+
+        count += machine.skip(n - count);
+
+        if (count < n) {
+            finish();
+        }
+
+        return count;
+    }
+
+    /**
+     * Splits the range of a splittable state machine in half. See {@link BaseGenerator#trySplit()}.
+     * @return a generator covering the first half of the range, or {@code null} if the generator cannot be split
+     */
+    @Override
+    public final Spliterator.OfDouble trySplit() {
+        final Splittable<?> s = splittable;
+
+        if (s == null) {
+            return null;
+        }
+
+        final long origin = s.origin();
+
+        final long fence = s.fence();
+
+        if (fence - origin < 2) {
+            return null;
+        }
+
+        final long middle = origin + (fence - origin) / 2;
+
+        final Splittable<?> prefix = s.slice(origin, middle);
+
+        final Splittable<?> suffix = s.slice(middle, fence);
+
+        this.machine = (StateMachine.OfDouble) suffix;
+
+        this.splittable = suffix;
+
+        final DoubleGenerator split = new DoubleGenerator((StateMachine.OfDouble) prefix, prefix, null);
+
+        final Queue<DoubleGenerator> q = splits;
+
+        if (q != null) {
+            split.splits = q;
+
+            q.add(split);
+        }
+
+        return split;
+    }
+
+    /**
+     * Estimates the number of remaining values. See {@link BaseGenerator#estimateSize()}.
+     * @return the estimate, {@code Long.MAX_VALUE} if unknown
+     */
+    @Override
+    public final long estimateSize() {
+        final Splittable<?> s = splittable;
+
+        return s == null ? Long.MAX_VALUE : Math.max(0L, s.fence() - s.origin());
+    }
+
+    @Override
+    public final int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * Stops the generator. See {@link BaseGenerator#close()}.
+     */
+    @Override
+    public final void close() {
+        finish();
+    }
+
+    /**
+     * Marks the generator as exhausted, closes the state machine and recycles the instance of a pooled generator.
+     * Called when the state machine halts and when the stream is closed, the state machine is closed only the first
+     * time.
+     */
+    private void finish() {
+        this.stepped = true;
+
+        this.hasNext = false;
+
+        if (closed) {
+            return;
+        }
+
+        this.closed = true;
+
+        try {
+            machine.close();
+        } finally {
+            final Recyclable r = recyclable;
+
+            if (r != null) {
+                this.recyclable = null;
+
+                r.recycle();
+            }
+        }
+    }
+
+    /**
+     * Saves the state of the generator, so that it can be continued later, possibly in another process, by
+     * {@link #restore(byte[])}. Only available for generator methods annotated with {@code checkpointable = true}.
+     * The checkpoint can be taken between any two values, a value stepped to by {@link #hasNext()} is saved as well.
+     * The generator can be used further afterwards.
+     * @return the checkpoint
+     * @throws UnsupportedOperationException if the generator is not checkpointable
+     * @throws java.io.UncheckedIOException if the state cannot be saved, for example because a variable of the
+     * generator holds an object that is not serializable
+     */
+    public final byte[] checkpoint() {
+        final int position;
+
+        if (closed) {
+            position = Checkpoints.FINISHED;
+        } else if (stepped) {
+            position = hasNext ? Checkpoints.PENDING : Checkpoints.FINISHED;
+        } else {
+            position = Checkpoints.SUSPENDED;
+        }
+
+        return Checkpoints.save(machine, position);
+    }
+
+    /**
+     * Continues this generator from a checkpoint taken by {@link #checkpoint()}. The generator must have been returned
+     * by a call of the same generator method, and must not have finished. Its state is replaced by the saved one,
+     * including the arguments of the call, while the enclosing instance of the call is kept.
+     * @param checkpoint the checkpoint
+     * @return this generator
+     * @throws UnsupportedOperationException if the generator is not checkpointable
+     * @throws IllegalStateException if the generator has finished
+     * @throws IllegalArgumentException if the checkpoint cannot be read, or was taken from another generator method
+     * or another version of it
+     */
+    public final DoubleGenerator restore(byte[] checkpoint) {
+        if (closed) {
+            throw new IllegalStateException("The generator has finished");
+        }
+
+        final int position = Checkpoints.restore(machine, checkpoint);
+
+        this.splittable = null;
+
+        this.stepped = position == Checkpoints.PENDING;
+
+        this.hasNext = stepped;
+
+        if (position == Checkpoints.FINISHED) {
+            finish();
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns an independent copy of this generator, continuing from the same point. Only available for generator
+     * methods annotated with {@code forkable = true}. The copy does not run the generator code again, its variables
+     * are copied from this generator, shallowly unless they hold {@link Forkable} objects. A value stepped to by
+     * {@link #hasNext()} is pending in both generators.
+     * @return the fork
+     * @throws UnsupportedOperationException if the generator is not forkable, or it is suspended in a loop over an
+     * iterator or a stream that cannot be forked
+     */
+    @Override
+    public final DoubleGenerator fork() {
+        if (!(machine instanceof Forkable)) {
+            throw new UnsupportedOperationException("The generator is not forkable");
+        }
+
+        final DoubleGenerator fork = new DoubleGenerator(closed ? machine : CPSUtil.forked(machine), null, null);
+
+        fork.stepped = stepped;
+
+        fork.hasNext = hasNext;
+
+        fork.closed = closed;
+
+        return fork;
+    }
+
+    /**
+     * Returns a generator producing the remaining values of this one on a background thread, ahead of its consumer.
+     * See {@link #prefetching(Executor, int)}.
+     * @param capacity the maximum number of values produced ahead of the consumer
+     * @return the prefetching generator
+     */
+    public final DoubleGenerator prefetching(int capacity) {
+        return prefetching(Prefetcher.DEFAULT_EXECUTOR, capacity);
+    }
+
+    /**
+     * Returns a generator producing the remaining values of this one on a producer thread of the specified executor,
+     * ahead of its consumer. At most {@code capacity} values are produced in advance, they are handed over through a
+     * lock-free ring buffer. The producer is started when the first value is requested and stopped when the returned
+     * generator is exhausted, closed through its stream or garbage collected. An exception thrown by the generator
+     * code is rethrown to the consumer after the values produced before it. This generator must not be used
+     * afterwards.
+     * @param executor the executor running the producer
+     * @param capacity the maximum number of values produced ahead of the consumer
+     * @return the prefetching generator
+     * @throws IllegalArgumentException if the capacity is not positive or exceeds {@code 1 << 30}
+     * @throws IllegalStateException if the generator has been stepped ahead of its consumer or has finished
+     */
+    public final DoubleGenerator prefetching(Executor executor, int capacity) {
+        if (stepped) {
+            throw new IllegalStateException("The generator has already been stepped");
+        }
+
+        final Prefetcher.OfDouble prefetcher = new Prefetcher.OfDouble(machine, executor, capacity, recyclable);
+
+        this.splittable = null;
+
+        this.recyclable = null;
+
+        this.closed = true;
+
+        this.stepped = true;
+
+        this.hasNext = false;
+
+        final DoubleGenerator generator = new DoubleGenerator(prefetcher, null, null);
+
+        prefetcher.attach(generator);
+
+        return generator;
+    }
+
+    /**
+     * Returns a stream backed by the state machine.
+     * @return a stream of generated values
+     */
+    public final DoubleStream stream() {
+        final DoubleStream stream = StreamSupport.doubleStream(this, false);
+
+        final boolean releasesResources =
+            recyclable != null || machine instanceof Prefetcher || machine instanceof Guarded;
+
+        return releasesResources ? stream.onClose(this::finish) : stream;
+    }
+
+    /**
+     * Returns a parallel stream backed by the state machine. Only splittable generators are actually split, closing
+     * the stream closes the splits as well.
+     * @return a parallel stream of generated values
+     */
+    public final DoubleStream parallelStream() {
+        final DoubleStream stream = StreamSupport.doubleStream(this, true);
+
+        if (machine instanceof Guarded) {
+            this.splits = new ConcurrentLinkedQueue<>();
+
+            return stream.onClose(this::finishSplits);
+        }
+
+        return stream;
+    }
+
+    /**
+     * Finishes this generator and the generators split off it. See {@link BaseGenerator#parallelStream()}.
+     */
+    private void finishSplits() {
+        Throwable thrown = null;
+
+        try {
+            finish();
+        } catch (RuntimeException | Error e) {
+            thrown = e;
+        }
+
+        for (DoubleGenerator split : splits) {
+            try {
+                split.finish();
+            } catch (RuntimeException | Error e) {
+                thrown = CPSUtil.suppressed(thrown, e);
+            }
+        }
+
+        if (thrown != null) {
+            throw CPSUtil.rethrow(thrown);
+        }
+    }
+}
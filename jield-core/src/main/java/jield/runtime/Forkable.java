@@ -0,0 +1,18 @@
+package jield.runtime;
+
+/**
+ * An object that can be copied into an independent one, continuing from the same state. Implemented by the state
+ * machines of generator methods annotated with {@code forkable = true}, and by the generators themselves. Objects held
+ * by the variables of a forkable generator are shared between the forks, unless they implement this interface, in
+ * which case every fork gets its own copy. Thus mutable state of a generator, for example the partial solution of a
+ * search, can opt in to being copied by implementing this interface.
+ * @param <T> the type of the copies
+ */
+public interface Forkable<T> {
+    /**
+     * Returns an independent copy of this object.
+     * @return the copy
+     * @throws UnsupportedOperationException if the object cannot be copied in its current state
+     */
+    T fork();
+}
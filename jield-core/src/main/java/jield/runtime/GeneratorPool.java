@@ -0,0 +1,54 @@
+package jield.runtime;
+
+import java.util.ArrayDeque;
+
+/**
+ * Per-thread pools of the instances of pooled generators, one for every generated class. Acquiring and releasing
+ * happen on the same thread in the typical case of a generator consumed by the thread that created it, but releasing
+ * on another thread is safe as well, the instance then simply moves to the pool of that thread.
+ *
+ * <p>
+ * Every pool keeps at most {@value #CAPACITY} instances. Instances released to a full pool are left to the garbage
+ * collector.
+ * </p>
+ */
+public final class GeneratorPool {
+    private static final int CAPACITY = 16;
+
+    private static final ClassValue<ThreadLocal<ArrayDeque<Object>>> POOLS =
+        new ClassValue<ThreadLocal<ArrayDeque<Object>>>() {
+            @Override
+            protected ThreadLocal<ArrayDeque<Object>> computeValue(Class<?> type) {
+                return ThreadLocal.withInitial(ArrayDeque::new);
+            }
+        };
+
+    private GeneratorPool() {
+    /*
+     * Cannot be instantiated.
+     */
+    }
+
+    /**
+     * Takes an instance of the specified class from the pool of the current thread.
+     * @param type the generated class
+     * @param <T> the type of the instance
+     * @return a recycled instance, or {@code null} if the pool is empty
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T acquire(Class<T> type) {
+        return (T) POOLS.get(type).get().pollFirst();
+    }
+
+    /**
+     * Returns an instance to the pool of its class for the current thread.
+     * @param instance the recycled instance
+     */
+    public static void release(Object instance) {
+        final ArrayDeque<Object> pool = POOLS.get(instance.getClass()).get();
+
+        if (pool.size() < CAPACITY) {
+            pool.addFirst(instance);
+        }
+    }
+}
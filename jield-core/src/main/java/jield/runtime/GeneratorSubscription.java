@@ -0,0 +1,204 @@
+package jield.runtime;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The subscription of a subscriber to a generator. The demand drives the generator directly: every requested value is
+ * produced by stepping the state machine once, right before it is passed to {@link Subscriber#onNext(Object)}, so no
+ * value is buffered and the generator never runs ahead of the demand.
+ *
+ * <p>
+ * The values are emitted by a drain loop guarded by a work-in-progress counter. Whichever thread moves the counter
+ * from zero runs the loop, others merely record their demand or cancellation for it. Thus the subscriber is never
+ * called concurrently or recursively, even if it requests more values from {@code onNext}. Without an executor the
+ * loop runs on the requesting thread, otherwise it is submitted to the executor. A subscriber throwing from
+ * {@code onNext} is treated as if it had cancelled the subscription.
+ * </p>
+ * @param <E> the type of the values
+ */
+final class GeneratorSubscription<E> implements Subscription, Runnable {
+    /**
+     * The subscription handed to subscribers that are rejected right away.
+     */
+    static final Subscription REJECTED = new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final BaseGenerator<E> generator;
+
+    private final Subscriber<? super E> subscriber;
+
+    private final Executor executor;
+
+    private final AtomicLong requested;
+
+    private final AtomicInteger wip;
+
+    private volatile boolean cancelled;
+
+    /*
+     * Failure of an invalid request, reported by the drain loop. Written before wip is incremented.
+     */
+    private volatile Throwable invalidRequest;
+
+    /*
+     * Accessed by the drain loop only.
+     */
+    private boolean terminated;
+
+    GeneratorSubscription(BaseGenerator<E> generator, Subscriber<? super E> subscriber, Executor executor) {
+        this.generator = generator;
+
+        this.subscriber = subscriber;
+
+        this.executor = executor;
+
+        this.requested = new AtomicLong();
+
+        this.wip = new AtomicInteger();
+
+        this.cancelled = false;
+
+        this.terminated = false;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            this.invalidRequest =
+                new IllegalArgumentException("The number of requested values must be positive: " + n);
+
+            this.cancelled = true;
+        } else {
+            long current;
+
+            do {
+                current = requested.get();
+
+                if (current == Long.MAX_VALUE) {
+                    break;
+                }
+            } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+        }
+
+        schedule();
+    }
+
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+
+        schedule();
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        if (executor == null) {
+            run();
+        } else {
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * Runs the drain loop, emitting values while there is demand and stopping the generator once the subscription is
+     * cancelled.
+     */
+    @Override
+    public void run() {
+        int missed = 1;
+
+        do {
+            if (!terminated) {
+                drain();
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain() {
+        final long demand = requested.get();
+
+        long emitted = 0;
+
+        while (true) {
+            if (cancelled) {
+                terminate();
+
+                final Throwable e = invalidRequest;
+
+                if (e != null) {
+                    subscriber.onError(e);
+                }
+
+                return;
+            }
+
+            if (emitted == demand) {
+                break;
+            }
+
+            final E value;
+
+            try {
+                if (!generator.hasNext()) {
+                    this.terminated = true;
+
+                    subscriber.onComplete();
+
+                    return;
+                }
+
+                value = generator.next();
+            } catch (Throwable e) {
+                terminate();
+
+                subscriber.onError(e);
+
+                return;
+            }
+
+            try {
+                subscriber.onNext(value);
+            } catch (Throwable e) {
+                /*
+                 * A failing subscriber is treated as if it had cancelled the subscription. The failure is not
+                 * rethrown, it would escape from request() to whoever requested the values, and leave the drain loop
+                 * without settling the work-in-progress counter.
+                 */
+                this.cancelled = true;
+
+                terminate();
+
+                return;
+            }
+
+            ++emitted;
+        }
+
+        if (demand != Long.MAX_VALUE) {
+            requested.addAndGet(-emitted);
+        }
+    }
+
+    /**
+     * Stops the generator, which closes its state machine and recycles a pooled instance.
+     */
+    private void terminate() {
+        this.terminated = true;
+
+        generator.finish();
+    }
+}
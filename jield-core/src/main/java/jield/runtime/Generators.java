@@ -0,0 +1,133 @@
+package jield.runtime;
+
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+/**
+ * Constructs understood inside the bodies of generator methods. The annotation processor replaces their calls, so the
+ * methods themselves are never invoked by transformed code. Calling them anywhere else fails.
+ */
+public final class Generators {
+    private Generators() {
+        /*
+         * Cannot be instantiated.
+         */
+    }
+
+    /**
+     * Suspends an async generator until the specified stage completes and returns its result. No thread is blocked
+     * while waiting, the generator resumes in the completion callback of the stage. If the stage completes
+     * exceptionally, the exception is thrown at the call site.
+     *
+     * <p>
+     * Only available in generator methods returning {@link AsyncGenerator}, as a statement of its own: the initializer
+     * of a local variable declaration ({@code T x = await(stage);}), the right-hand side of an assignment
+     * ({@code x = await(stage);}) or an expression statement ({@code await(stage);}).
+     * </p>
+     * @param stage the stage to wait for
+     * @param <T> the type of the result
+     * @return the result of the stage
+     * @throws UnsupportedOperationException if called outside of an async generator method
+     */
+    public static <T> T await(CompletionStage<T> stage) {
+        throw new UnsupportedOperationException("await can only be used in async generator methods");
+    }
+
+    /**
+     * Suspends a coroutine until its caller supplies a value through {@link Coroutine#send(Object)}, and returns the
+     * value. The values produced before are consumed by the caller in the meantime.
+     *
+     * <p>
+     * Only available in generator methods returning {@link Coroutine}, as a statement of its own: the initializer of a
+     * local variable declaration ({@code I x = receive();}), the right-hand side of an assignment
+     * ({@code x = receive();}) or an expression statement ({@code receive();}).
+     * </p>
+     * @param <T> the type of the received value
+     * @return the value sent by the caller
+     * @throws UnsupportedOperationException if called outside of a coroutine method
+     */
+    public static <T> T receive() {
+        throw new UnsupportedOperationException("receive can only be used in coroutine methods");
+    }
+
+    /**
+     * Produces every value of the specified stream before the generator continues. If the stream is returned by a
+     * generator method, its state machine is stepped directly by the generator consuming the values instead of being
+     * nested into this one. Thus the values of recursive generators are produced at a constant cost regardless of the
+     * depth of the recursion. Other streams are traversed through their spliterator. The stream is closed once it is
+     * exhausted or the generator is closed.
+     *
+     * <p>
+     * Only available in generator methods returning {@link Stream}, as the value of a return statement:
+     * {@code return yieldAll(stream);}.
+     * </p>
+     * @param values the stream of the values to produce
+     * @param <T> the type of the values
+     * @return never returns normally
+     * @throws UnsupportedOperationException if called outside of a generator method
+     */
+    public static <T> T yieldAll(Stream<? extends T> values) {
+        throw new UnsupportedOperationException("yieldAll can only be used in generator methods");
+    }
+
+    /**
+     * Produces every element of the specified array in a single suspension. Where the values are consumed in bulk, by
+     * {@code forEach} or by batches of primitive streams, the elements are handed over in a single loop instead of
+     * suspending and resuming the generator for each of them. The array is read as the values are consumed, so it
+     * should not be modified until the generator continues.
+     *
+     * <p>
+     * Only available in generator methods, as the value of a return statement: {@code return yieldBlock(values);}.
+     * </p>
+     * @param values the values to produce
+     * @param <T> the type of the values
+     * @return never returns normally
+     * @throws UnsupportedOperationException if called outside of a generator method
+     */
+    public static <T> T yieldBlock(T[] values) {
+        throw new UnsupportedOperationException("yieldBlock can only be used in generator methods");
+    }
+
+    /**
+     * Produces every element of the specified collection in a single suspension, see {@link #yieldBlock(Object[])}.
+     * Lists implementing {@link java.util.RandomAccess} are read in place, other collections are copied first.
+     * @param values the values to produce
+     * @param <T> the type of the values
+     * @return never returns normally
+     * @throws UnsupportedOperationException if called outside of a generator method
+     */
+    public static <T> T yieldBlock(Collection<? extends T> values) {
+        throw new UnsupportedOperationException("yieldBlock can only be used in generator methods");
+    }
+
+    /**
+     * Produces every element of the specified array in a single suspension, see {@link #yieldBlock(Object[])}.
+     * @param values the values to produce
+     * @return never returns normally
+     * @throws UnsupportedOperationException if called outside of a generator method
+     */
+    public static int yieldBlock(int[] values) {
+        throw new UnsupportedOperationException("yieldBlock can only be used in generator methods");
+    }
+
+    /**
+     * Produces every element of the specified array in a single suspension, see {@link #yieldBlock(Object[])}.
+     * @param values the values to produce
+     * @return never returns normally
+     * @throws UnsupportedOperationException if called outside of a generator method
+     */
+    public static long yieldBlock(long[] values) {
+        throw new UnsupportedOperationException("yieldBlock can only be used in generator methods");
+    }
+
+    /**
+     * Produces every element of the specified array in a single suspension, see {@link #yieldBlock(Object[])}.
+     * @param values the values to produce
+     * @return never returns normally
+     * @throws UnsupportedOperationException if called outside of a generator method
+     */
+    public static double yieldBlock(double[] values) {
+        throw new UnsupportedOperationException("yieldBlock can only be used in generator methods");
+    }
+}
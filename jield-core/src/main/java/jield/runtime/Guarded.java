@@ -0,0 +1,11 @@
+package jield.runtime;
+
+/**
+ * A state machine that has cleanup code to run if it is closed before it finishes: the {@code finally} blocks and the
+ * resources of the {@code try} statements of the generator that are left open while it is suspended, and the streams
+ * of the enhanced for loops it is suspended in. Implemented by the state machines of generator methods yielding
+ * inside {@code try} statements or enhanced for loops. Generators close these state machines when their stream is
+ * closed, so consumers stopping early should close the stream, just like the streams of files.
+ */
+public interface Guarded {
+}
@@ -0,0 +1,56 @@
+package jield.runtime;
+
+/**
+ * Random access view of the source of an enhanced for loop. Parallel generators iterate over their source through
+ * this interface, so that any index range of it can be traversed independently. Instances are created by the
+ * {@code indexed} methods of {@link CPSUtil}.
+ * @param <T> the type of the elements
+ */
+public interface Indexed<T> extends Cursor<T> {
+    /**
+     * Returns the number of elements.
+     * @return the number of elements
+     */
+    int size();
+
+    @Override
+    default boolean has(int index) {
+        return index < size();
+    }
+
+    /**
+     * An {@code Indexed} specialized for {@code int} elements.
+     */
+    interface OfInt extends Cursor.OfInt {
+        int size();
+
+        @Override
+        default boolean has(int index) {
+            return index < size();
+        }
+    }
+
+    /**
+     * An {@code Indexed} specialized for {@code long} elements.
+     */
+    interface OfLong extends Cursor.OfLong {
+        int size();
+
+        @Override
+        default boolean has(int index) {
+            return index < size();
+        }
+    }
+
+    /**
+     * An {@code Indexed} specialized for {@code double} elements.
+     */
+    interface OfDouble extends Cursor.OfDouble {
+        int size();
+
+        @Override
+        default boolean has(int index) {
+            return index < size();
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package jield.runtime;
+
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a state machine on a producer thread ahead of its consumer. The produced values flow through a bounded ring
+ * buffer with a single producer and a single consumer, so producing and consuming overlap on separate cores.
+ *
+ * <p>
+ * The producer is started by the first step of the consumer, thus creating a prefetching generator does not execute
+ * any generator code. It stops when the state machine finishes, when the consumer closes the generator, or when the
+ * generator is garbage collected without being closed. The source state machine is closed and the pooled instance, if
+ * any, is recycled by the producer once it has stopped, so they are never touched by two threads at once. An
+ * exception thrown by the generator code is rethrown to the consumer once the values produced before it have been
+ * consumed.
+ * </p>
+ */
+abstract class Prefetcher implements Runnable {
+    /**
+     * The executor running the producers of prefetching generators that do not specify one. Its threads are daemon
+     * threads, so an abandoned producer never keeps the JVM alive.
+     */
+    static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "jield-prefetch-" + count.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    });
+
+    /*
+     * The largest capacity whose ring buffer size, the next power of two, is still an int.
+     */
+    static final int MAX_CAPACITY = 1 << 30;
+
+    /*
+     * How long a blocked producer waits before checking whether its consumer is still reachable.
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Executor executor;
+
+    private final Recyclable recyclable;
+
+    final int capacity;
+
+    final int mask;
+
+    /*
+     * The index of the next value to be consumed, written by the consumer only.
+     */
+    private final AtomicLong head;
+
+    /*
+     * The index of the next value to be produced, written by the producer only.
+     */
+    private final AtomicLong tail;
+
+    private volatile Thread waitingConsumer;
+
+    private volatile Thread waitingProducer;
+
+    private volatile boolean cancelled;
+
+    /*
+     * Written before the volatile done flag, read after it.
+     */
+    private Throwable failure;
+
+    private volatile boolean done;
+
+    /*
+     * The generator consuming the values. Only referenced weakly, so that the producer notices if it is abandoned.
+     */
+    private WeakReference<Object> consumer;
+
+    /*
+     * Accessed by the consumer only.
+     */
+    private boolean started;
+
+    Prefetcher(Executor executor, int capacity, Recyclable recyclable) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
+
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The capacity must not exceed " + MAX_CAPACITY + ": " + capacity);
+        }
+
+        this.executor = Objects.requireNonNull(executor);
+
+        this.recyclable = recyclable;
+
+        this.capacity = capacity;
+
+        this.mask = Integer.highestOneBit(capacity) == capacity ? capacity - 1 : Integer.highestOneBit(capacity) * 2 - 1;
+
+        this.head = new AtomicLong();
+
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * Steps the source state machine on the producer thread.
+     * @return {@code true} if a value was produced
+     */
+    abstract boolean produce();
+
+    /**
+     * Stores the value just produced into the specified slot.
+     * @param slot the index in the ring buffer
+     */
+    abstract void store(int slot);
+
+    /**
+     * Closes the source state machine.
+     */
+    abstract void closeSource();
+
+    /**
+     * Sets the generator consuming the values.
+     * @param owner the generator driven by this state machine
+     */
+    final void attach(Object owner) {
+        this.consumer = new WeakReference<>(owner);
+    }
+
+    @Override
+    public final void run() {
+        try {
+            long t = tail.get();
+
+            while (!cancelled && produce()) {
+                while (t - head.get() >= capacity) {
+                    if (cancelled || consumer.get() == null) {
+                        return;
+                    }
+
+                    this.waitingProducer = Thread.currentThread();
+
+                    if (t - head.get() >= capacity) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+
+                    this.waitingProducer = null;
+                }
+
+                store((int) t & mask);
+
+                tail.set(++t);
+
+                LockSupport.unpark(waitingConsumer);
+            }
+        } catch (Throwable e) {
+            this.failure = e;
+        } finally {
+            this.done = true;
+
+            LockSupport.unpark(waitingConsumer);
+
+            release();
+        }
+    }
+
+    private void release() {
+        try {
+            closeSource();
+        } finally {
+            if (recyclable != null) {
+                recyclable.recycle();
+            }
+        }
+    }
+
+    /**
+     * Waits until the value with the specified index is available or the producer has stopped.
+     * @param index the index of the next value to consume
+     * @return {@code true} if the value is available, {@code false} if the generator is exhausted
+     * @throws RuntimeException the exception thrown by the generator code, if any
+     */
+    final boolean await(long index) {
+        if (!started) {
+            this.started = true;
+
+            executor.execute(this);
+        }
+
+        while (index == tail.get()) {
+            if (done) {
+                if (index != tail.get()) {
+                    return true;
+                }
+
+                final Throwable e = failure;
+
+                if (e == null) {
+                    return false;
+                }
+
+                this.failure = null;
+
+                throw rethrow(e);
+            }
+
+            this.waitingConsumer = Thread.currentThread();
+
+            if (index == tail.get() && !done) {
+                LockSupport.park(this);
+            }
+
+            this.waitingConsumer = null;
+        }
+
+        return true;
+    }
+
+    /**
+     * Frees the slot of the consumed value for the producer.
+     * @param index the index following the consumed value
+     */
+    final void consumed(long index) {
+        head.set(index);
+
+        LockSupport.unpark(waitingProducer);
+    }
+
+    /**
+     * Stops the producer. If it has not been started, the source is released right away.
+     */
+    final void cancel() {
+        this.cancelled = true;
+
+        if (!started) {
+            this.started = true;
+
+            release();
+        } else {
+            LockSupport.unpark(waitingProducer);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+
+        return new CompletionException(e);
+    }
+
+    static final class OfReference<E> extends Prefetcher implements StateMachine<E> {
+        private final StateMachine<E> source;
+
+        private final Object[] ring;
+
+        private long index;
+
+        private E current;
+
+        OfReference(StateMachine<E> source, Executor executor, int capacity, Recyclable recyclable) {
+            super(executor, capacity, recyclable);
+
+            this.source = Objects.requireNonNull(source);
+
+            this.ring = new Object[mask + 1];
+        }
+
+        @Override
+        void closeSource() {
+            source.close();
+        }
+
+        @Override
+        boolean produce() {
+            return source.step();
+        }
+
+        @Override
+        void store(int slot) {
+            ring[slot] = source.current();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean step() {
+            if (!await(index)) {
+                return false;
+            }
+
+            final int slot = (int) index & mask;
+
+            this.current = (E) ring[slot];
+
+            ring[slot] = null;
+
+            consumed(++index);
+
+            return true;
+        }
+
+        @Override
+        public E current() {
+            return current;
+        }
+
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+
+    static final class OfInt extends Prefetcher implements StateMachine.OfInt {
+        private final StateMachine.OfInt source;
+
+        private final int[] ring;
+
+        private long index;
+
+        private int current;
+
+        OfInt(StateMachine.OfInt source, Executor executor, int capacity, Recyclable recyclable) {
+            super(executor, capacity, recyclable);
+
+            this.source = Objects.requireNonNull(source);
+
+            this.ring = new int[mask + 1];
+        }
+
+        @Override
+        void closeSource() {
+            source.close();
+        }
+
+        @Override
+        boolean produce() {
+            return source.step();
+        }
+
+        @Override
+        void store(int slot) {
+            ring[slot] = source.currentInt();
+        }
+
+        @Override
+        public boolean step() {
+            if (!await(index)) {
+                return false;
+            }
+
+            this.current = ring[(int) index & mask];
+
+            consumed(++index);
+
+            return true;
+        }
+
+        @Override
+        public int currentInt() {
+            return current;
+        }
+
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+
+    static final class OfLong extends Prefetcher implements StateMachine.OfLong {
+        private final StateMachine.OfLong source;
+
+        private final long[] ring;
+
+        private long index;
+
+        private long current;
+
+        OfLong(StateMachine.OfLong source, Executor executor, int capacity, Recyclable recyclable) {
+            super(executor, capacity, recyclable);
+
+            this.source = Objects.requireNonNull(source);
+
+            this.ring = new long[mask + 1];
+        }
+
+        @Override
+        void closeSource() {
+            source.close();
+        }
+
+        @Override
+        boolean produce() {
+            return source.step();
+        }
+
+        @Override
+        void store(int slot) {
+            ring[slot] = source.currentLong();
+        }
+
+        @Override
+        public boolean step() {
+            if (!await(index)) {
+                return false;
+            }
+
+            this.current = ring[(int) index & mask];
+
+            consumed(++index);
+
+            return true;
+        }
+
+        @Override
+        public long currentLong() {
+            return current;
+        }
+
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+
+    static final class OfDouble extends Prefetcher implements StateMachine.OfDouble {
+        private final StateMachine.OfDouble source;
+
+        private final double[] ring;
+
+        private long index;
+
+        private double current;
+
+        OfDouble(StateMachine.OfDouble source, Executor executor, int capacity, Recyclable recyclable) {
+            super(executor, capacity, recyclable);
+
+            this.source = Objects.requireNonNull(source);
+
+            this.ring = new double[mask + 1];
+        }
+
+        @Override
+        void closeSource() {
+            source.close();
+        }
+
+        @Override
+        boolean produce() {
+            return source.step();
+        }
+
+        @Override
+        void store(int slot) {
+            ring[slot] = source.currentDouble();
+        }
+
+        @Override
+        public boolean step() {
+            if (!await(index)) {
+                return false;
+            }
+
+            this.current = ring[(int) index & mask];
+
+            consumed(++index);
+
+            return true;
+        }
+
+        @Override
+        public double currentDouble() {
+            return current;
+        }
+
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+}
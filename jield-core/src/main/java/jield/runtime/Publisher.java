@@ -0,0 +1,16 @@
+package jield.runtime;
+
+/**
+ * A provider of values published to a {@link Subscriber} according to the demand received from it. The interface has
+ * the same shape as {@code org.reactivestreams.Publisher} and {@code java.util.concurrent.Flow.Publisher}, so adapting
+ * it to either takes a single delegating class.
+ * @param <T> the type of the published values
+ */
+public interface Publisher<T> {
+    /**
+     * Requests the publisher to start publishing values to the specified subscriber. The subscriber is handed a
+     * {@link Subscription} through {@link Subscriber#onSubscribe(Subscription)} first.
+     * @param subscriber the subscriber to publish to
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
@@ -0,0 +1,14 @@
+package jield.runtime;
+
+/**
+ * Implemented by the instances of pooled generators. The generator wrapping such an instance recycles it exactly once,
+ * as soon as the instance is no longer needed: when the generator is exhausted or its stream is closed. After that the
+ * wrapping generator behaves as if it were exhausted, since the instance may already be driving another generator.
+ */
+public interface Recyclable {
+    /**
+     * Clears the instance, so that it does not keep the last arguments reachable, and returns it to the
+     * {@link GeneratorPool} of the current thread.
+     */
+    void recycle();
+}
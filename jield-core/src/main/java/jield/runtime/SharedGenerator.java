@@ -0,0 +1,252 @@
+package jield.runtime;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A generator shared by a pool of worker threads. Generators are single-threaded, thus the values are produced under a
+ * lock, but workers do not take it for every value. Instead, each worker claims a block of values per acquisition and
+ * consumes them from its own buffer, so the lock is taken once per block and workers mostly run independently.
+ *
+ * <p>
+ * The values are consumed through {@link Worker} instances obtained from {@link #worker()}, one for each consuming
+ * thread. Every value is passed to exactly one worker. Within a worker the values keep their order, but workers do not
+ * observe each other's blocks in any particular order. Larger blocks mean less contention, smaller ones a more even
+ * distribution of the last values among the workers.
+ * </p>
+ *
+ * <p>
+ * An exception thrown by the generator code is rethrown to the worker whose claim ran into it. The other workers get
+ * an {@link IllegalStateException} caused by it on their next claim, so that none of them mistakes the failure for the
+ * end of the values.
+ * </p>
+ * @param <E> the type of the values
+ */
+public final class SharedGenerator<E> implements AutoCloseable {
+    private static final int DEFAULT_BATCH = 64;
+
+    private final Stream<E> stream;
+
+    private final Spliterator<E> spliterator;
+
+    private final int batch;
+
+    private final ReentrantLock lock;
+
+    /*
+     * Set once the source is exhausted or has failed, so that finished workers do not contend for the lock.
+     */
+    private volatile boolean done;
+
+    /*
+     * Written before done is set.
+     */
+    private Throwable failure;
+
+    private SharedGenerator(Stream<E> stream, int batch) {
+        if (batch < 1) {
+            throw new IllegalArgumentException("The batch size must be positive: " + batch);
+        }
+
+        this.stream = stream;
+
+        this.spliterator = stream.spliterator();
+
+        this.batch = batch;
+
+        this.lock = new ReentrantLock();
+
+        this.done = false;
+    }
+
+    /**
+     * Shares the values of the specified stream, claiming 64 values at a time. See {@link #of(Stream, int)}.
+     * @param stream the stream to share
+     * @param <E> the type of the values
+     * @return the shared generator
+     */
+    public static <E> SharedGenerator<E> of(Stream<E> stream) {
+        return of(stream, DEFAULT_BATCH);
+    }
+
+    /**
+     * Shares the values of the specified stream among workers claiming the specified number of values at a time.
+     * Like {@link Stream#spliterator()}, this is a terminal operation, the stream must not be used afterwards, except
+     * for closing it through {@link #close()}.
+     * @param stream the stream to share
+     * @param batch the number of values a worker claims at once
+     * @param <E> the type of the values
+     * @return the shared generator
+     * @throws IllegalArgumentException if the batch size is not positive
+     */
+    public static <E> SharedGenerator<E> of(Stream<E> stream, int batch) {
+        return new SharedGenerator<>(Objects.requireNonNull(stream), batch);
+    }
+
+    /**
+     * Creates a new worker consuming values of this generator. A worker must only be used by a single thread at a time.
+     * @return a new worker
+     */
+    public Worker worker() {
+        return new Worker();
+    }
+
+    /**
+     * Closes the underlying stream, which stops and releases the generator. Waits for a block being claimed to be
+     * filled, so that the generator is not released while a worker still runs it. Workers must not claim values
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+
+        try {
+            this.done = true;
+
+            stream.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Claims the next block of values into the specified buffer.
+     * @return the number of values claimed, zero if the source is exhausted
+     */
+    private int claim(Object[] buffer) {
+        if (done) {
+            return finished();
+        }
+
+        lock.lock();
+
+        try {
+            if (done) {
+                return finished();
+            }
+
+            final int count = fill(buffer);
+
+            if (count < buffer.length) {
+                this.done = true;
+            }
+
+            return count;
+        } catch (RuntimeException | Error e) {
+            this.failure = e;
+
+            this.done = true;
+
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Generators store the whole block in a single run of their state machine.
+     */
+    @SuppressWarnings("unchecked")
+    private int fill(Object[] buffer) {
+        if (spliterator instanceof BaseGenerator) {
+            return ((BaseGenerator<E>) spliterator).nextBatch((E[]) buffer, 0, buffer.length);
+        }
+
+        final Sink sink = new Sink(buffer);
+
+        while (sink.count < buffer.length && spliterator.tryAdvance(sink)) {
+            /*
+             * The sink stores the value.
+             */
+        }
+
+        return sink.count;
+    }
+
+    private int finished() {
+        final Throwable e = failure;
+
+        if (e != null) {
+            throw new IllegalStateException("The shared generator has failed", e);
+        }
+
+        return 0;
+    }
+
+    private static final class Sink implements Consumer<Object> {
+        private final Object[] buffer;
+
+        private int count;
+
+        private Sink(Object[] buffer) {
+            this.buffer = buffer;
+
+            this.count = 0;
+        }
+
+        @Override
+        public void accept(Object value) {
+            buffer[count++] = value;
+        }
+    }
+
+    /**
+     * The view of a single consuming thread. Values are served from a private buffer, which is refilled with a new
+     * block once it runs empty.
+     */
+    public final class Worker implements Iterator<E> {
+        private final Object[] buffer;
+
+        private int index;
+
+        private int count;
+
+        private Worker() {
+            this.buffer = new Object[batch];
+
+            this.index = 0;
+
+            this.count = 0;
+        }
+
+        /**
+         * Checks whether the worker has a next value. Claims a new block if the current one is consumed.
+         * @return {@code true} if there is a next value, {@code false} if the shared generator is exhausted
+         */
+        @Override
+        public boolean hasNext() {
+            if (index < count) {
+                return true;
+            }
+
+            /*
+             * Release the consumed values before claiming, the claim might block or find the source exhausted.
+             */
+            Arrays.fill(buffer, 0, count, null);
+
+            this.index = 0;
+
+            this.count = 0;
+
+            this.count = claim(buffer);
+
+            return count > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return (E) buffer[index++];
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package jield.runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only sequence of records in a memory-mapped temporary file. The file is mapped in pages, records are
+ * written into the last page with their length in front of them, and a record that does not fit into the rest of the
+ * page starts a new one. Records are addressed by positions holding the index of their page in the upper and the
+ * offset within the page in the lower half. Readers go through the records in order, the position following a record
+ * is returned by {@link #skip(long)}.
+ *
+ * <p>
+ * Once no record is needed any more, {@link #reset()} starts writing from the beginning again, reusing the pages that
+ * have already been mapped. The file is deleted when it is closed. Not thread-safe.
+ * </p>
+ */
+final class SpillFile implements Closeable {
+    private static final int PAGE_SIZE = 1 << 24;
+
+    private final FileChannel channel;
+
+    private final List<Page> pages;
+
+    private int writePage;
+
+    SpillFile() throws IOException {
+        this.channel = FileChannel.open(Files.createTempFile("jield-spill", ".tmp"),
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+
+        this.pages = new ArrayList<>();
+
+        this.writePage = 0;
+    }
+
+    /**
+     * Appends a record.
+     * @param bytes the array holding the record
+     * @param length the length of the record
+     * @return the position of the record
+     * @throws IOException if the file cannot be extended
+     */
+    long append(byte[] bytes, int length) throws IOException {
+        final int size = Integer.BYTES + length;
+
+        Page page = pages.isEmpty() ? null : pages.get(writePage);
+
+        if (page == null || page.buffer.capacity() - page.written < size) {
+            page = nextPage(size);
+        }
+
+        final int offset = page.written;
+
+        page.buffer.putInt(offset, length);
+
+        final ByteBuffer target = page.buffer.duplicate();
+
+        target.position(offset + Integer.BYTES);
+
+        target.put(bytes, 0, length);
+
+        page.written = offset + size;
+
+        return position(writePage, offset);
+    }
+
+    /**
+     * Reads the record at the specified position.
+     * @param position the position of the record, or the position following the previous record
+     * @return the record
+     */
+    byte[] read(long position) {
+        final long at = seek(position);
+
+        final Page page = pages.get(pageOf(at));
+
+        final int offset = offsetOf(at);
+
+        final byte[] record = new byte[page.buffer.getInt(offset)];
+
+        final ByteBuffer source = page.buffer.duplicate();
+
+        source.position(offset + Integer.BYTES);
+
+        source.get(record);
+
+        return record;
+    }
+
+    /**
+     * Returns the position following the record at the specified position.
+     * @param position the position of the record, or the position following the previous record
+     * @return the position following the record
+     */
+    long skip(long position) {
+        final long at = seek(position);
+
+        final int offset = offsetOf(at);
+
+        return position(pageOf(at), offset + Integer.BYTES + pages.get(pageOf(at)).buffer.getInt(offset));
+    }
+
+    /**
+     * Discards every record, the next record is written at the beginning of the file.
+     */
+    void reset() {
+        if (!pages.isEmpty()) {
+            this.writePage = 0;
+
+            pages.get(0).written = 0;
+        }
+    }
+
+    /**
+     * Deletes the file. The pages stay mapped until they are garbage collected.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+
+        channel.close();
+    }
+
+    /*
+     * A position following the last record of a page stands for the first record of the next page, as the record did
+     * not fit into the rest of the page.
+     */
+    private long seek(long position) {
+        final int index = pageOf(position);
+
+        return index < writePage && offsetOf(position) == pages.get(index).written ? position(index + 1, 0) : position;
+    }
+
+    private Page nextPage(int size) throws IOException {
+        final int index = pages.isEmpty() ? 0 : writePage + 1;
+
+        if (index < pages.size() && pages.get(index).buffer.capacity() >= size) {
+            pages.get(index).written = 0;
+        } else {
+            final long start = index == 0 ? 0 : pages.get(index - 1).end();
+
+            /*
+             * Pages left from before a reset are too small for the record, so they are mapped again in a larger page.
+             */
+            pages.subList(index, pages.size()).clear();
+
+            pages.add(new Page(channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(PAGE_SIZE, size)), start));
+        }
+
+        this.writePage = index;
+
+        return pages.get(index);
+    }
+
+    private static long position(int page, int offset) {
+        return (long) page << 32 | offset;
+    }
+
+    private static int pageOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private static final class Page {
+        private final MappedByteBuffer buffer;
+
+        private final long start;
+
+        private int written;
+
+        private Page(MappedByteBuffer buffer, long start) {
+            this.buffer = buffer;
+
+            this.start = start;
+
+            this.written = 0;
+        }
+
+        private long end() {
+            return start + buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package jield.runtime;
+
+/**
+ * Implemented by the state machines of parallel generators. The body of such a generator is a single loop over an
+ * index range, either the indices of an array or collection, or the values of a counted loop. The range can be sliced
+ * into disjoint sub-ranges, each of them traversed by a separate copy of the state machine.
+ *
+ * <p>
+ * Asking for the range evaluates the loop source or the loop bounds, but does not execute the loop body.
+ * </p>
+ * @param <M> the type of the state machine
+ */
+public interface Splittable<M extends Splittable<M>> {
+    /**
+     * Returns the first index of the range covered by this state machine.
+     * @return the inclusive lower bound of the range
+     */
+    long origin();
+
+    /**
+     * Returns the index following the last index of the range covered by this state machine.
+     * @return the exclusive upper bound of the range
+     */
+    long fence();
+
+    /**
+     * Creates a new state machine that runs the loop over the specified sub-range from the beginning. This state
+     * machine is not affected.
+     * @param origin the inclusive lower bound of the sub-range
+     * @param fence the exclusive upper bound of the sub-range
+     * @return a new state machine
+     */
+    M slice(long origin, long fence);
+}
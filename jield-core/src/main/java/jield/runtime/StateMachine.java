@@ -0,0 +1,260 @@
+package jield.runtime;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * A generator lowered into a resumable state machine. Instead of bouncing between separate state methods, the whole
+ * generator is driven through a single method that resumes at the current state and runs until the next value is
+ * produced.
+ *
+ * <p>
+ * Besides this pull mode, a state machine can be run in push mode through {@link #push(Consumer)}, which passes the
+ * values to a sink right where they are produced instead of suspending after each of them, and in batch mode through
+ * {@link #fill(Object[], int, int)}, which suspends only after a whole batch of values. Values can also be passed over
+ * without being produced through {@link #skip(long)}.
+ * </p>
+ * @param <E> the return type of the generator
+ */
+public interface StateMachine<E> {
+    /**
+     * Resumes the state machine and runs it until it either produces a value or finishes.
+     * @return {@code true} if a value was produced, {@code false} if the generator has finished
+     */
+    boolean step();
+
+    /**
+     * Returns the value produced by the last successful {@link #step()}.
+     * @return the last produced value, might be {@code null}
+     */
+    E current();
+
+    /**
+     * Runs the state machine to completion and passes every produced value to the specified sink. Generated state
+     * machines override this method so that the sink is invoked at the yield sites and the machine never suspends.
+     * Short-circuiting consumers must use {@link #step()} instead.
+     * @param sink the consumer of the remaining values
+     */
+    default void push(Consumer<? super E> sink) {
+        Objects.requireNonNull(sink);
+
+        while (step()) {
+            sink.accept(current());
+        }
+    }
+
+    /**
+     * Runs the state machine until the specified range of the buffer is full or the generator finishes. Generated
+     * state machines override this method so that the values are stored at the yield sites and the machine only
+     * suspends once the range is full. The buffer is an {@code Object[]} rather than an {@code E[]}, so that it can be
+     * created generically, the values are stored into it as they are.
+     * @param buffer the array to store the values in
+     * @param offset the index of the first value in the buffer
+     * @param max the maximum number of values to store
+     * @return the number of values stored, less than {@code max} only if the generator has finished
+     */
+    default int fill(Object[] buffer, int offset, int max) {
+        int count = 0;
+
+        while (count < max && step()) {
+            buffer[offset + count++] = current();
+        }
+
+        return count;
+    }
+
+    /**
+     * Runs the state machine past the specified number of values, or until the generator finishes. Generated state
+     * machines override this method so that the values are only counted at the yield sites, and the yielded
+     * expressions are not even evaluated if they are free of side effects. {@link #current()} is undefined afterwards.
+     * @param n the number of values to skip
+     * @return the number of values skipped, less than {@code n} only if the generator has finished
+     */
+    default long skip(long n) {
+        long count = 0;
+
+        while (count < n && step()) {
+            ++count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Releases the resources held by the state machine. Called once by the generator when it is exhausted or its
+     * stream is closed. Does nothing by default.
+     */
+    default void close() {
+    }
+
+    /**
+     * A state machine producing {@code int} values.
+     */
+    interface OfInt extends StateMachine<Integer> {
+        /**
+         * Returns the value produced by the last successful {@link #step()} without boxing it.
+         * @return the last produced value
+         */
+        int currentInt();
+
+        @Override
+        default Integer current() {
+            return currentInt();
+        }
+
+        /**
+         * Runs the state machine to completion and passes every produced value to the specified sink without
+         * boxing it.
+         * @param sink the consumer of the remaining values
+         */
+        default void pushInt(IntConsumer sink) {
+            Objects.requireNonNull(sink);
+
+            while (step()) {
+                sink.accept(currentInt());
+            }
+        }
+
+        /**
+         * Runs the state machine until the specified range of the buffer is full or the generator finishes, without
+         * boxing the values.
+         * @param buffer the array to store the values in
+         * @param offset the index of the first value in the buffer
+         * @param max the maximum number of values to store
+         * @return the number of values stored, less than {@code max} only if the generator has finished
+         */
+        default int fill(int[] buffer, int offset, int max) {
+            int count = 0;
+
+            while (count < max && step()) {
+                buffer[offset + count++] = currentInt();
+            }
+
+            return count;
+        }
+
+        @Override
+        default void push(Consumer<? super Integer> sink) {
+            if (sink instanceof IntConsumer) {
+                pushInt((IntConsumer) sink);
+            } else {
+                pushInt(sink::accept);
+            }
+        }
+    }
+
+    /**
+     * A state machine producing {@code long} values.
+     */
+    interface OfLong extends StateMachine<Long> {
+        /**
+         * Returns the value produced by the last successful {@link #step()} without boxing it.
+         * @return the last produced value
+         */
+        long currentLong();
+
+        @Override
+        default Long current() {
+            return currentLong();
+        }
+
+        /**
+         * Runs the state machine to completion and passes every produced value to the specified sink without
+         * boxing it.
+         * @param sink the consumer of the remaining values
+         */
+        default void pushLong(LongConsumer sink) {
+            Objects.requireNonNull(sink);
+
+            while (step()) {
+                sink.accept(currentLong());
+            }
+        }
+
+        /**
+         * Runs the state machine until the specified range of the buffer is full or the generator finishes, without
+         * boxing the values.
+         * @param buffer the array to store the values in
+         * @param offset the index of the first value in the buffer
+         * @param max the maximum number of values to store
+         * @return the number of values stored, less than {@code max} only if the generator has finished
+         */
+        default int fill(long[] buffer, int offset, int max) {
+            int count = 0;
+
+            while (count < max && step()) {
+                buffer[offset + count++] = currentLong();
+            }
+
+            return count;
+        }
+
+        @Override
+        default void push(Consumer<? super Long> sink) {
+            if (sink instanceof LongConsumer) {
+                pushLong((LongConsumer) sink);
+            } else {
+                pushLong(sink::accept);
+            }
+        }
+    }
+
+    /**
+     * A state machine producing {@code double} values.
+     */
+    interface OfDouble extends StateMachine<Double> {
+        /**
+         * Returns the value produced by the last successful {@link #step()} without boxing it.
+         * @return the last produced value
+         */
+        double currentDouble();
+
+        @Override
+        default Double current() {
+            return currentDouble();
+        }
+
+        /**
+         * Runs the state machine to completion and passes every produced value to the specified sink without
+         * boxing it.
+         * @param sink the consumer of the remaining values
+         */
+        default void pushDouble(DoubleConsumer sink) {
+            Objects.requireNonNull(sink);
+
+            while (step()) {
+                sink.accept(currentDouble());
+            }
+        }
+
+        /**
+         * Runs the state machine until the specified range of the buffer is full or the generator finishes, without
+         * boxing the values.
+         * @param buffer the array to store the values in
+         * @param offset the index of the first value in the buffer
+         * @param max the maximum number of values to store
+         * @return the number of values stored, less than {@code max} only if the generator has finished
+         */
+        default int fill(double[] buffer, int offset, int max) {
+            int count = 0;
+
+            while (count < max && step()) {
+                buffer[offset + count++] = currentDouble();
+            }
+
+            return count;
+        }
+
+        @Override
+        default void push(Consumer<? super Double> sink) {
+            if (sink instanceof DoubleConsumer) {
+                pushDouble((DoubleConsumer) sink);
+            } else {
+                pushDouble(sink::accept);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package jield.runtime;
+
+/**
+ * The receiver of the values of a {@link Publisher}. Shaped like {@code org.reactivestreams.Subscriber}. After
+ * {@link #onSubscribe(Subscription)}, the subscriber receives at most as many {@link #onNext(Object)} calls as it has
+ * requested, followed by either {@link #onError(Throwable)} or {@link #onComplete()} unless the subscription is
+ * cancelled. The calls are never concurrent.
+ * @param <T> the type of the received values
+ */
+public interface Subscriber<T> {
+    /**
+     * Invoked once, before any other method.
+     * @param subscription the subscription to request values through
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Receives the next value.
+     * @param value the value
+     */
+    void onNext(T value);
+
+    /**
+     * Invoked when the publisher fails. No other method is invoked afterwards.
+     * @param throwable the failure
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Invoked when the publisher has no more values. No other method is invoked afterwards.
+     */
+    void onComplete();
+}
@@ -0,0 +1,19 @@
+package jield.runtime;
+
+/**
+ * The link between a {@link Publisher} and one of its {@link Subscriber}s. Shaped like
+ * {@code org.reactivestreams.Subscription}.
+ */
+public interface Subscription {
+    /**
+     * Adds the specified number of values to the demand of the subscriber. Requests are cumulative, a total demand
+     * exceeding {@code Long.MAX_VALUE} is treated as unbounded.
+     * @param n the number of additional values, must be positive
+     */
+    void request(long n);
+
+    /**
+     * Stops the publishing of values. Values already in flight might still be delivered.
+     */
+    void cancel();
+}
@@ -0,0 +1,343 @@
+package jield.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Feeds several branches from a single run of a state machine. Every branch produces all the values of the state
+ * machine, at its own pace. The branch that gets ahead of the others steps the state machine, and the values are
+ * buffered until the slowest branch has produced them as well, so only the window between the slowest and the fastest
+ * branch is kept.
+ *
+ * <p>
+ * At most {@code heapBudget} values of the window are kept on the heap. Beyond that, the oldest values are spilled
+ * into a memory-mapped temporary file through Java serialization, the slower branches read them back from there.
+ * Once the slowest branch has caught up with the values on the heap, the file is written from its beginning again.
+ * </p>
+ *
+ * <p>
+ * A branch that is closed no longer holds the window back. The state machine is closed as soon as it finishes, or
+ * when every branch has been closed before that, and the file is deleted once every branch has been closed. The
+ * branches may be stepped by different threads, the tee is guarded by its own monitor.
+ * </p>
+ * @param <E> the type of the values
+ */
+final class Tee<E> {
+    /**
+     * The number of values kept on the heap by tees that do not specify it.
+     */
+    static final int DEFAULT_HEAP_BUDGET = 1 << 16;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StateMachine<E> source;
+
+    private Recyclable recyclable;
+
+    private final int heapBudget;
+
+    private final List<Branch> branches;
+
+    /*
+     * The values on the heap, in a ring buffer whose capacity is a power of two, growing until it holds the heap
+     * budget. They are the values of the window from heapStart on, up to the last value produced by the state machine.
+     */
+    private Object[] heap;
+
+    private int heapHead;
+
+    private int heapCount;
+
+    private long heapStart;
+
+    /*
+     * The spilled values of the window, from spillStart to spillEnd, which is where the values on the heap start. The
+     * file is created by the first spill.
+     */
+    private SpillFile spill;
+
+    private long spillStart;
+
+    private long spillEnd;
+
+    private final ByteArrayOutputStream spillBuffer;
+
+    /*
+     * The smallest position of the open branches, nothing before it is needed any more.
+     */
+    private long low;
+
+    private boolean sourceClosed;
+
+    Tee(StateMachine<E> source, Recyclable recyclable, int count, int heapBudget) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The number of branches must be positive: " + count);
+        }
+
+        if (heapBudget < 1) {
+            throw new IllegalArgumentException("The heap budget must be positive: " + heapBudget);
+        }
+
+        this.source = source;
+
+        this.recyclable = recyclable;
+
+        this.heapBudget = heapBudget;
+
+        this.branches = new ArrayList<>(count);
+
+        for (int i = 0; i < count; ++i) {
+            branches.add(new Branch());
+        }
+
+        this.heap = new Object[INITIAL_CAPACITY];
+
+        this.spillBuffer = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Returns the branches of the tee.
+     * @return the state machines of the branches
+     */
+    List<StateMachine<E>> branches() {
+        return Collections.unmodifiableList(branches);
+    }
+
+    private synchronized boolean step(Branch branch) {
+        final long position = branch.position;
+
+        if (position == heapStart + heapCount && !pull()) {
+            return false;
+        }
+
+        if (position < spillEnd) {
+            branch.current = readSpilled(branch.spillPosition);
+
+            branch.spillPosition = spill.skip(branch.spillPosition);
+        } else {
+            branch.current = heapValue(position);
+        }
+
+        branch.position = position + 1;
+
+        if (position == low) {
+            release();
+        }
+
+        return true;
+    }
+
+    /*
+     * Steps the state machine, and appends the produced value to the values on the heap, spilling the oldest one if
+     * the heap budget is used up.
+     */
+    private boolean pull() {
+        if (sourceClosed || !source.step()) {
+            closeSource();
+
+            return false;
+        }
+
+        if (heapCount == heapBudget) {
+            spillOldest();
+        } else if (heapCount == heap.length) {
+            grow();
+        }
+
+        heap[(heapHead + heapCount) & (heap.length - 1)] = source.current();
+
+        ++heapCount;
+
+        return true;
+    }
+
+    private void spillOldest() {
+        spillBuffer.reset();
+
+        try {
+            if (spill == null) {
+                this.spill = new SpillFile();
+            }
+
+            try (ObjectOutputStream out = new ObjectOutputStream(spillBuffer)) {
+                out.writeObject(heap[heapHead]);
+            }
+
+            final long spillPosition = spill.append(spillBuffer.toByteArray(), spillBuffer.size());
+
+            for (Branch branch : branches) {
+                if (branch.position == heapStart) {
+                    branch.spillPosition = spillPosition;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (spillStart == spillEnd) {
+            this.spillStart = heapStart;
+        }
+
+        this.spillEnd = heapStart + 1;
+
+        dropOldest();
+    }
+
+    @SuppressWarnings("unchecked")
+    private E readSpilled(long spillPosition) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(spill.read(spillPosition)))) {
+            return (E) in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("A spilled value cannot be read", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private E heapValue(long position) {
+        return (E) heap[(heapHead + (int) (position - heapStart)) & (heap.length - 1)];
+    }
+
+    /*
+     * Frees the values every open branch has passed. The spilled values are freed at once, when the slowest branch
+     * reaches the values on the heap.
+     */
+    private void release() {
+        long min = Long.MAX_VALUE;
+
+        for (Branch branch : branches) {
+            min = Math.min(min, branch.position);
+        }
+
+        this.low = min;
+
+        if (spillStart < spillEnd && low >= spillEnd) {
+            spill.reset();
+
+            this.spillStart = spillEnd;
+        }
+
+        while (spillStart == spillEnd && heapStart < low && heapCount > 0) {
+            dropOldest();
+        }
+
+        if (spillStart == spillEnd) {
+            this.spillStart = heapStart;
+
+            this.spillEnd = heapStart;
+        }
+    }
+
+    private void dropOldest() {
+        heap[heapHead] = null;
+
+        this.heapHead = (heapHead + 1) & (heap.length - 1);
+
+        --heapCount;
+
+        ++heapStart;
+    }
+
+    private void grow() {
+        final Object[] grown = new Object[heap.length << 1];
+
+        for (int i = 0; i < heapCount; ++i) {
+            grown[i] = heap[(heapHead + i) & (heap.length - 1)];
+        }
+
+        this.heap = grown;
+
+        this.heapHead = 0;
+    }
+
+    private synchronized void close(Branch branch) {
+        if (!branches.remove(branch)) {
+            return;
+        }
+
+        branch.current = null;
+
+        if (!branches.isEmpty()) {
+            if (branch.position == low) {
+                release();
+            }
+
+            return;
+        }
+
+        this.heap = new Object[0];
+
+        this.heapCount = 0;
+
+        try {
+            closeSource();
+        } finally {
+            if (spill != null) {
+                try {
+                    spill.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    this.spill = null;
+                }
+            }
+        }
+    }
+
+    private void closeSource() {
+        if (sourceClosed) {
+            return;
+        }
+
+        this.sourceClosed = true;
+
+        try {
+            source.close();
+        } finally {
+            final Recyclable r = recyclable;
+
+            if (r != null) {
+                this.recyclable = null;
+
+                r.recycle();
+            }
+        }
+    }
+
+    /**
+     * A branch of the tee, stepping through the values at its own position.
+     */
+    final class Branch implements StateMachine<E> {
+        private long position;
+
+        /*
+         * The position of the next spilled record, valid while the branch is among the spilled values.
+         */
+        private long spillPosition;
+
+        private E current;
+
+        @Override
+        public boolean step() {
+            return Tee.this.step(this);
+        }
+
+        @Override
+        public E current() {
+            return current;
+        }
+
+        @Override
+        public void close() {
+            Tee.this.close(this);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package jield.runtime;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Adapts generator states chained through {@link Bounce} objects to the {@link StateMachine} interface. A step runs
+ * the trampoline until a state returns a value or there is no continuation. This prevents stack overflow, since
+ * states never call each other directly.
+ * @param <E> the return type of the generator
+ */
+class Trampoline<E> implements StateMachine<E> {
+    private static final Thunk END_STATE = null;
+
+    private Thunk<Bounce<E>> continuation;
+
+    private E current;
+
+    Trampoline(Thunk<Bounce<E>> start) {
+        this.continuation = start;
+    }
+
+    /**
+     * Takes the current continuation and continues execution until either a value is returned or there is no
+     * continuation. If there is no next value, the continuation is set to {@code END_STATE}, thus subsequent steps
+     * are going to return {@code false} immediately.
+     * @return whether a value was produced
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean step() {
+        Thunk<Bounce<E>> next = continuation;
+
+        while (next != END_STATE) {
+            final Bounce<E> bounce = next.evaluate();
+
+            next = bounce.getContinuation();
+
+            if (bounce.hasValue()) {
+                this.continuation = next;
+
+                this.current = bounce.getValue();
+
+                return true;
+            }
+        }
+
+        /*
+         * Assigning the END_STATE is unchecked, but perfectly safe because it is null and conforms all types.
+         */
+        this.continuation = END_STATE;
+
+        this.current = null;
+
+        return false;
+    }
+
+    @Override
+    public E current() {
+        return current;
+    }
+
+    /**
+     * Runs the trampoline until there is no continuation and passes the values to the sink as soon as a state returns
+     * them.
+     * @param sink the consumer of the remaining values
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void push(Consumer<? super E> sink) {
+        Objects.requireNonNull(sink);
+
+        Thunk<Bounce<E>> next = continuation;
+
+        /*
+         * The trampoline is not resumable while the sink is running, so it is marked finished up front.
+         */
+        this.continuation = END_STATE;
+
+        this.current = null;
+
+        while (next != END_STATE) {
+            final Bounce<E> bounce = next.evaluate();
+
+            next = bounce.getContinuation();
+
+            if (bounce.hasValue()) {
+                sink.accept(bounce.getValue());
+            }
+        }
+    }
+
+    /**
+     * Runs the trampoline until the range of the buffer is full or there is no continuation. The trampoline stays
+     * resumable, the continuation following the last stored value is kept.
+     * @param buffer the array to store the values in
+     * @param offset the index of the first value in the buffer
+     * @param max the maximum number of values to store
+     * @return the number of values stored
+     */
+    @Override
+    public int fill(Object[] buffer, int offset, int max) {
+        int count = 0;
+
+        Thunk<Bounce<E>> next = continuation;
+
+        while (count < max && next != END_STATE) {
+            final Bounce<E> bounce = next.evaluate();
+
+            next = bounce.getContinuation();
+
+            if (bounce.hasValue()) {
+                buffer[offset + count++] = bounce.getValue();
+            }
+        }
+
+        this.continuation = next;
+
+        this.current = null;
+
+        return count;
+    }
+
+    /**
+     * Runs the trampoline past the specified number of values or until there is no continuation, without storing the
+     * values.
+     * @param n the number of values to skip
+     * @return the number of values skipped
+     */
+    @Override
+    public long skip(long n) {
+        long count = 0;
+
+        Thunk<Bounce<E>> next = continuation;
+
+        while (count < n && next != END_STATE) {
+            final Bounce<E> bounce = next.evaluate();
+
+            next = bounce.getContinuation();
+
+            if (bounce.hasValue()) {
+                ++count;
+            }
+        }
+
+        this.continuation = next;
+
+        this.current = null;
+
+        return count;
+    }
+
+    /**
+     * A trampoline over states that hold the sources of the loops they are suspended in, which are released when the
+     * generator is closed.
+     * @param <E> the return type of the generator
+     */
+    static final class Guarding<E> extends Trampoline<E> implements Guarded {
+        private final AutoCloseable states;
+
+        Guarding(Thunk<Bounce<E>> start, AutoCloseable states) {
+            super(start);
+
+            this.states = states;
+        }
+
+        @Override
+        public void close() {
+            CPSUtil.close(states);
+        }
+    }
+}
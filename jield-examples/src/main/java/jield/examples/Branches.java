@@ -0,0 +1,89 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.runtime.BaseGenerator;
+import jield.runtime.Forkable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Explores the alternative continuations of a search from a common point. The generator is run up to the branching
+ * point once and forked for every alternative, instead of being run again from the start for each of them. The path
+ * walked so far is mutable, so it implements {@link Forkable} to be copied into the forks.
+ */
+public class Branches {
+    public static void main(String[] args) {
+        final BaseGenerator<Path> walk = BaseGenerator.from(walk(6));
+
+        for (int i = 0; i < 3; ++i) {
+            walk.next();
+        }
+
+        for (int branch = 0; branch < 3; ++branch) {
+            final BaseGenerator<Path> fork = walk.fork();
+
+            Path path = null;
+
+            for (int i = 0; i <= branch; ++i) {
+                path = fork.next();
+            }
+
+            System.out.println(path);
+        }
+
+        System.out.println(walk.next());
+    }
+
+    /**
+     * Walks a Collatz sequence, producing the path taken so far after every step.
+     */
+    @Generator(forkable = true)
+    public static Stream<Path> walk(long start) {
+        Path path = new Path();
+
+        long n = start;
+
+        while (true) {
+            n = n % 2 == 0 ? n / 2 : 3 * n + 1;
+
+            path.steps.add(n);
+
+            return path;
+        }
+    }
+
+    /**
+     * Walks a Collatz sequence, producing the numbers reached.
+     */
+    @Generator(forkable = true)
+    public static LongStream steps(long start) {
+        long n = start;
+
+        while (true) {
+            n = n % 2 == 0 ? n / 2 : 3 * n + 1;
+
+            return n;
+        }
+    }
+
+    public static final class Path implements Forkable<Path> {
+        private final List<Long> steps = new ArrayList<>();
+
+        @Override
+        public Path fork() {
+            final Path path = new Path();
+
+            path.steps.addAll(steps);
+
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            return steps.toString();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+
+import java.util.stream.IntStream;
+
+public class Collatz {
+    public static void main(String[] args) {
+        Collatz c = new Collatz();
+
+        System.out.println(c.stepsJield(1, 100000).max().getAsInt());
+
+        System.out.println(c.stepsJieldParallel(1, 100000).max().getAsInt());
+
+        System.out.println(c.stepsIntStream(1, 100000).max().getAsInt());
+    }
+
+    @Generator
+    public IntStream stepsJield(int from, int to) {
+        for (int n = from; n < to; ++n) {
+            return steps(n);
+        }
+    }
+
+    @Generator(parallel = true)
+    public IntStream stepsJieldParallel(int from, int to) {
+        for (int n = from; n < to; ++n) {
+            return steps(n);
+        }
+    }
+
+    public IntStream stepsIntStream(int from, int to) {
+        return IntStream.range(from, to)
+                .parallel()
+                .map(Collatz::steps);
+    }
+
+    private static int steps(long n) {
+        int steps = 0;
+
+        while (n != 1) {
+            n = (n % 2 == 0) ? n / 2 : 3 * n + 1;
+
+            ++steps;
+        }
+
+        return steps;
+    }
+}
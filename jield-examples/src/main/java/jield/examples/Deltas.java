@@ -0,0 +1,53 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class Deltas {
+    public static void main(String[] args) {
+        Deltas d = new Deltas();
+
+        int[] values = new Random(42).ints(100000, 0, 100).toArray();
+
+        byte[] bytes = new byte[values.length];
+
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = (byte) values[i];
+        }
+
+        System.out.println(d.deltasJield(values).sum());
+
+        System.out.println(d.byteDeltasJield(bytes).sum());
+
+        System.out.println(d.deltasIntStream(values).sum());
+    }
+
+    @Generator
+    public IntStream deltasJield(int[] values) {
+        int previous = 0;
+
+        for (int value : values) {
+            return value - previous;
+
+            previous = value;
+        }
+    }
+
+    @Generator
+    public IntStream byteDeltasJield(byte[] values) {
+        int previous = 0;
+
+        for (byte value : values) {
+            return value - previous;
+
+            previous = value;
+        }
+    }
+
+    public IntStream deltasIntStream(int[] values) {
+        return IntStream.range(0, values.length)
+                .map(i -> values[i] - (i == 0 ? 0 : values[i - 1]));
+    }
+}
@@ -15,6 +15,10 @@ public class Fibonacci {
                 .limit(20)
                 .forEach(System.out::println);
 
+        f.fibJieldInt()
+                .limit(20)
+                .forEach(System.out::println);
+
         f.fibStreamGenerate()
                 .limit(20)
                 .forEach(System.out::println);
@@ -33,6 +37,19 @@ public class Fibonacci {
         }
      }
 
+    @Generator
+    public IntStream fibJieldInt() {
+        int a = 0, b = 1;
+
+        while (true) {
+            int temp = a;
+            a = b;
+            b = a + temp;
+
+            return temp;
+        }
+    }
+
     public Stream<Integer> fibStreamGenerate() {
         return Stream.generate(new Supplier<Integer>() {
             private int a = 0;
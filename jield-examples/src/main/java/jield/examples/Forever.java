@@ -12,6 +12,11 @@ public class Forever {
                 .limit(10)
                 .forEach(System.out::println);
 
+        try (Stream<String> pooled = f.foreverJieldPooled("Pooled")) {
+            pooled.limit(10)
+                    .forEach(System.out::println);
+        }
+
         f.foreverStreamGenerate("World")
                 .limit(10)
                 .forEach(System.out::println);
@@ -24,6 +29,13 @@ public class Forever {
         }
     }
 
+    @Generator(pooled = true)
+    public <T> Stream<T> foreverJieldPooled(T value) {
+        while (true) {
+            return value;
+        }
+    }
+
     public <T> Stream<T> foreverStreamGenerate(T value) {
         return Stream.generate(() -> value);
     }
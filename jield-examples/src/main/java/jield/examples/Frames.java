@@ -0,0 +1,69 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.runtime.Coroutine;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static jield.runtime.Generators.receive;
+
+/**
+ * Decodes length prefixed frames from chunks of bytes, split at arbitrary positions as they might arrive from the
+ * network. The decoder is a coroutine receiving the chunks, so it needs neither a queue nor a thread of its own.
+ */
+public class Frames {
+    public static void main(String[] args) {
+        final byte[] wire = encode("hello", "coroutine", "", "world");
+
+        final Coroutine<byte[], String> decoder = new Frames().decoder();
+
+        for (int i = 0; i < wire.length; i += 3) {
+            decoder.send(Arrays.copyOfRange(wire, i, Math.min(i + 3, wire.length)), System.out::println);
+        }
+    }
+
+    @Generator
+    public Coroutine<byte[], String> decoder() {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+
+        int remaining = -1;
+
+        while (true) {
+            byte[] chunk = receive();
+
+            for (byte b : chunk) {
+                if (remaining < 0) {
+                    remaining = b;
+                } else {
+                    frame.write(b);
+
+                    --remaining;
+                }
+
+                if (remaining == 0) {
+                    return new String(frame.toByteArray(), StandardCharsets.UTF_8);
+
+                    frame.reset();
+
+                    remaining = -1;
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(String... messages) {
+        final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+
+        for (String message : messages) {
+            final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+            wire.write(bytes.length);
+
+            wire.write(bytes, 0, bytes.length);
+        }
+
+        return wire.toByteArray();
+    }
+}
@@ -0,0 +1,51 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Streams the records of a file lazily. The reader is a resource of the generator, so it is closed when the records
+ * run out, and also when the consumer stops early and closes the stream, just like the streams of {@code Files}.
+ */
+public class Lines {
+    public static void main(String[] args) throws IOException {
+        final Path path = Files.createTempFile("jield-lines", ".csv");
+
+        try {
+            Files.write(path, IntStream.range(0, 1000).mapToObj(i -> i + "," + i * i).collect(Collectors.toList()));
+
+            try (Stream<String[]> records = records(path)) {
+                System.out.println(records.filter(record -> record[1].endsWith("69")).findFirst().get()[0]);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Generator
+    public static Stream<String[]> records(Path path) {
+        try (BufferedReader reader = open(path)) {
+            for (String line : reader.lines()) {
+                return line.split(",");
+            }
+        } finally {
+            System.out.println("closed " + path.getFileName());
+        }
+    }
+
+    private static BufferedReader open(Path path) {
+        try {
+            return Files.newBufferedReader(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.runtime.BaseGenerator;
+
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Pages deep into the results of a generator. The generator is skipped to the offset of the page before its stream is
+ * created, so the skipped results are only counted: their labels are free of side effects, thus they are not even
+ * built.
+ */
+public class Offsets {
+    public static void main(String[] args) {
+        System.out.println(page(10_000_000, 10));
+    }
+
+    public static String page(long offset, int size) {
+        final BaseGenerator<String> results = BaseGenerator.from(results(Long.MAX_VALUE));
+
+        results.skip(offset);
+
+        return results.stream().limit(size).collect(Collectors.joining(", "));
+    }
+
+    @Generator(backend = Generator.Backend.SWITCH)
+    public static Stream<String> results(long count) {
+        long score = 1;
+
+        for (long i = 0; i < count; ++i) {
+            score = score * 48271 % 2147483647;
+
+            return "#" + i + " (" + score + ")";
+        }
+    }
+}
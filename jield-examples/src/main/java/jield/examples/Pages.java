@@ -0,0 +1,65 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static jield.runtime.Generators.yieldBlock;
+
+/**
+ * Reads a column stored as delta encoded pages. Every page is decoded into an array at once, whose values are then
+ * produced one by one, or as a single block.
+ */
+public class Pages {
+    public static void main(String[] args) {
+        final List<int[]> pages = new ArrayList<>();
+
+        for (int i = 0; i < 4; ++i) {
+            pages.add(new int[] { i * 10, 1, 2, 3 });
+        }
+
+        final Pages p = new Pages();
+
+        p.valuesJieldBlock(pages).limit(6).forEach(System.out::println);
+
+        System.out.println(p.valuesJield(pages).sum());
+
+        System.out.println(p.valuesJieldBlock(pages).sum());
+    }
+
+    @Generator
+    public IntStream valuesJield(List<int[]> pages) {
+        for (int[] page : pages) {
+            for (int value : decode(page)) {
+                return value;
+            }
+        }
+    }
+
+    @Generator
+    public IntStream valuesJieldBlock(List<int[]> pages) {
+        for (int[] page : pages) {
+            return yieldBlock(decode(page));
+        }
+    }
+
+    /**
+     * Decodes a page, whose first element is the first value, and the rest are the differences of the consecutive
+     * values.
+     */
+    private static int[] decode(int[] page) {
+        final int[] values = new int[page.length];
+
+        int value = 0;
+
+        for (int i = 0; i < page.length; ++i) {
+            value += page[i];
+
+            values[i] = value;
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,84 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.runtime.AsyncGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jield.runtime.Generators.await;
+
+public class Paging {
+    private static final int PAGE_SIZE = 4;
+
+    private final ScheduledExecutorService remote;
+
+    public Paging(ScheduledExecutorService remote) {
+        this.remote = remote;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final ScheduledExecutorService remote = Executors.newSingleThreadScheduledExecutor();
+
+        final Paging p = new Paging(remote);
+
+        p.rows(3, 10).forEach(System.out::println).toCompletableFuture().join();
+
+        /*
+         * A thousand cursors paging concurrently, served by the single thread of the stand-in remote.
+         */
+        final AtomicLong total = new AtomicLong();
+
+        final List<CompletableFuture<Void>> cursors = new ArrayList<>();
+
+        for (int i = 0; i < 1000; ++i) {
+            cursors.add(p.rows(i, 10).forEach(total::addAndGet).toCompletableFuture());
+        }
+
+        CompletableFuture.allOf(cursors.toArray(new CompletableFuture[0])).join();
+
+        System.out.println(total.get());
+
+        remote.shutdown();
+    }
+
+    @Generator
+    public AsyncGenerator<Long> rows(int table, int rowCount) {
+        int offset = 0;
+
+        List<Long> page = await(fetch(table, offset, rowCount));
+
+        while (!page.isEmpty()) {
+            for (Long row : page) {
+                return row;
+            }
+
+            offset += page.size();
+
+            page = await(fetch(table, offset, rowCount));
+        }
+    }
+
+    /**
+     * Stands in for a remote query, completing the page after a millisecond on the thread of the remote.
+     */
+    private CompletableFuture<List<Long>> fetch(int table, int offset, int rowCount) {
+        final List<Long> page = new ArrayList<>();
+
+        for (int i = offset; i < Math.min(offset + PAGE_SIZE, rowCount); ++i) {
+            page.add((long) table * rowCount + i);
+        }
+
+        final CompletableFuture<List<Long>> result = new CompletableFuture<>();
+
+        remote.schedule(() -> result.complete(Collections.unmodifiableList(page)), 1, TimeUnit.MILLISECONDS);
+
+        return result;
+    }
+}
@@ -0,0 +1,35 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.runtime.BaseGenerator;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs several analytics passes over a single run of an expensive generator. The passes run one after the other, so
+ * the values between them do not fit into the heap budget of the tee, and are spilled into a temporary file instead of
+ * being computed again.
+ */
+public class Passes {
+    public static void main(String[] args) {
+        final List<BaseGenerator<Double>> passes = BaseGenerator.from(measurements(1_000_000)).tee(3, 1024);
+
+        System.out.println(passes.get(0).stream().mapToDouble(Double::doubleValue).average().getAsDouble());
+
+        System.out.println(passes.get(1).stream().mapToDouble(Double::doubleValue).max().getAsDouble());
+
+        System.out.println(passes.get(2).stream().filter(value -> value > 0.99).count());
+    }
+
+    @Generator
+    public static Stream<Double> measurements(int count) {
+        long seed = 42;
+
+        for (int i = 0; i < count; ++i) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+
+            return (seed >>> 11) / (double) (1L << 53);
+        }
+    }
+}
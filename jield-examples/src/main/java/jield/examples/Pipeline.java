@@ -0,0 +1,37 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class Pipeline {
+    public static void main(String[] args) {
+        Pipeline p = new Pipeline();
+
+        Stream<String> lines = Stream.iterate(0, i -> i + 1)
+                .map(i -> "line " + i + " of an endless input");
+
+        p.wordLengths(p.words(lines))
+                .limit(12)
+                .forEach(System.out::println);
+    }
+
+    @Generator
+    public Stream<String> words(Stream<String> lines) {
+        for (String line : lines) {
+            for (String word : line.split(" ")) {
+                if (!word.isEmpty()) {
+                    return word;
+                }
+            }
+        }
+    }
+
+    @Generator
+    public IntStream wordLengths(Stream<String> words) {
+        for (String word : words) {
+            return word.length();
+        }
+    }
+}
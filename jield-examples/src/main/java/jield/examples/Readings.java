@@ -0,0 +1,164 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.annotation.Generator.Backend;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Reads the samples of a sensor, which marks the missing samples with negative values and the end of a recording with
+ * a sentinel. The missing samples are passed over by {@code continue}, and the sentinel ends the loop by
+ * {@code break}, on both backends and for every primitive stream. The recordings of several sensors are read with
+ * labelled jumps, skipping a sensor at its first missing sample and stopping at the first sentinel.
+ */
+public class Readings {
+    private static final int SENTINEL = 999;
+
+    public static void main(String[] args) {
+        final int[] samples = { 12, -1, 15, 17, -1, 11, SENTINEL, 14 };
+
+        System.out.println(samplesTrampoline(samples).collect(Collectors.toList()));
+
+        System.out.println(samplesSwitch(samples).collect(Collectors.toList()));
+
+        System.out.println(Arrays.toString(samplesInt(samples).toArray()));
+
+        System.out.println(Arrays.toString(samplesLong(samples).toArray()));
+
+        System.out.println(Arrays.toString(samplesDouble(samples).toArray()));
+
+        final int[][] sensors = { { 1, 2, 3 }, { 4, -1, 5 }, { 6, SENTINEL, 7 }, { 8 } };
+
+        System.out.println(sensorsTrampoline(sensors).collect(Collectors.toList()));
+
+        System.out.println(Arrays.toString(sensorsInt(sensors).toArray()));
+    }
+
+    @Generator
+    public static Stream<Integer> samplesTrampoline(int[] samples) {
+        int i = 0;
+
+        while (true) {
+            final int sample = samples[i++];
+
+            if (sample < 0) {
+                continue;
+            }
+
+            if (sample == SENTINEL) {
+                break;
+            }
+
+            return sample;
+        }
+    }
+
+    @Generator(backend = Backend.SWITCH)
+    public static Stream<Integer> samplesSwitch(int[] samples) {
+        int i = 0;
+
+        while (true) {
+            final int sample = samples[i++];
+
+            if (sample < 0) {
+                continue;
+            }
+
+            if (sample == SENTINEL) {
+                break;
+            }
+
+            return sample;
+        }
+    }
+
+    @Generator
+    public static IntStream samplesInt(int[] samples) {
+        for (int sample : samples) {
+            if (sample < 0) {
+                continue;
+            }
+
+            if (sample == SENTINEL) {
+                break;
+            }
+
+            return sample;
+        }
+    }
+
+    @Generator
+    public static LongStream samplesLong(int[] samples) {
+        int i = 0;
+
+        do {
+            final long sample = samples[i++];
+
+            if (sample < 0) {
+                continue;
+            }
+
+            if (sample == SENTINEL) {
+                break;
+            }
+
+            return sample;
+        } while (i < samples.length);
+    }
+
+    @Generator
+    public static DoubleStream samplesDouble(int[] samples) {
+        for (int i = 0; i < samples.length; ++i) {
+            if (samples[i] < 0) {
+                continue;
+            }
+
+            if (samples[i] == SENTINEL) {
+                break;
+            }
+
+            return samples[i] / 10.0;
+        }
+    }
+
+    @Generator
+    public static Stream<Integer> sensorsTrampoline(int[][] sensors) {
+        sensors:
+        for (int[] samples : sensors) {
+            for (int sample : samples) {
+                if (sample < 0) {
+                    continue sensors;
+                }
+
+                if (sample == SENTINEL) {
+                    break sensors;
+                }
+
+                return sample;
+            }
+        }
+    }
+
+    @Generator
+    public static IntStream sensorsInt(int[][] sensors) {
+        sensors:
+        for (int[] samples : sensors) {
+            for (int sample : samples) {
+                if (sample < 0) {
+                    continue sensors;
+                }
+
+                if (sample == SENTINEL) {
+                    break sensors;
+                }
+
+                return sample;
+            }
+        }
+    }
+}
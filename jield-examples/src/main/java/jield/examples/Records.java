@@ -0,0 +1,47 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+public class Records {
+    public static void main(String[] args) {
+        Records r = new Records();
+
+        List<String> lines = new ArrayList<>();
+
+        for (int i = 0; i < 10; ++i) {
+            lines.add(i + "," + (i * i) + "," + (i * 31 % 7));
+        }
+
+        System.out.println(r.totalsJield(lines).sum());
+
+        System.out.println(r.totalsJieldPrefetch(lines).sum());
+    }
+
+    @Generator
+    public LongStream totalsJield(List<String> lines) {
+        for (String line : lines) {
+            return total(line);
+        }
+    }
+
+    @Generator(prefetch = 256)
+    public LongStream totalsJieldPrefetch(List<String> lines) {
+        for (String line : lines) {
+            return total(line);
+        }
+    }
+
+    private static long total(String line) {
+        long total = 0;
+
+        for (String field : line.split(",")) {
+            total += Long.parseLong(field);
+        }
+
+        return total;
+    }
+}
@@ -1,6 +1,7 @@
 package jield.examples;
 
 import jield.annotation.Generator;
+import jield.annotation.Generator.Backend;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -16,6 +17,12 @@ public class Rep {
         r.repJield(Arrays.asList("Hello", "World", "!"), 2, 2)
                 .forEach(System.out::println);
 
+        r.repJieldSwitch(Arrays.asList("Hello", "World", "!"), 2, 2)
+                .forEach(System.out::println);
+
+        r.repJieldPooled(Arrays.asList("Hello", "World", "!"), 2, 2)
+                .forEach(System.out::println);
+
         r.repStreamGenerate(Arrays.asList("Hello", "World", "!"), 2, 2)
                 .forEach(System.out::println);
     }
@@ -31,6 +38,28 @@ public class Rep {
         }
     }
 
+    @Generator(backend = Backend.SWITCH)
+    public <T> Stream<T> repJieldSwitch(Iterable<T> iter, int times, int each) {
+        for (int j = 0; j < times; ++j) {
+            for (T element : iter) {
+                for (int i = 0; i < each; ++i) {
+                    return element;
+                }
+            }
+        }
+    }
+
+    @Generator(backend = Backend.SWITCH, pooled = true)
+    public <T> Stream<T> repJieldPooled(Iterable<T> iter, int times, int each) {
+        for (int j = 0; j < times; ++j) {
+            for (T element : iter) {
+                for (int i = 0; i < each; ++i) {
+                    return element;
+                }
+            }
+        }
+    }
+
     public <T> Stream<T> repStreamGenerate(Iterable<T> iter, int times, int each) {
         return Stream.generate(() -> StreamSupport.stream(iter.spliterator(), false)
                                         .map(t -> Collections.nCopies(each, t))
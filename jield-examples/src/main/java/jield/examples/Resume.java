@@ -0,0 +1,76 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.runtime.IntGenerator;
+import jield.runtime.LongGenerator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * A long running job saving a checkpoint every few values. The job is interrupted, then a new generator continues from
+ * the last checkpoint, as a restarted process would do with a checkpoint read back from disk. The second job loops over
+ * a list of boxed values, the checkpoint holds the list and the position of the loop in it.
+ */
+public class Resume {
+    private static final int CHECKPOINT_INTERVAL = 5;
+
+    public static void main(String[] args) {
+        final LongGenerator job = (LongGenerator) squareSums(20).spliterator();
+
+        byte[] checkpoint = job.checkpoint();
+
+        for (int i = 1; i <= 12; ++i) {
+            System.out.println(job.nextLong());
+
+            if (i % CHECKPOINT_INTERVAL == 0) {
+                checkpoint = job.checkpoint();
+            }
+        }
+
+        System.out.println("interrupted, resuming from the last checkpoint");
+
+        final LongGenerator resumed = ((LongGenerator) squareSums(0).spliterator()).restore(checkpoint);
+
+        resumed.forEachRemaining((long value) -> System.out.println(value));
+
+        final List<Integer> deposits = Arrays.asList(100, 250, -40, 75, 310, -120, 60);
+
+        final IntGenerator balances = (IntGenerator) balances(deposits).spliterator();
+
+        balances.nextInt();
+
+        balances.nextInt();
+
+        final byte[] balancesCheckpoint = balances.checkpoint();
+
+        System.out.println("resuming the balances after the second deposit");
+
+        ((IntGenerator) balances(deposits).spliterator()).restore(balancesCheckpoint)
+            .forEachRemaining((int value) -> System.out.println(value));
+    }
+
+    @Generator(checkpointable = true)
+    public static LongStream squareSums(int count) {
+        long sum = 0;
+
+        for (int i = 1; i <= count; ++i) {
+            sum += (long) i * i;
+
+            return sum;
+        }
+    }
+
+    @Generator(checkpointable = true)
+    public static IntStream balances(List<Integer> deposits) {
+        int balance = 0;
+
+        for (int deposit : deposits) {
+            balance += deposit;
+
+            return balance;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package jield.examples;
+
+import jield.annotation.Generator;
+import jield.runtime.BaseGenerator;
+
+import java.util.stream.Stream;
+
+import static jield.runtime.Generators.yieldAll;
+
+public class Tree {
+    private final int value;
+
+    private final Tree left;
+
+    private final Tree right;
+
+    public Tree(int value, Tree left, Tree right) {
+        this.value = value;
+
+        this.left = left;
+
+        this.right = right;
+    }
+
+    public static void main(String[] args) {
+        final Tree tree = Tree.balanced(1, 7);
+
+        tree.inorderJield()
+                .forEach(System.out::println);
+
+        tree.inorderJieldDelegating()
+                .forEach(System.out::println);
+
+        System.out.println(Tree.leaning(10000).inorderJieldDelegating().count());
+    }
+
+    /**
+     * Builds a balanced tree holding the values of the specified range.
+     */
+    public static Tree balanced(int from, int to) {
+        if (from > to) {
+            return null;
+        }
+
+        final int middle = (from + to) >>> 1;
+
+        return new Tree(middle, balanced(from, middle - 1), balanced(middle + 1, to));
+    }
+
+    /**
+     * Builds a tree whose nodes only have right children, so its depth equals the number of its nodes.
+     */
+    public static Tree leaning(int size) {
+        Tree tree = null;
+
+        for (int i = size; i > 0; --i) {
+            tree = new Tree(i, null, tree);
+        }
+
+        return tree;
+    }
+
+    /**
+     * Re-yields the values of the subtrees, so every value passes through every generator above it.
+     */
+    @Generator
+    public Stream<Integer> inorderJield() {
+        if (left != null) {
+            for (Integer v : BaseGenerator.from(left.inorderJield())) {
+                return v;
+            }
+        }
+
+        return value;
+
+        if (right != null) {
+            for (Integer v : BaseGenerator.from(right.inorderJield())) {
+                return v;
+            }
+        }
+    }
+
+    /**
+     * Delegates to the generators of the subtrees, every value is produced by the innermost generator directly.
+     */
+    @Generator
+    public Stream<Integer> inorderJieldDelegating() {
+        if (left != null) {
+            return yieldAll(left.inorderJieldDelegating());
+        }
+
+        return value;
+
+        if (right != null) {
+            return yieldAll(right.inorderJieldDelegating());
+        }
+    }
+}